@@ -32,6 +32,7 @@ import org.mozilla.jss.pkcs11.PK11Cert;
 import org.mozilla.jss.pkcs11.PK11Module;
 import org.mozilla.jss.pkcs11.PK11SecureRandom;
 import org.mozilla.jss.pkcs11.PK11Token;
+import org.mozilla.jss.pkcs11.TrustAnchorIndex;
 import org.mozilla.jss.provider.java.security.JSSMessageDigestSpi;
 import org.mozilla.jss.util.InvalidNicknameException;
 import org.mozilla.jss.util.NativeProxy;
@@ -796,7 +797,11 @@ public final class CryptoManager implements TokenSupplier
             NoSuchItemOnTokenException,
             TokenException
     {
-        return importCertPackageNative(certPackage, nickname, false, false);
+        try {
+            return importCertPackageNative(certPackage, nickname, false, false);
+        } finally {
+            TrustAnchorIndex.invalidate();
+        }
     }
 
     /**
@@ -833,7 +838,11 @@ public final class CryptoManager implements TokenSupplier
             NoSuchItemOnTokenException,
             TokenException
     {
-        return importCertPackageNative(certPackage, nickname, false, true);
+        try {
+            return importCertPackageNative(certPackage, nickname, false, true);
+        } finally {
+            TrustAnchorIndex.invalidate();
+        }
     }
 
 
@@ -871,6 +880,8 @@ public final class CryptoManager implements TokenSupplier
             logger.error("importing CA certs caused NoSuchItemOnTokenException", e);
             throw new RuntimeException("Importing CA certs caused NoSuchItemOnToken"+
                 "Exception: " + e.getMessage(), e);
+        } finally {
+            TrustAnchorIndex.invalidate();
         }
     }
 
@@ -893,7 +904,11 @@ public final class CryptoManager implements TokenSupplier
         if (nickname == null) {
             throw new InvalidNicknameException("Nickname must be non-null");
         }
-        return importCertToPermNative(cert,nickname);
+        try {
+            return importCertToPermNative(cert,nickname);
+        } finally {
+            TrustAnchorIndex.invalidate();
+        }
     }
 
     /**
@@ -902,7 +917,11 @@ public final class CryptoManager implements TokenSupplier
      */
     public X509Certificate importDERCert(byte[] cert, CertificateUsage usage,
                                          boolean permanent, String nickname) {
-        return importDERCertNative(cert, usage.getEnumValue(), permanent, nickname);
+        try {
+            return importDERCertNative(cert, usage.getEnumValue(), permanent, nickname);
+        } finally {
+            TrustAnchorIndex.invalidate();
+        }
     }
 
     private native X509Certificate importDERCertNative(byte[] cert, int usage, boolean permanent, String nickname);
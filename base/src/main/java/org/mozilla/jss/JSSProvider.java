@@ -228,6 +228,10 @@ public final class JSSProvider extends java.security.Provider {
         /////////////////////////////////////////////////////////////
         put("SecureRandom.pkcs11prng",
             "org.mozilla.jss.provider.java.security.JSSSecureRandomSpi");
+        put("SecureRandom.pkcs11prng ThreadSafe", "true");
+        put("SecureRandom.pkcs11prng-buffered",
+            "org.mozilla.jss.provider.java.security.JSSSecureRandomSpi$Buffered");
+        put("SecureRandom.pkcs11prng-buffered ThreadSafe", "true");
 
         /////////////////////////////////////////////////////////////
         // KeyPairGenerator
@@ -282,6 +286,8 @@ public final class JSSProvider extends java.security.Provider {
             "org.mozilla.jss.provider.javax.crypto.JSSCipherSpi$RSA");
         put("Cipher.RC2",
             "org.mozilla.jss.provider.javax.crypto.JSSCipherSpi$RC2");
+        put("Cipher.ChaCha20-Poly1305",
+            "org.mozilla.jss.provider.javax.crypto.JSSCipherSpi$ChaCha20Poly1305");
 
         /////////////////////////////////////////////////////////////
         // KeyGenerator
@@ -294,6 +300,7 @@ public final class JSSProvider extends java.security.Provider {
         put("KeyGenerator.AES", kg_spi + "$AES");
         put("KeyGenerator.RC4", kg_spi + "$RC4");
         put("KeyGenerator.RC2", kg_spi + "$RC2");
+        put("KeyGenerator.ChaCha20", kg_spi + "$ChaCha20");
         put("KeyGenerator.HmacSHA1", kg_spi + "$HmacSHA1");
         put("KeyGenerator.PBAHmacSHA1", kg_spi + "$PBAHmacSHA1");
         put("KeyGenerator.HmacSHA256", kg_spi + "$HmacSHA256");
@@ -362,6 +369,8 @@ public final class JSSProvider extends java.security.Provider {
             "org.mozilla.jss.provider.javax.crypto.JSSSecretKeyFactorySpi$RC4");
         put("SecretKeyFactory.RC2",
             "org.mozilla.jss.provider.javax.crypto.JSSSecretKeyFactorySpi$RC2");
+        put("SecretKeyFactory.ChaCha20",
+            "org.mozilla.jss.provider.javax.crypto.JSSSecretKeyFactorySpi$ChaCha20");
         put("SecretKeyFactory.HmacSHA1",
             "org.mozilla.jss.provider.javax.crypto.JSSSecretKeyFactorySpi$HmacSHA1");
         put("SecretKeyFactory.PBAHmacSHA1",
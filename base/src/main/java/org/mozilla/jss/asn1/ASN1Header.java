@@ -8,6 +8,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.math.BigInteger;
+import java.util.Arrays;
 import java.util.Vector;
 
 /**
@@ -106,14 +107,26 @@ public class ASN1Header {
      */
     public ASN1Header(InputStream istream)
             throws InvalidBERException, IOException {
-        // default BAOS size is 32 bytes, which is plenty
-        ByteArrayOutputStream encoding = new ByteArrayOutputStream();
+        // When decoding from a byte array the encoding can be copied
+        // straight out of it, otherwise it's collected as it's read.
+        ByteArrayCursor cursor = null;
+        int start = 0;
+        ByteArrayOutputStream encoding = null;
+        if (istream instanceof ByteArrayCursor) {
+            cursor = (ByteArrayCursor) istream;
+            start = cursor.getPosition();
+        } else {
+            // default BAOS size is 32 bytes, which is plenty
+            encoding = new ByteArrayOutputStream();
+        }
         int inInt = istream.read();
         if (inInt == -1) {
             throw new InvalidBERException("End-of-file reached while " +
                     "decoding ASN.1 header");
         }
-        encoding.write(inInt);
+        if (encoding != null) {
+            encoding.write(inInt);
+        }
         byte byte1 = (byte) inInt;
         Tag.Class tagClass;
 
@@ -151,7 +164,9 @@ public class ASN1Header {
                     throw new InvalidBERException("End-of-file reached while"
                             + " decoding ASN.1 header");
                 }
-                encoding.write(inInt);
+                if (encoding != null) {
+                    encoding.write(inInt);
+                }
                 next = (byte) inInt;
                 bV.addElement(Byte.valueOf(next));
             } while ((next & 0x80) == 0x80);
@@ -213,7 +228,9 @@ public class ASN1Header {
             throw new InvalidBERException("End-of-file reached while " +
                     "decoding ASN.1 header");
         }
-        encoding.write(inInt);
+        if (encoding != null) {
+            encoding.write(inInt);
+        }
         byte lenByte = (byte) inInt;
 
         if ((lenByte & 0x80) == 0) {
@@ -228,13 +245,19 @@ public class ASN1Header {
                 // definite
                 byte[] lenBytes = new byte[lenByte & 0x7f];
                 ASN1Util.readFully(lenBytes, istream);
-                encoding.write(lenBytes);
+                if (encoding != null) {
+                    encoding.write(lenBytes);
+                }
                 contentLength = (new BigInteger(1, lenBytes)).longValue();
             }
         }
 
         // save our encoding so we don't have to recompute it later
-        cachedEncoding = encoding.toByteArray();
+        if (cursor != null) {
+            cachedEncoding = Arrays.copyOfRange(cursor.getBuffer(), start, cursor.getPosition());
+        } else {
+            cachedEncoding = encoding.toByteArray();
+        }
     }
 
     /**
@@ -3,11 +3,11 @@
  * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
 package org.mozilla.jss.asn1;
 
-import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 
 public class ASN1Util {
@@ -32,8 +32,8 @@ public class ASN1Util {
             throws InvalidBERException {
         try {
 
-            ByteArrayInputStream bis = new ByteArrayInputStream(encoded);
-            return template.decode(bis);
+            ByteArrayCursor cursor = new ByteArrayCursor(encoded);
+            return template.decode(cursor);
 
         } catch (IOException e) {
             throw (InvalidBERException) new InvalidBERException("Unable to decode byte array: " + e.getMessage())
@@ -41,13 +41,49 @@ public class ASN1Util {
         }
     }
 
+    /**
+     * Decodes the remaining content of a byte buffer. Heap buffers are
+     * decoded in place; other buffers are copied into an array first.
+     * The buffer position is advanced past the decoded value.
+     *
+     * @param template Template.
+     * @param buffer Buffer containing the encoding.
+     * @return Decoded value.
+     * @throws InvalidBERException If the encoding is invalid.
+     */
+    public static ASN1Value decode(ASN1Template template, ByteBuffer buffer)
+            throws InvalidBERException {
+        try {
+
+            ByteArrayCursor cursor;
+            int base;
+            if (buffer.hasArray()) {
+                base = buffer.arrayOffset() + buffer.position();
+                cursor = new ByteArrayCursor(buffer.array(), base, buffer.remaining());
+            } else {
+                byte[] encoded = new byte[buffer.remaining()];
+                buffer.duplicate().get(encoded);
+                base = 0;
+                cursor = new ByteArrayCursor(encoded);
+            }
+
+            ASN1Value value = template.decode(cursor);
+            buffer.position(buffer.position() + cursor.getPosition() - base);
+            return value;
+
+        } catch (IOException e) {
+            throw (InvalidBERException) new InvalidBERException("Unable to decode byte buffer: " + e.getMessage())
+                    .initCause(e);
+        }
+    }
+
     public static ASN1Value decode(Tag implicitTag, ASN1Template template,
             byte[] encoded)
             throws InvalidBERException {
         try {
 
-            ByteArrayInputStream bis = new ByteArrayInputStream(encoded);
-            return template.decode(implicitTag, bis);
+            ByteArrayCursor cursor = new ByteArrayCursor(encoded);
+            return template.decode(implicitTag, cursor);
 
         } catch (IOException e) {
             throw (InvalidBERException) new InvalidBERException("Unable to decode byte array: " + e.getMessage())
@@ -0,0 +1,97 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.asn1;
+
+import java.io.InputStream;
+
+/**
+ * An unsynchronized input stream over a byte array which exposes its
+ * current position.
+ *
+ * Templates decoding from a cursor can compute how many bytes an element
+ * consumed from the position before and after decoding it, instead of
+ * wrapping the stream in a CountingStream for every element. The header
+ * parser also uses the position to slice its encoding directly out of the
+ * array.
+ */
+class ByteArrayCursor extends InputStream {
+
+    private final byte[] buf;
+    private final int limit;
+    private int pos;
+    private int markpos;
+
+    public ByteArrayCursor(byte[] buf) {
+        this(buf, 0, buf.length);
+    }
+
+    public ByteArrayCursor(byte[] buf, int offset, int length) {
+        this.buf = buf;
+        this.pos = offset;
+        this.markpos = offset;
+        this.limit = offset + length;
+    }
+
+    /**
+     * Returns the underlying array. Positions returned by getPosition()
+     * are indexes into this array.
+     */
+    byte[] getBuffer() {
+        return buf;
+    }
+
+    int getPosition() {
+        return pos;
+    }
+
+    @Override
+    public int read() {
+        return pos < limit ? buf[pos++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        if (pos >= limit) {
+            return -1;
+        }
+        int n = Math.min(count, limit - pos);
+        System.arraycopy(buf, pos, buffer, offset, n);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public long skip(long count) {
+        if (count <= 0) {
+            return 0;
+        }
+        int n = (int) Math.min(count, limit - pos);
+        pos += n;
+        return n;
+    }
+
+    @Override
+    public int available() {
+        return limit - pos;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return true;
+    }
+
+    @Override
+    public void mark(int readlimit) {
+        markpos = pos;
+    }
+
+    @Override
+    public void reset() {
+        pos = markpos;
+    }
+}
@@ -8,7 +8,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.util.Vector;
+import java.util.ArrayList;
 
 /**
  * An ASN.1 SEQUENCE. This class is an ordered collection of ASN.1 values.
@@ -58,14 +58,14 @@ public class SEQUENCE extends SET {
      */
     public static class Template implements ASN1Template {
 
-        private Vector<Element> elements = new Vector<>();
+        private ArrayList<Element> elements = new ArrayList<>();
 
         private void addElement(Element el) {
-            elements.addElement(el);
+            elements.add(el);
         }
 
         private void insertElementAt(Element e, int index) {
-            elements.insertElementAt(e, index);
+            elements.add(index, e);
         }
 
         /**
@@ -288,7 +288,7 @@ public class SEQUENCE extends SET {
          * @return Tag.
          */
         public Tag implicitTagAt(int index) {
-            return elements.elementAt(index).getImplicitTag();
+            return elements.get(index).getImplicitTag();
         }
 
         /**
@@ -298,7 +298,7 @@ public class SEQUENCE extends SET {
          * @return Sub-template.
          */
         public ASN1Template templateAt(int index) {
-            return elements.elementAt(index).getTemplate();
+            return elements.get(index).getTemplate();
         }
 
         /**
@@ -308,7 +308,7 @@ public class SEQUENCE extends SET {
          * @return True if the sub-template is optional.
          */
         public boolean isOptionalAt(int index) {
-            return elements.elementAt(index).isOptional();
+            return elements.get(index).isOptional();
         }
 
         /**
@@ -319,7 +319,7 @@ public class SEQUENCE extends SET {
          * @return Default value.
          */
         public ASN1Value defaultAt(int index) {
-            return elements.elementAt(index).getDefault();
+            return elements.get(index).getDefault();
         }
 
         /**
@@ -333,7 +333,7 @@ public class SEQUENCE extends SET {
          * Removes all sub-templates from this SEQUENCE template.
          */
         public void removeAllElements() {
-            elements.removeAllElements();
+            elements.clear();
         }
 
         /**
@@ -342,7 +342,7 @@ public class SEQUENCE extends SET {
          * @param index Index.
          */
         public void removeElementAt(int index) {
-            elements.removeElementAt(index);
+            elements.remove(index);
         }
 
         Tag getTag() {
@@ -403,7 +403,7 @@ public class SEQUENCE extends SET {
 
                     // skip over items that don't match.  Hopefully they are
                     // optional or have a default.  Otherwise, it's an error.
-                    Element e = elements.elementAt(index);
+                    Element e = elements.get(index);
                     if ((lookAhead == null) || lookAhead.isEOC() ||
                             !e.tagMatch(lookAhead.getTag())) {
                         if (e.isRepeatable()) {
@@ -432,25 +432,43 @@ public class SEQUENCE extends SET {
                     ASN1Template t = e.getTemplate();
                     ASN1Value val;
 
-                    try (CountingStream countstream = new CountingStream(istream)) {
+                    long len;
+                    if (istream instanceof ByteArrayCursor) {
+                        // the cursor tracks its own position, no need to
+                        // wrap it just to count the bytes
+                        ByteArrayCursor cursor = (ByteArrayCursor) istream;
+                        int start = cursor.getPosition();
 
                         if (e.getImplicitTag() == null) {
-                            val = t.decode(countstream);
+                            val = t.decode(cursor);
                         } else {
-                            val = t.decode(e.getImplicitTag(), countstream);
+                            val = t.decode(e.getImplicitTag(), cursor);
                         }
 
-                        // Decrement remaining count
-                        long len = countstream.getNumRead();
-                        if (remainingContent != -1) {
-                            if (remainingContent < len) {
-                                // this item went past the end of the SEQUENCE
-                                throw new InvalidBERException("Item went " +
-                                        (len - remainingContent) + " bytes past the end of" +
-                                        " the SEQUENCE");
+                        len = cursor.getPosition() - start;
+
+                    } else {
+                        try (CountingStream countstream = new CountingStream(istream)) {
+
+                            if (e.getImplicitTag() == null) {
+                                val = t.decode(countstream);
+                            } else {
+                                val = t.decode(e.getImplicitTag(), countstream);
                             }
-                            remainingContent -= len;
+
+                            len = countstream.getNumRead();
+                        }
+                    }
+
+                    // Decrement remaining count
+                    if (remainingContent != -1) {
+                        if (remainingContent < len) {
+                            // this item went past the end of the SEQUENCE
+                            throw new InvalidBERException("Item went " +
+                                    (len - remainingContent) + " bytes past the end of" +
+                                    " the SEQUENCE");
                         }
+                        remainingContent -= len;
                     }
 
                     // Store this element in the SEQUENCE
@@ -9,6 +9,7 @@ import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Vector;
 
 /**
@@ -381,14 +382,14 @@ public class SET implements ASN1Value {
      */
     public static class Template implements ASN1Template {
 
-        private Vector<Element> elements = new Vector<>();
+        private ArrayList<Element> elements = new ArrayList<>();
 
         private void addElement(Element e) {
-            elements.addElement(e);
+            elements.add(e);
         }
 
         private void insertElementAt(Element e, int index) {
-            elements.insertElementAt(e, index);
+            elements.add(index, e);
         }
 
         /**
@@ -607,7 +608,7 @@ public class SET implements ASN1Value {
          * @return Implicit tag.
          */
         public Tag implicitTagAt(int index) {
-            return elements.elementAt(index).getImplicitTag();
+            return elements.get(index).getImplicitTag();
         }
 
         /**
@@ -617,7 +618,7 @@ public class SET implements ASN1Value {
          * @return Sub-template.
          */
         public ASN1Template templateAt(int index) {
-            return elements.elementAt(index).getTemplate();
+            return elements.get(index).getTemplate();
         }
 
         /**
@@ -628,11 +629,11 @@ public class SET implements ASN1Value {
          * @return True if sub-template is optional.
          */
         public boolean isOptionalAt(int index) {
-            return elements.elementAt(index).isOptional();
+            return elements.get(index).isOptional();
         }
 
         private boolean isRepeatableAt(int index) {
-            return elements.elementAt(index).isRepeatable();
+            return elements.get(index).isRepeatable();
         }
 
         /**
@@ -643,7 +644,7 @@ public class SET implements ASN1Value {
          * @return Default value.
          */
         public ASN1Value defaultAt(int index) {
-            return elements.elementAt(index).getDefault();
+            return elements.get(index).getDefault();
         }
 
         /**
@@ -654,11 +655,11 @@ public class SET implements ASN1Value {
         }
 
         public void removeAllElements() {
-            elements.removeAllElements();
+            elements.clear();
         }
 
         public void removeElementAt(int index) {
-            elements.removeElementAt(index);
+            elements.remove(index);
         }
 
         private Tag getTag() {
@@ -733,7 +734,7 @@ public class SET implements ASN1Value {
                         throw new InvalidBERException("Unexpected Tag in SET: " +
                                 lookAhead.getTag());
                     }
-                    Element e = elements.elementAt(index);
+                    Element e = elements.get(index);
                     if (found[index] && !e.isRepeatable()) {
                         // element already found, and it's not repeatable
                         throw new InvalidBERException("Duplicate Tag in SET: " +
@@ -747,25 +748,43 @@ public class SET implements ASN1Value {
                     ASN1Template t = e.getTemplate();
                     ASN1Value val;
 
-                    try (CountingStream countstream = new CountingStream(istream)) {
+                    long len;
+                    if (istream instanceof ByteArrayCursor) {
+                        // the cursor tracks its own position, no need to
+                        // wrap it just to count the bytes
+                        ByteArrayCursor cursor = (ByteArrayCursor) istream;
+                        int start = cursor.getPosition();
 
                         if (e.getImplicitTag() == null) {
-                            val = t.decode(countstream);
+                            val = t.decode(cursor);
                         } else {
-                            val = t.decode(e.getImplicitTag(), countstream);
+                            val = t.decode(e.getImplicitTag(), cursor);
                         }
 
-                        // Decrement remaining count
-                        long len = countstream.getNumRead();
-                        if (remainingContent != -1) {
-                            if (remainingContent < len) {
-                                // this item went past the end of the SET
-                                throw new InvalidBERException("Item went " +
-                                        (len - remainingContent) + " bytes past the end of" +
-                                        " the SET");
+                        len = cursor.getPosition() - start;
+
+                    } else {
+                        try (CountingStream countstream = new CountingStream(istream)) {
+
+                            if (e.getImplicitTag() == null) {
+                                val = t.decode(countstream);
+                            } else {
+                                val = t.decode(e.getImplicitTag(), countstream);
                             }
-                            remainingContent -= len;
+
+                            len = countstream.getNumRead();
+                        }
+                    }
+
+                    // Decrement remaining count
+                    if (remainingContent != -1) {
+                        if (remainingContent < len) {
+                            // this item went past the end of the SET
+                            throw new InvalidBERException("Item went " +
+                                    (len - remainingContent) + " bytes past the end of" +
+                                    " the SET");
                         }
+                        remainingContent -= len;
                     }
 
                     // Store this element in the SET
@@ -817,7 +836,7 @@ public class SET implements ASN1Value {
             int size = elements.size();
 
             for (int i = 0; i < size; i++) {
-                Element e = elements.elementAt(i);
+                Element e = elements.get(i);
                 if (e.tagMatch(tag)) {
                     // match!
                     return i;
@@ -4,11 +4,13 @@
 
 package org.mozilla.jss.crypto;
 
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.spec.AlgorithmParameterSpec;
 
 import javax.crypto.BadPaddingException;
+import javax.crypto.ShortBufferException;
 
 /**
  * A context for performing symmetric encryption and decryption.
@@ -78,6 +80,54 @@ public abstract class Cipher {
     public abstract byte[] update(byte[] bytes, int offset, int length)
         throws IllegalStateException, TokenException;
 
+    /**
+     * Updates the encryption context with additional input, storing the
+     * output in the given array.
+     *
+     * The default implementation copies the output of update(byte[], int,
+     * int), so it only detects a short output buffer once the input has
+     * been consumed; implementations may write to <code>output</code>
+     * directly, checking its size first.
+     *
+     * @param input Bytes of plaintext (if encrypting) or ciphertext (if
+     *      decrypting).
+     * @param inputOffset The index in <code>input</code> at which to begin
+     *      reading.
+     * @param inputLen The number of bytes from <code>input</code> to read.
+     * @param output The array in which to store the output; may be the
+     *      same array as <code>input</code>.
+     * @param outputOffset The index in <code>output</code> at which to
+     *      begin writing.
+     * @return The number of bytes stored in <code>output</code>.
+     * @throws ShortBufferException If <code>output</code> is too small.
+     */
+    public int update(byte[] input, int inputOffset, int inputLen,
+        byte[] output, int outputOffset)
+        throws IllegalStateException, ShortBufferException, TokenException
+    {
+        byte[] bytes = update(input, inputOffset, inputLen);
+        return copyOutput(bytes, output, outputOffset);
+    }
+
+    /**
+     * Updates the encryption context with the remaining bytes of
+     * <code>input</code>, storing the output in <code>output</code>. The
+     * positions of both buffers are advanced.
+     *
+     * The default implementation goes through update(byte[], int, int);
+     * implementations may read and write direct buffers in place.
+     *
+     * @return The number of bytes stored in <code>output</code>.
+     * @throws ShortBufferException If <code>output</code> is too small.
+     */
+    public int update(ByteBuffer input, ByteBuffer output)
+        throws IllegalStateException, ShortBufferException, TokenException
+    {
+        byte[] bytes = new byte[input.remaining()];
+        input.get(bytes);
+        return copyOutput(update(bytes), output);
+    }
+
     /**
      * Completes an cipher operation. This can be called directly after
      *  the context is initialized, or <code>update</code> may be called
@@ -110,6 +160,114 @@ public abstract class Cipher {
         throws IllegalStateException, IllegalBlockSizeException,
         BadPaddingException, TokenException;
 
+    /**
+     * Completes an cipher operation, storing the output in the given
+     * array.
+     *
+     * The default implementation copies the output of doFinal(byte[], int,
+     * int), so it only detects a short output buffer once the input has
+     * been consumed; implementations may write to <code>output</code>
+     * directly, checking its size first.
+     *
+     * @param input Bytes of plaintext (if encrypting) or ciphertext (if
+     *      decrypting); may be null if <code>inputLen</code> is zero.
+     * @param inputOffset The index in <code>input</code> at which to begin
+     *      reading.
+     * @param inputLen The number of bytes from <code>input</code> to read.
+     * @param output The array in which to store the output; may be the
+     *      same array as <code>input</code>.
+     * @param outputOffset The index in <code>output</code> at which to
+     *      begin writing.
+     * @return The number of bytes stored in <code>output</code>.
+     * @throws ShortBufferException If <code>output</code> is too small.
+     */
+    public int doFinal(byte[] input, int inputOffset, int inputLen,
+        byte[] output, int outputOffset)
+        throws IllegalStateException, IllegalBlockSizeException,
+        BadPaddingException, ShortBufferException, TokenException
+    {
+        byte[] bytes;
+        if (input == null || inputLen == 0) {
+            bytes = doFinal();
+        } else {
+            bytes = doFinal(input, inputOffset, inputLen);
+        }
+        return copyOutput(bytes, output, outputOffset);
+    }
+
+    /**
+     * Completes an cipher operation with the remaining bytes of
+     * <code>input</code>, storing the output in <code>output</code>. The
+     * positions of both buffers are advanced.
+     *
+     * The default implementation goes through doFinal(byte[]);
+     * implementations may read and write direct buffers in place.
+     *
+     * @return The number of bytes stored in <code>output</code>.
+     * @throws ShortBufferException If <code>output</code> is too small.
+     */
+    public int doFinal(ByteBuffer input, ByteBuffer output)
+        throws IllegalStateException, IllegalBlockSizeException,
+        BadPaddingException, ShortBufferException, TokenException
+    {
+        byte[] bytes = new byte[input.remaining()];
+        input.get(bytes);
+        return copyOutput(doFinal(bytes), output);
+    }
+
+    /**
+     * Supplies additional authenticated data (AAD) to an AEAD operation.
+     * The AAD must be supplied before any input is passed to
+     * <code>update</code> or <code>doFinal</code>.
+     *
+     * The default implementation throws UnsupportedOperationException;
+     * only contexts for AEAD algorithms accept AAD.
+     *
+     * @param bytes The additional authenticated data.
+     * @param offset The index in <code>bytes</code> at which to begin reading.
+     * @param length The number of bytes from <code>bytes</code> to read.
+     */
+    public void updateAAD(byte[] bytes, int offset, int length)
+        throws IllegalStateException, TokenException
+    {
+        throw new UnsupportedOperationException(
+            "Additional authenticated data requires an AEAD algorithm");
+    }
+
+    /**
+     * Returns the number of input bytes held by this context which will
+     * only be processed by <code>doFinal</code>. AEAD operations process
+     * the whole message at once, so all input passed to
+     * <code>update</code> is held until then.
+     *
+     * The default implementation returns 0.
+     */
+    public int getBufferedLength() {
+        return 0;
+    }
+
+    private static int copyOutput(byte[] bytes, byte[] output, int outputOffset)
+        throws ShortBufferException
+    {
+        if (bytes.length > output.length - outputOffset) {
+            throw new ShortBufferException(bytes.length + " needed, " +
+                (output.length - outputOffset) + " supplied");
+        }
+        System.arraycopy(bytes, 0, output, outputOffset, bytes.length);
+        return bytes.length;
+    }
+
+    private static int copyOutput(byte[] bytes, ByteBuffer output)
+        throws ShortBufferException
+    {
+        if (bytes.length > output.remaining()) {
+            throw new ShortBufferException(bytes.length + " needed, " +
+                output.remaining() + " supplied");
+        }
+        output.put(bytes);
+        return bytes.length;
+    }
+
     /**
      * Pads a byte array so that its length is a multiple of the given
      *  blocksize.  The method of padding is the one defined in the RSA
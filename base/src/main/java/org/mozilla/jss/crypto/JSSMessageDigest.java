@@ -101,6 +101,18 @@ public abstract class JSSMessageDigest {
      */
     public abstract void reset() throws DigestException;
 
+    /**
+     * Returns an independent copy of this digest, including any data
+     * digested so far.
+     *
+     * @return The copy.
+     * @throws CloneNotSupportedException If this digest can't be copied.
+     */
+    @Override
+    public JSSMessageDigest clone() throws CloneNotSupportedException {
+        throw new CloneNotSupportedException();
+    }
+
     /**
      * @return The algorithm that this digest uses.
      */
@@ -167,6 +167,20 @@ public class KeyPairGenerator {
         engine.setKeyPairUsages(usages,usages_mask);
     }
 
+    /**
+     * Keeps the given number of key pairs with the current parameters and
+     * key attributes generated in advance by background threads, so that
+     * <code>genKeyPair</code> doesn't have to wait for them.
+     *
+     * @param depth Number of key pairs to keep, or 0 to disable the pool.
+     * @exception InvalidParameterException If the generator has not been
+     *      initialized with enough parameters, doesn't generate temporary
+     *      key pairs, or doesn't support pooling.
+     */
+    public void setPoolDepth(int depth) throws InvalidParameterException {
+        engine.setPoolDepth(depth);
+    }
+
     public int getCurveCodeByName(String curveName)
         throws InvalidParameterException {
         return engine.getCurveCodeByName(curveName);
@@ -35,6 +35,15 @@ public abstract class KeyPairGeneratorSpi {
 
     public abstract boolean keygenOnInternalToken();
 
+    /**
+     * Keeps key pairs generated in advance; not supported by default.
+     */
+    public void setPoolDepth(int depth)
+        throws InvalidParameterException
+    {
+        throw new InvalidParameterException("pooling not supported");
+    }
+
     /**
      * In PKCS #11, each keypair can be marked with the operations it will
      * be used to perform. Some tokens require that a key be marked for
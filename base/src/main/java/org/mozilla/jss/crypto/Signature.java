@@ -126,6 +126,92 @@ public class Signature {
         return engine.engineVerify(signature);
     }
 
+    /**
+     * Sign each of a batch of messages. All the messages are signed with
+     * a single signing context, in one call to the token.
+     *
+     * <p>Unlike <code>sign()</code>, this leaves the context initialized
+     * for signing, so further batches may be signed without calling
+     * <code>initSign()</code> again. Any data passed to
+     * <code>update()</code> since initialization is discarded.
+     *
+     * @param messages The messages to be signed.
+     * @return The signatures, in the same order as the messages.
+     * @exception SignatureException If the context is not initialized for
+     *                signing, or an error occurs while signing.
+     * @exception TokenException If an error occurs on the token.
+     */
+    public byte[][] signAll(byte[][] messages)
+            throws SignatureException, TokenException {
+        return engine.engineSignAll(messages);
+    }
+
+    /**
+     * Sign each of a batch of message digests which have already been
+     * computed with this algorithm's digest algorithm. No digest context
+     * is created; each digest is signed directly, in one call to the token.
+     *
+     * <p>For raw signature algorithms, the inputs are signed exactly as
+     * given. Pre-hashed signing is not supported for RSA-PSS.
+     *
+     * @param digests The message digests to be signed.
+     * @return The signatures, in the same order as the digests. These are
+     *         identical to the signatures <code>signAll()</code> would
+     *         produce for the original messages.
+     * @exception SignatureException If the context is not initialized for
+     *                signing, a digest has the wrong length, or an error
+     *                occurs while signing.
+     * @exception TokenException If an error occurs on the token.
+     */
+    public byte[][] signDigests(byte[][] digests)
+            throws SignatureException, TokenException {
+        return engine.engineSignDigests(digests);
+    }
+
+    /**
+     * Verify each of a batch of signatures. All the messages are verified
+     * with a single verification context, in one call to the token.
+     *
+     * <p>Unlike <code>verify()</code>, this leaves the context initialized
+     * for verification, so further batches may be verified without calling
+     * <code>initVerify()</code> again. Any data passed to
+     * <code>update()</code> since initialization is discarded.
+     *
+     * @param messages The messages that were signed.
+     * @param signatures The signatures, one for each message.
+     * @return For each message, true if its signature is valid, false if
+     *         it is invalid.
+     * @exception SignatureException If the context is not initialized for
+     *                verification, the number of signatures doesn't match
+     *                the number of messages, or an error occurs while
+     *                verifying.
+     * @exception TokenException If an error occurs on the token.
+     */
+    public boolean[] verifyAll(byte[][] messages, byte[][] signatures)
+            throws SignatureException, TokenException {
+        return engine.engineVerifyAll(messages, signatures);
+    }
+
+    /**
+     * Verify each of a batch of signatures against message digests which
+     * have already been computed with this algorithm's digest algorithm.
+     *
+     * @param digests The digests of the messages that were signed.
+     * @param signatures The signatures, one for each digest.
+     * @return For each digest, true if its signature is valid, false if
+     *         it is invalid.
+     * @exception SignatureException If the context is not initialized for
+     *                verification, the number of signatures doesn't match
+     *                the number of digests, a digest has the wrong length,
+     *                or an error occurs while verifying.
+     * @exception TokenException If an error occurs on the token.
+     * @see #signDigests
+     */
+    public boolean[] verifyDigests(byte[][] digests, byte[][] signatures)
+            throws SignatureException, TokenException {
+        return engine.engineVerifyDigests(digests, signatures);
+    }
+
     /**
      * Provide more data for a signature or verification operation.
      *
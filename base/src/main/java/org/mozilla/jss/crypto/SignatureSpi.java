@@ -37,6 +37,61 @@ public abstract class SignatureSpi {
 	public abstract boolean engineVerify(byte[] sigBytes)
 		throws SignatureException, TokenException;
 
+	/**
+	 * Signs each message in turn with engineUpdate() and engineSign().
+	 * Implementations able to sign a batch in one call should override it.
+	 */
+	public byte[][] engineSignAll(byte[][] messages)
+		throws SignatureException, TokenException
+	{
+		byte[][] signatures = new byte[messages.length][];
+		for (int i = 0; i < messages.length; i++) {
+			engineUpdate(messages[i], 0, messages[i].length);
+			signatures[i] = engineSign();
+		}
+		return signatures;
+	}
+
+	/**
+	 * Not supported unless overridden.
+	 */
+	public byte[][] engineSignDigests(byte[][] digests)
+		throws SignatureException, TokenException
+	{
+		throw new SignatureException("Signing digests is not supported");
+	}
+
+	/**
+	 * Verifies each message in turn with engineUpdate() and engineVerify().
+	 * Implementations able to verify a batch in one call should override it.
+	 */
+	public boolean[] engineVerifyAll(byte[][] messages,
+										byte[][] signatures)
+		throws SignatureException, TokenException
+	{
+		if (messages.length != signatures.length) {
+			throw new SignatureException("Expected " + messages.length +
+				" signatures, got " + signatures.length);
+		}
+
+		boolean[] results = new boolean[messages.length];
+		for (int i = 0; i < messages.length; i++) {
+			engineUpdate(messages[i], 0, messages[i].length);
+			results[i] = engineVerify(signatures[i]);
+		}
+		return results;
+	}
+
+	/**
+	 * Not supported unless overridden.
+	 */
+	public boolean[] engineVerifyDigests(byte[][] digests,
+										byte[][] signatures)
+		throws SignatureException, TokenException
+	{
+		throw new SignatureException("Verifying digests is not supported");
+	}
+
 	public abstract void engineSetParameter(AlgorithmParameterSpec params)
 		throws InvalidAlgorithmParameterException, TokenException;
 }
@@ -59,7 +59,8 @@ public class CertificateScopeOfUseExtension extends Extension
     static {
         try {
             OIDMap.addAttribute(CertificateScopeOfUseExtension.class.getName(),
-                    ID.toString(), NAME);
+                    ID.toString(), NAME,
+                    CertificateScopeOfUseExtension::new);
         } catch (CertificateException e) {
         }
     }
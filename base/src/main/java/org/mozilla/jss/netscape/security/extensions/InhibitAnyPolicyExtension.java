@@ -56,7 +56,8 @@ public class InhibitAnyPolicyExtension
     static {
         try {
             OIDMap.addAttribute(InhibitAnyPolicyExtension.class.getName(),
-                    OID, NAME);
+                    OID, NAME,
+                    InhibitAnyPolicyExtension::new);
         } catch (CertificateException e) {
         }
     }
@@ -46,7 +46,8 @@ public class OCSPNoCheckExtension extends Extension implements CertAttrSet {
     static {
         try {
             OIDMap.addAttribute(OCSPNoCheckExtension.class.getName(),
-                    OID, NAME);
+                    OID, NAME,
+                    OCSPNoCheckExtension::new);
         } catch (CertificateException e) {
         }
     }
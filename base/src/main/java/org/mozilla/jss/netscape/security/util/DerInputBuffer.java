@@ -96,6 +96,19 @@ class DerInputBuffer extends ByteArrayInputStream implements Cloneable {
         return true;
     }
 
+    /**
+     * Returns a hash code of the remaining bytes, consistent with
+     * <code>equals</code>.
+     */
+    @Override
+    public int hashCode() {
+        int result = 1;
+        int max = this.available();
+        for (int i = 0; i < max; i++)
+            result = 31 * result + this.buf[this.pos + i];
+        return result;
+    }
+
     void truncate(int len) throws IOException {
         if (len > available())
             throw new IOException("insufficient data");
@@ -645,11 +645,11 @@ public class DerValue {
 
     @Override
     public int hashCode() {
+        // must agree with equals(), which compares the encoded bytes
+        data.reset();
         final int prime = 31;
         int result = 1;
-        result = prime * result + ((buffer == null) ? 0 : buffer.hashCode());
-        result = prime * result + ((data == null) ? 0 : data.hashCode());
-        result = prime * result + length;
+        result = prime * result + buffer.hashCode();
         result = prime * result + tag;
         return result;
     }
@@ -20,9 +20,6 @@ package org.mozilla.jss.netscape.security.x509;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
-import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.security.cert.CRLException;
 import java.security.cert.CertificateException;
 import java.util.Enumeration;
@@ -50,8 +47,8 @@ public class CRLExtensions extends Vector<Extension> {
     // Parse the encoded extension
     private void parseExtension(Extension ext) throws X509ExtensionException {
         try {
-            Class<?> extClass = OIDMap.getClass(ext.getExtensionId());
-            if (extClass == null) { // Unsupported extension
+            ExtensionFactory factory = OIDMap.getFactory(ext.getExtensionId());
+            if (factory == null) { // Unsupported extension
                 if (ext.isCritical()) {
                     throw new IOException("Unsupported CRITICAL extension: "
                                           + ext.getExtensionId());
@@ -61,24 +58,19 @@ public class CRLExtensions extends Vector<Extension> {
                     return;
                 }
             }
-            Class<?>[] params = { Boolean.class, Object.class };
-            Constructor<?> cons = extClass.getConstructor(params);
-            byte[] extData = ext.getExtensionValue();
-            int extLen = extData.length;
-            Object value = Array.newInstance(byte.class, extLen);
-
-            for (int i = 0; i < extLen; i++) {
-                Array.setByte(value, i, extData[i]);
+
+            CertAttrSet crlExt;
+            try {
+                crlExt = (CertAttrSet) factory.create(
+                        Boolean.valueOf(ext.isCritical()), ext.extensionValue);
+            } catch (IOException | CertificateException e) {
+                throw new X509ExtensionException(e.getMessage());
             }
-            Object[] passed = new Object[] { Boolean.valueOf(ext.isCritical()),
-                                                        value };
-            CertAttrSet crlExt = (CertAttrSet) cons.newInstance(passed);
             map.put(crlExt.getName(), (Extension) crlExt);
             addElement((Extension) crlExt);
 
-        } catch (InvocationTargetException invk) {
-            throw new X509ExtensionException(
-                                 invk.getTargetException().getMessage());
+        } catch (X509ExtensionException e) {
+            throw e;
 
         } catch (Exception e) {
             throw new X509ExtensionException(e.toString());
@@ -0,0 +1,539 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2024 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package org.mozilla.jss.netscape.security.x509;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.security.cert.CRLException;
+import java.util.Date;
+
+import org.mozilla.jss.netscape.security.util.DerInputStream;
+import org.mozilla.jss.netscape.security.util.DerValue;
+
+/**
+ * Pull-style reader for X.509 CRLs which doesn't hold the whole encoding
+ * in memory.
+ *
+ * The CRL header (version, signature algorithm, issuer and update times)
+ * is parsed by open(). Revoked certificates are then returned one at a
+ * time by nextEntry(), which returns null after the last entry. Finally,
+ * finish() (also called by close()) reads the CRL extensions and
+ * signature, and when a verification key was supplied, checks the
+ * signature, which is computed incrementally over the
+ * <code>tbsCertList</code> bytes as they are read.
+ *
+ * <pre>
+ * try (CRLStreamReader reader = new CRLStreamReader(channel)) {
+ *     reader.setVerificationKey(caKey, "Mozilla-JSS");
+ *     reader.open();
+ *     RevokedCertificate entry;
+ *     while ((entry = reader.nextEntry()) != null) {
+ *         ...
+ *     }
+ * }
+ * </pre>
+ *
+ * Only the current entry is held in memory, so arbitrarily large CRLs can
+ * be processed in a bounded heap. The input can be a stream, a channel
+ * (e.g. a FileChannel) or a buffer (e.g. a memory-mapped file).
+ */
+public class CRLStreamReader implements AutoCloseable {
+
+    private static final int MAX_ELEMENT_SIZE = 64 * 1024;
+
+    private InputStream in;
+
+    // tag and length bytes not yet passed to update(), so the signature
+    // is updated once per element rather than once per header byte
+    private byte[] header = new byte[32];
+    private int headerLength;
+
+    private PublicKey verificationKey;
+    private String sigProvider;
+    private Signature sigVerf;
+
+    // tbsCertList bytes read before the signature algorithm was known
+    private ByteArrayOutputStream pending;
+    private boolean inTBS;
+
+    private long position;
+    private long tbsEnd;
+    private long entriesEnd = -1;
+
+    private int version;
+    private AlgorithmId infoSigAlgId;
+    private AlgorithmId sigAlgId;
+    private X500Name issuer;
+    private Date thisUpdate;
+    private Date nextUpdate;
+    private CRLExtensions extensions;
+    private byte[] signature;
+
+    private long entryCount;
+    private boolean opened;
+    private boolean finished;
+
+    public CRLStreamReader(InputStream in) {
+        this.in = in instanceof BufferedInputStream ? in : new BufferedInputStream(in);
+    }
+
+    public CRLStreamReader(ReadableByteChannel channel) {
+        this(Channels.newInputStream(channel));
+    }
+
+    /**
+     * Reads the CRL from the remaining bytes of the buffer, for instance
+     * a MappedByteBuffer.
+     */
+    public CRLStreamReader(ByteBuffer buffer) {
+        this.in = new ByteBufferInputStream(buffer);
+    }
+
+    /**
+     * Verifies the CRL signature with the given key while reading. Must be
+     * called before open().
+     */
+    public void setVerificationKey(PublicKey key, String sigProvider) {
+        if (opened)
+            throw new IllegalStateException("CRL already opened");
+
+        this.verificationKey = key;
+        this.sigProvider = sigProvider;
+    }
+
+    /**
+     * Parses the CRL up to the first revoked certificate.
+     *
+     * @exception CRLException on parsing or verification errors.
+     */
+    public void open() throws CRLException, IOException {
+        if (opened)
+            throw new IllegalStateException("CRL already opened");
+        opened = true;
+
+        // CertificateList
+        expectTag(DerValue.tag_Sequence, "signed CRL");
+        readLength();
+
+        // tbsCertList
+        flushHeader();
+        inTBS = true;
+        pending = new ByteArrayOutputStream();
+        expectTag(DerValue.tag_Sequence, "signed CRL fields");
+        long tbsLength = readLength();
+        tbsEnd = position + tbsLength;
+
+        // version (optional if v1)
+        version = 0;
+        int nextByte = peekByte();
+        if (nextByte == DerValue.tag_Integer) {
+            version = new DerInputStream(readElement()).getInteger().toInt();
+            if (version != 1) // i.e. v2
+                throw new CRLException("Invalid version");
+        }
+
+        // signature
+        infoSigAlgId = AlgorithmId.parse(new DerValue(readElement()));
+        startVerification();
+
+        // issuer
+        issuer = new X500Name(readElement());
+
+        // thisUpdate
+        thisUpdate = readTime();
+        if (thisUpdate == null)
+            throw new CRLException("Invalid encoding for thisUpdate");
+
+        if (position == tbsEnd)
+            return;
+
+        // nextUpdate (optional)
+        nextByte = peekByte();
+        if (nextByte == DerValue.tag_UtcTime || nextByte == DerValue.tag_GeneralizedTime)
+            nextUpdate = readTime();
+
+        if (position == tbsEnd)
+            return;
+
+        // revokedCertificates (optional)
+        nextByte = peekByte();
+        if (nextByte == DerValue.tag_SequenceOf) {
+            readByte();
+            long length = readLength();
+            entriesEnd = position + length;
+            if (entriesEnd > tbsEnd)
+                throw new CRLException("Revoked certificates overrun");
+        }
+    }
+
+    /**
+     * Returns the next revoked certificate, or null when there are no more
+     * entries.
+     *
+     * @exception CRLException on parsing errors.
+     */
+    public RevokedCertificate nextEntry() throws CRLException, IOException {
+        if (!opened)
+            throw new IllegalStateException("CRL not opened");
+
+        if (entriesEnd < 0 || position >= entriesEnd)
+            return null;
+
+        byte[] entry = readElement();
+        if (position > entriesEnd)
+            throw new CRLException("Revoked certificate overrun");
+
+        RevokedCertImpl result;
+        try {
+            result = new RevokedCertImpl(new DerValue(entry));
+        } catch (X509ExtensionException e) {
+            throw new CRLException("Parsing error: " + e.toString());
+        }
+
+        if (result.hasExtensions() && version == 0)
+            throw new CRLException("Invalid encoding, extensions" +
+                    " not supported in CRL v1 entries.");
+
+        entryCount++;
+        return result;
+    }
+
+    /**
+     * Skips any remaining entries and reads the CRL extensions, signature
+     * algorithm and signature, verifying the signature if a key was set.
+     * Calling it again has no effect.
+     *
+     * @exception CRLException on parsing errors or if the signature
+     *                doesn't match.
+     */
+    public void finish() throws CRLException, IOException {
+        if (!opened)
+            throw new IllegalStateException("CRL not opened");
+
+        if (finished)
+            return;
+        finished = true;
+
+        while (nextEntry() != null) {
+            // skip
+        }
+
+        // crlExtensions (optional)
+        if (position < tbsEnd) {
+            DerValue tmp = new DerValue(readElement());
+            if (tmp.isConstructed() && tmp.isContextSpecific((byte) 0)) {
+                if (version == 0)
+                    throw new CRLException("Invalid encoding, extensions not" +
+                            " supported in CRL v1.");
+                try {
+                    extensions = new CRLExtensions(tmp.data);
+                } catch (X509ExtensionException e) {
+                    throw new CRLException("Parsing error: " + e.toString());
+                }
+            }
+        }
+
+        if (position != tbsEnd)
+            throw new CRLException("signed CRL fields overrun");
+        flushHeader();
+        inTBS = false;
+
+        sigAlgId = AlgorithmId.parse(new DerValue(readElement()));
+        if (!sigAlgId.equals(infoSigAlgId))
+            throw new CRLException("Signature algorithm mismatch");
+
+        signature = new DerValue(readElement()).getBitString();
+
+        if (sigVerf != null) {
+            try {
+                if (!sigVerf.verify(signature))
+                    throw new CRLException("Signature does not match.");
+            } catch (GeneralSecurityException e) {
+                throw new CRLException("Unable to verify CRL signature: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * Calls finish() if the CRL was opened, then closes the input.
+     */
+    @Override
+    public void close() throws CRLException, IOException {
+        try {
+            if (opened)
+                finish();
+        } finally {
+            in.close();
+        }
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public X500Name getIssuer() {
+        return issuer;
+    }
+
+    public Date getThisUpdate() {
+        return thisUpdate == null ? null : new Date(thisUpdate.getTime());
+    }
+
+    public Date getNextUpdate() {
+        return nextUpdate == null ? null : new Date(nextUpdate.getTime());
+    }
+
+    /**
+     * Returns the signature algorithm from the <code>tbsCertList</code>.
+     */
+    public AlgorithmId getSigAlgId() {
+        return infoSigAlgId;
+    }
+
+    /**
+     * Returns the CRL extensions; only available after finish().
+     */
+    public CRLExtensions getExtensions() {
+        return extensions;
+    }
+
+    /**
+     * Returns the raw signature bits; only available after finish().
+     */
+    public byte[] getSignature() {
+        return signature == null ? null : signature.clone();
+    }
+
+    /**
+     * Returns the number of entries read so far.
+     */
+    public long getEntryCount() {
+        return entryCount;
+    }
+
+    private void startVerification() throws CRLException, IOException {
+        flushHeader();
+        if (verificationKey != null) {
+            try {
+                String sigAlg = X509CRLImpl.getSignatureAlgorithm(infoSigAlgId.getName(), sigProvider);
+                sigVerf = sigProvider == null ? Signature.getInstance(sigAlg)
+                        : Signature.getInstance(sigAlg, sigProvider);
+                sigVerf.initVerify(verificationKey);
+                sigVerf.update(pending.toByteArray());
+            } catch (GeneralSecurityException e) {
+                throw new CRLException("Unable to verify CRL signature: " + e.getMessage(), e);
+            }
+        }
+        pending = null;
+    }
+
+    private Date readTime() throws CRLException, IOException {
+        int tag = peekByte();
+        if (tag == DerValue.tag_UtcTime)
+            return new DerInputStream(readElement()).getUTCTime();
+        if (tag == DerValue.tag_GeneralizedTime)
+            return new DerInputStream(readElement()).getGeneralizedTime();
+        return null;
+    }
+
+    private void expectTag(byte tag, String field) throws CRLException, IOException {
+        if (readByte() != tag)
+            throw new CRLException(field + " invalid");
+    }
+
+    /*
+     * Reads a complete TLV, including its tag and length, into an array.
+     */
+    private byte[] readElement() throws CRLException, IOException {
+        flushHeader();
+        int tag = readByte();
+        if ((tag & 0x1f) == 0x1f)
+            throw new CRLException("Unsupported DER tag");
+
+        long start = position;
+        long length = readLength();
+        int headerLength = (int) (position - start) + 1;
+
+        if (length > MAX_ELEMENT_SIZE - headerLength)
+            throw new CRLException("DER element too large: " + length);
+
+        byte[] result = new byte[headerLength + (int) length];
+        result[0] = (byte) tag;
+        encodeLength(result, 1, headerLength - 1, length);
+
+        // the buffered header is re-encoded in the result, so the whole
+        // element goes to the signature at once
+        this.headerLength = 0;
+        readFully(result, headerLength, (int) length);
+        update(result, 0, result.length);
+        return result;
+    }
+
+    private static void encodeLength(byte[] buf, int offset, int size, long length) {
+        if (size == 1) {
+            buf[offset] = (byte) length;
+            return;
+        }
+
+        buf[offset] = (byte) (0x80 | (size - 1));
+        for (int i = size - 1; i > 0; i--) {
+            buf[offset + i] = (byte) length;
+            length >>>= 8;
+        }
+    }
+
+    private long readLength() throws CRLException, IOException {
+        int first = readByte();
+        if (first < 0x80)
+            return first;
+
+        int n = first & 0x7f;
+        if (n == 0)
+            throw new CRLException("Indefinite length encoding not allowed in DER");
+        if (n > 8)
+            throw new CRLException("DER length too long");
+
+        long length = 0;
+        for (int i = 0; i < n; i++) {
+            length = (length << 8) | readByte();
+        }
+
+        if (length < 0)
+            throw new CRLException("Invalid DER length");
+
+        return length;
+    }
+
+    private int peekByte() throws IOException {
+        in.mark(1);
+        int b = in.read();
+        in.reset();
+        if (b < 0)
+            throw new EOFException("Unexpected end of CRL");
+        return b;
+    }
+
+    private int readByte() throws IOException {
+        int b = in.read();
+        if (b < 0)
+            throw new EOFException("Unexpected end of CRL");
+        position++;
+        if (headerLength == header.length)
+            flushHeader();
+        header[headerLength++] = (byte) b;
+        return b;
+    }
+
+    private void flushHeader() throws IOException {
+        if (headerLength == 0)
+            return;
+        int length = headerLength;
+        headerLength = 0;
+        update(header, 0, length);
+    }
+
+    private void readFully(byte[] buf, int offset, int length) throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            int n = in.read(buf, offset, end - offset);
+            if (n < 0)
+                throw new EOFException("Unexpected end of CRL");
+            position += n;
+            offset += n;
+        }
+    }
+
+    private void update(byte[] buf, int offset, int length) throws IOException {
+        if (!inTBS)
+            return;
+
+        if (pending != null) {
+            pending.write(buf, offset, length);
+            return;
+        }
+
+        if (sigVerf != null) {
+            try {
+                sigVerf.update(buf, offset, length);
+            } catch (GeneralSecurityException e) {
+                throw new IOException("Unable to update CRL signature: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * InputStream over the remaining bytes of a ByteBuffer.
+     */
+    static class ByteBufferInputStream extends InputStream {
+
+        private ByteBuffer buffer;
+        private int mark = -1;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public void mark(int readlimit) {
+            mark = buffer.position();
+        }
+
+        @Override
+        public void reset() throws IOException {
+            if (mark < 0)
+                throw new IOException("Mark not set");
+            buffer.position(mark);
+        }
+    }
+}
@@ -22,9 +22,6 @@ import java.io.InputStream;
 import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.io.OutputStream;
-import java.lang.reflect.Array;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.InvocationTargetException;
 import java.security.cert.CertificateException;
 import java.util.Collections;
 import java.util.Enumeration;
@@ -64,40 +61,24 @@ public class CertificateExtensions extends Vector<Extension>
     // Parse the encoded extension
     public void parseExtension(Extension ext) throws IOException {
         try {
-            @SuppressWarnings("unchecked")
-            Class<CertAttrSet> extClass = (Class<CertAttrSet>) OIDMap.getClass(ext.getExtensionId());
-            if (extClass == null) { // Unsupported extension
+            ExtensionFactory factory = OIDMap.getFactory(ext.getExtensionId());
+            if (factory == null) { // Unsupported extension
                 map.put(ext.getExtensionId().toString(), ext);
                 addElement(ext);
                 return;
             }
-            Class<?>[] params = { Boolean.class, Object.class };
-            Constructor<CertAttrSet> cons = extClass.getConstructor(params);
 
-            byte[] extData = ext.getExtensionValue();
-            int extLen = extData.length;
-            Object value = Array.newInstance(byte.class, extLen);
-
-            for (int i = 0; i < extLen; i++) {
-                Array.setByte(value, i, extData[i]);
-            }
-            Object[] passed = new Object[] { Boolean.valueOf(ext.isCritical()),
-                    value };
-            CertAttrSet certExt = cons.newInstance(passed);
+            // The decoded extension replaces ext, so it can take over the
+            // value without copying it.
+            CertAttrSet certExt = (CertAttrSet) factory.create(
+                    Boolean.valueOf(ext.isCritical()), ext.extensionValue);
             if (certExt != null && certExt.getName() != null) {
                 map.put(certExt.getName(), (Extension) certExt);
                 addElement((Extension) certExt);
             }
 
-        } catch (NoSuchMethodException e) {
-            throw new IOException(e);
-
-        } catch (InvocationTargetException e) {
-            Throwable t = e.getTargetException();
-            if (t instanceof IOException) {
-                throw (IOException)t;
-            }
-            throw new IOException(t);
+        } catch (IOException e) {
+            throw e;
 
         } catch (Exception e) {
             throw new IOException(e);
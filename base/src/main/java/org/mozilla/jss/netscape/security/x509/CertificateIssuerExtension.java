@@ -62,7 +62,8 @@ public class CertificateIssuerExtension extends Extension
     static {
         try {
             OIDMap.addAttribute(CertificateIssuerExtension.class.getName(),
-                                OID, NAME);
+                                OID, NAME,
+                                CertificateIssuerExtension::new);
         } catch (CertificateException e) {
         }
     }
@@ -64,7 +64,8 @@ public class DeltaCRLIndicatorExtension extends Extension
     static {
         try {
             OIDMap.addAttribute(DeltaCRLIndicatorExtension.class.getName(),
-                                OID, NAME);
+                                OID, NAME,
+                                DeltaCRLIndicatorExtension::new);
         } catch (CertificateException e) {
         }
     }
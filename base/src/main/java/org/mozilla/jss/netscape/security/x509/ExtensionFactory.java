@@ -0,0 +1,47 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2007 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package org.mozilla.jss.netscape.security.x509;
+
+import java.io.IOException;
+import java.security.cert.CertificateException;
+
+/**
+ * Creates a decoded extension from its criticality and DER encoded value.
+ * This matches the <code>(Boolean critical, Object value)</code>
+ * constructor every extension class provides, so a constructor reference
+ * such as <code>KeyUsageExtension::new</code> can be registered with the
+ * OIDMap.
+ *
+ * @see OIDMap#getFactory(org.mozilla.jss.netscape.security.util.ObjectIdentifier)
+ */
+@FunctionalInterface
+public interface ExtensionFactory {
+
+    /**
+     * Decode an extension.
+     *
+     * @param critical the criticality of the extension.
+     * @param value the DER encoded extension value, as a byte array.
+     *            The extension may keep a reference to it.
+     * @return the decoded extension.
+     * @exception IOException on decoding errors.
+     * @exception CertificateException if the value is invalid.
+     */
+    Extension create(Boolean critical, Object value)
+            throws IOException, CertificateException;
+}
@@ -89,7 +89,8 @@ public class FreshestCRLExtension extends Extension
     static {
         try {
             OIDMap.addAttribute(FreshestCRLExtension.class.getName(),
-                                OID, NAME);
+                                OID, NAME,
+                                FreshestCRLExtension::new);
         } catch (CertificateException e) {
         }
     }
@@ -86,7 +86,8 @@ public class HoldInstructionExtension extends Extension
     static {
         try {
             OIDMap.addAttribute(HoldInstructionExtension.class.getName(),
-                                OID, NAME);
+                                OID, NAME,
+                                HoldInstructionExtension::new);
         } catch (CertificateException e) {
         }
     }
@@ -65,7 +65,8 @@ public class InvalidityDateExtension extends Extension
     static {
         try {
             OIDMap.addAttribute(InvalidityDateExtension.class.getName(),
-                                OID, NAME);
+                                OID, NAME,
+                                InvalidityDateExtension::new);
         } catch (CertificateException e) {
         }
     }
@@ -117,7 +117,8 @@ public class IssuingDistributionPointExtension extends Extension
     static {
         try {
             OIDMap.addAttribute(IssuingDistributionPointExtension.class.getName(),
-                                OID, NAME);
+                                OID, NAME,
+                                IssuingDistributionPointExtension::new);
         } catch (CertificateException e) {
         }
     }
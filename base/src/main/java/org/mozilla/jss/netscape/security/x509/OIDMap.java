@@ -20,11 +20,14 @@ package org.mozilla.jss.netscape.security.x509;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.security.cert.CertificateException;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Properties;
 
+import org.mozilla.jss.netscape.security.extensions.ExtendedKeyUsageExtension;
 import org.mozilla.jss.netscape.security.util.ObjectIdentifier;
 
 /**
@@ -95,13 +98,72 @@ public class OIDMap {
     private static final Hashtable<String, ObjectIdentifier> name2OID = new Hashtable<>();
     private static final Hashtable<String, String> name2Class = new Hashtable<>();
 
+    // Factories for the extension classes in this library, by class name
+    private static final Hashtable<String, ExtensionFactory> class2Factory = new Hashtable<>();
+
+    // Factories resolved for registered OIDs
+    private static final Hashtable<ObjectIdentifier, ExtensionFactory> oid2Factory = new Hashtable<>();
+
     // Initialize recognized extensions from EXTENSIONS_{OIDS/CLASSES} files
     static {
+        loadFactories();
         loadNames();
         loadClasses();
+        resolveFactories();
         addClass(CRLDistributionPointsExtension.class);
     }
 
+    // Load the factories for the default extension classes
+    private static void loadFactories() {
+        class2Factory.put(AuthorityKeyIdentifierExtension.class.getName(),
+                AuthorityKeyIdentifierExtension::new);
+        class2Factory.put(SubjectKeyIdentifierExtension.class.getName(),
+                SubjectKeyIdentifierExtension::new);
+        class2Factory.put(KeyUsageExtension.class.getName(),
+                KeyUsageExtension::new);
+        class2Factory.put(PrivateKeyUsageExtension.class.getName(),
+                PrivateKeyUsageExtension::new);
+        class2Factory.put(PolicyMappingsExtension.class.getName(),
+                PolicyMappingsExtension::new);
+        class2Factory.put(SubjectAlternativeNameExtension.class.getName(),
+                SubjectAlternativeNameExtension::new);
+        class2Factory.put(IssuerAlternativeNameExtension.class.getName(),
+                IssuerAlternativeNameExtension::new);
+        class2Factory.put(BasicConstraintsExtension.class.getName(),
+                BasicConstraintsExtension::new);
+        class2Factory.put(NameConstraintsExtension.class.getName(),
+                NameConstraintsExtension::new);
+        class2Factory.put(PolicyConstraintsExtension.class.getName(),
+                PolicyConstraintsExtension::new);
+        class2Factory.put(CertificatePoliciesExtension.class.getName(),
+                CertificatePoliciesExtension::new);
+        class2Factory.put(SubjectDirAttributesExtension.class.getName(),
+                SubjectDirAttributesExtension::new);
+        class2Factory.put(ExtendedKeyUsageExtension.class.getName(),
+                ExtendedKeyUsageExtension::new);
+        class2Factory.put(CRLNumberExtension.class.getName(),
+                CRLNumberExtension::new);
+        class2Factory.put(CRLReasonExtension.class.getName(),
+                CRLReasonExtension::new);
+        class2Factory.put(CRLDistributionPointsExtension.class.getName(),
+                CRLDistributionPointsExtension::new);
+    }
+
+    // Map the loaded OIDs to the factories of their classes, where known.
+    // Classes named only in EXTENSIONS_CLASSES are resolved on first use.
+    private static void resolveFactories() {
+        Iterator<String> names = name2Class.keySet().iterator();
+        while (names.hasNext()) {
+            String name = names.next();
+            ObjectIdentifier oid = name2OID.get(name);
+            ExtensionFactory factory = class2Factory.get(name2Class.get(name));
+
+            if (oid != null && factory != null) {
+                oid2Factory.put(oid, factory);
+            }
+        }
+    }
+
     // Load the default name to oid map (EXTENSIONS_OIDS)
     private static void loadNamesDefault(Properties props) {
         props.put(SUB_KEY_IDENTIFIER, "2.5.29.14");
@@ -235,9 +297,14 @@ public class OIDMap {
      */
     public static void addClass(Class<? extends Extension> clazz) {
         try {
+            ExtensionFactory factory = class2Factory.get(clazz.getName());
+            if (factory == null) {
+                factory = getConstructorFactory(clazz);
+            }
             addAttribute(clazz.getName(),
                 (String) clazz.getField("OID").get(null),
-                (String) clazz.getField("NAME").get(null));
+                (String) clazz.getField("NAME").get(null),
+                factory);
         } catch (Throwable e) {
             System.out.println(
                 "Error adding class " + clazz.getName() + " to OIDMap: " + e);
@@ -271,6 +338,26 @@ public class OIDMap {
         name2Class.put(name, className);
     }
 
+    /**
+     * Add a name to lookup table, along with the factory that decodes
+     * the extension. Decoding an extension with a factory avoids looking
+     * up its class and constructor by reflection.
+     *
+     * @param className the name of the fully qualified class implementing
+     *            the asn object.
+     * @param oid the string representation of the object identifier for
+     *            the class.
+     * @param name the name of the attribute.
+     * @param factory the factory for the class, usually a reference to its
+     *            <code>(Boolean, Object)</code> constructor.
+     * @exception CertificateException on errors.
+     */
+    public static void addAttribute(String className, String oid, String name,
+            ExtensionFactory factory) throws CertificateException {
+        addAttribute(className, oid, name);
+        oid2Factory.put(new ObjectIdentifier(oid), factory);
+    }
+
     /**
      * Return user friendly name associated with the OID.
      *
@@ -334,4 +421,66 @@ public class OIDMap {
                                    + name + " " +  e.getMessage(), e);
         }
     }
+
+    /**
+     * Return the factory that decodes the extension with the object
+     * identifier. Extensions registered by class name only are looked up
+     * by reflection the first time, and their constructor is reused after.
+     *
+     * @param oid the object identifier of the extension.
+     * @return the factory, or null if no class is registered for this oid.
+     * @exception CertificateException if the class cannot be loaded or
+     *                has no <code>(Boolean, Object)</code> constructor.
+     */
+    public static ExtensionFactory getFactory(ObjectIdentifier oid)
+            throws CertificateException {
+        ExtensionFactory factory = oid2Factory.get(oid);
+        if (factory != null)
+            return factory;
+
+        Class<?> extClass = getClass(oid);
+        if (extClass == null)
+            return null;
+
+        factory = class2Factory.get(extClass.getName());
+        if (factory == null) {
+            factory = getConstructorFactory(extClass);
+        }
+        oid2Factory.put(oid, factory);
+        return factory;
+    }
+
+    // Wrap the (Boolean, Object) constructor of an extension class
+    private static ExtensionFactory getConstructorFactory(Class<?> extClass)
+            throws CertificateException {
+        if (!Extension.class.isAssignableFrom(extClass)) {
+            throw new CertificateException(extClass.getName()
+                                   + " is not an extension");
+        }
+
+        Constructor<?> cons;
+        try {
+            cons = extClass.getConstructor(Boolean.class, Object.class);
+        } catch (NoSuchMethodException e) {
+            throw new CertificateException("No constructor for "
+                                   + extClass.getName() + ": " + e.getMessage(), e);
+        }
+
+        return (critical, value) -> {
+            try {
+                return (Extension) cons.newInstance(critical, value);
+            } catch (InvocationTargetException e) {
+                Throwable t = e.getTargetException();
+                if (t instanceof IOException) {
+                    throw (IOException) t;
+                }
+                if (t instanceof CertificateException) {
+                    throw (CertificateException) t;
+                }
+                throw new IOException(t);
+            } catch (ReflectiveOperationException e) {
+                throw new IOException(e);
+            }
+        };
+    }
 }
@@ -0,0 +1,309 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2024 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package org.mozilla.jss.netscape.security.x509;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.security.cert.CRLException;
+
+import org.mozilla.jss.netscape.security.util.DerValue;
+
+/**
+ * Read-only index over the <code>revokedCertificates</code> field of a CRL.
+ *
+ * Rather than decoding every entry into a RevokedCertImpl, the index keeps
+ * a reference to the byte array holding the DER encoding of the field,
+ * usually the whole encoded CRL, together with the offset of each entry,
+ * sorted by serial number. Lookups are a binary
+ * search comparing the encoded serial numbers directly, and entries are
+ * only decoded when requested. The index is immutable and safe to use from
+ * multiple threads without locking.
+ */
+public class RevokedCertificateIndex {
+
+    private byte[] encoding;
+    private int start;
+    private int end;
+    private int[] offsets;
+
+    /**
+     * Builds the index from the DER encoding of a
+     * <code>revokedCertificates</code> SEQUENCE.
+     *
+     * @param encoding the DER encoded SEQUENCE OF revoked certificates.
+     * @param allowExtensions whether entries may carry extensions (v2 CRLs).
+     * @exception CRLException on parsing errors.
+     */
+    public RevokedCertificateIndex(byte[] encoding, boolean allowExtensions)
+            throws CRLException {
+        this(encoding, 0, encoding.length, allowExtensions);
+    }
+
+    /**
+     * Builds the index from a <code>revokedCertificates</code> SEQUENCE
+     * held in part of a larger buffer. The buffer is referenced, not
+     * copied, and must not be modified afterwards.
+     *
+     * @param encoding the buffer holding the DER encoded SEQUENCE OF
+     *            revoked certificates.
+     * @param offset the start of the SEQUENCE in the buffer.
+     * @param length the length of the SEQUENCE, including its tag and length.
+     * @param allowExtensions whether entries may carry extensions (v2 CRLs).
+     * @exception CRLException on parsing errors.
+     */
+    public RevokedCertificateIndex(byte[] encoding, int offset, int length, boolean allowExtensions)
+            throws CRLException {
+        this.encoding = encoding;
+        this.start = offset;
+        this.end = offset + length;
+
+        if (offset < 0 || length < 2 || end > encoding.length
+                || encoding[offset] != DerValue.tag_Sequence)
+            throw new CRLException("Invalid encoding for revoked certificates");
+
+        int[] result = new int[16];
+        int count = 0;
+
+        try {
+            int pos = contentOffset(start);
+            if (pos + contentLength(start) != end)
+                throw new CRLException("Revoked certificates length mismatch");
+
+            while (pos < end) {
+                if (encoding[pos] != DerValue.tag_Sequence)
+                    throw new CRLException("Invalid encoding for revoked certificate");
+
+                int entryStart = contentOffset(pos);
+                int entryEnd = entryStart + contentLength(pos);
+                if (entryEnd > end)
+                    throw new CRLException("Revoked certificate overrun");
+
+                // userCertificate
+                if (entryStart >= entryEnd || encoding[entryStart] != DerValue.tag_Integer)
+                    throw new CRLException("Invalid serial number in revoked certificate");
+                int next = contentOffset(entryStart) + contentLength(entryStart);
+
+                // revocationDate
+                if (next >= entryEnd)
+                    throw new CRLException("Missing revocation date in revoked certificate");
+                next = contentOffset(next) + contentLength(next);
+                if (next > entryEnd)
+                    throw new CRLException("Revocation date overrun in revoked certificate");
+
+                // crlEntryExtensions
+                if (next < entryEnd && !allowExtensions)
+                    throw new CRLException("Invalid encoding, extensions" +
+                            " not supported in CRL v1 entries.");
+
+                if (count == result.length) {
+                    int[] tmp = new int[count * 2];
+                    System.arraycopy(result, 0, tmp, 0, count);
+                    result = tmp;
+                }
+                result[count++] = pos;
+
+                pos = entryEnd;
+            }
+        } catch (IllegalStateException | IndexOutOfBoundsException e) {
+            throw new CRLException("Parsing error: " + e.toString());
+        }
+
+        offsets = new int[count];
+        System.arraycopy(result, 0, offsets, 0, count);
+        sort(offsets, new int[count], 0, count);
+    }
+
+    /**
+     * Returns the number of entries in the index.
+     */
+    public int size() {
+        return offsets.length;
+    }
+
+    /**
+     * Checks whether the given serial number is in the index.
+     */
+    public boolean contains(BigInteger serialNumber) {
+        return find(serialNumber) >= 0;
+    }
+
+    /**
+     * Decodes the entry with the given serial number.
+     *
+     * @return the revoked certificate or null if there is no entry
+     *         with the given serial number.
+     * @exception CRLException on parsing errors.
+     */
+    public RevokedCertificate get(BigInteger serialNumber) throws CRLException {
+        int index = find(serialNumber);
+        return index < 0 ? null : get(index);
+    }
+
+    /**
+     * Decodes the entry at the given position, in serial number order.
+     *
+     * @exception CRLException on parsing errors.
+     */
+    public RevokedCertificate get(int index) throws CRLException {
+        int offset = offsets[index];
+        int length = contentOffset(offset) + contentLength(offset) - offset;
+
+        try {
+            return new RevokedCertImpl(new DerValue(encoding, offset, length));
+        } catch (IOException | X509ExtensionException e) {
+            throw new CRLException("Parsing error: " + e.toString());
+        }
+    }
+
+    /**
+     * Writes the DER encoding of the indexed
+     * <code>revokedCertificates</code> SEQUENCE.
+     */
+    void encode(OutputStream out) throws IOException {
+        out.write(encoding, start, end - start);
+    }
+
+    private int find(BigInteger serialNumber) {
+        if (serialNumber == null)
+            return -1;
+
+        byte[] key = serialNumber.toByteArray();
+
+        int low = 0;
+        int high = offsets.length - 1;
+
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int serial = contentOffset(offsets[mid]);
+            int cmp = compare(encoding, contentOffset(serial), contentLength(serial), key, 0, key.length);
+
+            if (cmp < 0)
+                low = mid + 1;
+            else if (cmp > 0)
+                high = mid - 1;
+            else
+                return mid;
+        }
+
+        return -1;
+    }
+
+    private int compareEntries(int a, int b) {
+        int serialA = contentOffset(a);
+        int serialB = contentOffset(b);
+        return compare(encoding, contentOffset(serialA), contentLength(serialA),
+                encoding, contentOffset(serialB), contentLength(serialB));
+    }
+
+    /*
+     * Merge sort of entry offsets by serial number; int[] has no
+     * comparator-based sort and boxing millions of entries would defeat
+     * the purpose of the index.
+     */
+    private void sort(int[] a, int[] tmp, int from, int to) {
+        if (to - from < 2)
+            return;
+
+        int mid = (from + to) >>> 1;
+        sort(a, tmp, from, mid);
+        sort(a, tmp, mid, to);
+
+        // already in order, as is typical for CRLs issued sequentially
+        if (compareEntries(a[mid - 1], a[mid]) <= 0)
+            return;
+
+        System.arraycopy(a, from, tmp, from, to - from);
+        int i = from;
+        int j = mid;
+        for (int k = from; k < to; k++) {
+            if (j >= to || (i < mid && compareEntries(tmp[i], tmp[j]) <= 0))
+                a[k] = tmp[i++];
+            else
+                a[k] = tmp[j++];
+        }
+    }
+
+    /**
+     * Compares two big-endian two's-complement integers.
+     */
+    static int compare(byte[] a, int aOff, int aLen, byte[] b, int bOff, int bLen) {
+
+        // strip redundant sign bytes from non-minimal encodings
+        while (aLen > 1 && ((a[aOff] == 0 && a[aOff + 1] >= 0) || (a[aOff] == -1 && a[aOff + 1] < 0))) {
+            aOff++;
+            aLen--;
+        }
+        while (bLen > 1 && ((b[bOff] == 0 && b[bOff + 1] >= 0) || (b[bOff] == -1 && b[bOff + 1] < 0))) {
+            bOff++;
+            bLen--;
+        }
+
+        boolean aNegative = aLen > 0 && a[aOff] < 0;
+        boolean bNegative = bLen > 0 && b[bOff] < 0;
+
+        if (aNegative != bNegative)
+            return aNegative ? -1 : 1;
+
+        if (aLen != bLen)
+            return (aLen > bLen) != aNegative ? 1 : -1;
+
+        for (int i = 0; i < aLen; i++) {
+            int x = a[aOff + i] & 0xff;
+            int y = b[bOff + i] & 0xff;
+            if (x != y)
+                return x < y ? -1 : 1;
+        }
+
+        return 0;
+    }
+
+    /*
+     * Helpers for the TLV at the given position; the tag is a single byte
+     * for every element of a revoked certificate entry.
+     */
+
+    private int lengthOfLength(int pos) {
+        int first = encoding[pos + 1] & 0xff;
+        return first < 0x80 ? 0 : first & 0x7f;
+    }
+
+    private int contentOffset(int pos) {
+        return pos + 2 + lengthOfLength(pos);
+    }
+
+    private int contentLength(int pos) {
+        int first = encoding[pos + 1] & 0xff;
+        if (first < 0x80)
+            return first;
+
+        int n = first & 0x7f;
+        if (n == 0 || n > 4)
+            throw new IllegalStateException("Unsupported DER length encoding");
+
+        int length = 0;
+        for (int i = 0; i < n; i++) {
+            length = (length << 8) | (encoding[pos + 2 + i] & 0xff);
+        }
+
+        if (length < 0 || pos + 2 + n + length > encoding.length)
+            throw new IllegalStateException("DER length overrun");
+
+        return length;
+    }
+}
@@ -0,0 +1,85 @@
+// --- BEGIN COPYRIGHT BLOCK ---
+// This program is free software; you can redistribute it and/or modify
+// it under the terms of the GNU General Public License as published by
+// the Free Software Foundation; version 2 of the License.
+//
+// This program is distributed in the hope that it will be useful,
+// but WITHOUT ANY WARRANTY; without even the implied warranty of
+// MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+// GNU General Public License for more details.
+//
+// You should have received a copy of the GNU General Public License along
+// with this program; if not, write to the Free Software Foundation, Inc.,
+// 51 Franklin Street, Fifth Floor, Boston, MA 02110-1301 USA.
+//
+// (C) 2024 Red Hat, Inc.
+// All rights reserved.
+// --- END COPYRIGHT BLOCK ---
+package org.mozilla.jss.netscape.security.x509;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.security.NoSuchProviderException;
+import java.security.Provider;
+import java.security.PublicKey;
+import java.security.Signature;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Cache of the providers chosen to verify certificates and CRLs.
+ *
+ * Looking up a Signature through the provider framework is expensive
+ * compared to verifying a typical certificate signature, and chain
+ * validation does it for every link: without an explicit provider, the
+ * provider list is searched again at initVerify() for one accepting the
+ * key. The cache remembers the provider chosen for each algorithm and key
+ * class so later lookups go straight to it. Signature objects and keys are
+ * not kept, since an initialized Signature holds on to its key.
+ */
+class SignatureCache {
+
+    /**
+     * Upper bound on the number of cached providers. Only a handful of
+     * algorithm and key class combinations are expected, so the cache is
+     * simply cleared when it fills up.
+     */
+    static final int MAX_SIZE = 64;
+
+    private static final ConcurrentHashMap<String, Provider> providers =
+            new ConcurrentHashMap<>();
+
+    private SignatureCache() {
+    }
+
+    /**
+     * Returns a Signature for the given algorithm and provider (or the
+     * default provider if null), initialized to verify with the given key.
+     */
+    static Signature getVerifier(String algorithm, String provider, PublicKey key)
+            throws NoSuchAlgorithmException, NoSuchProviderException, InvalidKeyException {
+
+        String name = algorithm + "/" + provider + "/" + key.getClass().getName();
+
+        Provider cached = providers.get(name);
+        Signature sig;
+        if (cached != null) {
+            sig = Signature.getInstance(algorithm, cached);
+        } else if (provider == null) {
+            sig = Signature.getInstance(algorithm);
+        } else {
+            sig = Signature.getInstance(algorithm, provider);
+        }
+
+        sig.initVerify(key);
+
+        // only cache providers which accepted the key
+        if (cached == null) {
+            if (providers.size() >= MAX_SIZE) {
+                providers.clear();
+            }
+            providers.put(name, sig.getProvider());
+        }
+
+        return sig;
+    }
+}
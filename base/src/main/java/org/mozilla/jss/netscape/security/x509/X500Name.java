@@ -18,12 +18,16 @@
 package org.mozilla.jss.netscape.security.x509;
 
 import java.io.IOException;
+import java.lang.ref.WeakReference;
 import java.security.Principal;
+import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Enumeration;
 import java.util.List;
+import java.util.Locale;
 import java.util.Vector;
+import java.util.WeakHashMap;
 
 import org.mozilla.jss.netscape.security.util.DerInputStream;
 import org.mozilla.jss.netscape.security.util.DerOutputStream;
@@ -290,9 +294,13 @@ public class X500Name implements Principal, GeneralNameInterface {
 
     @Override
     public int hashCode() {
-        final int prime = 31;
-        int result = 1;
-        result = prime * result + Arrays.hashCode(names);
+        int result = hash;
+        if (result == 0) {
+            final int prime = 31;
+            result = 1;
+            result = prime * result + Arrays.hashCode(names);
+            hash = result;
+        }
         return result;
     }
 
@@ -305,11 +313,36 @@ public class X500Name implements Principal, GeneralNameInterface {
         if (getClass() != obj.getClass())
             return false;
         X500Name other = (X500Name) obj;
+        // the hashes are cached, so names which differ are
+        // usually told apart without walking the RDNs
+        if (hashCode() != other.hashCode())
+            return false;
         if (!Arrays.equals(names, other.names))
             return false;
         return true;
     }
 
+    /**
+     * Returns a canonical instance of this name. Names which are equal
+     * share a single instance for as long as any of them is in use, so
+     * repeated comparisons of the same name (e.g. certificate issuers)
+     * succeed on identity.
+     *
+     * @param name the name to intern.
+     * @return an X500Name equal to the given name, from the pool.
+     */
+    public static X500Name intern(X500Name name) {
+        synchronized (pool) {
+            WeakReference<X500Name> ref = pool.get(name);
+            X500Name result = ref == null ? null : ref.get();
+            if (result == null) {
+                result = name;
+                pool.put(result, new WeakReference<>(result));
+            }
+            return result;
+        }
+    }
+
     /**
      * Sets private data to a null state
      */
@@ -485,9 +518,34 @@ public class X500Name implements Principal, GeneralNameInterface {
     public String toLdapDNString(LdapDNStrConverter ldapDNStrConverter)
             throws IOException {
 
-        if (dn == null)
-            generateDN(ldapDNStrConverter);
-        return dn;
+        // only the string of the default converter is cached
+        if (ldapDNStrConverter == LdapDNStrConverter.getDefault())
+            return toLdapDNString();
+        if (names == null)
+            return dn;
+        return ldapDNStrConverter.encodeDN(this);
+    }
+
+    /**
+     * Returns the canonical string form of this name. Attribute types are
+     * lower case keywords (or dotted OIDs) and string values are prepared
+     * as described in RFC 4518: normalized to NFKC, case folded, and with
+     * insignificant spaces removed. The AVAs of a multi-valued RDN are
+     * sorted. Names which differ only in case, spacing or value encoding
+     * have the same canonical name.
+     *
+     * <p>The string is computed once and cached.
+     *
+     * @return the canonical string form of this name.
+     * @exception IOException if an error occurs during conversion.
+     */
+    public String getCanonicalName() throws IOException {
+        String result = canonicalDN;
+        if (result == null) {
+            result = names == null ? "" : canonicalConverter.encodeDN(this);
+            canonicalDN = result;
+        }
+        return result;
     }
 
     /**
@@ -520,6 +578,12 @@ public class X500Name implements Principal, GeneralNameInterface {
 
     private String dn; // RFC 1779 style DN, or null
     private RDN names[]; // RDNs
+    private transient String canonicalDN; // RFC 4518 canonical DN, or null
+    private transient int hash; // cached hashCode(), or 0
+
+    private static final WeakHashMap<X500Name, WeakReference<X500Name>> pool = new WeakHashMap<>();
+
+    private static final LdapV3DNStrConverter canonicalConverter = new CanonicalDNStrConverter();
 
     /**
      * Find the first instance of this attribute in a "top down"
@@ -651,6 +715,76 @@ public class X500Name implements Principal, GeneralNameInterface {
         dn = ldapDNStrConverter.encodeDN(this);
     }
 
+    /*
+     * Encodes names in the canonical form returned by getCanonicalName().
+     */
+    private static class CanonicalDNStrConverter extends LdapV3DNStrConverter {
+
+        @Override
+        public String encodeRDN(RDN rdn) throws IOException {
+            AVA[] avas = rdn.getAssertion();
+            String[] encoded = new String[avas.length];
+
+            for (int i = 0; i < avas.length; i++)
+                encoded[i] = encodeAVA(avas[i]);
+            Arrays.sort(encoded);
+
+            return String.join("+", encoded);
+        }
+
+        @Override
+        public String encodeAVA(AVA ava) throws IOException {
+            if (ava == null) {
+                return "";
+            }
+            ObjectIdentifier oid = ava.getOid();
+            DerValue value = ava.getValue();
+            String keyword = encodeOID(oid).toLowerCase(Locale.ROOT);
+            String valueStr = value.getAsString();
+
+            if (valueStr == null)
+                return keyword + "=" + encodeValue(value, oid);
+            return keyword + "=" + encodeString(prepareString(valueStr));
+        }
+    }
+
+    /*
+     * Prepares a string value for comparison following RFC 4518:
+     * characters without meaning are removed, the value is case folded
+     * and normalized to NFKC, and runs of spaces are collapsed with
+     * leading and trailing spaces removed.
+     */
+    static String prepareString(String value) {
+        StringBuilder mapped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isWhitespace(c) || Character.isSpaceChar(c))
+                mapped.append(' ');
+            else if (!Character.isISOControl(c)
+                    && Character.getType(c) != Character.FORMAT)
+                mapped.append(c);
+        }
+
+        String s = Normalizer.normalize(
+                mapped.toString().toLowerCase(Locale.ROOT), Normalizer.Form.NFKC);
+
+        StringBuilder retval = new StringBuilder(s.length());
+        boolean space = false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ' ') {
+                space = retval.length() > 0;
+                continue;
+            }
+            if (space) {
+                retval.append(' ');
+                space = false;
+            }
+            retval.append(c);
+        }
+        return retval.toString();
+    }
+
     private class RDNEnumerator implements Enumeration<RDN> {
         private int index;
 
@@ -103,6 +103,7 @@ public class X509CRLImpl extends X509CRL {
     private Date thisUpdate = null;
     private Date nextUpdate = null;
     private Hashtable<BigInteger, RevokedCertificate> revokedCerts = new Hashtable<>();
+    private RevokedCertificateIndex revokedIndex = null;
     private CRLExtensions extensions = null;
     private boolean entriesIncluded = true;
     private static final boolean IS_EXPLICIT = true;
@@ -134,11 +135,33 @@ public class X509CRLImpl extends X509CRL {
 
     public X509CRLImpl(byte[] crlData, boolean includeEntries)
             throws CRLException, X509ExtensionException {
+        this(crlData, includeEntries, false);
+    }
+
+    /**
+     * Unmarshals an X.509 CRL from its encoded form, optionally keeping
+     * the revoked certificates in a compact read-only index instead of a
+     * table of decoded entries.
+     *
+     * With indexEntries, entries are decoded only when requested through
+     * getRevokedCertificate(), and isRevoked() is a lock-free binary search
+     * over the encoded serial numbers. This suits very large CRLs which
+     * are mostly used for revocation checks.
+     *
+     * @param crlData the encoded bytes, with no trailing padding.
+     * @param includeEntries whether to parse the revoked certificates.
+     * @param indexEntries whether to index rather than decode the revoked
+     *            certificates; ignored unless includeEntries is set.
+     * @exception CRLException on parsing errors.
+     * @exception X509ExtensionException on extension handling errors.
+     */
+    public X509CRLImpl(byte[] crlData, boolean includeEntries, boolean indexEntries)
+            throws CRLException, X509ExtensionException {
         try {
             entriesIncluded = includeEntries;
             DerValue in = new DerValue(crlData);
 
-            parse(in, includeEntries);
+            parse(in, crlData, includeEntries, indexEntries);
             signedCRL = crlData;
         } catch (IOException e) {
             throw new CRLException("Parsing error: " + e.getMessage());
@@ -343,7 +366,9 @@ public class X509CRLImpl extends X509CRL {
             if (nextUpdate != null)
                 tmp.putUTCTime(nextUpdate);
 
-            if (!revokedCerts.isEmpty()) {
+            if (revokedIndex != null) {
+                revokedIndex.encode(tmp);
+            } else if (!revokedCerts.isEmpty()) {
                 for (Enumeration<RevokedCertificate> e = revokedCerts.elements(); e.hasMoreElements();)
                     ((RevokedCertImpl) e.nextElement()).encode(rCerts);
                 tmp.write(DerValue.tag_Sequence, rCerts);
@@ -407,34 +432,8 @@ public class X509CRLImpl extends X509CRL {
         }
         Signature sigVerf = null;
 
-        String sigAlg = sigAlgId.getName();
-        if (sigProvider != null && sigProvider.equals("Mozilla-JSS")) {
-            if (sigAlg.equals("MD5withRSA")) {
-                sigAlg = "MD5/RSA";
-            } else if (sigAlg.equals("MD2withRSA")) {
-                sigAlg = "MD2/RSA";
-            } else if (sigAlg.equals("SHA1withRSA")) {
-                sigAlg = "SHA1/RSA";
-            } else if (sigAlg.equals("SHA1withDSA")) {
-                sigAlg = "SHA1/DSA";
-            } else if (sigAlg.equals("SHA1withEC")) {
-                sigAlg = "SHA1/EC";
-            } else if (sigAlg.equals("SHA256withRSA")) {
-                sigAlg = "SHA256/RSA";
-            } else if (sigAlg.equals("SHA384withRSA")) {
-                sigAlg = "SHA384/RSA";
-            } else if (sigAlg.equals("SHA512withRSA")) {
-                sigAlg = "SHA512/RSA";
-            } else if (sigAlg.equals("SHA256withEC")) {
-                sigAlg = "SHA256/EC";
-            } else if (sigAlg.equals("SHA384withEC")) {
-                sigAlg = "SHA384/EC";
-            } else if (sigAlg.equals("SHA512withEC")) {
-                sigAlg = "SHA512/EC";
-            }
-        }
-        sigVerf = Signature.getInstance(sigAlg, sigProvider);
-        sigVerf.initVerify(key);
+        String sigAlg = getSignatureAlgorithm(sigAlgId.getName(), sigProvider);
+        sigVerf = SignatureCache.getVerifier(sigAlg, sigProvider, key);
 
         if (tbsCertList == null)
             throw new CRLException("Uninitialized CRL");
@@ -525,6 +524,39 @@ public class X509CRLImpl extends X509CRL {
         }
     }
 
+    /**
+     * Maps a signature algorithm name to the name expected by the given
+     * provider.
+     */
+    static String getSignatureAlgorithm(String sigAlg, String sigProvider) {
+        if (sigProvider != null && sigProvider.equals("Mozilla-JSS")) {
+            if (sigAlg.equals("MD5withRSA")) {
+                sigAlg = "MD5/RSA";
+            } else if (sigAlg.equals("MD2withRSA")) {
+                sigAlg = "MD2/RSA";
+            } else if (sigAlg.equals("SHA1withRSA")) {
+                sigAlg = "SHA1/RSA";
+            } else if (sigAlg.equals("SHA1withDSA")) {
+                sigAlg = "SHA1/DSA";
+            } else if (sigAlg.equals("SHA1withEC")) {
+                sigAlg = "SHA1/EC";
+            } else if (sigAlg.equals("SHA256withRSA")) {
+                sigAlg = "SHA256/RSA";
+            } else if (sigAlg.equals("SHA384withRSA")) {
+                sigAlg = "SHA384/RSA";
+            } else if (sigAlg.equals("SHA512withRSA")) {
+                sigAlg = "SHA512/RSA";
+            } else if (sigAlg.equals("SHA256withEC")) {
+                sigAlg = "SHA256/EC";
+            } else if (sigAlg.equals("SHA384withEC")) {
+                sigAlg = "SHA384/EC";
+            } else if (sigAlg.equals("SHA512withEC")) {
+                sigAlg = "SHA512/EC";
+            }
+        }
+        return sigAlg;
+    }
+
     /**
      * Returns a printable string of this CRL.
      *
@@ -537,7 +569,16 @@ public class X509CRLImpl extends X509CRL {
                 + "\n");
         if (nextUpdate != null)
             sb.append("Next Update: " + nextUpdate + "\n");
-        if (revokedCerts.isEmpty())
+        if (revokedIndex != null && revokedIndex.size() > 0) {
+            sb.append("\nRevoked Certificates:\n");
+            for (int i = 0; i < revokedIndex.size(); i++) {
+                try {
+                    sb.append(revokedIndex.get(i));
+                } catch (CRLException e) {
+                    sb.append("Invalid entry: " + e.getMessage() + "\n");
+                }
+            }
+        } else if (revokedCerts.isEmpty())
             sb.append("\nNO certificates have been revoked\n");
         else {
             sb.append("\nRevoked Certificates:\n");
@@ -565,6 +606,8 @@ public class X509CRLImpl extends X509CRL {
      *         false otherwise.
      */
     public boolean isRevoked(BigInteger serialNumber) {
+        if (revokedIndex != null)
+            return revokedIndex.contains(serialNumber);
         if (revokedCerts == null || revokedCerts.isEmpty())
             return false;
         return revokedCerts.containsKey(serialNumber);
@@ -667,6 +710,13 @@ public class X509CRLImpl extends X509CRL {
      */
     @Override
     public X509CRLEntry getRevokedCertificate(BigInteger serialNumber) {
+        if (revokedIndex != null) {
+            try {
+                return revokedIndex.get(serialNumber);
+            } catch (CRLException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
         if (revokedCerts == null || revokedCerts.isEmpty())
             return null;
         return revokedCerts.get(serialNumber);
@@ -682,21 +732,62 @@ public class X509CRLImpl extends X509CRL {
      */
     @Override
     public Set<RevokedCertificate> getRevokedCertificates() {
+        if (revokedIndex != null) {
+            if (revokedIndex.size() == 0)
+                return null;
+            Set<RevokedCertificate> certSet = new LinkedHashSet<>();
+            try {
+                for (int i = 0; i < revokedIndex.size(); i++)
+                    certSet.add(revokedIndex.get(i));
+            } catch (CRLException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+            return certSet;
+        }
         if (revokedCerts == null || revokedCerts.isEmpty())
             return null;
         Set<RevokedCertificate> certSet = new LinkedHashSet<>(revokedCerts.values());
         return certSet;
     }
 
+    /**
+     * Returns a copy of the revoked certificates keyed by serial number.
+     * For a CRL constructed with indexEntries, this decodes every entry.
+     */
     @SuppressWarnings("unchecked")
     public Hashtable<BigInteger, RevokedCertificate> getListOfRevokedCertificates() {
+        if (revokedIndex != null)
+            return decodeIndexedEntries();
         return revokedCerts == null ? null : (Hashtable<BigInteger, RevokedCertificate>) revokedCerts.clone();
     }
 
     public int getNumberOfRevokedCertificates() {
+        if (revokedIndex != null)
+            return revokedIndex.size();
         return revokedCerts == null ? -1 : revokedCerts.size();
     }
 
+    /**
+     * Returns the compact index of revoked certificates, or null if this
+     * CRL was not constructed with indexEntries.
+     */
+    public RevokedCertificateIndex getRevokedCertificateIndex() {
+        return revokedIndex;
+    }
+
+    private Hashtable<BigInteger, RevokedCertificate> decodeIndexedEntries() {
+        Hashtable<BigInteger, RevokedCertificate> result = new Hashtable<>();
+        try {
+            for (int i = 0; i < revokedIndex.size(); i++) {
+                RevokedCertificate entry = revokedIndex.get(i);
+                result.put(entry.getSerialNumber(), entry);
+            }
+        } catch (CRLException e) {
+            throw new RuntimeException(e.getMessage(), e);
+        }
+        return result;
+    }
+
     /**
      * Gets the DER encoded CRL information, the <code>tbsCertList</code> from this CRL.
      * This can be used to verify the signature independently.
@@ -966,6 +1057,15 @@ public class X509CRLImpl extends X509CRL {
 
     private void parse(DerValue val, boolean includeEntries)
             throws CRLException, IOException, X509ExtensionException {
+        parse(val, null, includeEntries, false);
+    }
+
+    /*
+     * encoding is the encoded form of val, needed when indexEntries is set:
+     * the revoked certificates index refers to it rather than to a copy.
+     */
+    private void parse(DerValue val, byte[] encoding, boolean includeEntries, boolean indexEntries)
+            throws CRLException, IOException, X509ExtensionException {
         // check if can over write the certificate
         if (readOnly)
             throw new CRLException("cannot over-write existing CRL");
@@ -1051,7 +1151,16 @@ public class X509CRLImpl extends X509CRL {
         // revokedCertificates (optional)
         nextByte = (byte) derStrm.peekByte();
         if ((nextByte == DerValue.tag_SequenceOf) && ((nextByte & 0x0c0) != 0x080)) {
-            if (includeEntries) {
+            if (includeEntries && indexEntries) {
+                // The TBSCertList is the first element of the signed CRL,
+                // so the entries start where the unread part of it begins.
+                int tbsEnd = headerLength(encoding) + tbsCertList.length;
+                int offset = tbsEnd - derStrm.available();
+                derStrm.skipSequence(4);
+                int length = tbsEnd - derStrm.available() - offset;
+                revokedIndex = new RevokedCertificateIndex(
+                        encoding, offset, length, version != 0);
+            } else if (includeEntries) {
                 DerValue[] badCerts = derStrm.getSequence(4);
                 for (int i = 0; i < badCerts.length; i++) {
                     RevokedCertImpl entry = new RevokedCertImpl(badCerts[i]);
@@ -1079,4 +1188,16 @@ public class X509CRLImpl extends X509CRL {
             extensions = new CRLExtensions(tmp.data);
         }
     }
+
+    /*
+     * Returns the length of the tag and length octets of the DER value
+     * at the start of the given encoding.
+     */
+    private static int headerLength(byte[] encoding) throws CRLException {
+        if (encoding.length < 2)
+            throw new CRLException("Invalid encoding for CRL");
+
+        int first = encoding[1] & 0xff;
+        return first < 0x80 ? 2 : 2 + (first & 0x7f);
+    }
 }
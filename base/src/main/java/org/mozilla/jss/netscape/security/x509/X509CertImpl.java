@@ -45,6 +45,7 @@ import java.util.Set;
 import java.util.Vector;
 
 import org.mozilla.jss.netscape.security.util.DerEncoder;
+import org.mozilla.jss.netscape.security.util.DerInputStream;
 import org.mozilla.jss.netscape.security.util.DerOutputStream;
 import org.mozilla.jss.netscape.security.util.DerValue;
 import org.mozilla.jss.netscape.security.util.ObjectIdentifier;
@@ -135,6 +136,9 @@ public class X509CertImpl extends X509Certificate
     protected AlgorithmId algId;
     protected byte[] signature;
 
+    // undecoded tbsCertificate, for certificates constructed in lazy mode
+    private LazyTBS lazy;
+
     // recognized extension OIDS
     private static final String KEY_USAGE_OID = "2.5.29.15";
     private static final String BASIC_CONSTRAINT_OID = "2.5.29.19";
@@ -189,6 +193,35 @@ public class X509CertImpl extends X509Certificate
         }
     }
 
+    /**
+     * Unmarshals a certificate from its encoded form, optionally deferring
+     * the decoding of the <code>tbsCertificate</code>.
+     *
+     * In lazy mode only the signature algorithm and signature are decoded
+     * up front. The serial number, issuer and validity are decoded the
+     * first time any of them is requested, the subject and public key on
+     * their own first use, and the complete X509CertInfo (including all
+     * extensions) only when an accessor needs it. Parsing errors in the
+     * <code>tbsCertificate</code> are therefore reported later, by the
+     * accessors returning null.
+     *
+     * @param certData the encoded bytes, with no trailing padding.
+     * @param lazy whether to defer decoding of the certificate fields.
+     * @exception CertificateException on parsing and initialization errors.
+     */
+    public X509CertImpl(byte[] certData, boolean lazy)
+            throws CertificateException {
+
+        try {
+            DerValue in = new DerValue(certData);
+
+            parse(in, lazy);
+            signedCert = certData;
+        } catch (IOException e) {
+            throw new CertificateException("Unable to parse certificate data: " + e.getMessage(), e);
+        }
+    }
+
     /**
      * unmarshals an X.509 certificate from an input stream.
      *
@@ -357,12 +390,11 @@ public class X509CertImpl extends X509Certificate
             throw new CertificateEncodingException("Missing certificate");
         }
         // Verify the signature ...
-        Signature sigVerf = null;
-
-        sigVerf = Signature.getInstance(algId.getName(), sigProvider);
-        sigVerf.initVerify(key);
+        Signature sigVerf = SignatureCache.getVerifier(algId.getName(), sigProvider, key);
 
-        byte[] rawCert = info.getEncodedInfo();
+        // use the tbsCertificate as decoded rather than a copy
+        byte[] rawCert = lazy != null && getDecodedInfo() == null ? lazy.encoded
+                : info.getRawEncodedInfo(false);
         sigVerf.update(rawCert, 0, rawCert.length);
 
         if (!sigVerf.verify(signature)) {
@@ -485,7 +517,11 @@ public class X509CertImpl extends X509Certificate
 
         CertificateValidity interval = null;
         try {
-            interval = (CertificateValidity) info.get(CertificateValidity.NAME);
+            if (lazy != null && getDecodedInfo() == null) {
+                interval = lazy.getValidity();
+            } else {
+                interval = (CertificateValidity) info.get(CertificateValidity.NAME);
+            }
         } catch (Exception e) {
             throw new CertificateNotYetValidException("Incorrect validity period: " + e.getMessage());
         }
@@ -513,6 +549,7 @@ public class X509CertImpl extends X509Certificate
         id = attr.getPrefix();
 
         if (id.equalsIgnoreCase(INFO)) {
+            decodeInfo();
             if (attr.getSuffix() != null) {
                 try {
                     return info.get(attr.getSuffix());
@@ -647,6 +684,7 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public String toString() {
+        decodeInfo();
         if (info == null || algId == null || signature == null)
             return "";
 
@@ -670,6 +708,13 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public PublicKey getPublicKey() {
+        if (lazy != null && getDecodedInfo() == null) {
+            try {
+                return lazy.getKey();
+            } catch (Exception e) {
+                return null;
+            }
+        }
         if (info == null)
             return null;
         try {
@@ -688,6 +733,13 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public int getVersion() {
+        if (lazy != null && getDecodedInfo() == null) {
+            try {
+                return lazy.getVersion();
+            } catch (Exception e) {
+                return -1;
+            }
+        }
         if (info == null)
             return -1;
         try {
@@ -706,6 +758,13 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public BigInteger getSerialNumber() {
+        if (lazy != null && getDecodedInfo() == null) {
+            try {
+                return lazy.getSerialNumber();
+            } catch (Exception e) {
+                return null;
+            }
+        }
         if (info == null)
             return null;
         try {
@@ -732,6 +791,15 @@ public class X509CertImpl extends X509Certificate
 
     public X500Name getSubjectName() {
 
+        if (lazy != null && getDecodedInfo() == null) {
+            try {
+                return lazy.getSubject();
+            } catch (Exception e) {
+                logger.warn("Unable to get subject name: " + e.getMessage(), e);
+                return null;
+            }
+        }
+
         if (info == null) {
             return null;
         }
@@ -747,10 +815,12 @@ public class X509CertImpl extends X509Certificate
     }
 
     public CertificateSubjectName getSubjectObj() {
+        decodeInfo();
         return info.getSubjectObj();
     }
 
     public X509CertInfo getInfo() {
+        decodeInfo();
         return info;
     }
 
@@ -768,6 +838,15 @@ public class X509CertImpl extends X509Certificate
 
     public X500Name getIssuerName() {
 
+        if (lazy != null && getDecodedInfo() == null) {
+            try {
+                return lazy.getIssuer();
+            } catch (Exception e) {
+                logger.warn("Unable to get issuer name: " + e.getMessage(), e);
+                return null;
+            }
+        }
+
         if (info == null) {
             return null;
         }
@@ -783,6 +862,7 @@ public class X509CertImpl extends X509Certificate
     }
 
     public CertificateIssuerName getIssuerObj() {
+        decodeInfo();
         return info.getIssuerObj();
     }
 
@@ -793,6 +873,13 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public Date getNotBefore() {
+        if (lazy != null && getDecodedInfo() == null) {
+            try {
+                return (Date) lazy.getValidity().get(CertificateValidity.NOT_BEFORE);
+            } catch (Exception e) {
+                return null;
+            }
+        }
         if (info == null)
             return null;
         try {
@@ -811,6 +898,13 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public Date getNotAfter() {
+        if (lazy != null && getDecodedInfo() == null) {
+            try {
+                return (Date) lazy.getValidity().get(CertificateValidity.NOT_AFTER);
+            } catch (Exception e) {
+                return null;
+            }
+        }
         if (info == null)
             return null;
         try {
@@ -831,6 +925,9 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public byte[] getTBSCertificate() throws CertificateEncodingException {
+        if (lazy != null) {
+            return lazy.encoded.clone();
+        }
         if (info != null) {
             return info.getEncodedInfo();
         } else
@@ -904,6 +1001,7 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public boolean[] getIssuerUniqueID() {
+        decodeInfo();
         if (info == null)
             return null;
         try {
@@ -926,6 +1024,7 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public boolean[] getSubjectUniqueID() {
+        decodeInfo();
         if (info == null)
             return null;
         try {
@@ -950,6 +1049,7 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public Set<String> getCriticalExtensionOIDs() {
+        decodeInfo();
         if (info == null)
             return null;
         try {
@@ -979,6 +1079,7 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public Set<String> getNonCriticalExtensionOIDs() {
+        decodeInfo();
         if (info == null)
             return null;
         try {
@@ -1001,6 +1102,7 @@ public class X509CertImpl extends X509Certificate
     }
 
     public Extension getExtension(String oid) {
+        decodeInfo();
         try {
             CertificateExtensions exts = (CertificateExtensions) info.get(
                                          CertificateExtensions.NAME);
@@ -1030,6 +1132,7 @@ public class X509CertImpl extends X509Certificate
      */
     @Override
     public byte[] getExtensionValue(String oid) {
+        decodeInfo();
         DerOutputStream out = null;
         try {
             String extAlias = OIDMap.getName(new ObjectIdentifier(oid));
@@ -1164,6 +1267,10 @@ public class X509CertImpl extends X509Certificate
      * parts away for later verification.
      */
     private void parse(DerValue val) throws CertificateException, IOException {
+        parse(val, false);
+    }
+
+    private void parse(DerValue val, boolean lazyInfo) throws CertificateException, IOException {
         // check if can over write the certificate
         if (readOnly)
             throw new CertificateParsingException("Cannot overwrite existing certificate");
@@ -1194,7 +1301,138 @@ public class X509CertImpl extends X509Certificate
 
         // The CertificateInfo
         if (info == null) {
-            info = new X509CertInfo(seq[0]);
+            if (lazyInfo) {
+                lazy = new LazyTBS(seq[0].toByteArray());
+            } else {
+                info = new X509CertInfo(seq[0]);
+            }
+        }
+    }
+
+    /**
+     * Returns info if it has been decoded, without decoding it.
+     */
+    private X509CertInfo getDecodedInfo() {
+        synchronized (lazy) {
+            return info;
+        }
+    }
+
+    /**
+     * Decodes the X509CertInfo of a certificate constructed in lazy mode,
+     * if that hasn't happened yet. Does nothing otherwise.
+     */
+    private void decodeInfo() {
+        if (lazy == null)
+            return;
+
+        synchronized (lazy) {
+            if (info != null)
+                return;
+            try {
+                info = new X509CertInfo(new DerValue(lazy.encoded));
+            } catch (Exception e) {
+                logger.warn("Unable to decode certificate info: " + e.getMessage(), e);
+            }
+        }
+    }
+
+    /**
+     * The <code>tbsCertificate</code> of a certificate constructed in lazy
+     * mode. The fields most often needed on their own are decoded on first
+     * use, without decoding the whole X509CertInfo.
+     */
+    private static class LazyTBS {
+
+        byte[] encoded;
+
+        boolean scanned;
+        int version;
+        BigInteger serialNumber;
+        X500Name issuer;
+        CertificateValidity validity;
+
+        DerValue subjectVal;
+        X500Name subject;
+        DerValue keyVal;
+        PublicKey key;
+
+        LazyTBS(byte[] encoded) {
+            this.encoded = encoded;
+        }
+
+        /*
+         * Decodes the fields up to the validity, and locates the subject
+         * and public key.
+         */
+        private void scan() throws IOException {
+            if (scanned)
+                return;
+
+            DerValue tbs = new DerValue(encoded);
+            if (tbs.tag != DerValue.tag_Sequence)
+                throw new IOException("signed fields invalid");
+
+            DerInputStream in = tbs.data;
+
+            DerValue tmp = in.getDerValue();
+            version = CertificateVersion.V1;
+            if (tmp.isContextSpecific((byte) 0)) {
+                CertificateVersion v = new CertificateVersion(tmp);
+                version = ((Integer) v.get(CertificateVersion.VERSION)).intValue();
+                tmp = in.getDerValue();
+            }
+
+            serialNumber = new SerialNumber(tmp).getNumber().toBigInteger();
+
+            // signature algorithm, checked against the outer one by
+            // X509CertInfo when fully decoded
+            in.getDerValue();
+
+            issuer = new X500Name(in);
+            validity = new CertificateValidity(in);
+            subjectVal = in.getDerValue();
+            keyVal = in.getDerValue();
+
+            scanned = true;
+        }
+
+        synchronized int getVersion() throws IOException {
+            scan();
+            return version;
+        }
+
+        synchronized BigInteger getSerialNumber() throws IOException {
+            scan();
+            return serialNumber;
+        }
+
+        synchronized X500Name getIssuer() throws IOException {
+            scan();
+            return issuer;
+        }
+
+        synchronized CertificateValidity getValidity() throws IOException {
+            scan();
+            return validity;
+        }
+
+        synchronized X500Name getSubject() throws IOException {
+            scan();
+            if (subject == null) {
+                subject = new X500Name(subjectVal.toByteArray());
+                subjectVal = null;
+            }
+            return subject;
+        }
+
+        synchronized PublicKey getKey() throws IOException {
+            scan();
+            if (key == null) {
+                key = X509Key.parse(keyVal);
+                keyVal = null;
+            }
+            return key;
         }
     }
 
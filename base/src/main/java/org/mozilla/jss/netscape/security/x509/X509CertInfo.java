@@ -262,15 +262,24 @@ public class X509CertInfo implements CertAttrSet, Serializable {
     }
 
     public byte[] getEncodedInfo(boolean ignoreCache) throws CertificateEncodingException {
+        byte[] raw = getRawEncodedInfo(ignoreCache);
+        byte[] dup = new byte[raw.length];
+        System.arraycopy(raw, 0, dup, 0, dup.length);
+        return dup;
+    }
+
+    /**
+     * Returns the cached encoding without copying it, encoding the
+     * certificate info first if needed. Callers must not modify it.
+     */
+    byte[] getRawEncodedInfo(boolean ignoreCache) throws CertificateEncodingException {
         try {
             if (ignoreCache || (rawCertInfo == null)) {
                 DerOutputStream tmp = new DerOutputStream();
                 emit(tmp);
                 rawCertInfo = tmp.toByteArray();
             }
-            byte[] dup = new byte[rawCertInfo.length];
-            System.arraycopy(rawCertInfo, 0, dup, 0, dup.length);
-            return dup;
+            return rawCertInfo;
         } catch (IOException e) {
             throw new CertificateEncodingException(e);
         } catch (CertificateException e) {
@@ -359,7 +368,7 @@ public class X509CertInfo implements CertAttrSet, Serializable {
                 Extension ext = extensions.elementAt(i);
                 DerOutputStream out = null;
                 try {
-                    if (OIDMap.getClass(ext.getExtensionId()) == null) {
+                    if (OIDMap.getFactory(ext.getExtensionId()) == null) {
                         sb.append(ext.toString());
                         byte[] extValue = ext.getExtensionValue();
                         if (extValue != null) {
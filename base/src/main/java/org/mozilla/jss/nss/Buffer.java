@@ -1,5 +1,8 @@
 package org.mozilla.jss.nss;
 
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
 public class Buffer {
     /**
      * Create a new j_buffer object with the specified number of bytes.
@@ -59,6 +62,114 @@ public class Buffer {
      */
     public static native long Write(BufferProxy buf, byte[] input);
 
+    /**
+     * Read from the buffer into the remaining space of the specified
+     * ByteBuffer, advancing its position by the number of bytes read.
+     *
+     * Direct buffers are filled in place; heap buffers are filled through
+     * their backing array. Neither case allocates an intermediate array.
+     *
+     * Returns the number of bytes read, which may be zero when the buffer
+     * is empty.
+     *
+     * See also: jb_read in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static int ReadInto(BufferProxy buf, ByteBuffer output) {
+        if (output == null || !output.hasRemaining()) {
+            return 0;
+        }
+
+        int pos = output.position();
+        int length = output.remaining();
+        long result;
+
+        if (output.isDirect()) {
+            result = ReadDirect(buf, output, pos, length);
+        } else if (output.hasArray()) {
+            result = ReadArray(buf, output.array(), output.arrayOffset() + pos, length);
+        } else {
+            // Only read-only heap buffers lack an accessible backing array.
+            throw new ReadOnlyBufferException();
+        }
+
+        if (result > 0) {
+            output.position(pos + (int) result);
+        }
+
+        return (int) Math.max(0, result);
+    }
+
+    /**
+     * Write the remaining contents of the specified ByteBuffer into the
+     * buffer, advancing its position by the number of bytes written.
+     *
+     * Direct buffers are read in place; heap buffers are read through
+     * their backing array. Neither case allocates an intermediate array.
+     *
+     * Returns the number of bytes written, which may be less than
+     * input.remaining() when the buffer lacks space.
+     *
+     * See also: jb_write in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static int WriteFrom(BufferProxy buf, ByteBuffer input) {
+        if (input == null || !input.hasRemaining()) {
+            return 0;
+        }
+
+        int pos = input.position();
+        int length = input.remaining();
+        long result;
+
+        if (input.isDirect()) {
+            result = WriteDirect(buf, input, pos, length);
+        } else if (input.hasArray()) {
+            result = WriteArray(buf, input.array(), input.arrayOffset() + pos, length);
+        } else {
+            // Read-only heap buffers don't expose their backing array, so
+            // we're forced to copy the contents out.
+            int amount = (int) Math.min(length, WriteCapacity(buf));
+            byte[] data = new byte[amount];
+            input.duplicate().get(data);
+            result = Write(buf, data);
+        }
+
+        if (result > 0) {
+            input.position(pos + (int) result);
+        }
+
+        return (int) Math.max(0, result);
+    }
+
+    /**
+     * Read up to length bytes from the buffer into the direct ByteBuffer,
+     * starting at the absolute index offset. Doesn't update the position
+     * of output.
+     */
+    private static native long ReadDirect(BufferProxy buf, ByteBuffer output,
+                                          int offset, int length);
+
+    /**
+     * Read up to length bytes from the buffer into the array, starting at
+     * index offset.
+     */
+    private static native long ReadArray(BufferProxy buf, byte[] output,
+                                         int offset, int length);
+
+    /**
+     * Write up to length bytes to the buffer from the direct ByteBuffer,
+     * starting at the absolute index offset. Doesn't update the position
+     * of input.
+     */
+    private static native long WriteDirect(BufferProxy buf, ByteBuffer input,
+                                           int offset, int length);
+
+    /**
+     * Write up to length bytes to the buffer from the array, starting at
+     * index offset.
+     */
+    private static native long WriteArray(BufferProxy buf, byte[] input,
+                                          int offset, int length);
+
     /**
      * Get a single character from the buffer.
      *
@@ -73,6 +184,14 @@ public class Buffer {
      */
     public static native int Put(BufferProxy buf, byte input);
 
+    /**
+     * Discard the contents of a buffer object, zeroing them and returning
+     * it to the empty state it was created in.
+     *
+     * See also: jb_clear in org/mozilla/jss/ssl/javax/j_buffer.h
+     */
+    public static native void Clear(BufferProxy buf);
+
     /**
      * Destroy a buffer object, freeing its resources.
      *
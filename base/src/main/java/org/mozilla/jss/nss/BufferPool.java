@@ -0,0 +1,199 @@
+package org.mozilla.jss.nss;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A bounded, thread-safe pool of native j_buffer objects (BufferProxy),
+ * keyed by their capacity.
+ *
+ * Each JSSEngine needs a pair of buffers to back its BufferPRFD. Rather
+ * than calling Buffer.Create(...) and Buffer.Free(...) for every engine,
+ * a pool lets short-lived connections reuse buffers released by earlier
+ * ones. Buffers are cleared (and their contents zeroed) before they are
+ * handed out again.
+ *
+ * At most getMaxIdle() buffers of each size are retained; buffers released
+ * beyond that are freed immediately. Setting the maximum to zero disables
+ * pooling.
+ */
+public class BufferPool {
+    public static Logger logger = LoggerFactory.getLogger(BufferPool.class);
+
+    /**
+     * Default number of idle buffers retained per buffer size.
+     */
+    public static final int DEFAULT_MAX_IDLE = 64;
+
+    private static final BufferPool defaultPool = new BufferPool(DEFAULT_MAX_IDLE);
+
+    /**
+     * Idle buffers, keyed by their capacity.
+     */
+    private HashMap<Long, ArrayDeque<BufferProxy>> idle = new HashMap<>();
+
+    private int maxIdle;
+
+    private AtomicLong created = new AtomicLong();
+    private AtomicLong reused = new AtomicLong();
+    private AtomicLong returned = new AtomicLong();
+    private AtomicLong discarded = new AtomicLong();
+
+    /**
+     * Create a new pool retaining up to maxIdle buffers per size.
+     */
+    public BufferPool(int maxIdle) {
+        setMaxIdle(maxIdle);
+    }
+
+    /**
+     * Get the pool shared by all JSSEngines created through the
+     * Mozilla-JSS SSLContext.
+     */
+    public static BufferPool getDefault() {
+        return defaultPool;
+    }
+
+    /**
+     * Get a cleared buffer of the specified capacity, reusing an idle one
+     * when available and otherwise creating a new one.
+     */
+    public BufferProxy acquire(long capacity) {
+        BufferProxy buf = null;
+
+        synchronized (this) {
+            ArrayDeque<BufferProxy> queue = idle.get(capacity);
+            if (queue != null) {
+                buf = queue.pollFirst();
+            }
+        }
+
+        if (buf != null) {
+            reused.incrementAndGet();
+            return buf;
+        }
+
+        created.incrementAndGet();
+        return Buffer.Create(capacity);
+    }
+
+    /**
+     * Return a buffer to the pool. Its contents are discarded; if the pool
+     * already holds getMaxIdle() buffers of this size, the buffer is freed
+     * instead.
+     *
+     * The caller must not use buf after calling this method.
+     */
+    public void release(BufferProxy buf) {
+        if (buf == null || buf.isNull()) {
+            return;
+        }
+
+        long capacity = Buffer.Capacity(buf);
+        Buffer.Clear(buf);
+
+        synchronized (this) {
+            ArrayDeque<BufferProxy> queue = idle.computeIfAbsent(capacity, k -> new ArrayDeque<>());
+            if (queue.size() < maxIdle) {
+                queue.addFirst(buf);
+                returned.incrementAndGet();
+                return;
+            }
+        }
+
+        discarded.incrementAndGet();
+        Buffer.Free(buf);
+    }
+
+    /**
+     * Free all idle buffers held by this pool.
+     */
+    public void clear() {
+        ArrayList<BufferProxy> freed = new ArrayList<>();
+
+        synchronized (this) {
+            for (ArrayDeque<BufferProxy> queue : idle.values()) {
+                freed.addAll(queue);
+            }
+            idle.clear();
+        }
+
+        for (BufferProxy buf : freed) {
+            Buffer.Free(buf);
+        }
+
+        logger.debug("BufferPool: freed " + freed.size() + " idle buffers");
+    }
+
+    /**
+     * Maximum number of idle buffers retained per buffer size.
+     */
+    public synchronized int getMaxIdle() {
+        return maxIdle;
+    }
+
+    /**
+     * Set the maximum number of idle buffers retained per buffer size.
+     *
+     * Lowering the maximum doesn't immediately free buffers above the new
+     * limit; call clear() for that.
+     */
+    public synchronized void setMaxIdle(int maxIdle) {
+        if (maxIdle < 0) {
+            throw new IllegalArgumentException("Maximum number of idle buffers must be non-negative: " + maxIdle);
+        }
+
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Number of buffers currently idle in the pool, across all sizes.
+     */
+    public synchronized int getIdleCount() {
+        int result = 0;
+        for (ArrayDeque<BufferProxy> queue : idle.values()) {
+            result += queue.size();
+        }
+        return result;
+    }
+
+    /**
+     * Number of buffers created because no idle buffer was available.
+     */
+    public long getCreatedCount() {
+        return created.get();
+    }
+
+    /**
+     * Number of acquisitions served by an idle buffer.
+     */
+    public long getReusedCount() {
+        return reused.get();
+    }
+
+    /**
+     * Number of released buffers retained for reuse.
+     */
+    public long getReturnedCount() {
+        return returned.get();
+    }
+
+    /**
+     * Number of released buffers freed because the pool was full.
+     */
+    public long getDiscardedCount() {
+        return discarded.get();
+    }
+
+    @Override
+    public String toString() {
+        return "BufferPool[maxIdle=" + getMaxIdle() + ", idle=" + getIdleCount() +
+            ", created=" + getCreatedCount() + ", reused=" + getReusedCount() +
+            ", returned=" + getReturnedCount() + ", discarded=" + getDiscardedCount() + "]";
+    }
+}
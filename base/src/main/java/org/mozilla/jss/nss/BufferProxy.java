@@ -15,9 +15,4 @@ public class BufferProxy extends org.mozilla.jss.util.NativeProxy {
     protected void releaseNativeResources() {
         Buffer.Free(this);
     }
-
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-    }
 }
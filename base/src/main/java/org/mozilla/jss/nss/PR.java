@@ -1,5 +1,9 @@
 package org.mozilla.jss.nss;
 
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+import java.util.Arrays;
+
 /**
  * This class provides static access to raw NSPS calls with the PR prefix,
  * and handles the usage of NativeProxy objects.
@@ -145,6 +149,235 @@ public class PR {
     public static native int Send(PRFDProxy fd, byte[] buf, int flags,
                                   long timeout);
 
+    /**
+     * Read from the PRFDProxy into the remaining space of the specified
+     * ByteBuffer, advancing its position by the number of bytes read.
+     *
+     * Direct buffers are filled in place; heap buffers are filled through
+     * their backing array. Neither case allocates an intermediate Java
+     * array. Like Read(...), this reads until the PRFDProxy would block or
+     * the buffer is full.
+     *
+     * Returns the number of bytes read, or -1 on error; call GetError()
+     * to determine the cause.
+     *
+     * See also: PR_Read in /usr/include/nspr4/prio.h
+     */
+    public static int ReadInto(PRFDProxy fd, ByteBuffer buf) {
+        if (buf == null || !buf.hasRemaining()) {
+            return 0;
+        }
+
+        int pos = buf.position();
+        int length = buf.remaining();
+        int result;
+
+        if (buf.isDirect()) {
+            result = ReadDirect(fd, buf, pos, length);
+        } else if (buf.hasArray()) {
+            result = ReadArray(fd, buf.array(), buf.arrayOffset() + pos, length);
+        } else {
+            // Only read-only heap buffers lack an accessible backing array.
+            throw new ReadOnlyBufferException();
+        }
+
+        if (result > 0) {
+            buf.position(pos + result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Write the remaining contents of the specified ByteBuffer to the
+     * PRFDProxy, advancing its position by the number of bytes written.
+     *
+     * See also: WriteFrom(PRFDProxy, ByteBuffer, int)
+     */
+    public static int WriteFrom(PRFDProxy fd, ByteBuffer buf) {
+        return WriteFrom(fd, buf, buf == null ? 0 : buf.remaining());
+    }
+
+    /**
+     * Write up to length bytes of the remaining contents of the specified
+     * ByteBuffer to the PRFDProxy, advancing its position by the number of
+     * bytes written.
+     *
+     * Direct buffers are read in place; heap buffers are read through
+     * their backing array. When buf is null or empty, a zero-length write
+     * is issued, like Write(fd, null).
+     *
+     * Returns the result of PR_Write: the number of bytes written, or -1
+     * on error; call GetError() to determine the cause.
+     *
+     * See also: PR_Write in /usr/include/nspr4/prio.h
+     */
+    public static int WriteFrom(PRFDProxy fd, ByteBuffer buf, int length) {
+        if (buf == null || !buf.hasRemaining() || length <= 0) {
+            return Write(fd, null);
+        }
+
+        int pos = buf.position();
+        int amount = Math.min(length, buf.remaining());
+        int result;
+
+        if (buf.isDirect()) {
+            result = WriteDirect(fd, buf, pos, amount);
+        } else if (buf.hasArray()) {
+            result = WriteArray(fd, buf.array(), buf.arrayOffset() + pos, amount);
+        } else {
+            // Read-only heap buffers don't expose their backing array, so
+            // we're forced to copy the contents out.
+            byte[] data = new byte[amount];
+            buf.duplicate().get(data);
+            result = Write(fd, data);
+        }
+
+        if (result > 0) {
+            buf.position(pos + result);
+        }
+
+        return result;
+    }
+
+    /**
+     * Decrypt as much data as possible from a BufferPRFD-backed SSL
+     * PRFDProxy in a single native call.
+     *
+     * This repeatedly moves wire data from src into read_buf (the read side
+     * of the BufferPRFD underlying fd) and reads application data from fd
+     * into dsts[offset] through dsts[offset + length - 1] in turn, until
+     * neither makes progress. All buffers must be direct; src and entries
+     * of dsts may be null, and empty entries are skipped. Their positions are advanced by the number of
+     * bytes consumed and produced respectively.
+     *
+     * Returns the number of bytes placed in dsts. Errors other than
+     * WOULD_BLOCK_ERROR stop the batch early and are left for GetError().
+     */
+    public static int ReadBatch(PRFDProxy fd, BufferProxy read_buf,
+                                ByteBuffer src, ByteBuffer[] dsts,
+                                int offset, int length) {
+        checkDirect(src);
+
+        ByteBuffer[] buffers = Arrays.copyOfRange(dsts, offset, offset + length);
+        int[] positions = new int[length];
+        int[] remaining = new int[length];
+        int[] produced = new int[length];
+        getRegions(buffers, positions, remaining, true);
+
+        int src_pos = src == null ? 0 : src.position();
+
+        long result = ReadBatchNative(fd, read_buf,
+            src, src_pos, src == null ? 0 : src.remaining(),
+            buffers, positions, remaining, produced);
+
+        // The native side packs the bytes consumed from src into the upper
+        // half of result and the bytes produced into dsts into the lower.
+        if (src != null) {
+            src.position(src_pos + (int) (result >>> 32));
+        }
+        advanceRegions(buffers, positions, produced);
+
+        return (int) result;
+    }
+
+    /**
+     * Encrypt as much data as possible through a BufferPRFD-backed SSL
+     * PRFDProxy in a single native call.
+     *
+     * This repeatedly writes application data from srcs[offset] through
+     * srcs[offset + length - 1] in turn to fd, in records of at most
+     * max_record bytes, and moves the resulting wire data out of write_buf
+     * (the write side of the BufferPRFD underlying fd) into dst. A record
+     * is only written when it is guaranteed to fit in dst, assuming at most
+     * record_overhead bytes of TLS framing, so all records produced by this
+     * call end up whole in dst. All buffers must be direct; entries of srcs
+     * may be null, and empty entries are skipped. Their positions are advanced by the number of bytes
+     * consumed and produced respectively.
+     *
+     * Returns the number of bytes consumed from srcs. Errors other than
+     * WOULD_BLOCK_ERROR stop the batch early and are left for GetError().
+     */
+    public static int WriteBatch(PRFDProxy fd, BufferProxy write_buf,
+                                 ByteBuffer[] srcs, int offset, int length,
+                                 ByteBuffer dst, int max_record,
+                                 int record_overhead) {
+        checkDirect(dst);
+
+        ByteBuffer[] buffers = Arrays.copyOfRange(srcs, offset, offset + length);
+        int[] positions = new int[length];
+        int[] remaining = new int[length];
+        int[] consumed = new int[length];
+        getRegions(buffers, positions, remaining, false);
+
+        int dst_pos = dst.position();
+
+        long result = WriteBatchNative(fd, write_buf,
+            buffers, positions, remaining, consumed,
+            dst, dst_pos, dst.remaining(), max_record, record_overhead);
+
+        // See ReadBatch(...) for the layout of result.
+        advanceRegions(buffers, positions, consumed);
+        dst.position(dst_pos + (int) result);
+
+        return (int) (result >>> 32);
+    }
+
+    private static void checkDirect(ByteBuffer buf) {
+        if (buf != null && !buf.isDirect()) {
+            throw new IllegalArgumentException("Batched reads and writes require direct ByteBuffers");
+        }
+    }
+
+    private static void getRegions(ByteBuffer[] buffers, int[] positions,
+                                   int[] remaining, boolean writable) {
+        for (int index = 0; index < buffers.length; index++) {
+            ByteBuffer buf = buffers[index];
+            if (buf == null || !buf.hasRemaining()) {
+                // Empty buffers are skipped, whatever their kind.
+                buffers[index] = null;
+                continue;
+            }
+
+            checkDirect(buf);
+            if (writable && buf.isReadOnly()) {
+                throw new ReadOnlyBufferException();
+            }
+
+            positions[index] = buf.position();
+            remaining[index] = buf.remaining();
+        }
+    }
+
+    private static void advanceRegions(ByteBuffer[] buffers, int[] positions,
+                                       int[] amounts) {
+        for (int index = 0; index < buffers.length; index++) {
+            if (buffers[index] != null) {
+                buffers[index].position(positions[index] + amounts[index]);
+            }
+        }
+    }
+
+    private static native long ReadBatchNative(PRFDProxy fd,
+        BufferProxy read_buf, ByteBuffer src, int src_offset, int src_length,
+        ByteBuffer[] dsts, int[] dst_offsets, int[] dst_lengths,
+        int[] dst_produced);
+
+    private static native long WriteBatchNative(PRFDProxy fd,
+        BufferProxy write_buf, ByteBuffer[] srcs, int[] src_offsets,
+        int[] src_lengths, int[] src_consumed, ByteBuffer dst,
+        int dst_offset, int dst_length, int max_record,
+        int record_overhead);
+
+    private static native int ReadDirect(PRFDProxy fd, ByteBuffer buf,
+                                         int offset, int length);
+    private static native int ReadArray(PRFDProxy fd, byte[] buf,
+                                        int offset, int length);
+    private static native int WriteDirect(PRFDProxy fd, ByteBuffer buf,
+                                          int offset, int length);
+    private static native int WriteArray(PRFDProxy fd, byte[] buf,
+                                         int offset, int length);
+
     /**
      * Get the value of the current PR error. This is cleared on each NSPR
      * call.
@@ -9,9 +9,4 @@ public class PRFDProxy extends org.mozilla.jss.util.NativeProxy {
     protected void releaseNativeResources() throws Exception {
         PR.Close(this);
     }
-
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-    }
 }
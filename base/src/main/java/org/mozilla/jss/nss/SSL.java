@@ -120,6 +120,14 @@ public class SSL {
      */
     public static final int ENABLE_FALLBACK_SCSV = getSSLEnableFallbackSCSV();
 
+    /**
+     * Option for enabling session ticket (RFC 5077) support. Value for use
+     * with OptionGet and OptionSet.
+     *
+     * See also: SSL_ENABLE_SESSION_TICKETS in /usr/include/nss3/ssl.h
+     */
+    public static final int ENABLE_SESSION_TICKETS = getSSLEnableSessionTickets();
+
     /**
      * Value for never requiring a certificate. Value for use with
      * SSL_REQUIRE_CERTIFICATE with OptionGet and OptionSet.
@@ -533,6 +541,7 @@ public class SSL {
     private static native int getSSLRenegotiateRequiresXtn();
     private static native int getSSLRenegotiateTransitional();
     private static native int getSSLEnableFallbackSCSV();
+    private static native int getSSLEnableSessionTickets();
     private static native int getSSLRequireNever();
     private static native int getSSLRequireAlways();
     private static native int getSSLRequireFirstHandshake();
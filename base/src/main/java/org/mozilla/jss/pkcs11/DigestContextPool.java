@@ -0,0 +1,95 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.pkcs11;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.WeakHashMap;
+
+import org.mozilla.jss.crypto.DigestAlgorithm;
+
+/**
+ * A bounded, thread-safe pool of NSS digest and HMAC contexts used by
+ * PK11MessageDigest.
+ *
+ * Plain digest contexts are keyed by algorithm. HMAC contexts are bound
+ * to their key, so they're keyed by algorithm and key; the pool only holds
+ * keys weakly, and contexts for a key are dropped once it is collected.
+ *
+ * Pooled contexts may be in any state; callers must restart them with
+ * PK11MessageDigest.reinit(...) before use.
+ */
+final class DigestContextPool {
+
+    /**
+     * Number of idle contexts retained per algorithm and key.
+     */
+    static final int MAX_IDLE = 32;
+
+    private static final HashMap<DigestAlgorithm, ArrayDeque<CipherContextProxy>> digests = new HashMap<>();
+
+    private static final WeakHashMap<PK11SymKey, HashMap<DigestAlgorithm, ArrayDeque<CipherContextProxy>>> hmacs = new WeakHashMap<>();
+
+    private DigestContextPool() {
+    }
+
+    /**
+     * Take an idle context for the algorithm (and HMAC key, if not null),
+     * or return null if there is none.
+     */
+    static CipherContextProxy acquire(DigestAlgorithm alg, PK11SymKey key) {
+        synchronized (DigestContextPool.class) {
+            ArrayDeque<CipherContextProxy> queue = getQueue(alg, key, false);
+            return queue == null ? null : queue.pollFirst();
+        }
+    }
+
+    /**
+     * Return a context to the pool, or close it if the pool already holds
+     * MAX_IDLE contexts for its algorithm and key.
+     */
+    static void release(DigestAlgorithm alg, PK11SymKey key, CipherContextProxy proxy) {
+        if (proxy == null || proxy.isNull()) {
+            return;
+        }
+
+        synchronized (DigestContextPool.class) {
+            ArrayDeque<CipherContextProxy> queue = getQueue(alg, key, true);
+            if (queue.size() < MAX_IDLE) {
+                queue.addFirst(proxy);
+                return;
+            }
+        }
+
+        try {
+            proxy.close();
+        } catch (Exception e) {
+            throw new RuntimeException("Unable to free digest context: " + e.getMessage(), e);
+        }
+    }
+
+    private static ArrayDeque<CipherContextProxy> getQueue(DigestAlgorithm alg, PK11SymKey key, boolean create) {
+        HashMap<DigestAlgorithm, ArrayDeque<CipherContextProxy>> queues = digests;
+
+        if (key != null) {
+            queues = hmacs.get(key);
+            if (queues == null) {
+                if (!create) {
+                    return null;
+                }
+                queues = new HashMap<>();
+                hmacs.put(key, queues);
+            }
+        }
+
+        ArrayDeque<CipherContextProxy> queue = queues.get(alg);
+        if (queue == null && create) {
+            queue = new ArrayDeque<>();
+            queues.put(alg, queue);
+        }
+
+        return queue;
+    }
+}
@@ -0,0 +1,365 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.pkcs11;
+
+import java.security.KeyPair;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.jss.crypto.KeyPairAlgorithm;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * An opt-in pool of key pairs generated in advance by background threads,
+ * used by PK11KeyPairGenerator.
+ *
+ * Pools are keyed by token, algorithm, key parameters (size, exponent,
+ * PQG or curve) and key attributes (temporary, sensitive, extractable and
+ * usages), and are enabled per key with a depth, see
+ * PK11KeyPairGenerator.setPoolDepth(). A generator whose settings match an
+ * enabled pool takes its key pairs from the pool when one is available,
+ * and generates them itself otherwise; either way the pool is refilled in
+ * the background.
+ *
+ * Only temporary key pairs are pooled: permanent ones would be stored on
+ * the token while still pooled, and left there when the JVM exits.
+ * Temporary key pairs left over when a pool is disabled are simply
+ * dropped.
+ */
+public final class KeyPairPool {
+
+    public static Logger logger = LoggerFactory.getLogger(KeyPairPool.class);
+
+    /**
+     * Number of background threads generating key pairs for all pools.
+     */
+    public static final int THREADS =
+        Math.max(1, Runtime.getRuntime().availableProcessors() / 4);
+
+    private static final ExecutorService executor = Executors.newFixedThreadPool(THREADS, runnable -> {
+        Thread thread = new Thread(runnable, "JSS-KeyPairPool");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Map<Spec, Pool> pools = new ConcurrentHashMap<>();
+
+    private KeyPairPool() {
+    }
+
+    /**
+     * Keep depth key pairs generated in advance for the given key, or
+     * disable its pool if depth is 0.
+     *
+     * @param spec The key pairs to pool.
+     * @param generator Generates the key pairs; must not be shared.
+     * @param depth Number of key pairs to keep.
+     */
+    static void setDepth(Spec spec, PK11KeyPairGenerator generator, int depth) {
+        if (depth < 0) {
+            throw new IllegalArgumentException("Invalid key pair pool depth: " + depth);
+        }
+
+        Pool pool;
+        if (depth == 0) {
+            pool = pools.remove(spec);
+            if (pool != null) {
+                pool.depth = 0;
+                pool.drain();
+            }
+            return;
+        }
+
+        pool = pools.computeIfAbsent(spec, k -> new Pool(spec, generator));
+        pool.depth = depth;
+        pool.trim();
+        pool.refill();
+    }
+
+    /**
+     * Return true if any pool is enabled.
+     */
+    static boolean isEnabled() {
+        return !pools.isEmpty();
+    }
+
+    /**
+     * Take a pooled key pair, or return null if its pool is disabled or
+     * empty.
+     */
+    static KeyPair take(Spec spec) {
+        if (spec == null) {
+            return null;
+        }
+
+        Pool pool = pools.get(spec);
+        if (pool == null) {
+            return null;
+        }
+
+        KeyPair pair = pool.pairs.pollFirst();
+        if (pair == null) {
+            pool.stats.misses.incrementAndGet();
+        } else {
+            pool.stats.hits.incrementAndGet();
+        }
+
+        pool.refill();
+        return pair;
+    }
+
+    /**
+     * Return the statistics of the enabled pools, sorted by description.
+     */
+    public static Map<String, Statistics> getStatistics() {
+        Map<String, Statistics> result = new TreeMap<>();
+        for (Pool pool : pools.values()) {
+            result.put(pool.description, pool.stats);
+        }
+        return result;
+    }
+
+    public static void logStatistics() {
+        for (Map.Entry<String, Statistics> entry : getStatistics().entrySet()) {
+            logger.info("KeyPairPool: " + entry.getKey() + ": " + entry.getValue());
+        }
+    }
+
+    /**
+     * Identifies the key pairs a generator produces.
+     */
+    static final class Spec {
+
+        private final PK11Token token;
+        private final KeyPairAlgorithm algorithm;
+        private final List<Object> params;
+        private final boolean temporary;
+        private final int sensitive;
+        private final int extractable;
+        private final long opFlags;
+        private final long opFlagsMask;
+
+        Spec(PK11Token token, KeyPairAlgorithm algorithm, List<Object> params,
+                boolean temporary, int sensitive, int extractable,
+                long opFlags, long opFlagsMask) {
+            this.token = token;
+            this.algorithm = algorithm;
+            this.params = params;
+            this.temporary = temporary;
+            this.sensitive = sensitive;
+            this.extractable = extractable;
+            this.opFlags = opFlags;
+            this.opFlagsMask = opFlagsMask;
+        }
+
+        @Override
+        public int hashCode() {
+            // PK11Token doesn't provide a hash code matching its equals()
+            return Objects.hash(algorithm, params, temporary, sensitive,
+                    extractable, opFlags, opFlagsMask);
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Spec))
+                return false;
+            Spec other = (Spec) obj;
+            return token.equals(other.token)
+                    && algorithm == other.algorithm
+                    && params.equals(other.params)
+                    && temporary == other.temporary
+                    && sensitive == other.sensitive
+                    && extractable == other.extractable
+                    && opFlags == other.opFlags
+                    && opFlagsMask == other.opFlagsMask;
+        }
+    }
+
+    /**
+     * Counters for a single pool.
+     */
+    public static final class Statistics {
+
+        private final AtomicLong hits = new AtomicLong();
+        private final AtomicLong misses = new AtomicLong();
+        private final AtomicLong generated = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong discarded = new AtomicLong();
+        private final AtomicLong generationNanos = new AtomicLong();
+        private final Pool pool;
+
+        private Statistics(Pool pool) {
+            this.pool = pool;
+        }
+
+        /**
+         * Number of key pairs served from the pool.
+         */
+        public long getHits() {
+            return hits.get();
+        }
+
+        /**
+         * Number of key pairs requested while the pool was empty.
+         */
+        public long getMisses() {
+            return misses.get();
+        }
+
+        /**
+         * Number of key pairs generated in the background.
+         */
+        public long getGenerated() {
+            return generated.get();
+        }
+
+        /**
+         * Number of background generations which failed.
+         */
+        public long getFailed() {
+            return failed.get();
+        }
+
+        /**
+         * Number of generated key pairs which were never used, because
+         * the pool was shrunk or disabled.
+         */
+        public long getDiscarded() {
+            return discarded.get();
+        }
+
+        /**
+         * Average time to generate a key pair in the background, in
+         * milliseconds.
+         */
+        public double getAverageGenerationMillis() {
+            long count = getGenerated();
+            return count == 0 ? 0 : generationNanos.get() / 1e6 / count;
+        }
+
+        /**
+         * Number of key pairs currently in the pool.
+         */
+        public int getAvailable() {
+            return pool.pairs.size();
+        }
+
+        /**
+         * Number of key pairs the pool keeps.
+         */
+        public int getDepth() {
+            return pool.depth;
+        }
+
+        @Override
+        public String toString() {
+            return "depth=" + getDepth() + ", available=" + getAvailable() +
+                ", hits=" + getHits() + ", misses=" + getMisses() +
+                ", generated=" + getGenerated() + ", failed=" + getFailed() +
+                ", discarded=" + getDiscarded() +
+                ", avgMillis=" + String.format("%.1f", getAverageGenerationMillis());
+        }
+    }
+
+    private static final class Pool {
+
+        private final Spec spec;
+        private final PK11KeyPairGenerator generator;
+        private final String description;
+        private final ConcurrentLinkedDeque<KeyPair> pairs = new ConcurrentLinkedDeque<>();
+        private final Statistics stats = new Statistics(this);
+
+        // generations queued or running
+        private final AtomicInteger pending = new AtomicInteger();
+        private volatile int depth;
+
+        Pool(Spec spec, PK11KeyPairGenerator generator) {
+            this.spec = spec;
+            this.generator = generator;
+            this.description = generator.getPoolDescription();
+        }
+
+        /**
+         * Schedule enough generations to bring the pool back to its depth.
+         */
+        void refill() {
+            while (true) {
+                int count = pending.get();
+                if (depth == 0 || pairs.size() + count >= depth) {
+                    return;
+                }
+                if (pending.compareAndSet(count, count + 1)) {
+                    executor.execute(this::generate);
+                }
+            }
+        }
+
+        private void generate() {
+            try {
+                long start = System.nanoTime();
+                KeyPair pair;
+
+                // the generator isn't thread-safe
+                synchronized (generator) {
+                    pair = generator.generateKeyPairNow();
+                }
+
+                stats.generationNanos.addAndGet(System.nanoTime() - start);
+                stats.generated.incrementAndGet();
+
+                pairs.addLast(pair);
+                if (depth == 0) {
+                    drain();
+                } else {
+                    trim();
+                }
+
+            } catch (Throwable t) {
+                // not retried until the next request, so a failing token
+                // doesn't keep the background threads busy
+                stats.failed.incrementAndGet();
+                logger.warn("KeyPairPool: unable to generate " + description + ": " + t.getMessage(), t);
+
+            } finally {
+                pending.decrementAndGet();
+            }
+        }
+
+        /**
+         * Discard key pairs beyond the depth.
+         */
+        void trim() {
+            while (pairs.size() > depth) {
+                KeyPair pair = pairs.pollLast();
+                if (pair == null) {
+                    return;
+                }
+                discard(pair);
+            }
+        }
+
+        void drain() {
+            KeyPair pair;
+            while ((pair = pairs.pollFirst()) != null) {
+                discard(pair);
+            }
+        }
+
+        private void discard(KeyPair pair) {
+            stats.discarded.incrementAndGet();
+        }
+    }
+}
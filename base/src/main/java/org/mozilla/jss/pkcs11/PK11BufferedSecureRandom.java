@@ -0,0 +1,114 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.pkcs11;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A random number generator for PKCS #11 which draws {@link #BUFFER_SIZE}
+ * bytes at a time from NSS into a buffer private to the calling thread,
+ * and serves small requests from it without calling into NSS.
+ *
+ * <p>Buffered bytes generated before a call to <code>setSeed</code> on any
+ * buffered instance are discarded, so output after seeding always
+ * reflects the new seed. An instance may be shared between threads.
+ *
+ * @see PK11SecureRandom
+ */
+public final
+class PK11BufferedSecureRandom implements org.mozilla.jss.crypto.JSSSecureRandom
+{
+    ////////////////////////////////////////////////////
+    // construction and finalization
+    ////////////////////////////////////////////////////
+
+    public
+    PK11BufferedSecureRandom() {}
+
+    /**
+     * The number of bytes generated at a time for a thread's buffer.
+     * Requests larger than a quarter of this go to NSS directly.
+     */
+    public static final int BUFFER_SIZE = 4096;
+
+    private static final PK11SecureRandom rng = new PK11SecureRandom();
+
+    /**
+     * Incremented on every reseed, invalidating all buffers.
+     */
+    private static final AtomicLong seedGeneration = new AtomicLong();
+
+    /**
+     * Random bytes generated in advance for one thread. The buffer is
+     * shared by all instances, since they use the same NSS generator.
+     */
+    private static final class Buffer {
+        private final byte[] data = new byte[BUFFER_SIZE];
+        private int pos = BUFFER_SIZE;
+        private long generation;
+
+        void read(byte[] bytes) {
+            int off = 0;
+            while (off < bytes.length) {
+                long current = seedGeneration.get();
+                if (generation != current || pos == data.length) {
+                    rng.nextBytes(data);
+                    pos = 0;
+                    generation = current;
+                }
+
+                int len = Math.min(bytes.length - off, data.length - pos);
+                System.arraycopy(data, pos, bytes, off, len);
+
+                // don't keep bytes which have been handed out
+                Arrays.fill(data, pos, pos + len, (byte) 0);
+                pos += len;
+                off += len;
+            }
+        }
+    }
+
+    private static final ThreadLocal<Buffer> buffers =
+            ThreadLocal.withInitial(Buffer::new);
+
+    ////////////////////////////////////////////////////
+    //  public routines
+    ////////////////////////////////////////////////////
+
+    @Override
+    public void
+    setSeed( byte[] seed )
+    {
+        rng.setSeed( seed );
+        seedGeneration.incrementAndGet();
+    }
+
+    @Override
+    public void
+    setSeed( long seed )
+    {
+        byte[] data = new byte[8];
+
+        // convert long into 8-byte byte array
+        for( int i = 0; i < 8; i++ ) {
+             data[i] = ( byte ) ( seed >> ( 8 * i ) );
+        }
+
+        setSeed( data );
+    }
+
+    @Override
+    public void
+    nextBytes( byte bytes[] )
+    {
+        if( bytes.length > BUFFER_SIZE / 4 ) {
+            rng.nextBytes( bytes );
+            return;
+        }
+
+        buffers.get().read( bytes );
+    }
+}
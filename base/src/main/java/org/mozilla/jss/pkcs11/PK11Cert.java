@@ -80,7 +80,16 @@ public class PK11Cert
 
     // Internal X509CertImpl to handle java.security.cert.X509Certificate
     // methods.
-    private X509CertImpl x509 = null;
+    private volatile X509CertImpl x509;
+
+    // Certificates are immutable, so attributes copied out of NSS are kept
+    // for later calls. Each is read at most a few times if threads race.
+    private volatile byte[] encoded;
+    private volatile byte[] serialNumber;
+    private volatile BigInteger serialNumberInt;
+    private volatile String subjectDN;
+    private volatile String issuerDN;
+    private volatile int hash;
 
     public static boolean isTrustFlagEnabled(int flag, int flags) {
         return (flag & flags) > 0;
@@ -167,7 +176,43 @@ public class PK11Cert
     }
 
     @Override
-    public native byte[] getEncoded() throws CertificateEncodingException;
+    public byte[] getEncoded() throws CertificateEncodingException {
+        return getEncodedInternal().clone();
+    }
+
+    /**
+     * Returns the shared DER encoding of this certificate, which must not
+     * be modified.
+     */
+    private byte[] getEncodedInternal() throws CertificateEncodingException {
+        byte[] der = encoded;
+        if (der == null) {
+            der = getEncodedNative();
+            encoded = der;
+        }
+        return der;
+    }
+
+    private native byte[] getEncodedNative() throws CertificateEncodingException;
+
+    /**
+     * Returns the X509CertImpl shared by the
+     * java.security.cert.X509Certificate methods. It is decoded lazily
+     * and is safe to use from multiple threads.
+     */
+    private X509CertImpl getX509() throws CertificateException {
+        X509CertImpl impl = x509;
+        if (impl == null) {
+            synchronized (this) {
+                impl = x509;
+                if (impl == null) {
+                    impl = new X509CertImpl(getEncodedInternal(), true);
+                    x509 = impl;
+                }
+            }
+        }
+        return impl;
+    }
 
     //public native byte[] getUniqueID();
 
@@ -179,7 +224,12 @@ public class PK11Cert
     @Override
     public int hashCode() {
         try {
-            return Arrays.hashCode(getEncoded());
+            int h = hash;
+            if (h == 0) {
+                h = Arrays.hashCode(getEncodedInternal());
+                hash = h;
+            }
+            return h;
         } catch (CertificateEncodingException cee) {
             throw new RuntimeException(cee.getMessage(), cee);
         }
@@ -193,7 +243,7 @@ public class PK11Cert
 
         PK11Cert p_other = (PK11Cert) other;
         try {
-            return Arrays.equals(getEncoded(), p_other.getEncoded());
+            return Arrays.equals(getEncodedInternal(), p_other.getEncodedInternal());
         } catch (CertificateEncodingException cee) {
             throw new RuntimeException(cee.getMessage(), cee);
         }
@@ -247,16 +297,62 @@ public class PK11Cert
     @Override
     public BigInteger
     getSerialNumber() {
-        return new BigInteger( getSerialNumberByteArray() );
+        BigInteger serial = serialNumberInt;
+        if (serial == null) {
+            serial = new BigInteger( getSerialNumberInternal() );
+            serialNumberInt = serial;
+        }
+        return serial;
     }
-    protected native byte[] getSerialNumberByteArray();
 
-    protected native String getSubjectDNString();
+    protected byte[] getSerialNumberByteArray() {
+        return getSerialNumberInternal().clone();
+    }
 
-    protected native String getIssuerDNString();
+    private byte[] getSerialNumberInternal() {
+        byte[] serial = serialNumber;
+        if (serial == null) {
+            serial = getSerialNumberByteArrayNative();
+            serialNumber = serial;
+        }
+        return serial;
+    }
 
-	@Override
-    public native java.security.PublicKey getPublicKey();
+    private native byte[] getSerialNumberByteArrayNative();
+
+    protected String getSubjectDNString() {
+        String dn = subjectDN;
+        if (dn == null) {
+            dn = getSubjectDNStringNative();
+            subjectDN = dn;
+        }
+        return dn;
+    }
+
+    private native String getSubjectDNStringNative();
+
+    protected String getIssuerDNString() {
+        String dn = issuerDN;
+        if (dn == null) {
+            dn = getIssuerDNStringNative();
+            issuerDN = dn;
+        }
+        return dn;
+    }
+
+    private native String getIssuerDNStringNative();
+
+    /**
+     * Returns the public key of this certificate. Unlike the other
+     * attributes it isn't cached: a new key object is returned on every
+     * call, since it owns native resources which the caller may release.
+     */
+    @Override
+    public PublicKey getPublicKey() {
+        return getPublicKeyNative();
+    }
+
+    private native PublicKey getPublicKeyNative();
 
 	@Override
     public native int getVersion();
@@ -265,11 +361,7 @@ public class PK11Cert
     @Override
     public int getBasicConstraints() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getBasicConstraints();
+            return getX509().getBasicConstraints();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -278,11 +370,7 @@ public class PK11Cert
     @Override
     public boolean[] getKeyUsage() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getKeyUsage();
+            return getX509().getKeyUsage();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -291,11 +379,7 @@ public class PK11Cert
     @Override
     public boolean[] getSubjectUniqueID() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getSubjectUniqueID();
+            return getX509().getSubjectUniqueID();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -304,11 +388,7 @@ public class PK11Cert
     @Override
     public boolean[] getIssuerUniqueID() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getIssuerUniqueID();
+            return getX509().getIssuerUniqueID();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -317,11 +397,7 @@ public class PK11Cert
     @Override
     public byte[] getSigAlgParams() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getSigAlgParams();
+            return getX509().getSigAlgParams();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -330,11 +406,7 @@ public class PK11Cert
     @Override
     public String getSigAlgName() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getSigAlgName();
+            return getX509().getSigAlgName();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -343,11 +415,7 @@ public class PK11Cert
     @Override
     public String getSigAlgOID() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getSigAlgOID();
+            return getX509().getSigAlgOID();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -356,11 +424,7 @@ public class PK11Cert
     @Override
     public byte[] getSignature() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getSignature();
+            return getX509().getSignature();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -369,11 +433,7 @@ public class PK11Cert
     @Override
     public byte[] getTBSCertificate() throws CertificateEncodingException {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getTBSCertificate();
+            return getX509().getTBSCertificate();
         } catch (CertificateEncodingException cee) {
             throw cee;
         } catch (Exception e) {
@@ -384,11 +444,7 @@ public class PK11Cert
     @Override
     public Date getNotAfter() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getNotAfter();
+            return getX509().getNotAfter();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -397,11 +453,7 @@ public class PK11Cert
     @Override
     public Date getNotBefore() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getNotBefore();
+            return getX509().getNotBefore();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -412,11 +464,7 @@ public class PK11Cert
             throws CertificateExpiredException, CertificateNotYetValidException
     {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            x509.checkValidity();
+            getX509().checkValidity();
         } catch (CertificateExpiredException cee) {
             throw cee;
         } catch (CertificateNotYetValidException cnyve) {
@@ -431,11 +479,7 @@ public class PK11Cert
             throws CertificateExpiredException, CertificateNotYetValidException
     {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            x509.checkValidity(date);
+            getX509().checkValidity(date);
         } catch (CertificateExpiredException cee) {
             throw cee;
         } catch (CertificateNotYetValidException cnyve) {
@@ -448,11 +492,7 @@ public class PK11Cert
     @Override
     public String toString() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.toString();
+            return getX509().toString();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -464,11 +504,7 @@ public class PK11Cert
             InvalidKeyException, NoSuchProviderException, SignatureException
     {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            x509.verify(key);
+            getX509().verify(key);
         } catch (NoSuchAlgorithmException nsae) {
             throw nsae;
         } catch (InvalidKeyException ike) {
@@ -490,11 +526,7 @@ public class PK11Cert
             InvalidKeyException, NoSuchProviderException, SignatureException
     {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            x509.verify(key, sigProvider);
+            getX509().verify(key, sigProvider);
         } catch (NoSuchAlgorithmException nsae) {
             throw nsae;
         } catch (InvalidKeyException ike) {
@@ -513,11 +545,7 @@ public class PK11Cert
     @Override
     public byte[] getExtensionValue(String oid) {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getExtensionValue(oid);
+            return getX509().getExtensionValue(oid);
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -526,11 +554,7 @@ public class PK11Cert
     @Override
     public Set<String> getCriticalExtensionOIDs() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getCriticalExtensionOIDs();
+            return getX509().getCriticalExtensionOIDs();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -539,11 +563,7 @@ public class PK11Cert
     @Override
     public Set<String> getNonCriticalExtensionOIDs() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.getNonCriticalExtensionOIDs();
+            return getX509().getNonCriticalExtensionOIDs();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
@@ -552,21 +572,12 @@ public class PK11Cert
     @Override
     public boolean hasUnsupportedCriticalExtension() {
         try {
-            if (x509 == null) {
-                x509 = new X509CertImpl(getEncoded());
-            }
-
-            return x509.hasUnsupportedCriticalExtension();
+            return getX509().hasUnsupportedCriticalExtension();
         } catch (Exception e) {
             throw new RuntimeException(e.getMessage(), e);
         }
     }
 
-    @Override
-    public void finalize() throws Throwable {
-        close();
-    }
-
     @Override
     public void close() throws Exception {
         if (certProxy != null) {
@@ -629,6 +640,7 @@ public class PK11Cert
     @Override
     public void setSSLTrust(int trust) {
         setTrust(SSL, trust);
+        TrustAnchorIndex.invalidate();
     }
 
     /**
@@ -640,6 +652,7 @@ public class PK11Cert
     @Override
     public void setEmailTrust(int trust) {
         setTrust(EMAIL, trust);
+        TrustAnchorIndex.invalidate();
     }
 
     /**
@@ -651,6 +664,7 @@ public class PK11Cert
     @Override
     public void setObjectSigningTrust(int trust) {
         setTrust(OBJECT_SIGNING, trust);
+        TrustAnchorIndex.invalidate();
     }
 
     /**
@@ -4,12 +4,18 @@
 
 package org.mozilla.jss.pkcs11;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
 
+import javax.crypto.AEADBadTagException;
 import javax.crypto.BadPaddingException;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.RC2ParameterSpec;
 
@@ -45,6 +51,25 @@ public final class PK11Cipher
     // modified by various operations
     private int state=UNINITIALIZED;
 
+    // whether update() was called since the context was initialized, so
+    // that the context may hold a partial block or has begun an AEAD message
+    private boolean updated=false;
+
+    // input consumed by update() whose output NSS hasn't returned yet,
+    // i.e. a partial block (or a held-back block when decrypting)
+    private int buffered=0;
+
+    // AEAD operations process whole messages in doFinal(), so the AAD and
+    // any input passed to update() are collected until then.
+    private ByteArrayOutputStream aad=null;
+    private ByteArrayOutputStream message=null;
+
+    // set with initXXX() for AEAD algorithms
+    private int tagLength=0;
+
+    // set once an AEAD encryption completes, as its IV must not be reused
+    private boolean ivUsed=false;
+
     // States
     private static final int UNINITIALIZED=0;
     private static final int ENCRYPT=1;
@@ -81,6 +106,8 @@ public final class PK11Cipher
             IV = ((IvParameterSpec)params).getIV();
         } else if( params instanceof RC2ParameterSpec ) {
             IV = ((RC2ParameterSpec)params).getIV();
+        } else if( params instanceof GCMParameterSpec ) {
+            IV = ((GCMParameterSpec)params).getIV();
         }
         return IV;
     }
@@ -105,7 +132,9 @@ public final class PK11Cipher
         this.parameters = parameters;
         state = ENCRYPT;
 
-        if( parameters instanceof RC2ParameterSpec ) {
+        if( algorithm.isAEAD() ) {
+            initAEAD(true);
+        } else if( parameters instanceof RC2ParameterSpec ) {
             contextProxy = initContextWithKeyBits(
                 true, key, algorithm, IV,
                 ((RC2ParameterSpec)parameters).getEffectiveKeyBits(),
@@ -135,7 +164,9 @@ public final class PK11Cipher
         this.parameters = parameters;
         state = DECRYPT;
 
-        if( parameters instanceof RC2ParameterSpec ) {
+        if( algorithm.isAEAD() ) {
+            initAEAD(false);
+        } else if( parameters instanceof RC2ParameterSpec ) {
             contextProxy = initContextWithKeyBits(
                 false, key, algorithm, IV,
                 ((RC2ParameterSpec)parameters).getEffectiveKeyBits(),
@@ -154,42 +185,115 @@ public final class PK11Cipher
             throw new IllegalStateException();
         }
 
-        return updateContext( contextProxy, bytes, algorithm.getBlockSize());
+        if( algorithm.isAEAD() ) {
+            bufferAEAD(bytes, 0, bytes.length);
+            return new byte[0];
+        }
+
+        updated = true;
+        byte[] output = updateContext( contextProxy, bytes, algorithm.getBlockSize());
+        buffered += bytes.length - output.length;
+        return output;
     }
 
     @Override
     public byte[] update(byte[] bytes, int offset, int length)
         throws IllegalStateException, TokenException
     {
-        byte[] sub = new byte[length];
+        if( state == UNINITIALIZED ) {
+            throw new IllegalStateException();
+        }
+
+        checkBounds(bytes.length, offset, length);
 
-        System.arraycopy( bytes, offset, sub, 0, length );
+        if( algorithm.isAEAD() ) {
+            bufferAEAD(bytes, offset, length);
+            return new byte[0];
+        }
+
+        byte[] output = new byte[maxUpdateSize(length)];
+        updated = true;
+        int produced = updateContextArray(contextProxy, bytes, offset, length,
+                output, 0, output.length);
+        buffered += length - produced;
 
-        return update(sub);
+        return trim(output, produced);
     }
 
     /**
-     * @deprecated isPadded() in EncryptionAlgorithm has been deprecated
+     * Encrypts or decrypts directly into output. ShortBufferException is
+     * thrown before any input is consumed if output doesn't have room for
+     * the largest possible result, leaving the cipher state unchanged.
      */
     @Override
-    @Deprecated
-    public byte[] doFinal(byte[] bytes)
-        throws IllegalStateException, IllegalBlockSizeException,
-        BadPaddingException, TokenException
+    public int update(byte[] input, int inputOffset, int inputLen,
+        byte[] output, int outputOffset)
+        throws IllegalStateException, ShortBufferException, TokenException
     {
         if( state == UNINITIALIZED ) {
             throw new IllegalStateException();
         }
 
-        byte[] first = update(bytes);
+        checkBounds(input.length, inputOffset, inputLen);
+        checkBounds(output.length, outputOffset, 0);
 
-        byte[] last = finalizeContext(contextProxy, algorithm.getBlockSize(),
-                    algorithm.isPadded() );
+        if( algorithm.isAEAD() ) {
+            bufferAEAD(input, inputOffset, inputLen);
+            return 0;
+        }
 
-        byte[] combined = new byte[ first.length+last.length ];
-        System.arraycopy(first, 0, combined, 0, first.length);
-        System.arraycopy(last, 0, combined, first.length, last.length);
-        return combined;
+        int available = output.length - outputOffset;
+        checkOutputSize(maxUpdateSize(inputLen), available);
+
+        updated = true;
+        int produced = updateContextArray(contextProxy, input, inputOffset,
+                inputLen, output, outputOffset, available);
+        buffered += inputLen - produced;
+        return produced;
+    }
+
+    @Override
+    public int update(ByteBuffer input, ByteBuffer output)
+        throws IllegalStateException, ShortBufferException, TokenException
+    {
+        if( state == UNINITIALIZED ) {
+            throw new IllegalStateException();
+        }
+
+        int inputLen = input.remaining();
+        if( algorithm.isAEAD() ) {
+            byte[] bytes = new byte[inputLen];
+            input.get(bytes);
+            bufferAEAD(bytes, 0, inputLen);
+            return 0;
+        }
+
+        checkOutputSize(maxUpdateSize(inputLen), output.remaining());
+        if( !input.isDirect() || !output.isDirect() ) {
+            return super.update(input, output);
+        }
+
+        updated = true;
+        int produced = updateContextDirect(contextProxy,
+                input, input.position(), inputLen,
+                output, output.position(), output.remaining());
+        buffered += inputLen - produced;
+
+        input.position(input.position() + inputLen);
+        output.position(output.position() + produced);
+        return produced;
+    }
+
+    /**
+     * @deprecated isPadded() in EncryptionAlgorithm has been deprecated
+     */
+    @Override
+    @Deprecated
+    public byte[] doFinal(byte[] bytes)
+        throws IllegalStateException, IllegalBlockSizeException,
+        BadPaddingException, TokenException
+    {
+        return doFinal(bytes, 0, bytes.length);
     }
 
     @Override
@@ -197,11 +301,22 @@ public final class PK11Cipher
         throws IllegalStateException, IllegalBlockSizeException,
         BadPaddingException, TokenException
     {
-        byte[] sub = new byte[length];
+        if( state == UNINITIALIZED ) {
+            throw new IllegalStateException();
+        }
 
-        System.arraycopy(bytes, offset, sub, 0, length);
+        checkBounds(bytes.length, offset, length);
 
-        return doFinal(sub);
+        if( algorithm.isAEAD() ) {
+            byte[] output = new byte[getAEADOutputSize(length)];
+            finalizeAEAD(bytes, offset, length, output, 0);
+            return output;
+        }
+
+        byte[] output = new byte[maxFinalSize(length)];
+        int produced = doFinalArray(bytes, offset, length, output, 0, output.length);
+
+        return trim(output, produced);
     }
 
     /**
@@ -216,10 +331,272 @@ public final class PK11Cipher
         if( state == UNINITIALIZED ) {
             throw new IllegalStateException();
         }
+        if( algorithm.isAEAD() ) {
+            return doFinal(new byte[0], 0, 0);
+        }
+        buffered = 0;
         return finalizeContext(contextProxy, algorithm.getBlockSize(),
                     algorithm.isPadded() );
     }
 
+    /**
+     * Completes the operation directly into output. ShortBufferException is
+     * thrown before any input is consumed if output doesn't have room for
+     * the largest possible result, leaving the cipher state unchanged.
+     */
+    @Override
+    public int doFinal(byte[] input, int inputOffset, int inputLen,
+        byte[] output, int outputOffset)
+        throws IllegalStateException, IllegalBlockSizeException,
+        BadPaddingException, ShortBufferException, TokenException
+    {
+        if( state == UNINITIALIZED ) {
+            throw new IllegalStateException();
+        }
+
+        if( input == null ) {
+            inputLen = 0;
+        } else {
+            checkBounds(input.length, inputOffset, inputLen);
+        }
+        checkBounds(output.length, outputOffset, 0);
+
+        int available = output.length - outputOffset;
+        if( algorithm.isAEAD() ) {
+            // The output size is exact, so check it before the message is
+            // consumed.
+            checkOutputSize(getAEADOutputSize(inputLen), available);
+            if( input == null ) {
+                input = new byte[0];
+                inputOffset = 0;
+            }
+            return finalizeAEAD(input, inputOffset, inputLen, output, outputOffset);
+        }
+
+        checkOutputSize(maxFinalSize(inputLen), available);
+
+        return doFinalArray(input, inputOffset, inputLen, output, outputOffset, available);
+    }
+
+    @Override
+    public int doFinal(ByteBuffer input, ByteBuffer output)
+        throws IllegalStateException, IllegalBlockSizeException,
+        BadPaddingException, ShortBufferException, TokenException
+    {
+        if( state == UNINITIALIZED ) {
+            throw new IllegalStateException();
+        }
+
+        int inputLen = input.remaining();
+        if( algorithm.isAEAD() ) {
+            checkOutputSize(getAEADOutputSize(inputLen), output.remaining());
+            return super.doFinal(input, output);
+        }
+
+        checkOutputSize(maxFinalSize(inputLen), output.remaining());
+        if( !input.isDirect() || !output.isDirect() ) {
+            return super.doFinal(input, output);
+        }
+
+        int start = output.position();
+        int available = output.remaining();
+
+        int produced = 0;
+        if( inputLen > 0 ) {
+            produced = updateContextDirect(contextProxy,
+                    input, input.position(), inputLen,
+                    output, start, available);
+        }
+        input.position(input.position() + inputLen);
+
+        produced += finalizeContextDirect(contextProxy, output,
+                start + produced, available - produced);
+        buffered = 0;
+        output.position(start + produced);
+        return produced;
+    }
+
+    @Override
+    public void updateAAD(byte[] bytes, int offset, int length)
+        throws IllegalStateException, TokenException
+    {
+        if( state == UNINITIALIZED ) {
+            throw new IllegalStateException();
+        }
+        if( !algorithm.isAEAD() ) {
+            throw new UnsupportedOperationException(
+                "Additional authenticated data requires an AEAD algorithm, not "
+                + algorithm);
+        }
+        checkIVUnused();
+        if( updated ) {
+            throw new IllegalStateException(
+                "AAD must be supplied before the message");
+        }
+
+        checkBounds(bytes.length, offset, length);
+        aad.write(bytes, offset, length);
+    }
+
+    @Override
+    public int getBufferedLength() {
+        return message == null ? 0 : message.size();
+    }
+
+    private void initAEAD(boolean encrypt)
+        throws InvalidAlgorithmParameterException, TokenException
+    {
+        if( parameters instanceof GCMParameterSpec ) {
+            int tagBits = ((GCMParameterSpec)parameters).getTLen();
+            if( tagBits < 96 || tagBits > 128 || tagBits % 8 != 0 ) {
+                throw new InvalidAlgorithmParameterException(
+                    "Unsupported GCM tag length: " + tagBits + " bits");
+            }
+            tagLength = tagBits / 8;
+        } else {
+            // ChaCha20-Poly1305 always uses a 128-bit tag.
+            tagLength = 16;
+        }
+
+        if( IV == null || IV.length == 0 ) {
+            throw new InvalidAlgorithmParameterException(
+                algorithm + " requires an IV");
+        }
+        if( algorithm == EncryptionAlgorithm.CHACHA20_POLY1305 &&
+                IV.length != 12 ) {
+            throw new InvalidAlgorithmParameterException(
+                algorithm + " requires a 12-byte nonce");
+        }
+
+        aad = new ByteArrayOutputStream();
+        message = new ByteArrayOutputStream();
+        contextProxy = initAEADContext(encrypt, key, algorithm);
+    }
+
+    private void checkIVUnused() {
+        if( ivUsed ) {
+            throw new IllegalStateException(
+                "Cipher must be re-initialized with a new IV");
+        }
+    }
+
+    private void bufferAEAD(byte[] bytes, int offset, int length) {
+        checkIVUnused();
+        updated = true;
+        message.write(bytes, offset, length);
+    }
+
+    /**
+     * Size of the AEAD output once the given input is added to the
+     * buffered message: the ciphertext and tag when encrypting, or the
+     * plaintext when decrypting.
+     */
+    private int getAEADOutputSize(int inputLen) throws AEADBadTagException {
+        int total = message.size() + inputLen;
+        if( state == ENCRYPT ) {
+            return total + tagLength;
+        }
+        if( total < tagLength ) {
+            throw new AEADBadTagException(
+                "Input is too short to contain a " + tagLength + "-byte tag");
+        }
+        return total - tagLength;
+    }
+
+    /**
+     * Encrypts or decrypts the buffered message followed by the given
+     * input in one PK11_AEADOp call, then clears the AAD and message for
+     * the next operation.
+     */
+    private int finalizeAEAD(byte[] input, int inputOffset, int inputLen,
+        byte[] output, int outputOffset)
+        throws BadPaddingException, TokenException
+    {
+        checkIVUnused();
+        try {
+            if( message.size() > 0 ) {
+                message.write(input, inputOffset, inputLen);
+                input = message.toByteArray();
+                inputOffset = 0;
+                inputLen = input.length;
+            }
+
+            byte[] aadBytes = aad.size() > 0 ? aad.toByteArray() : null;
+
+            return aeadOp(contextProxy, key, algorithm, state == ENCRYPT,
+                    IV, aadBytes, tagLength, input, inputOffset, inputLen,
+                    output, outputOffset, output.length - outputOffset);
+        } finally {
+            aad.reset();
+            message.reset();
+            updated = false;
+            ivUsed = state == ENCRYPT;
+        }
+    }
+
+    private int doFinalArray(byte[] input, int inputOffset, int inputLen,
+        byte[] output, int outputOffset, int available)
+        throws IllegalBlockSizeException, BadPaddingException, TokenException
+    {
+        int produced = 0;
+        if( inputLen > 0 ) {
+            produced = updateContextArray(contextProxy, input, inputOffset,
+                    inputLen, output, outputOffset, available);
+        }
+
+        produced += finalizeContextArray(contextProxy, output,
+                outputOffset + produced, available - produced);
+        buffered = 0;
+        return produced;
+    }
+
+    private static byte[] trim(byte[] output, int length) {
+        if( length == output.length ) {
+            return output;
+        }
+        return Arrays.copyOf(output, length);
+    }
+
+    /**
+     * Largest output of an update() with the given input length: NSS never
+     * returns more than it was given, including any input buffered by
+     * earlier calls.
+     */
+    private int maxUpdateSize(int inputLen) {
+        return buffered + inputLen;
+    }
+
+    /**
+     * Largest output of a doFinal() with the given input length, including
+     * any input buffered by earlier update() calls and, when encrypting
+     * with padding, the padding up to the next whole block.
+     */
+    private int maxFinalSize(int inputLen) {
+        int total = buffered + inputLen;
+        int blockSize = algorithm.getBlockSize();
+        if( state == ENCRYPT && algorithm.isPadded() && blockSize > 0 ) {
+            return total - total % blockSize + blockSize;
+        }
+        return total;
+    }
+
+    private static void checkOutputSize(int needed, int available)
+        throws ShortBufferException
+    {
+        if( available < needed ) {
+            throw new ShortBufferException(needed + " needed, " +
+                available + " supplied");
+        }
+    }
+
+    private static void checkBounds(int length, int offset, int count) {
+        if( offset < 0 || count < 0 || offset > length - count ) {
+            throw new ArrayIndexOutOfBoundsException(
+                "Range [" + offset + ", " + offset + " + " + count +
+                ") out of bounds for length " + length);
+        }
+    }
+
     private static native CipherContextProxy
     initContext(boolean encrypt, SymmetricKey key, EncryptionAlgorithm alg,
                  byte[] IV, boolean padded)
@@ -239,11 +616,60 @@ public final class PK11Cipher
     finalizeContext( CipherContextProxy context, int blocksize, boolean padded)
         throws TokenException, IllegalBlockSizeException, BadPaddingException;
 
+    // Writes at most outputLen bytes to output at outputOffset, returning
+    // the number of bytes written. input and output may be the same array.
+    private static native int
+    updateContextArray( CipherContextProxy context, byte[] input,
+        int inputOffset, int inputLen, byte[] output, int outputOffset,
+        int outputLen )
+        throws TokenException;
+
+    // As above, for direct ByteBuffers, which are accessed in place.
+    private static native int
+    updateContextDirect( CipherContextProxy context, ByteBuffer input,
+        int inputOffset, int inputLen, ByteBuffer output, int outputOffset,
+        int outputLen )
+        throws TokenException;
+
+    private static native int
+    finalizeContextArray( CipherContextProxy context, byte[] output,
+        int outputOffset, int outputLen )
+        throws TokenException, IllegalBlockSizeException, BadPaddingException;
+
+    private static native int
+    finalizeContextDirect( CipherContextProxy context, ByteBuffer output,
+        int outputOffset, int outputLen )
+        throws TokenException, IllegalBlockSizeException, BadPaddingException;
+
+    // Creates a message-based context, which takes the IV and AAD of each
+    // message in aeadOp(). Returns null if NSS doesn't support message-based
+    // operations; aeadOp() then uses the key directly.
+    private static native CipherContextProxy
+    initAEADContext(boolean encrypt, SymmetricKey key, EncryptionAlgorithm alg)
+        throws TokenException;
+
+    // Runs PK11_AEADOp (or, without a context, PK11_Encrypt/PK11_Decrypt)
+    // over a whole message. When encrypting, the tag is appended to the
+    // ciphertext; when decrypting, it is taken from the end of the input.
+    // Returns the number of bytes written to output.
+    private static native int
+    aeadOp( CipherContextProxy context, SymmetricKey key,
+        EncryptionAlgorithm alg, boolean encrypt, byte[] IV,
+        byte[] aad, int tagLength, byte[] input, int inputOffset,
+        int inputLen, byte[] output, int outputOffset, int outputLen )
+        throws TokenException, BadPaddingException;
+
     private void reset() {
         parameters = null;
         key = null;
         IV = null;
         state = UNINITIALIZED;
+        updated = false;
+        buffered = 0;
+        aad = null;
+        message = null;
+        tagLength = 0;
+        ivUsed = false;
         contextProxy = null;
     }
 
@@ -292,11 +718,6 @@ public final class PK11Cipher
         }
     }
 
-    @Override
-    public void finalize() throws Throwable {
-        close();
-    }
-
     @Override
     public void close() throws Exception {
         if (contextProxy != null) {
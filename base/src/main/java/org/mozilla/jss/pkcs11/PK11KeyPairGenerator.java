@@ -14,7 +14,9 @@ import java.security.spec.AlgorithmParameterSpec;
 import java.security.spec.DSAParameterSpec;
 import java.security.spec.ECGenParameterSpec;
 import java.security.spec.RSAKeyGenParameterSpec;
+import java.util.Arrays;
 import java.util.Hashtable;
+import java.util.List;
 
 import org.mozilla.jss.asn1.ASN1Util;
 import org.mozilla.jss.asn1.OBJECT_IDENTIFIER;
@@ -324,6 +326,21 @@ public final class PK11KeyPairGenerator
         this.algorithm = algorithm;
     }
 
+    /**
+     * Copies the settings of another generator.
+     */
+    private PK11KeyPairGenerator(PK11KeyPairGenerator other) {
+        token = other.token;
+        algorithm = other.algorithm;
+        params = other.params;
+        mKeygenOnInternalToken = other.mKeygenOnInternalToken;
+        temporaryPairMode = other.temporaryPairMode;
+        sensitivePairMode = other.sensitivePairMode;
+        extractablePairMode = other.extractablePairMode;
+        opFlags = other.opFlags;
+        opFlagsMask = other.opFlagsMask;
+    }
+
     ///////////////////////////////////////////////////////////////////////
     ///////////////////////////////////////////////////////////////////////
     // Public Methods
@@ -436,13 +453,124 @@ public final class PK11KeyPairGenerator
     /**
      * Generates a key pair on a token. Uses parameters if they were passed
      * in through a call to <code>initialize</code>, otherwise uses defaults.
+     * If a pool is enabled for these parameters and key attributes, the
+     * key pair is taken from the pool when it isn't empty.
      * @return
      * @throws TokenException
+     * @see #setPoolDepth
      */
 
     @Override
     public KeyPair generateKeyPair()
         throws TokenException
+    {
+        if(KeyPairPool.isEnabled()) {
+            KeyPair pair = KeyPairPool.take(getPoolSpec());
+            if(pair != null) {
+                return pair;
+            }
+        }
+        return generateKeyPairNow();
+    }
+
+    /**
+     * Keeps the given number of key pairs with the current parameters and
+     * key attributes generated in advance by background threads. Any
+     * generator with the same settings takes its key pairs from this pool
+     * while it isn't empty. Changing the settings of this generator
+     * afterwards doesn't affect the pool.
+     *
+     * Only temporary key pairs can be pooled, since permanent ones would be
+     * visible on the token while pooled and left behind at exit.
+     *
+     * @param depth Number of key pairs to keep, or 0 to disable the pool
+     *      and discard its key pairs.
+     * @throws InvalidParameterException If the generator has not been
+     *      initialized with a curve, for EC, or doesn't generate temporary
+     *      key pairs.
+     * @see KeyPairPool#getStatistics
+     */
+    @Override
+    public void setPoolDepth(int depth)
+        throws InvalidParameterException
+    {
+        if(depth > 0 && !temporaryPairMode) {
+            throw new InvalidParameterException(
+                "Only temporary key pairs can be pooled");
+        }
+        KeyPairPool.Spec spec = getPoolSpec();
+        if(spec == null) {
+            throw new InvalidParameterException("EC curve is not initialized");
+        }
+        KeyPairPool.setDepth(spec, new PK11KeyPairGenerator(this), depth);
+    }
+
+    /**
+     * @return The settings which determine the generated key pairs, or
+     *      null if there are no parameters for EC.
+     */
+    private KeyPairPool.Spec getPoolSpec() {
+        List<Object> values;
+
+        if(algorithm == KeyPairAlgorithm.RSA) {
+            int keySize = DEFAULT_RSA_KEY_SIZE;
+            BigInteger exponent = DEFAULT_RSA_PUBLIC_EXPONENT;
+            if(params != null) {
+                RSAKeyGenParameterSpec rsaparams = (RSAKeyGenParameterSpec)params;
+                keySize = rsaparams.getKeysize();
+                exponent = rsaparams.getPublicExponent();
+            }
+            values = Arrays.asList(keySize, exponent);
+        } else if(algorithm == KeyPairAlgorithm.DSA) {
+            DSAParameterSpec dsaParams =
+                params == null ? PQG1024 : (DSAParameterSpec)params;
+            values = Arrays.asList(dsaParams.getP(), dsaParams.getQ(),
+                    dsaParams.getG());
+        } else {
+            if(params == null) {
+                return null;
+            }
+            byte[] curve = ((PK11ParameterSpec) params).getEncoded();
+            values = Arrays.asList(new BigInteger(1, curve));
+        }
+
+        return new KeyPairPool.Spec(token, algorithm, values,
+                temporaryPairMode, sensitivePairMode, extractablePairMode,
+                opFlags, opFlagsMask);
+    }
+
+    /**
+     * @return A description of the generated key pairs for pool statistics.
+     */
+    String getPoolDescription() {
+        String description = algorithm.toString();
+
+        if(params instanceof RSAKeyGenParameterSpec) {
+            RSAKeyGenParameterSpec rsaparams = (RSAKeyGenParameterSpec)params;
+            description += " " + rsaparams.getKeysize() +
+                " e=" + rsaparams.getPublicExponent();
+        } else if(params instanceof DSAParameterSpec) {
+            description += " " + ((DSAParameterSpec)params).getP().bitLength();
+        } else if(params instanceof PK11ParameterSpec) {
+            description += " " + new BigInteger(1,
+                    ((PK11ParameterSpec)params).getEncoded()).toString(16);
+        } else if(algorithm == KeyPairAlgorithm.RSA) {
+            description += " " + DEFAULT_RSA_KEY_SIZE;
+        }
+
+        return description + " on " + token.getName() +
+            (temporaryPairMode ? ", temporary" : ", permanent") +
+            ", sensitive=" + sensitivePairMode +
+            ", extractable=" + extractablePairMode +
+            ", usages=0x" + Long.toHexString(opFlags) +
+            "/0x" + Long.toHexString(opFlagsMask);
+    }
+
+    /**
+     * Generates a key pair on the token, bypassing the pool.
+     */
+    KeyPair generateKeyPairNow()
+        throws TokenException
     {
         if(algorithm == KeyPairAlgorithm.RSA) {
             if(params != null) {
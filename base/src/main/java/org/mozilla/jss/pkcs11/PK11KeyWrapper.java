@@ -663,6 +663,8 @@ public final class PK11KeyWrapper implements KeyWrapper {
             return EncryptionAlgorithm.AES_128_ECB;
         } else if( type == SymmetricKey.SHA1_HMAC) {
             return HMACAlgorithm.SHA1;
+        } else if( type == SymmetricKey.CHACHA20 ) {
+            return EncryptionAlgorithm.CHACHA20_POLY1305;
         } else  {
             assert( type == SymmetricKey.RC2 );
             return EncryptionAlgorithm.RC2_CBC;
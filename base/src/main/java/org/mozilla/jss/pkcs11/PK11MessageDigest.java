@@ -5,12 +5,18 @@
 package org.mozilla.jss.pkcs11;
 
 import org.mozilla.jss.crypto.*;
+import org.mozilla.jss.util.NativeCleaner;
+
 import java.security.DigestException;
 import java.security.NoSuchAlgorithmException;
 import java.security.InvalidKeyException;
 
 /**
  * Message Digesting with PKCS #11.
+ *
+ * NSS contexts are reused: digest() and reset() restart the current context
+ * rather than creating a new one, and contexts of closed or unreachable
+ * digests are returned to a shared pool for later instances.
  */
 public final class PK11MessageDigest
     extends JSSMessageDigest
@@ -18,10 +24,22 @@ public final class PK11MessageDigest
 {
 
     private PK11Token token;
-    private CipherContextProxy digestProxy;
     private PK11SymKey hmacKey;
     private DigestAlgorithm alg;
 
+    /**
+     * The context in use. This is shared with the NativeCleaner action,
+     * which returns the context to the pool if this digest isn't closed.
+     */
+    private Lease lease = new Lease();
+    private NativeCleaner.Registration registration;
+
+    /**
+     * Whether the context has to be restarted before it is next used,
+     * because it was finalized, reset, or taken from the pool.
+     */
+    private boolean restart;
+
     PK11MessageDigest(PK11Token token, DigestAlgorithm alg)
         throws NoSuchAlgorithmException, DigestException
     {
@@ -32,9 +50,36 @@ public final class PK11MessageDigest
             throw new NoSuchAlgorithmException();
         }
 
+        lease.alg = alg;
+        registration = NativeCleaner.register(this, lease);
+
         reset();
     }
 
+    private PK11MessageDigest(PK11MessageDigest other)
+        throws DigestException
+    {
+        this.token = other.token;
+        this.alg = other.alg;
+        this.hmacKey = other.hmacKey;
+
+        lease.alg = alg;
+        lease.key = hmacKey;
+        registration = NativeCleaner.register(this, lease);
+
+        if (other.lease.proxy == null) {
+            return;
+        }
+
+        if (other.restart) {
+            // The other context holds no input, so any context for the
+            // same algorithm and key is equivalent.
+            acquireContext();
+        } else {
+            lease.proxy = cloneContext(other.lease.proxy);
+        }
+    }
+
     @Override
     public void initHMAC(SymmetricKey key)
         throws DigestException, InvalidKeyException
@@ -48,15 +93,17 @@ public final class PK11MessageDigest
             throw new InvalidKeyException("HMAC key is not a PKCS #11 key");
         }
 
+        releaseContext();
+
         hmacKey = (PK11SymKey) key;
-        this.digestProxy = initHMAC(token, alg, hmacKey);
+        acquireContext();
     }
 
     @Override
     public void update(byte[] input, int offset, int len)
         throws DigestException
     {
-        if( digestProxy == null ) {
+        if( lease.proxy == null ) {
             throw new DigestException("Digest not correctly initialized");
         }
         if( input.length < offset+len ) {
@@ -64,14 +111,15 @@ public final class PK11MessageDigest
                 "Input buffer is not large enough for offset and length");
         }
 
-        update(digestProxy, input, offset, len);
+        prepareContext();
+        update(lease.proxy, input, offset, len);
     }
 
     @Override
     public int digest(byte[] outbuf, int offset, int len)
         throws DigestException
     {
-        if( digestProxy == null ) {
+        if( lease.proxy == null ) {
             throw new DigestException("Digest not correctly initialized");
         }
         if( outbuf.length < offset+len ) {
@@ -79,26 +127,39 @@ public final class PK11MessageDigest
                 "Output buffer is not large enough for offset and length");
         }
 
-        int retval = digest(digestProxy, outbuf, offset, len);
+        prepareContext();
+        int retval = digest(lease.proxy, outbuf, offset, len);
 
-        reset();
+        restart = true;
 
         return retval;
     }
 
     @Override
     public void reset() throws DigestException {
-        if( ! (alg instanceof HMACAlgorithm || alg instanceof CMACAlgorithm) ) {
+        if( lease.proxy != null ) {
+            restart = true;
+        } else if( ! (alg instanceof HMACAlgorithm || alg instanceof CMACAlgorithm) ) {
             // This is a regular digest, so we have enough information
             // to initialize the context
-            this.digestProxy = initDigest(alg);
-        } else if( hmacKey != null ) {
-            // This is an HMAC digest, and we have a key
-            this.digestProxy = initHMAC(token, alg, hmacKey);
-        } else {
-            // this is an HMAC digest for which we don't have the key yet,
-            // we have to wait to construct the context
-            this.digestProxy = null;
+            acquireContext();
+        }
+        // Otherwise this is an HMAC digest for which we don't have the key
+        // yet; we have to wait to construct the context.
+    }
+
+    /**
+     * Returns an independent copy of this digest, including its HMAC key
+     * and any data digested so far.
+     */
+    @Override
+    public PK11MessageDigest clone() throws CloneNotSupportedException {
+        try {
+            return new PK11MessageDigest(this);
+        } catch (DigestException e) {
+            CloneNotSupportedException cnse = new CloneNotSupportedException(e.getMessage());
+            cnse.initCause(e);
+            throw cnse;
         }
     }
 
@@ -107,6 +168,40 @@ public final class PK11MessageDigest
         return alg;
     }
 
+    /**
+     * Takes a context for the current algorithm and HMAC key from the pool,
+     * creating one if none is idle.
+     */
+    private void acquireContext() throws DigestException {
+        CipherContextProxy proxy = DigestContextPool.acquire(alg, hmacKey);
+        restart = proxy != null;
+
+        if (proxy == null) {
+            if (hmacKey != null) {
+                proxy = initHMAC(token, alg, hmacKey);
+            } else {
+                proxy = initDigest(alg);
+            }
+        }
+
+        lease.key = hmacKey;
+        lease.proxy = proxy;
+    }
+
+    private void releaseContext() {
+        CipherContextProxy proxy = lease.proxy;
+        lease.proxy = null;
+
+        DigestContextPool.release(lease.alg, lease.key, proxy);
+    }
+
+    private void prepareContext() throws DigestException {
+        if (restart) {
+            reinit(lease.proxy);
+            restart = false;
+        }
+    }
+
     private static native CipherContextProxy
     initDigest(DigestAlgorithm alg)
         throws DigestException;
@@ -115,25 +210,47 @@ public final class PK11MessageDigest
     initHMAC(PK11Token token, DigestAlgorithm alg, PK11SymKey key)
         throws DigestException;
 
+    private static native void
+    reinit(CipherContextProxy proxy)
+        throws DigestException;
+
+    private static native CipherContextProxy
+    cloneContext(CipherContextProxy proxy)
+        throws DigestException;
+
     private static native void
     update(CipherContextProxy proxy, byte[] inbuf, int offset, int len);
 
     private static native int
     digest(CipherContextProxy proxy, byte[] outbuf, int offset, int len);
 
+    /**
+     * Returns the context to the pool. The digest can't be used afterwards.
+     */
     @Override
-    public void finalize() throws Throwable {
-        close();
+    public void close() throws Exception {
+        releaseContext();
+
+        if (registration != null) {
+            registration.disarm();
+            registration = null;
+        }
     }
 
-    @Override
-    public void close() throws Exception {
-        if (digestProxy != null) {
-            try {
-                digestProxy.close();
-            } finally {
-                digestProxy = null;
-            }
+    /**
+     * The pooled context held by a digest, along with its pool key.
+     */
+    private static class Lease implements Runnable {
+        DigestAlgorithm alg;
+        PK11SymKey key;
+        CipherContextProxy proxy;
+
+        @Override
+        public void run() {
+            CipherContextProxy released = proxy;
+            proxy = null;
+
+            DigestContextPool.release(alg, key, released);
         }
     }
 }
@@ -7,6 +7,10 @@ package org.mozilla.jss.pkcs11;
 /**
  * A random number generator for PKCS #11.
  *
+ * <p>The NSS generator does its own locking, so an instance may be shared
+ * between threads.
+ *
+ * @see PK11BufferedSecureRandom
  * @see org.mozilla.jss.CryptoManager
  */
 public final
@@ -24,7 +28,7 @@ class PK11SecureRandom implements org.mozilla.jss.crypto.JSSSecureRandom
     ////////////////////////////////////////////////////
 
     @Override
-    public synchronized native void
+    public native void
     setSeed( byte[] seed );
 
     @Override
@@ -42,7 +46,7 @@ class PK11SecureRandom implements org.mozilla.jss.crypto.JSSSecureRandom
     }
 
     @Override
-    public synchronized native void
+    public native void
     nextBytes( byte bytes[] );
 }
 
@@ -351,6 +351,156 @@ public final class PK11Signature
 	protected native boolean engineVerifyNative(byte[] sigBytes)
 		throws SignatureException, TokenException;
 
+    @Override
+    public byte[][] engineSignAll(byte[][] messages)
+        throws SignatureException, TokenException
+    {
+        validateBatch(SIGN, messages, null);
+
+        if (raw) {
+            rawInput.reset();
+            return engineSignDigestsNative((PK11PrivKey) key, null, messages);
+        }
+        return engineSignAllNative(messages);
+    }
+
+    @Override
+    public byte[][] engineSignDigests(byte[][] digests)
+        throws SignatureException, TokenException
+    {
+        validateBatch(SIGN, digests, null);
+
+        if (raw) {
+            rawInput.reset();
+            return engineSignDigestsNative((PK11PrivKey) key, null, digests);
+        }
+        return engineSignDigestsNative((PK11PrivKey) key,
+            getPrehashedDigestAlg(digests), digests);
+    }
+
+    @Override
+    public boolean[] engineVerifyAll(byte[][] messages, byte[][] signatures)
+        throws SignatureException, TokenException
+    {
+        validateBatch(VERIFY, messages, signatures);
+
+        if (raw) {
+            rawInput.reset();
+            return engineVerifyDigestsNative((PK11PubKey) key, null,
+                messages, signatures);
+        }
+        return engineVerifyAllNative(messages, signatures);
+    }
+
+    @Override
+    public boolean[] engineVerifyDigests(byte[][] digests, byte[][] signatures)
+        throws SignatureException, TokenException
+    {
+        validateBatch(VERIFY, digests, signatures);
+
+        if (raw) {
+            rawInput.reset();
+            return engineVerifyDigestsNative((PK11PubKey) key, null,
+                digests, signatures);
+        }
+        return engineVerifyDigestsNative((PK11PubKey) key,
+            getPrehashedDigestAlg(digests), digests, signatures);
+    }
+
+    private void validateBatch(int expectedState, byte[][] inputs,
+        byte[][] signatures) throws SignatureException
+    {
+        if (inputs == null) {
+            throw new SignatureException("No input provided");
+        }
+        if (state != expectedState) {
+            throw new SignatureException("Signature is not initialized properly");
+        }
+        validateUpdate();
+
+        for (byte[] input : inputs) {
+            if (input == null) {
+                throw new SignatureException("No input provided");
+            }
+        }
+
+        if (expectedState != VERIFY) {
+            return;
+        }
+        if (signatures == null || signatures.length != inputs.length) {
+            throw new SignatureException("Expected one signature for each input");
+        }
+        for (byte[] sig : signatures) {
+            if (sig == null) {
+                throw new SignatureException("No signature bytes provided");
+            }
+        }
+    }
+
+    /**
+     * Returns the digest algorithm the given pre-hashed inputs must have
+     * been computed with, after checking their lengths.
+     */
+    private DigestAlgorithm getPrehashedDigestAlg(byte[][] digests)
+        throws SignatureException
+    {
+        // The context computes the RSA-PSS encoding itself; NSS can't
+        // apply it to a bare digest.
+        if (isRSAPSSAlgorithm((SignatureAlgorithm) algorithm)) {
+            throw new SignatureException(
+                "Pre-hashed signatures are not supported for " + algorithm);
+        }
+
+        DigestAlgorithm digestAlg;
+        try {
+            digestAlg = ((SignatureAlgorithm) algorithm).getDigestAlg();
+        } catch (NoSuchAlgorithmException e) {
+            throw new SignatureException("Unknown digest algorithm for " +
+                algorithm, e);
+        }
+
+        for (byte[] digest : digests) {
+            if (digest.length != digestAlg.getOutputSize()) {
+                throw new SignatureException("Expected a " +
+                    digestAlg.getOutputSize() + "-byte " + digestAlg +
+                    " digest, got " + digest.length + " bytes");
+            }
+        }
+        return digestAlg;
+    }
+
+    /**
+     * Signs each message with the signing context, which is left ready
+     * for further messages.
+     */
+    private native byte[][] engineSignAllNative(byte[][] messages)
+        throws SignatureException, TokenException;
+
+    /**
+     * Verifies each message with the verification context, which is left
+     * ready for further messages.
+     */
+    private native boolean[] engineVerifyAllNative(byte[][] messages,
+        byte[][] signatures)
+        throws SignatureException, TokenException;
+
+    /**
+     * Signs each digest with the given private key. If digestAlg is null,
+     * the digests are signed as-is, as for raw signing.
+     */
+    private static native byte[][] engineSignDigestsNative(PrivateKey key,
+        DigestAlgorithm digestAlg, byte[][] digests)
+        throws SignatureException, TokenException;
+
+    /**
+     * Verifies the signature of each digest with the given public key. If
+     * digestAlg is null, the digests are verified as-is, as for raw
+     * verification.
+     */
+    private static native boolean[] engineVerifyDigestsNative(PublicKey key,
+        DigestAlgorithm digestAlg, byte[][] digests, byte[][] signatures)
+        throws SignatureException, TokenException;
+
     @Override
     public void engineSetParameter(AlgorithmParameterSpec params)
         throws InvalidAlgorithmParameterException, TokenException
@@ -405,11 +555,6 @@ public final class PK11Signature
             || algorithm == SignatureAlgorithm.RSAPSSSignature;
     }
 
-    @Override
-    public void finalize() throws Throwable {
-        close();
-    }
-
     @Override
     public void close() throws Exception {
         if (sigContext != null) {
@@ -205,7 +205,16 @@ public final class PK11Store implements CryptoStore {
 	// Currently have to use PK11_DeleteTokenObject + PK11_FindObjectForCert
 	// or maybe SEC_DeletePermCertificate.
     @Override
-    public native void deleteCert(X509Certificate cert)
+    public void deleteCert(X509Certificate cert)
+        throws NoSuchItemOnTokenException, TokenException {
+        try {
+            deleteCertNative(cert);
+        } finally {
+            TrustAnchorIndex.invalidate();
+        }
+    }
+
+    protected native void deleteCertNative(X509Certificate cert)
         throws NoSuchItemOnTokenException, TokenException;
 
     /**
@@ -216,7 +225,16 @@ public final class PK11Store implements CryptoStore {
      * @exception TokenException General token error
      */
     @Override
-    public native void deleteCertOnly(X509Certificate cert)
+    public void deleteCertOnly(X509Certificate cert)
+        throws NoSuchItemOnTokenException, TokenException {
+        try {
+            deleteCertOnlyNative(cert);
+        } finally {
+            TrustAnchorIndex.invalidate();
+        }
+    }
+
+    protected native void deleteCertOnlyNative(X509Certificate cert)
         throws NoSuchItemOnTokenException, TokenException;
 
 	////////////////////////////////////////////////////////////
@@ -111,9 +111,4 @@ class SymKeyProxy extends KeyProxy {
 
     @Override
     protected native void releaseNativeResources();
-
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-    }
 }
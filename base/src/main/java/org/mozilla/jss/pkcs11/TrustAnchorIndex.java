@@ -0,0 +1,203 @@
+package org.mozilla.jss.pkcs11;
+
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.security.auth.x500.X500Principal;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.NotInitializedException;
+import org.mozilla.jss.netscape.security.util.DerValue;
+import org.mozilla.jss.netscape.security.util.Utils;
+import org.mozilla.jss.netscape.security.x509.AuthorityKeyIdentifierExtension;
+import org.mozilla.jss.netscape.security.x509.KeyIdentifier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Index of the CA certificates in the NSS database, keyed by subject DN and
+ * by subject key identifier.
+ *
+ * This lets JSSTrustManager find the issuer of a certificate without
+ * re-enumerating the NSS database or attempting a signature verification
+ * against every CA certificate. The index is built on first use and rebuilt
+ * after JSS imports or deletes certificates or changes their trust; call
+ * invalidate() after modifying the NSS database by other means.
+ */
+public class TrustAnchorIndex {
+
+    final static Logger logger = LoggerFactory.getLogger(TrustAnchorIndex.class);
+
+    final static String SUBJECT_KEY_ID_OID = "2.5.29.14";
+    final static String AUTHORITY_KEY_ID_OID = "2.5.29.35";
+
+    private static AtomicLong generation = new AtomicLong();
+    private static TrustAnchorIndex instance;
+
+    private long indexGeneration;
+    private X509Certificate[] anchors;
+    private Map<X500Principal, List<X509Certificate>> bySubject = new HashMap<>();
+    private Map<String, List<X509Certificate>> byKeyID = new HashMap<>();
+
+    TrustAnchorIndex(X509Certificate[] anchors, long indexGeneration) {
+        this.anchors = anchors;
+        this.indexGeneration = indexGeneration;
+
+        for (X509Certificate anchor : anchors) {
+            bySubject.computeIfAbsent(anchor.getSubjectX500Principal(), k -> new ArrayList<>()).add(anchor);
+
+            String keyID = getSubjectKeyID(anchor);
+            if (keyID != null) {
+                byKeyID.computeIfAbsent(keyID, k -> new ArrayList<>()).add(anchor);
+            }
+        }
+    }
+
+    /**
+     * Get the current index, building it from the CA certificates in the
+     * NSS database if it is missing or has been invalidated.
+     */
+    public static synchronized TrustAnchorIndex getInstance() {
+        long current = generation.get();
+        if (instance != null && instance.indexGeneration == current) {
+            return instance;
+        }
+
+        logger.debug("TrustAnchorIndex: loading CA certificates");
+
+        List<X509Certificate> caCerts = new ArrayList<>();
+        try {
+            CryptoManager manager = CryptoManager.getInstance();
+            for (org.mozilla.jss.crypto.X509Certificate cert : manager.getCACerts()) {
+                logger.debug("TrustAnchorIndex:  - " + cert.getSubjectDN());
+                caCerts.add((X509Certificate) cert);
+            }
+
+        } catch (NotInitializedException e) {
+            logger.error("TrustAnchorIndex: Unable to get CryptoManager: " + e, e);
+            throw new RuntimeException(e);
+        }
+
+        instance = new TrustAnchorIndex(caCerts.toArray(new X509Certificate[caCerts.size()]), current);
+        return instance;
+    }
+
+    /**
+     * Discard the current index; it is rebuilt on next use.
+     */
+    public static void invalidate() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Counter incremented on every invalidate(); callers caching results
+     * derived from the trust anchors can compare it to detect changes.
+     */
+    public static long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Get all currently valid CA certificates.
+     */
+    public X509Certificate[] getValidAnchors() {
+        List<X509Certificate> result = new ArrayList<>(anchors.length);
+
+        for (X509Certificate anchor : anchors) {
+            if (isValid(anchor)) {
+                result.add(anchor);
+            }
+        }
+
+        return result.toArray(new X509Certificate[result.size()]);
+    }
+
+    /**
+     * Get the currently valid CA certificates which could have issued the
+     * specified certificate.
+     *
+     * When the certificate has an authority key identifier matching the
+     * subject key identifier of a CA certificate, only those CA
+     * certificates are returned. Otherwise, the candidates are the CA
+     * certificates whose subject matches the certificate's issuer.
+     */
+    public List<X509Certificate> findIssuers(X509Certificate cert) {
+        List<X509Certificate> candidates = null;
+
+        String keyID = getAuthorityKeyID(cert);
+        if (keyID != null) {
+            candidates = byKeyID.get(keyID);
+        }
+
+        if (candidates == null) {
+            candidates = bySubject.get(cert.getIssuerX500Principal());
+        }
+
+        if (candidates == null) {
+            return Collections.emptyList();
+        }
+
+        List<X509Certificate> result = new ArrayList<>(candidates.size());
+        for (X509Certificate candidate : candidates) {
+            if (isValid(candidate)) {
+                result.add(candidate);
+            }
+        }
+
+        return result;
+    }
+
+    private static boolean isValid(X509Certificate cert) {
+        try {
+            cert.checkValidity();
+            return true;
+        } catch (Exception e) {
+            logger.debug("TrustAnchorIndex: invalid CA certificate " + cert.getSubjectX500Principal() + ": " + e);
+            return false;
+        }
+    }
+
+    static String getSubjectKeyID(X509Certificate cert) {
+        byte[] ext = cert.getExtensionValue(SUBJECT_KEY_ID_OID);
+        if (ext == null) {
+            return null;
+        }
+
+        try {
+            // getExtensionValue() returns the OCTET STRING wrapping the
+            // extension value, which is itself an OCTET STRING.
+            DerValue value = new DerValue(new DerValue(ext).getOctetString());
+            return Utils.HexEncode(new KeyIdentifier(value).getIdentifier());
+
+        } catch (Exception e) {
+            logger.debug("TrustAnchorIndex: unable to parse SKI of " + cert.getSubjectX500Principal() + ": " + e);
+            return null;
+        }
+    }
+
+    static String getAuthorityKeyID(X509Certificate cert) {
+        byte[] ext = cert.getExtensionValue(AUTHORITY_KEY_ID_OID);
+        if (ext == null) {
+            return null;
+        }
+
+        try {
+            AuthorityKeyIdentifierExtension aki = new AuthorityKeyIdentifierExtension(Boolean.FALSE, new DerValue(ext).getOctetString());
+            KeyIdentifier keyID = (KeyIdentifier) aki.get(AuthorityKeyIdentifierExtension.KEY_ID);
+            if (keyID == null) {
+                return null;
+            }
+
+            return Utils.HexEncode(keyID.getIdentifier());
+
+        } catch (Exception e) {
+            logger.debug("TrustAnchorIndex: unable to parse AKI of " + cert.getSubjectX500Principal() + ": " + e);
+            return null;
+        }
+    }
+}
@@ -6,6 +6,8 @@ package org.mozilla.jss.provider.java.security;
 
 import org.mozilla.jss.crypto.TokenSupplierManager;
 import org.mozilla.jss.crypto.JSSSecureRandom;
+import org.mozilla.jss.pkcs11.PK11BufferedSecureRandom;
+import org.mozilla.jss.pkcs11.PK11SecureRandom;
 
 public class JSSSecureRandomSpi extends java.security.SecureRandomSpi {
 
@@ -17,6 +19,11 @@ public class JSSSecureRandomSpi extends java.security.SecureRandomSpi {
         engine = TokenSupplierManager.getTokenSupplier().getSecureRNG();
     }
 
+    JSSSecureRandomSpi(JSSSecureRandom engine) {
+        super();
+        this.engine = engine;
+    }
+
     @Override
     protected byte[]
     engineGenerateSeed(int numBytes) {
@@ -36,4 +43,27 @@ public class JSSSecureRandomSpi extends java.security.SecureRandomSpi {
     engineSetSeed(byte[] seed) {
         engine.setSeed(seed);
     }
+
+    /**
+     * Serves small requests from per-thread buffers which are refilled
+     * from NSS in large chunks.
+     *
+     * @see PK11BufferedSecureRandom
+     */
+    public static class Buffered extends JSSSecureRandomSpi {
+        private static final long serialVersionUID = 1L;
+
+        public Buffered() {
+            super(new PK11BufferedSecureRandom());
+        }
+
+        @Override
+        protected byte[]
+        engineGenerateSeed(int numBytes) {
+            // seed material is never taken from a buffer
+            byte[] bytes = new byte[numBytes];
+            new PK11SecureRandom().nextBytes(bytes);
+            return bytes;
+        }
+    }
 }
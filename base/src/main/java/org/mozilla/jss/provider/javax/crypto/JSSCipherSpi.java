@@ -4,6 +4,7 @@
 
 package org.mozilla.jss.provider.javax.crypto;
 
+import java.nio.ByteBuffer;
 import java.security.AlgorithmParameters;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -21,6 +22,7 @@ import javax.crypto.IllegalBlockSizeException;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
 import javax.crypto.ShortBufferException;
+import javax.crypto.spec.GCMParameterSpec;
 import javax.crypto.spec.IvParameterSpec;
 import javax.crypto.spec.RC2ParameterSpec;
 
@@ -52,9 +54,16 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
     private KeyWrapAlgorithm wrapAlg = null;
     private AlgorithmParameterSpec params = null;
     private int blockSize;
+    private int opmode;
     //keyStrength  is used for RC2ParameterSpec and EncryptionAlgorithm.lookup
     private int keyStrength;
 
+    // Parameters generated for AEAD encryption when none are given: the
+    // 96-bit nonce recommended for AES-GCM (NIST SP 800-38D) and required
+    // by ChaCha20-Poly1305 (RFC 8439), and a full-length tag.
+    private static final int AEAD_IV_LENGTH = 12;
+    private static final int AEAD_TAG_BITS = 128;
+
     protected JSSCipherSpi(String algFamily) {
         this.algFamily = algFamily;
         token = TokenSupplierManager.getTokenSupplier().getThreadToken();
@@ -106,6 +115,7 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
         wrapper = null;
 
         params = givenParams;
+        this.opmode = opmode;
         if( algFamily==null ) {
             throw new InvalidAlgorithmParameterException(
                 "incorrectly specified algorithm");
@@ -220,6 +230,10 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
             if (algFamily.compareToIgnoreCase("RC2") == 0) {
                 gp = givenParams.getParameterSpec(
                     javax.crypto.spec.RC2ParameterSpec.class );
+            } else if (algFamily.compareToIgnoreCase("ChaCha20-Poly1305") == 0) {
+                gp = givenParams.getParameterSpec(IvParameterSpec.class);
+            } else if (algMode.compareToIgnoreCase("GCM") == 0) {
+                gp = givenParams.getParameterSpec(GCMParameterSpec.class);
             } else if (algMode.compareToIgnoreCase("CBC") == 0) {
                  gp = givenParams.getParameterSpec(
                              javax.crypto.spec.IvParameterSpec.class );
@@ -255,7 +269,9 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
             return null;
         }
         // generate an IV
-        byte[] iv = new byte[blockSize];
+        boolean aead = alg instanceof EncryptionAlgorithm &&
+            ((EncryptionAlgorithm) alg).isAEAD();
+        byte[] iv = new byte[aead ? AEAD_IV_LENGTH : blockSize];
         try {
             SecureRandom random = SecureRandom.getInstance("pkcs11prng",
                                                        "Mozilla-JSS");
@@ -271,6 +287,9 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
             } else if ( paramClasses[i].equals( RC2ParameterSpec.class ) ) {
                 algParSpec = new RC2ParameterSpec(keyStrength, iv);
                 break;
+            } else if ( paramClasses[i].equals( GCMParameterSpec.class ) ) {
+                algParSpec = new GCMParameterSpec(AEAD_TAG_BITS, iv);
+                break;
             }
         }
 
@@ -294,6 +313,8 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
             return ((IvParameterSpec)params).getIV();
         } else if( params instanceof RC2ParameterSpec ) {
             return ((RC2ParameterSpec)params).getIV();
+        } else if( params instanceof GCMParameterSpec ) {
+            return ((GCMParameterSpec)params).getIV();
         } else {
             return null;
         }
@@ -307,6 +328,9 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
                || ( params instanceof RC2ParameterSpec )) {
                 algParams = AlgorithmParameters.getInstance(algFamily);
                 algParams.init(params);
+            } else if( params instanceof GCMParameterSpec ) {
+                algParams = AlgorithmParameters.getInstance("GCM");
+                algParams.init(params);
             }
           } catch(NoSuchAlgorithmException e) {
               throw new RuntimeException("Unable to get parameters: " + e.getMessage(), e);
@@ -318,10 +342,43 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
 
     @Override
     public int engineGetOutputSize(int inputLen) {
+        if( cipher != null && encAlg.isAEAD() ) {
+            // The whole message is output by doFinal, with the tag
+            // appended when encrypting and removed when decrypting.
+            int tagLength = AEAD_TAG_BITS / 8;
+            if( params instanceof GCMParameterSpec ) {
+                tagLength = ((GCMParameterSpec)params).getTLen() / 8;
+            }
+            int total = cipher.getBufferedLength() + inputLen;
+            if( opmode == Cipher.ENCRYPT_MODE ) {
+                return total + tagLength;
+            }
+            return Math.max(total - tagLength, 0);
+        }
+
         int total = (blockSize-1) + inputLen;
         return ((total / blockSize) + 1) * blockSize;
     }
 
+    @Override
+    public void engineUpdateAAD(byte[] src, int offset, int len) {
+        if(cipher == null) {
+            throw new IllegalStateException();
+        }
+        try {
+            cipher.updateAAD(src, offset, len);
+        } catch(TokenException te) {
+            throw new TokenRuntimeException(te.getMessage());
+        }
+    }
+
+    @Override
+    public void engineUpdateAAD(ByteBuffer src) {
+        byte[] aad = new byte[src.remaining()];
+        src.get(aad);
+        engineUpdateAAD(aad, 0, aad.length);
+    }
+
     @Override
     public byte[] engineUpdate(byte[] input, int inputOffset, int inputLen) {
         if(cipher == null) {
@@ -340,13 +397,33 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
     public int engineUpdate(byte[] input, int inputOffset, int inputLen,
         byte[] output, int outputOffset) throws ShortBufferException
     {
-        byte[] bytes = engineUpdate(input, inputOffset, inputLen);
-        if( bytes.length > output.length-outputOffset ) {
-            throw new ShortBufferException(bytes.length +  " needed, " +
-                (output.length-outputOffset) + " supplied");
+        if(cipher == null) {
+            throw new IllegalStateException();
+        }
+        try {
+            return cipher.update(input, inputOffset, inputLen, output, outputOffset);
+        } catch(TokenException te) {
+            throw new TokenRuntimeException(te.getMessage());
+        }
+    }
+
+    @Override
+    public int engineUpdate(ByteBuffer input, ByteBuffer output)
+        throws ShortBufferException
+    {
+        // Heap buffers are handled by CipherSpi through their arrays.
+        if( !input.isDirect() && !output.isDirect() ) {
+            return super.engineUpdate(input, output);
+        }
+        if(cipher == null) {
+            throw new IllegalStateException();
+        }
+        checkOutputSize(input, output);
+        try {
+            return cipher.update(input, output);
+        } catch(TokenException te) {
+            throw new TokenRuntimeException(te.getMessage());
         }
-        System.arraycopy(bytes, 0, output, outputOffset, bytes.length);
-        return bytes.length;
     }
 
     @Override
@@ -379,13 +456,56 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
             throws ShortBufferException, IllegalBlockSizeException,
             BadPaddingException
     {
-        byte[] bytes = engineDoFinal(input, inputOffset, inputLen);
-        if( bytes.length > output.length-outputOffset ) {
-            throw new ShortBufferException(bytes.length +  " needed, " +
-                (output.length-outputOffset) + " supplied");
+        if( cipher == null ) {
+            throw new IllegalStateException();
+        }
+        try {
+            return cipher.doFinal(input, inputOffset, inputLen, output, outputOffset);
+        } catch(IllegalStateException ise) {
+            throw ise;
+        } catch(org.mozilla.jss.crypto.IllegalBlockSizeException ibse) {
+            throw new IllegalBlockSizeException(ibse.getMessage());
+        } catch(TokenException te) {
+            throw new TokenRuntimeException(te.getMessage());
+        }
+    }
+
+    @Override
+    public int engineDoFinal(ByteBuffer input, ByteBuffer output)
+            throws ShortBufferException, IllegalBlockSizeException,
+            BadPaddingException
+    {
+        // Heap buffers are handled by CipherSpi through their arrays.
+        if( !input.isDirect() && !output.isDirect() ) {
+            return super.engineDoFinal(input, output);
+        }
+        if( cipher == null ) {
+            throw new IllegalStateException();
+        }
+        checkOutputSize(input, output);
+        try {
+            return cipher.doFinal(input, output);
+        } catch(IllegalStateException ise) {
+            throw ise;
+        } catch(org.mozilla.jss.crypto.IllegalBlockSizeException ibse) {
+            throw new IllegalBlockSizeException(ibse.getMessage());
+        } catch(TokenException te) {
+            throw new TokenRuntimeException(te.getMessage());
+        }
+    }
+
+    /**
+     * Like CipherSpi, reject output buffers smaller than
+     * engineGetOutputSize() before consuming any input.
+     */
+    private void checkOutputSize(ByteBuffer input, ByteBuffer output)
+        throws ShortBufferException
+    {
+        int needed = engineGetOutputSize(input.remaining());
+        if( output.remaining() < needed ) {
+            throw new ShortBufferException(needed + " needed, " +
+                output.remaining() + " supplied");
         }
-        System.arraycopy(bytes, 0, output, outputOffset, bytes.length);
-        return bytes.length;
     }
 
     @Override
@@ -533,5 +653,13 @@ public class JSSCipherSpi extends javax.crypto.CipherSpi {
             super("RC2");
         }
     }
+    static public class ChaCha20Poly1305 extends JSSCipherSpi {
+        public ChaCha20Poly1305() {
+            super("ChaCha20-Poly1305");
+            // The transformation has no mode or padding of its own.
+            engineSetMode("None");
+            engineSetPadding("NoPadding");
+        }
+    }
 
 }
@@ -103,6 +103,11 @@ public class JSSKeyGeneratorSpi extends javax.crypto.KeyGeneratorSpi {
             super(KeyGenAlgorithm.RC2);
         }
     }
+    public static class ChaCha20 extends JSSKeyGeneratorSpi {
+        public ChaCha20() {
+            super(KeyGenAlgorithm.CHACHA20);
+        }
+    }
     @Deprecated(since="5.0.1", forRemoval=true)
     public static class HmacSHA1 extends JSSKeyGeneratorSpi {
         public HmacSHA1() {
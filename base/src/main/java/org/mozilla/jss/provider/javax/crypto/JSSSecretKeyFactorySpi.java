@@ -380,6 +380,11 @@ public class JSSSecretKeyFactorySpi extends SecretKeyFactorySpi {
             super(KeyGenAlgorithm.RC2);
         }
     }
+    public static class ChaCha20 extends JSSSecretKeyFactorySpi {
+        public ChaCha20() {
+            super(KeyGenAlgorithm.CHACHA20);
+        }
+    }
     public static class PBE_MD5_DES_CBC extends JSSSecretKeyFactorySpi {
         public PBE_MD5_DES_CBC() {
             super(PBEAlgorithm.PBE_MD5_DES_CBC);
@@ -21,17 +21,13 @@ package org.mozilla.jss.provider.javax.crypto;
 
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.List;
 
 import javax.net.ssl.X509TrustManager;
 
-import org.mozilla.jss.CryptoManager;
-import org.mozilla.jss.NotInitializedException;
 import org.mozilla.jss.netscape.security.util.Cert;
-import org.mozilla.jss.pkcs11.PK11Cert;
+import org.mozilla.jss.pkcs11.TrustAnchorIndex;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -44,14 +40,58 @@ public class JSSTrustManager implements X509TrustManager {
 
     public boolean allowMissingExtendedKeyUsage = false;
 
+    protected VerifiedChainCache verifiedChainCache;
+
     public void configureAllowMissingExtendedKeyUsage(boolean allow) {
         allowMissingExtendedKeyUsage = allow;
+
+        // cached results may depend on the previous setting
+        if (verifiedChainCache != null) {
+            verifiedChainCache.clear();
+        }
+    }
+
+    /**
+     * Remember successfully validated chains in the given cache so that
+     * repeated validations of the same chain skip the signature checks.
+     * Disabled (null) by default.
+     */
+    public void configureVerifiedChainCache(VerifiedChainCache cache) {
+        verifiedChainCache = cache;
+    }
+
+    public VerifiedChainCache getVerifiedChainCache() {
+        return verifiedChainCache;
     }
 
     public void checkCertChain(X509Certificate[] certChain, String keyUsage) throws Exception {
 
         logger.debug("JSSTrustManager: checkCertChain(" + keyUsage + ")");
 
+        VerifiedChainCache cache = verifiedChainCache;
+        String key = null;
+
+        // read before validating so a change of trust anchors during the
+        // validation keeps its result out of the cache
+        long generation = TrustAnchorIndex.getGeneration();
+
+        if (cache != null) {
+            key = cache.getKey(certChain, keyUsage);
+            if (cache.contains(key)) {
+                logger.debug("JSSTrustManager: cert chain found in verified chain cache");
+                return;
+            }
+        }
+
+        validateCertChain(certChain, keyUsage);
+
+        if (cache != null) {
+            cache.add(key, certChain, generation);
+        }
+    }
+
+    protected void validateCertChain(X509Certificate[] certChain, String keyUsage) throws Exception {
+
         // sort cert chain from root to leaf
         certChain = Cert.sortCertificateChain(certChain);
 
@@ -59,14 +99,17 @@ public class JSSTrustManager implements X509TrustManager {
             logger.debug("JSSTrustManager:  - " + cert.getSubjectX500Principal());
         }
 
-        // get CA certs
-        X509Certificate[] caCerts = getAcceptedIssuers();
-
         // validating cert chain from root to leaf
+        X509Certificate[] caCerts = null;
         for (int i = 0; i < certChain.length; i++) {
 
             X509Certificate cert = certChain[i];
 
+            // look up the CA certs that could have issued the root of the chain
+            if (caCerts == null) {
+                caCerts = findIssuers(cert);
+            }
+
             // validating key usage on leaf cert only
             String usage;
             if (i == certChain.length - 1) {
@@ -82,6 +125,34 @@ public class JSSTrustManager implements X509TrustManager {
         }
     }
 
+    /**
+     * Return the trusted CA certificates which could have issued the given
+     * certificate, i.e. the candidates for the root of its chain.
+     *
+     * By default this looks the certificate up in the TrustAnchorIndex. If
+     * useAcceptedIssuers() returns true, the certificates returned by
+     * getAcceptedIssuers() are used instead.
+     */
+    protected X509Certificate[] findIssuers(X509Certificate cert) throws Exception {
+
+        if (useAcceptedIssuers()) {
+            return getAcceptedIssuers();
+        }
+
+        List<X509Certificate> issuers = TrustAnchorIndex.getInstance().findIssuers(cert);
+        return issuers.toArray(new X509Certificate[issuers.size()]);
+    }
+
+    /**
+     * Whether findIssuers() should take the trust anchors from
+     * getAcceptedIssuers() rather than the TrustAnchorIndex. Subclasses
+     * which override getAcceptedIssuers() to restrict the trusted CAs
+     * should override this to return true. Returns false by default.
+     */
+    protected boolean useAcceptedIssuers() {
+        return false;
+    }
+
     public void checkCert(X509Certificate cert, X509Certificate[] caCerts, String keyUsage) throws Exception {
 
         logger.debug("JSSTrustManager: checkCert(" + cert.getSubjectX500Principal() + "):");
@@ -95,6 +166,12 @@ public class JSSTrustManager implements X509TrustManager {
             boolean[] ski = caCert.getSubjectUniqueID();
             logger.debug("JSSTrustManager: SKI of " + caCert.getSubjectX500Principal() + ": " + Arrays.toString(ski));
 
+            // skip the signature check when the names don't chain
+            if (!caCert.getSubjectX500Principal().equals(cert.getIssuerX500Principal())) {
+                logger.debug("JSSTrustManager: issuer mismatch: " + caCert.getSubjectX500Principal());
+                continue;
+            }
+
             try {
                 cert.verify(caCert.getPublicKey(), "Mozilla-JSS");
                 issuer = caCert;
@@ -196,28 +273,6 @@ public class JSSTrustManager implements X509TrustManager {
 
         logger.debug("JSSTrustManager: getAcceptedIssuers():");
 
-        Collection<X509Certificate> caCerts = new ArrayList<>();
-
-        try {
-            CryptoManager manager = CryptoManager.getInstance();
-            for (org.mozilla.jss.crypto.X509Certificate cert : manager.getCACerts()) {
-                logger.debug("JSSTrustManager:  - " + cert.getSubjectDN());
-
-                try {
-                    PK11Cert caCert = (PK11Cert) cert;
-                    caCert.checkValidity();
-                    caCerts.add(caCert);
-
-                } catch (Exception e) {
-                    logger.debug("JSSTrustManager: invalid CA certificate: " + e);
-                }
-            }
-
-        } catch (NotInitializedException e) {
-            logger.error("JSSTrustManager: Unable to get CryptoManager: " + e, e);
-            throw new RuntimeException(e);
-        }
-
-        return caCerts.toArray(new X509Certificate[caCerts.size()]);
+        return TrustAnchorIndex.getInstance().getValidAnchors();
     }
 }
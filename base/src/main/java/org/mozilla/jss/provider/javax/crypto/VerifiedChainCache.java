@@ -0,0 +1,243 @@
+package org.mozilla.jss.provider.javax.crypto;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.mozilla.jss.netscape.security.util.Utils;
+import org.mozilla.jss.pkcs11.TrustAnchorIndex;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Bounded LRU cache of certificate chains which JSSTrustManager has
+ * successfully validated.
+ *
+ * Entries are keyed by a SHA-256 hash over the DER encoding of every
+ * certificate in the chain, in the order presented by the peer, together
+ * with the required extended key usage. An entry expires after the
+ * configured lifetime or at the earliest notAfter date in the chain,
+ * whichever comes first. All entries are dropped when the set of trust
+ * anchors changes (see TrustAnchorIndex.invalidate()).
+ *
+ * Only successful validations are cached; failures are always re-checked.
+ */
+public class VerifiedChainCache {
+
+    final static Logger logger = LoggerFactory.getLogger(VerifiedChainCache.class);
+
+    /**
+     * Default maximum number of cached chains.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1024;
+
+    /**
+     * Default lifetime of a cache entry, in milliseconds.
+     */
+    public static final long DEFAULT_LIFETIME = 5 * 60 * 1000;
+
+    private static class Entry {
+        long expiration;
+        long generation;
+
+        Entry(long expiration, long generation) {
+            this.expiration = expiration;
+            this.generation = generation;
+        }
+    }
+
+    private LinkedHashMap<String, Entry> entries;
+
+    private int maxEntries;
+    private long lifetime;
+
+    private AtomicLong hits = new AtomicLong();
+    private AtomicLong misses = new AtomicLong();
+
+    public VerifiedChainCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_LIFETIME);
+    }
+
+    /**
+     * Create a cache holding at most maxEntries chains, each for at most
+     * lifetime milliseconds.
+     */
+    public VerifiedChainCache(int maxEntries, long lifetime) {
+        if (maxEntries <= 0) {
+            throw new IllegalArgumentException("Maximum number of entries must be positive: " + maxEntries);
+        }
+
+        if (lifetime <= 0) {
+            throw new IllegalArgumentException("Entry lifetime must be positive: " + lifetime);
+        }
+
+        this.maxEntries = maxEntries;
+        this.lifetime = lifetime;
+
+        // access-ordered so the eldest entry is the least recently used
+        entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                return size() > VerifiedChainCache.this.maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Compute the cache key of a chain for the given extended key usage.
+     *
+     * Returns null if the chain can't be encoded; such chains are never
+     * cached.
+     */
+    public String getKey(X509Certificate[] certChain, String keyUsage) {
+        if (certChain == null || certChain.length == 0) {
+            return null;
+        }
+
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+
+            for (X509Certificate cert : certChain) {
+                byte[] der = cert.getEncoded();
+
+                // length-prefix each cert so different splits of the same
+                // bytes don't collide
+                md.update((byte) (der.length >>> 24));
+                md.update((byte) (der.length >>> 16));
+                md.update((byte) (der.length >>> 8));
+                md.update((byte) der.length);
+                md.update(der);
+            }
+
+            if (keyUsage != null) {
+                md.update(keyUsage.getBytes(StandardCharsets.US_ASCII));
+            }
+
+            return Utils.HexEncode(md.digest());
+
+        } catch (CertificateEncodingException e) {
+            logger.debug("VerifiedChainCache: unable to encode chain: " + e);
+            return null;
+
+        } catch (Exception e) {
+            logger.warn("VerifiedChainCache: unable to hash chain: " + e, e);
+            return null;
+        }
+    }
+
+    /**
+     * Return true if the chain with the given key was validated recently
+     * enough to be trusted without checking it again.
+     */
+    public boolean contains(String key) {
+        if (key == null) {
+            return false;
+        }
+
+        long now = System.currentTimeMillis();
+        long generation = TrustAnchorIndex.getGeneration();
+
+        synchronized (this) {
+            Entry entry = entries.get(key);
+
+            if (entry != null && (entry.expiration <= now || entry.generation != generation)) {
+                entries.remove(key);
+                entry = null;
+            }
+
+            if (entry == null) {
+                misses.incrementAndGet();
+                return false;
+            }
+        }
+
+        hits.incrementAndGet();
+        return true;
+    }
+
+    /**
+     * Record that the chain with the given key was successfully validated
+     * against the trust anchors of the given TrustAnchorIndex generation,
+     * which the caller must read before starting the validation. Nothing
+     * is recorded if the trust anchors have changed since.
+     *
+     * The entry expires after the cache lifetime or at the earliest
+     * notAfter date in the chain, whichever is sooner.
+     */
+    public void add(String key, X509Certificate[] certChain, long generation) {
+        if (key == null) {
+            return;
+        }
+
+        if (generation != TrustAnchorIndex.getGeneration()) {
+            logger.debug("VerifiedChainCache: trust anchors changed during validation");
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long expiration = now + lifetime;
+
+        for (X509Certificate cert : certChain) {
+            expiration = Math.min(expiration, cert.getNotAfter().getTime());
+        }
+
+        if (expiration <= now) {
+            return;
+        }
+
+        // a concurrent change after the check above leaves a stale
+        // generation, which contains() rejects
+        Entry entry = new Entry(expiration, generation);
+
+        synchronized (this) {
+            entries.put(key, entry);
+        }
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public synchronized void clear() {
+        entries.clear();
+    }
+
+    /**
+     * Number of chains currently cached, including expired entries which
+     * haven't been looked up since they expired.
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public long getLifetime() {
+        return lifetime;
+    }
+
+    /**
+     * Number of lookups which found a valid entry.
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * Number of lookups which didn't find a valid entry.
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    @Override
+    public String toString() {
+        return "VerifiedChainCache[maxEntries=" + maxEntries + ", lifetime=" + lifetime +
+            ", size=" + size() + ", hits=" + getHitCount() + ", misses=" + getMissCount() + "]";
+    }
+}
@@ -8,11 +8,13 @@ import javax.net.ssl.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import org.mozilla.jss.nss.BufferPool;
 import org.mozilla.jss.provider.javax.crypto.JSSKeyManager;
 import org.mozilla.jss.ssl.javax.JSSEngine;
 import org.mozilla.jss.ssl.javax.JSSEngineReferenceImpl;
 import org.mozilla.jss.ssl.javax.JSSParameters;
 import org.mozilla.jss.ssl.javax.JSSServerSocketFactory;
+import org.mozilla.jss.ssl.javax.JSSSessionContext;
 import org.mozilla.jss.ssl.javax.JSSSocketFactory;
 import org.mozilla.jss.ssl.SSLVersion;
 
@@ -24,6 +26,9 @@ public class JSSContextSpi extends SSLContextSpi {
 
     SSLVersion protocol_version;
 
+    JSSSessionContext client_session_context = new JSSSessionContext(false);
+    JSSSessionContext server_session_context = new JSSSessionContext(true);
+
     @Override
     public void engineInit(KeyManager[] kms, TrustManager[] tms, SecureRandom sr) throws KeyManagementException {
         logger.debug("JSSContextSpi.engineInit(" + kms + ", " + tms + ", " + sr + ")");
@@ -72,6 +77,8 @@ public class JSSContextSpi extends SSLContextSpi {
     private void initializeEngine(JSSEngine eng) {
         eng.setKeyManager(key_manager);
         eng.setTrustManagers(trust_managers);
+        eng.setBufferPool(BufferPool.getDefault());
+        eng.setSessionContexts(client_session_context, server_session_context);
 
         if (protocol_version != null) {
             eng.setEnabledProtocols(protocol_version, protocol_version);
@@ -80,14 +87,14 @@ public class JSSContextSpi extends SSLContextSpi {
 
     @Override
     public SSLSessionContext engineGetClientSessionContext() {
-        logger.debug("JSSContextSpi.engineGetClientSessionContext() - not implemented");
-        return null;
+        logger.debug("JSSContextSpi.engineGetClientSessionContext()");
+        return client_session_context;
     }
 
     @Override
     public SSLSessionContext engineGetServerSessionContext() {
-        logger.debug("JSSContextSpi.engineGetServerSessionContext() - not implemented");
-        return null;
+        logger.debug("JSSContextSpi.engineGetServerSessionContext()");
+        return server_session_context;
     }
 
     @Override
@@ -13,6 +13,7 @@ import javax.net.ssl.X509KeyManager;
 import javax.net.ssl.X509TrustManager;
 
 import org.mozilla.jss.crypto.Policy;
+import org.mozilla.jss.nss.BufferPool;
 import org.mozilla.jss.nss.PR;
 import org.mozilla.jss.nss.PRFDProxy;
 import org.mozilla.jss.nss.SSL;
@@ -193,6 +194,20 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
      */
     protected HashMap<Integer, Integer> config;
 
+    /**
+     * Pool to acquire native buffers from and release them to; when null,
+     * buffers are created and freed by each engine.
+     */
+    protected BufferPool buffer_pool;
+
+    /**
+     * Session contexts shared with other engines from the same SSLContext;
+     * which one applies depends on the mode of this engine. Either may be
+     * null when this engine wasn't created through an SSLContext.
+     */
+    protected JSSSessionContext client_session_context;
+    protected JSSSessionContext server_session_context;
+
     /**
      * Set of cached server sockets based on the PK11Cert they were
      * initialized with.
@@ -847,6 +862,42 @@ public abstract class JSSEngine extends javax.net.ssl.SSLEngine {
         trust_managers = xtms;
     }
 
+    /**
+     * Set the pool that native buffers used by this JSSEngine are acquired
+     * from and released to. Must be called prior to the handshake
+     * beginning; passing null disables pooling.
+     */
+    public void setBufferPool(BufferPool pool) {
+        logger.debug("JSSEngine: setBufferPool(" + pool + ")");
+        buffer_pool = pool;
+    }
+
+    /**
+     * Get the pool native buffers are acquired from, if any.
+     */
+    public BufferPool getBufferPool() {
+        return buffer_pool;
+    }
+
+    /**
+     * Set the session contexts this JSSEngine records its sessions in and
+     * takes its session cache configuration from. Must be called prior to
+     * the handshake beginning.
+     */
+    public void setSessionContexts(JSSSessionContext client, JSSSessionContext server) {
+        logger.debug("JSSEngine: setSessionContexts(" + client + ", " + server + ")");
+        client_session_context = client;
+        server_session_context = server;
+    }
+
+    /**
+     * Get the session context for the current mode of this JSSEngine, if
+     * any.
+     */
+    public JSSSessionContext getSessionContext() {
+        return as_server ? server_session_context : client_session_context;
+    }
+
     /**
      * Gets the JSSSession object which reflects the status of this
      * JSS Engine's session.
@@ -2,6 +2,7 @@ package org.mozilla.jss.ssl.javax;
 
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.ref.WeakReference;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.ByteBuffer;
@@ -17,6 +18,7 @@ import javax.net.ssl.X509TrustManager;
 
 import org.mozilla.jss.nss.BadCertHandler;
 import org.mozilla.jss.nss.Buffer;
+import org.mozilla.jss.nss.BufferPool;
 import org.mozilla.jss.nss.BufferProxy;
 import org.mozilla.jss.nss.Cert;
 import org.mozilla.jss.nss.CertAuthHandler;
@@ -26,6 +28,7 @@ import org.mozilla.jss.nss.PRFDProxy;
 import org.mozilla.jss.nss.SSL;
 import org.mozilla.jss.nss.SSLErrors;
 import org.mozilla.jss.nss.SSLFDProxy;
+import org.mozilla.jss.nss.SECErrors;
 import org.mozilla.jss.nss.SSLPreliminaryChannelInfo;
 import org.mozilla.jss.nss.SecurityStatusResult;
 import org.mozilla.jss.pkcs11.PK11Cert;
@@ -37,6 +40,7 @@ import org.mozilla.jss.ssl.SSLCipher;
 import org.mozilla.jss.ssl.SSLHandshakeCompletedEvent;
 import org.mozilla.jss.ssl.SSLVersion;
 import org.mozilla.jss.ssl.SSLVersionRange;
+import org.mozilla.jss.util.NativeCleaner;
 
 /**
  * The reference JSSEngine implementation.
@@ -54,6 +58,11 @@ import org.mozilla.jss.ssl.SSLVersionRange;
  * as being from the appropriate side of the TLS connection.
  */
 public class JSSEngineReferenceImpl extends JSSEngine {
+    /**
+     * Maximum amount of application data carried by a single TLS record.
+     */
+    private static final int MAX_RECORD_SIZE = 1 << 14;
+
     /**
      * Faked peer information that we pass to the underlying BufferPRFD
      * implementation.
@@ -82,6 +91,12 @@ public class JSSEngineReferenceImpl extends JSSEngine {
      */
     private BufferProxy write_buf;
 
+    /**
+     * Releases ssl_fd and its buffers if this engine becomes unreachable
+     * without cleanup() being called.
+     */
+    private NativeCleaner.Registration native_resources;
+
     /**
      * Number of times heuristic has not matched the current state.
      *
@@ -98,6 +113,12 @@ public class JSSEngineReferenceImpl extends JSSEngine {
      */
     private boolean step_handshake;
 
+    /**
+     * Whether or not to process multiple TLS records per native call once
+     * the handshake has completed. See setRecordBatching(...).
+     */
+    private boolean record_batching = false;
+
     /**
      * Whether or not a FINISHED handshake status has been returned to our
      * caller.
@@ -293,14 +314,31 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         // If the buffers exist, destroy them and then recreate them.
 
         if (read_buf != null) {
-            Buffer.Free(read_buf);
+            freeBuffer(read_buf);
         }
-        read_buf = Buffer.Create(BUFFER_SIZE);
+        read_buf = allocateBuffer();
 
         if (write_buf != null) {
-            Buffer.Free(write_buf);
+            freeBuffer(write_buf);
+        }
+        write_buf = allocateBuffer();
+    }
+
+    private BufferProxy allocateBuffer() {
+        if (buffer_pool != null) {
+            return buffer_pool.acquire(BUFFER_SIZE);
+        }
+
+        return Buffer.Create(BUFFER_SIZE);
+    }
+
+    private void freeBuffer(BufferProxy buf) {
+        if (buffer_pool != null) {
+            buffer_pool.release(buf);
+            return;
         }
-        write_buf = Buffer.Create(BUFFER_SIZE);
+
+        Buffer.Free(buf);
     }
 
     private void createBufferFD() throws SSLException {
@@ -342,6 +380,9 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         fd = null;
         closed_fd = false;
 
+        native_resources = NativeCleaner.register(this,
+                new SSLFDReleaser(ssl_fd, read_buf, write_buf, buffer_pool));
+
         // Turn on SSL Alert Logging for the ssl_fd object.
         int ret = SSL.EnableAlertLogging(ssl_fd);
         if (ret == SSL.SECFailure) {
@@ -407,10 +448,15 @@ public class JSSEngineReferenceImpl extends JSSEngine {
 
         session.setLocalCertificates(new PK11Cert[]{ cert } );
 
-        // Create a small server session cache.
-        //
-        // TODO: Make this configurable.
-        initializeSessionCache(1, 100, null);
+        // Create the server session cache. NSS only allows this once per
+        // process, so the first server engine to get here decides its
+        // configuration. Without an SSLContext, keep it small.
+        JSSSessionContext context = getSessionContext();
+        if (context != null) {
+            initializeSessionCache(context.getSessionCacheSize(), context.getSessionTimeout(), null);
+        } else {
+            initializeSessionCache(1, 100, null);
+        }
 
         configureClientAuth();
     }
@@ -518,6 +564,15 @@ public class JSSEngineReferenceImpl extends JSSEngine {
                 throw new SSLException("Unable to set configuration value: " + key + "=" + value);
             }
         }
+
+        JSSSessionContext context = getSessionContext();
+        if (context != null) {
+            int tickets = context.getSessionTicketsEnabled() ? 1 : 0;
+            debug("Setting session tickets option: " + tickets);
+            if (SSL.OptionSet(ssl_fd, SSL.ENABLE_SESSION_TICKETS, tickets) != SSL.SECSuccess) {
+                throw new SSLException("Unable to configure session tickets: " + errorText(PR.GetError()));
+            }
+        }
     }
 
     private void applyHosts() throws SSLException {
@@ -564,7 +619,7 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             // from Runnable, so we can reuse it here as well. We can create
             // it ahead of time though. In this case, checkNeedCertValidation()
             // is never called.
-            ssl_fd.certAuthHandler = new CertValidationTask(ssl_fd);
+            ssl_fd.certAuthHandler = new CertValidationTask(this, ssl_fd);
 
             if (SSL.ConfigSyncTrustManagerCertAuthCallback(ssl_fd) == SSL.SECFailure) {
                 throw new SSLException("Unable to configure TrustManager validation on this JSSengine: " + errorText(PR.GetError()));
@@ -820,7 +875,7 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         debug("JSSEngine: checkNeedCertValidation() - creating task");
 
         // OK, time to create our runnable task.
-        task = new CertValidationTask(ssl_fd);
+        task = new CertValidationTask(this, ssl_fd);
 
         // Update our handshake state so we know what to do next.
         handshake_state = SSLEngineResult.HandshakeStatus.NEED_TASK;
@@ -910,48 +965,45 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         return result;
     }
 
-    private int putData(byte[] data, ByteBuffer[] buffers, int offset, int length) {
-        debug("JSSEngine: putData()");
-        // Handle the rather unreasonable task of moving data into the buffers.
-        // We assume the buffer parameters have already been checked by
-        // computeSize(...); that is, offset/length contracts hold and that
-        // each buffer in the range is non-null.
+    private int readData(ByteBuffer[] buffers, int offset, int length) {
+        debug("JSSEngine: readData()");
+        // Read decrypted application data from ssl_fd directly into the
+        // buffers, filling each in turn. We assume the buffer parameters
+        // have already been checked by computeSize(...); that is,
+        // offset/length contracts hold and that each buffer in the range is
+        // non-null.
         //
-        // We also assume that data.length does not exceed the total number
-        // of bytes the buffers can hold; this is what computeSize(...)'s
-        // return value should ensure. This directly means that the inner
-        // while loop won't exceed the bounds of offset+length.
+        // Returns the number of bytes read, or -1 if the first read failed;
+        // in the latter case, the caller should consult PR.GetError().
 
-        int buffer_index = offset;
-        int data_index = 0;
+        int data_length = 0;
 
-        if (data == null || buffers == null) {
-            return data_index;
+        if (buffers == null) {
+            return data_length;
         }
 
-        for (data_index = 0; data_index < data.length;) {
-            // Ensure we have have a buffer with capacity.
-            while ((buffers[buffer_index] == null || buffers[buffer_index].remaining() <= 0) &&
-                    (buffer_index < offset + length)) {
-                buffer_index += 1;
-            }
-            if (buffer_index >= offset + length) {
-                break;
+        for (int index = offset; index < offset + length; index++) {
+            if (buffers[index] == null || buffers[index].remaining() <= 0) {
+                continue;
             }
 
-            // Compute the size of the put: it is the minimum of the space
-            // remaining in this buffer and the bytes remaining in the data
-            // array.
-            int put_size = buffers[buffer_index].remaining();
-            if (put_size > (data.length - data_index)) {
-                put_size = data.length - data_index;
+            int this_read = PR.ReadInto(ssl_fd, buffers[index]);
+            if (this_read < 0) {
+                // Report the failure only when we haven't read anything;
+                // otherwise, it'll resurface on the next call.
+                return data_length > 0 ? data_length : this_read;
             }
 
-            buffers[buffer_index].put(data, data_index, put_size);
-            data_index += put_size;
+            data_length += this_read;
+
+            if (buffers[index].remaining() > 0) {
+                // NSS had less data available than this buffer could
+                // hold; there's no point in trying the next one.
+                break;
+            }
         }
 
-        return data_index;
+        return data_length;
     }
 
     private SSLException checkSSLAlerts() {
@@ -1109,6 +1161,11 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             // Also update our session information here.
             session.refreshData();
 
+            JSSSessionContext context = getSessionContext();
+            if (context != null) {
+                context.recordHandshake(session);
+            }
+
             // Finally, fire any handshake completed event listeners now.
             fireHandshakeComplete(new SSLHandshakeCompletedEvent(this));
 
@@ -1214,53 +1271,69 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         // Actual amount of data written to the buffer.
         int app_data = 0;
 
-        int this_src_write;
-        int this_dst_write;
-
-        do {
-            this_src_write = 0;
-            this_dst_write = 0;
+        if (canBatchUnwrap(src, dsts, offset, length)) {
+            // Fast path: with the handshake over and only direct buffers
+            // involved, decrypt every complete record available in src
+            // into dsts with a single native call.
+            int src_start = src == null ? 0 : src.position();
 
-            if (src != null) {
-                this_src_write = Math.min((int) Buffer.WriteCapacity(read_buf), src.remaining());
-
-                // When we have data from src, write it to read_buf.
-                if (this_src_write > 0) {
-                    byte[] wire_buffer = new byte[this_src_write];
-                    src.get(wire_buffer);
+            app_data = PR.ReadBatch(ssl_fd, read_buf, src, dsts, offset, length);
+            int error = PR.GetError();
+            if (error != 0 && error != PRErrors.WOULD_BLOCK_ERROR && error != PRErrors.SOCKET_SHUTDOWN_ERROR) {
+                // See note in the do-while loop below.
+                ssl_exception = new SSLException("Unexpected return from PR.Read(): " + errorText(error));
+                seen_exception = true;
+            }
 
-                    this_src_write = (int) Buffer.Write(read_buf, wire_buffer);
+            wire_data = src == null ? 0 : src.position() - src_start;
+            debug("JSSEngine.unwrap(): batched " + wire_data + " wire bytes into " + app_data + " bytes of application data.");
 
-                    wire_data += this_src_write;
-                    debug("JSSEngine.unwrap(): Wrote " + this_src_write + " bytes to read_buf.");
+            updateHandshakeState();
+        } else {
+            int this_src_write;
+            int this_dst_write;
+
+            do {
+                this_src_write = 0;
+                this_dst_write = 0;
+
+                if (src != null) {
+                    // When we have data from src, write it to read_buf. This
+                    // copies directly out of src and is bounded by the write
+                    // capacity of read_buf.
+                    this_src_write = Buffer.WriteFrom(read_buf, src);
+
+                    if (this_src_write > 0) {
+                        wire_data += this_src_write;
+                        debug("JSSEngine.unwrap(): Wrote " + this_src_write + " bytes to read_buf.");
+                    }
                 }
-            }
 
-            // In the above, we should always try to read and write data. Check to
-            // see if we need to step our handshake process or not.
-            updateHandshakeState();
+                // In the above, we should always try to read and write data. Check to
+                // see if we need to step our handshake process or not.
+                updateHandshakeState();
 
-            int max_dst_size = computeSize(dsts, offset, length);
-            byte[] app_buffer = PR.Read(ssl_fd, max_dst_size);
-            int error = PR.GetError();
-            debug("JSSEngine.unwrap() - " + app_buffer + " error=" + errorText(error));
-            if (app_buffer != null) {
-                this_dst_write = putData(app_buffer, dsts, offset, length);
-                app_data += this_dst_write;
-            } else if (max_dst_size > 0) {
-                // There are two scenarios we need to ignore here:
-                //  1. WOULD_BLOCK_ERRORs are safe, because we're expecting
-                //     not to block. Usually this means we don't have space
-                //     to write any more data.
-                //  2. SOCKET_SHUTDOWN_ERRORs are safe, because if the
-                //     underling cause was fatal, we'd catch it after exiting
-                //     the do-while loop, in checkSSLAlerts().
-                if (error != 0 && error != PRErrors.WOULD_BLOCK_ERROR && error != PRErrors.SOCKET_SHUTDOWN_ERROR) {
-                    ssl_exception = new SSLException("Unexpected return from PR.Read(): " + errorText(error));
-                    seen_exception = true;
+                int max_dst_size = computeSize(dsts, offset, length);
+                this_dst_write = readData(dsts, offset, length);
+                int error = PR.GetError();
+                debug("JSSEngine.unwrap() - read " + this_dst_write + " bytes error=" + errorText(error));
+                if (this_dst_write >= 0) {
+                    app_data += this_dst_write;
+                } else if (max_dst_size > 0) {
+                    // There are two scenarios we need to ignore here:
+                    //  1. WOULD_BLOCK_ERRORs are safe, because we're expecting
+                    //     not to block. Usually this means we don't have space
+                    //     to write any more data.
+                    //  2. SOCKET_SHUTDOWN_ERRORs are safe, because if the
+                    //     underling cause was fatal, we'd catch it after exiting
+                    //     the do-while loop, in checkSSLAlerts().
+                    if (error != 0 && error != PRErrors.WOULD_BLOCK_ERROR && error != PRErrors.SOCKET_SHUTDOWN_ERROR) {
+                        ssl_exception = new SSLException("Unexpected return from PR.Read(): " + errorText(error));
+                        seen_exception = true;
+                    }
                 }
-            }
-        } while (this_src_write != 0 || this_dst_write != 0);
+            } while (this_src_write != 0 || this_dst_write > 0);
+        }
 
         if (seen_exception == false && ssl_exception == null) {
             ssl_exception = checkSSLAlerts();
@@ -1306,6 +1379,60 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         return new SSLEngineResult(handshake_status, handshake_state, wire_data, app_data);
     }
 
+    /**
+     * Enable or disable batching of multiple TLS records per call to
+     * wrap(...) or unwrap(...); this is disabled by default.
+     *
+     * Batching only applies once the handshake has completed and when all
+     * buffers passed to wrap(...) or unwrap(...) are direct; otherwise,
+     * records are processed one at a time. When it applies, all buffers of
+     * a call are handled by a single native call.
+     */
+    public void setRecordBatching(boolean enabled) {
+        record_batching = enabled;
+    }
+
+    private boolean canBatch() {
+        return record_batching && ssl_fd != null && ssl_fd.handshakeComplete &&
+            !step_handshake &&
+            handshake_state == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING &&
+            !seen_exception && ssl_exception == null &&
+            !is_inbound_closed && !is_outbound_closed;
+    }
+
+    private boolean allDirect(ByteBuffer[] buffers, int offset, int length) {
+        for (int index = offset; index < offset + length; index++) {
+            if (buffers[index] != null && buffers[index].remaining() > 0 && !buffers[index].isDirect()) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean canBatchUnwrap(ByteBuffer src, ByteBuffer[] dsts, int offset, int length) {
+        if (!canBatch() || (src != null && !src.isDirect())) {
+            return false;
+        }
+
+        // computeSize(...) also validates offset and length for us.
+        return computeSize(dsts, offset, length) > 0 && allDirect(dsts, offset, length);
+    }
+
+    private boolean canBatchWrap(ByteBuffer[] srcs, int offset, int length, ByteBuffer dst) {
+        if (!canBatch() || dst == null || !dst.isDirect()) {
+            return false;
+        }
+
+        // Leave dst too small to hold a full record to the regular path,
+        // so it can fill dst with a partial record.
+        if (dst.remaining() <= BUFFER_SIZE - MAX_RECORD_SIZE) {
+            return false;
+        }
+
+        return computeSize(srcs, offset, length) > 0 && allDirect(srcs, offset, length);
+    }
+
     public int writeData(ByteBuffer[] srcs, int offset, int length) {
         debug("JSSEngine: writeData()");
         // This is the tough end of reading/writing. There's two potential
@@ -1341,36 +1468,21 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             }
             debug("JSSEngine.writeData(): index=" + index + " max_index=" + max_index);
 
-            // We expect (i.e., need to construct a buffer) to write up to
-            // this much. Note that this is non-zero since we're taking the
-            // max here and we guarantee with the previous statement that
-            // srcs[index].remaining() > 0. There's no point in getting more
-            // than BUFFER_SIZE bytes either; so cap at the minimum of the
-            // two sizes.
+            // We expect to write up to this much. Note that this is
+            // non-zero since we're taking the max here and we guarantee
+            // with the previous statement that srcs[index].remaining() > 0.
+            // There's no point in offering more than BUFFER_SIZE bytes
+            // either; so cap at the minimum of the two sizes.
             int expected_write = Math.min(srcs[index].remaining(), BUFFER_SIZE);
             debug("JSSEngine.writeData(): expected_write=" + expected_write + " write_cap=" + Buffer.WriteCapacity(write_buf) + " read_cap=" + Buffer.ReadCapacity(read_buf));
 
-            // Get data from our current srcs[index] buffer.
-            byte[] app_data = new byte[expected_write];
-            srcs[index].get(app_data);
-
-            // Actual amount written. Since this is a PR.Write call, mark
+            // Actual amount written. This reads directly out of our current
+            // srcs[index] buffer and only advances its position by the
+            // amount NSS accepted. Since this is a PR.Write call, mark
             // attempted_write.
-            int this_write = PR.Write(ssl_fd, app_data);
+            int this_write = PR.WriteFrom(ssl_fd, srcs[index], expected_write);
             attempted_write = true;
 
-            // Reset our buffer's position in event of sub-optimal write.
-            if (this_write < expected_write) {
-                int pos = srcs[index].position();
-
-                // When this_write < 0, we want to reset to the beginning
-                // because we assume we haven't written any data due to an
-                // error before writing.
-                int delta = expected_write - Math.max(0, this_write);
-
-                srcs[index].position(pos - delta);
-            }
-
             debug("JSSEngine.writeData(): this_write=" + this_write);
             if (this_write < 0) {
                 int error = PR.GetError();
@@ -1399,7 +1511,7 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         // ensure we always attempt to write to push data from NSS's internal
         // buffers into our network buffers.
         if (!attempted_write) {
-            PR.Write(ssl_fd, null);
+            PR.WriteFrom(ssl_fd, null);
         }
 
         debug("JSSEngine.writeData(): data_length=" + data_length);
@@ -1493,69 +1605,86 @@ public class JSSEngineReferenceImpl extends JSSEngine {
             closeOutbound();
         }
 
-        int this_src_write;
-        int this_dst_write;
-        do {
-            this_src_write = 0;
-            this_dst_write = 0;
+        if (canBatchWrap(srcs, offset, length, dst)) {
+            // Fast path: with the handshake over and only direct buffers
+            // involved, encrypt as many full records from srcs as fit in
+            // dst with a single native call.
+            int dst_start = dst.position();
+
+            app_data = PR.WriteBatch(ssl_fd, write_buf, srcs, offset, length, dst, MAX_RECORD_SIZE, BUFFER_SIZE - MAX_RECORD_SIZE);
+            int error = PR.GetError();
+            if (error == PRErrors.SOCKET_SHUTDOWN_ERROR) {
+                debug("NSPR reports outbound socket is shutdown.");
+                is_outbound_closed = true;
+            } else if (error != 0 && error != PRErrors.WOULD_BLOCK_ERROR) {
+                throw new RuntimeException("Unable to write to internal ssl_fd: " + errorText(error));
+            }
+
+            wire_data = dst.position() - dst_start;
+            debug("JSSEngine.wrap(): batched " + app_data + " bytes of application data into " + wire_data + " wire bytes.");
 
-            // First we try updating the handshake state.
             updateHandshakeState();
-            if (ssl_exception == null && seen_exception) {
-                if (handshake_state != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
-                    // In the event that:
-                    //
-                    //      1. We saw an exception in the past
-                    //          --> (seen_exception is true),
-                    //      2. We've already thrown it from wrap or unwrap,
-                    //          --> (ssl_exception is null),
-                    //      3. We were previously handshaking
-                    //          --> (handshake_state is a handshaking state),
-                    //
-                    // we need to make sure wrap is called again to ensure the
-                    // alert is actually written to the wire. So here we are,
-                    // in wrap and the above hold true; we can mark the handshake
-                    // status as "FINISHED" (because well, it is over due to the
-                    // alert). That leaves the return state to be anything other
-                    // than OK to indicate the error.
-                    handshake_state = SSLEngineResult.HandshakeStatus.FINISHED;
+        } else {
+            int this_src_write;
+            int this_dst_write;
+            do {
+                this_src_write = 0;
+                this_dst_write = 0;
+
+                // First we try updating the handshake state.
+                updateHandshakeState();
+                if (ssl_exception == null && seen_exception) {
+                    if (handshake_state != SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
+                        // In the event that:
+                        //
+                        //      1. We saw an exception in the past
+                        //          --> (seen_exception is true),
+                        //      2. We've already thrown it from wrap or unwrap,
+                        //          --> (ssl_exception is null),
+                        //      3. We were previously handshaking
+                        //          --> (handshake_state is a handshaking state),
+                        //
+                        // we need to make sure wrap is called again to ensure the
+                        // alert is actually written to the wire. So here we are,
+                        // in wrap and the above hold true; we can mark the handshake
+                        // status as "FINISHED" (because well, it is over due to the
+                        // alert). That leaves the return state to be anything other
+                        // than OK to indicate the error.
+                        handshake_state = SSLEngineResult.HandshakeStatus.FINISHED;
+                    }
                 }
-            }
 
-            // Try writing data from srcs to the other end of the connection. Note
-            // that we always attempt this, even if the handshake isn't yet marked
-            // as finished. This is because we need the call to PR.Write(...) to
-            // tell if an alert is getting sent.
-            this_src_write = writeData(srcs, offset, length);
-            if (this_src_write > 0) {
-                app_data += this_src_write;
-                debug("JSSEngine.wrap(): wrote " + this_src_write + " from srcs to buffer.");
-            } else {
-                debug("JSSEngine.wrap(): not writing from srcs to buffer: this_src_write=" + this_src_write);
-            }
+                // Try writing data from srcs to the other end of the connection. Note
+                // that we always attempt this, even if the handshake isn't yet marked
+                // as finished. This is because we need the call to PR.Write(...) to
+                // tell if an alert is getting sent.
+                this_src_write = writeData(srcs, offset, length);
+                if (this_src_write > 0) {
+                    app_data += this_src_write;
+                    debug("JSSEngine.wrap(): wrote " + this_src_write + " from srcs to buffer.");
+                } else {
+                    debug("JSSEngine.wrap(): not writing from srcs to buffer: this_src_write=" + this_src_write);
+                }
+
+                if (dst != null) {
+                    // Try reading data from write_buf to dst; always do this, even
+                    // if we didn't write. This copies directly into dst and is
+                    // bounded by the minimum of write_buf read capacity and
+                    // dst.remaining capacity.
+                    this_dst_write = Buffer.ReadInto(write_buf, dst);
 
-            if (dst != null) {
-                // Get an estimate for the expected write to dst; this is
-                // the minimum of write_buf read capacity and dst.remaining
-                // capacity.
-                this_dst_write = Math.min((int) Buffer.ReadCapacity(write_buf), dst.remaining());
-
-                // Try reading data from write_buf to dst; always do this, even
-                // if we didn't write.
-                if (this_dst_write > 0) {
-                    byte[] wire_buffer = Buffer.Read(write_buf, this_dst_write);
-                    dst.put(wire_buffer);
-                    this_dst_write = wire_buffer.length;
-                    wire_data += this_dst_write;
-
-                    debug("JSSEngine.wrap() - Wrote " + wire_buffer.length + " bytes to dst.");
+                    if (this_dst_write > 0) {
+                        wire_data += this_dst_write;
+
+                        debug("JSSEngine.wrap() - Wrote " + this_dst_write + " bytes to dst.");
+                    } else {
+                        debug("JSSEngine.wrap(): not writing from write_buf into dst: this_dst_write=0 write_buf.read_capacity=" + Buffer.ReadCapacity(write_buf) + " dst.remaining=" + dst.remaining());
+                    }
                 } else {
-                    debug("JSSEngine.wrap(): not writing from write_buf into dst: this_dst_write=0 write_buf.read_capacity=" + Buffer.ReadCapacity(write_buf) + " dst.remaining=" + dst.remaining());
+                    debug("JSSEngine.wrap(): not writing from write_buf into NULL dst");
                 }
-            } else {
-                debug("JSSEngine.wrap(): not writing from write_buf into NULL dst");
-            }
-        } while (this_src_write != 0 || this_dst_write != 0);
+            } while (this_src_write != 0 || this_dst_write != 0);
+        }
 
         if (seen_exception == false && ssl_exception == null) {
             ssl_exception = checkSSLAlerts();
@@ -1681,28 +1810,75 @@ public class JSSEngineReferenceImpl extends JSSEngine {
         }
 
         if (read_buf != null) {
-            Buffer.Free(read_buf);
+            freeBuffer(read_buf);
             read_buf = null;
         }
 
         if (write_buf != null) {
-            Buffer.Free(write_buf);
+            freeBuffer(write_buf);
             write_buf = null;
         }
+
+        if (native_resources != null) {
+            native_resources.disarm();
+            native_resources = null;
+        }
     }
 
     // During testing with Tomcat 8.5, most instances did not call
     // cleanup, so all the JNI resources end up getting leaked: ssl_fd
-    // (and its global ref), read_buf, and write_buf.
-    @Override
-    protected void finalize() {
-        cleanup();
+    // (and its global ref), read_buf, and write_buf. This releases them
+    // once the engine is unreachable; it must not reference the engine.
+    private static class SSLFDReleaser implements Runnable {
+        private SSLFDProxy ssl_fd;
+        private BufferProxy read_buf;
+        private BufferProxy write_buf;
+        private BufferPool buffer_pool;
+
+        SSLFDReleaser(SSLFDProxy ssl_fd, BufferProxy read_buf, BufferProxy write_buf, BufferPool buffer_pool) {
+            this.ssl_fd = ssl_fd;
+            this.read_buf = read_buf;
+            this.write_buf = write_buf;
+            this.buffer_pool = buffer_pool;
+        }
+
+        @Override
+        public void run() {
+            try {
+                SSL.RemoveCallbacks(ssl_fd);
+                ssl_fd.close();
+            } catch (Exception e) {
+                logger.error("Got exception trying to cleanup SSLFD", e);
+            }
+
+            for (BufferProxy buf : new BufferProxy[] { read_buf, write_buf }) {
+                if (buf == null) {
+                    continue;
+                }
+
+                if (buffer_pool != null) {
+                    buffer_pool.release(buf);
+                } else {
+                    Buffer.Free(buf);
+                }
+            }
+
+            ssl_fd = null;
+            read_buf = null;
+            write_buf = null;
+        }
     }
 
 
-    private class CertValidationTask extends CertAuthHandler {
-        public CertValidationTask(SSLFDProxy fd) {
+    // Installed on ssl_fd, so it must not hold the engine strongly:
+    // otherwise ssl_fd (kept alive by its global ref and SSLFDReleaser)
+    // would keep the engine reachable and it would never be cleaned up.
+    private static class CertValidationTask extends CertAuthHandler {
+        private final WeakReference<JSSEngineReferenceImpl> engineRef;
+
+        public CertValidationTask(JSSEngineReferenceImpl engine, SSLFDProxy fd) {
             super(fd);
+            engineRef = new WeakReference<>(engine);
         }
 
         public String findAuthType(SSLFDProxy ssl_fd, PK11Cert[] chain) throws Exception {
@@ -1778,13 +1954,19 @@ public class JSSEngineReferenceImpl extends JSSEngine {
 
         @Override
         public int check(SSLFDProxy fd) {
+            JSSEngineReferenceImpl engine = engineRef.get();
+            if (engine == null) {
+                // Nobody is left to use the connection.
+                return SECErrors.UNTRUSTED_CERT;
+            }
+
             // Needs to be available for assignException() below.
             PK11Cert[] chain = null;
 
             try {
                 chain = SSL.PeerCertificateChain(fd);
                 String authType = findAuthType(fd, chain);
-                debug("CertAuthType: " + authType);
+                engine.debug("CertAuthType: " + authType);
 
                 if (chain == null || chain.length == 0) {
                     // When the chain is NULL, we'd always fail in the
@@ -1792,29 +1974,29 @@ public class JSSEngineReferenceImpl extends JSSEngine {
                     // non-empty chain. However, this is sometimes desired,
                     // for instance, if we requested the peer to provide a
                     // certificate chain and they didn't.
-                    if (as_server == true && !need_client_auth) {
+                    if (engine.as_server == true && !engine.need_client_auth) {
                         // Since we're a server validating the client's
                         // chain (and they didn't provide one), we should
                         // ignore it instead of forcing the problem.
-                        debug("No client certificate chain and client cert not needed.");
+                        engine.debug("No client certificate chain and client cert not needed.");
                         return 0;
                     }
                 }
 
-                for (X509TrustManager tm : trust_managers) {
+                for (X509TrustManager tm : engine.trust_managers) {
                     // X509ExtendedTrustManager lets the TM access the
                     // SSLEngine while validating certificates. Otherwise,
                     // the X509TrustManager doesn't have access to that
                     // parameter. Facilitate it if possible.
                     if (tm instanceof X509ExtendedTrustManager) {
                         X509ExtendedTrustManager etm = (X509ExtendedTrustManager) tm;
-                        if (as_server) {
-                            etm.checkClientTrusted(chain, authType, JSSEngineReferenceImpl.this);
+                        if (engine.as_server) {
+                            etm.checkClientTrusted(chain, authType, engine);
                         } else {
-                            etm.checkServerTrusted(chain, authType, JSSEngineReferenceImpl.this);
+                            etm.checkServerTrusted(chain, authType, engine);
                         }
                     } else {
-                        if (as_server) {
+                        if (engine.as_server) {
                             tm.checkClientTrusted(chain, authType);
                         } else {
                             tm.checkServerTrusted(chain, authType);
@@ -1822,16 +2004,16 @@ public class JSSEngineReferenceImpl extends JSSEngine {
                     }
                 }
             } catch (Exception excpt) {
-                return assignException(excpt, chain);
+                return assignException(engine, excpt, chain);
             }
 
             return 0;
         }
 
-        private int assignException(Exception excpt, PK11Cert[] chain) {
+        private int assignException(JSSEngineReferenceImpl engine, Exception excpt, PK11Cert[] chain) {
             int nss_code = Cert.MatchExceptionToNSSError(excpt);
 
-            if (seen_exception) {
+            if (engine.seen_exception) {
                 return nss_code;
             }
 
@@ -1847,24 +2029,24 @@ public class JSSEngineReferenceImpl extends JSSEngine {
                 }
             }
             msg += "with given TrustManagers:\n";
-            if (trust_managers == null) {
+            if (engine.trust_managers == null) {
                 msg += " - (null TrustManagers)\n";
-            } else if (trust_managers.length == 0) {
+            } else if (engine.trust_managers.length == 0) {
                 msg += " - (0 length TrustManagers)\n";
             } else {
-                for (X509TrustManager tm : trust_managers) {
+                for (X509TrustManager tm : engine.trust_managers) {
                     msg += " - " + tm + "\n";
                 }
             }
             msg += "exception message: " + excpt.getMessage();
 
-            seen_exception = true;
-            ssl_exception = new SSLException(msg, excpt);
+            engine.seen_exception = true;
+            engine.ssl_exception = new SSLException(msg, excpt);
             return nss_code;
         }
     }
 
-    private class BypassBadHostname extends BadCertHandler {
+    private static class BypassBadHostname extends BadCertHandler {
         public BypassBadHostname(SSLFDProxy fd, int error) {
             super(fd, error);
         }
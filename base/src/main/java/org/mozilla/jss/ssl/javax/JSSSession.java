@@ -8,6 +8,7 @@ import java.util.HashMap;
 
 import javax.net.ssl.*;
 
+import org.mozilla.jss.crypto.ObjectNotFoundException;
 import org.mozilla.jss.nss.*;
 import org.mozilla.jss.pkcs11.*;
 import org.mozilla.jss.ssl.*;
@@ -26,6 +27,14 @@ public class JSSSession implements SSLSession, AutoCloseable {
     private long lastAccessTime;
     private long expirationTime;
     private byte[] sessionID;
+    private boolean resumed;
+
+    /**
+     * Snapshot of NSS's channel info, taken when the handshake completes
+     * (or on an explicit refresh()); the getters below are served from it
+     * rather than calling into NSS every time.
+     */
+    private volatile SSLChannelInfo channelInfo;
 
     private HashMap<String, Object> appDataMap;
 
@@ -54,13 +63,16 @@ public class JSSSession implements SSLSession, AutoCloseable {
         return parent;
     }
 
+    /**
+     * Returns the channel info captured at the end of the last handshake,
+     * or null if no handshake has completed yet.
+     */
     public SSLChannelInfo getChannelInfo() {
-        SSLFDProxy ssl_fd = parent.getSSLFDProxy();
-        if (ssl_fd != null && ssl_fd.handshakeComplete) {
-            return SSL.GetChannelInfo(ssl_fd);
+        if (channelInfo == null) {
+            refreshData();
         }
 
-        return null;
+        return channelInfo;
     }
 
     public SSLPreliminaryChannelInfo getPreliminaryChannelInfo() {
@@ -92,7 +104,7 @@ public class JSSSession implements SSLSession, AutoCloseable {
 
     @Override
     public SSLSessionContext getSessionContext() {
-        return null;
+        return parent.getSessionContext();
     }
 
     @Override
@@ -110,7 +122,10 @@ public class JSSSession implements SSLSession, AutoCloseable {
 
     @Override
     public long getLastAccessedTime() {
-        refreshData();
+        if (channelInfo == null) {
+            refreshData();
+        }
+
         return lastAccessTime;
     }
 
@@ -119,13 +134,32 @@ public class JSSSession implements SSLSession, AutoCloseable {
     }
 
     public long getExpirationTime() {
-        refreshData();
+        if (channelInfo == null) {
+            refreshData();
+        }
+
         return expirationTime;
     }
 
+    /**
+     * Re-reads the session's channel info from NSS, updating the values
+     * returned by this session's getters. This happens automatically when
+     * a handshake completes.
+     */
+    public void refresh() {
+        refreshData();
+    }
+
     protected void refreshData() {
-        SSLChannelInfo info = getChannelInfo();
+        SSLFDProxy ssl_fd = parent.getSSLFDProxy();
+        if (ssl_fd == null || !ssl_fd.handshakeComplete) {
+            return;
+        }
+
+        SSLChannelInfo info = SSL.GetChannelInfo(ssl_fd);
         if (info != null) {
+            channelInfo = info;
+
             // NSS returns the values as seconds, but we have to report them
             // in milliseconds to our callers. Multiply by a thousand here.
             setId(info.getSessionID());
@@ -135,9 +169,27 @@ public class JSSSession implements SSLSession, AutoCloseable {
 
             setCipherSuite(info.getCipherSuite());
             setProtocol(info.getProtocolVersion());
+
+            try {
+                setResumed(info.getResumed());
+            } catch (ObjectNotFoundException e) {
+                // NSS is too old to report this; assume a full handshake.
+            }
         }
     }
 
+    /**
+     * Whether the handshake which established this session resumed an
+     * earlier one.
+     */
+    public boolean isResumed() {
+        return resumed;
+    }
+
+    protected void setResumed(boolean resumed) {
+        this.resumed = resumed;
+    }
+
     protected void setExpirationTime(long when) {
         expirationTime = when;
     }
@@ -154,6 +206,10 @@ public class JSSSession implements SSLSession, AutoCloseable {
         }
     }
 
+    public boolean isClosed() {
+        return closed;
+    }
+
     @Override
     public void close() {
         closed = true;
@@ -0,0 +1,241 @@
+package org.mozilla.jss.ssl.javax;
+
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * SSLSessionContext for JSSEngine instances created by the same
+ * SSLContext.
+ *
+ * Session resumption itself is handled by NSS: servers use NSS's session
+ * ID cache (SSL_ConfigServerSessionIDCache) and, when enabled, session
+ * tickets; clients use NSS's client cache, keyed by the peer's host and
+ * port. This class configures those caches and keeps track of the
+ * sessions of open connections negotiated through it, along with the
+ * number of full and resumed handshakes.
+ *
+ * Sessions are only referenced weakly: a session keeps its engine, and
+ * with it the engine's NSS file descriptor and buffers, reachable, so an
+ * engine which is dropped without being closed must not be kept alive by
+ * its context.
+ *
+ * Note that NSS's server session ID cache is global to the process and
+ * can only be configured once. The size and timeout of the first server
+ * context to start a handshake are used for it; later changes only
+ * affect the sessions tracked by this object.
+ */
+public class JSSSessionContext implements SSLSessionContext {
+
+    public static Logger logger = LoggerFactory.getLogger(JSSSessionContext.class);
+
+    /**
+     * Default number of cached sessions; matches NSS's default server
+     * session ID cache size.
+     */
+    public static final int DEFAULT_CACHE_SIZE = 10000;
+
+    /**
+     * Default session timeout in seconds; this is the maximum NSS allows
+     * for TLS sessions.
+     */
+    public static final int DEFAULT_TIMEOUT = 86400;
+
+    private final boolean server;
+
+    private int cacheSize = DEFAULT_CACHE_SIZE;
+    private int timeout = DEFAULT_TIMEOUT;
+    private boolean sessionTickets = true;
+
+    private final LinkedHashMap<ByteBuffer, Entry> sessions =
+            new LinkedHashMap<>(16, 0.75f, true);
+
+    private final AtomicLong fullHandshakes = new AtomicLong();
+    private final AtomicLong resumedHandshakes = new AtomicLong();
+
+    public JSSSessionContext(boolean server) {
+        this.server = server;
+    }
+
+    /**
+     * Whether this context holds server (rather than client) sessions.
+     */
+    public boolean isServer() {
+        return server;
+    }
+
+    /**
+     * Sets the maximum number of sessions; zero means NSS's default.
+     */
+    @Override
+    public synchronized void setSessionCacheSize(int size) {
+        if (size < 0) {
+            throw new IllegalArgumentException("Invalid session cache size: " + size);
+        }
+
+        logger.debug("JSSSessionContext: setSessionCacheSize(" + size + ")");
+        cacheSize = size;
+        prune(System.currentTimeMillis());
+    }
+
+    @Override
+    public synchronized int getSessionCacheSize() {
+        return cacheSize;
+    }
+
+    /**
+     * Sets the session timeout in seconds; zero means NSS's default.
+     */
+    @Override
+    public synchronized void setSessionTimeout(int seconds) {
+        if (seconds < 0) {
+            throw new IllegalArgumentException("Invalid session timeout: " + seconds);
+        }
+
+        logger.debug("JSSSessionContext: setSessionTimeout(" + seconds + ")");
+        timeout = seconds;
+        prune(System.currentTimeMillis());
+    }
+
+    @Override
+    public synchronized int getSessionTimeout() {
+        return timeout;
+    }
+
+    /**
+     * Enables or disables session tickets (RFC 5077) for engines using this
+     * context. TLS 1.3 always resumes via tickets; this only affects
+     * earlier protocol versions. Must be called prior to the handshake.
+     */
+    public synchronized void setSessionTicketsEnabled(boolean enabled) {
+        sessionTickets = enabled;
+    }
+
+    public synchronized boolean getSessionTicketsEnabled() {
+        return sessionTickets;
+    }
+
+    /**
+     * Records a completed handshake on the given session.
+     */
+    void recordHandshake(JSSSession session) {
+        if (session.isResumed()) {
+            resumedHandshakes.incrementAndGet();
+        } else {
+            fullHandshakes.incrementAndGet();
+        }
+
+        byte[] id = session.getId();
+        if (id == null || id.length == 0) {
+            // TLS 1.3 sessions and tickets may not carry a session ID
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        synchronized (this) {
+            sessions.put(ByteBuffer.wrap(id.clone()), new Entry(session, now));
+            prune(now);
+        }
+    }
+
+    /**
+     * Returns the number of handshakes which negotiated a new session.
+     */
+    public long getFullHandshakes() {
+        return fullHandshakes.get();
+    }
+
+    /**
+     * Returns the number of handshakes which resumed an existing session.
+     */
+    public long getResumedHandshakes() {
+        return resumedHandshakes.get();
+    }
+
+    /**
+     * Returns the fraction of handshakes which resumed an existing session,
+     * or zero if there haven't been any handshakes.
+     */
+    public double getResumptionRate() {
+        long resumed = resumedHandshakes.get();
+        long total = resumed + fullHandshakes.get();
+        return total == 0 ? 0.0 : (double) resumed / total;
+    }
+
+    /**
+     * Resets the handshake counters.
+     */
+    public void resetStatistics() {
+        fullHandshakes.set(0);
+        resumedHandshakes.set(0);
+    }
+
+    @Override
+    public synchronized SSLSession getSession(byte[] sessionId) {
+        if (sessionId == null) {
+            throw new NullPointerException("Session ID is null");
+        }
+
+        prune(System.currentTimeMillis());
+        Entry entry = sessions.get(ByteBuffer.wrap(sessionId));
+        return entry == null ? null : entry.session.get();
+    }
+
+    @Override
+    public synchronized Enumeration<byte[]> getIds() {
+        prune(System.currentTimeMillis());
+
+        List<byte[]> ids = new ArrayList<>(sessions.size());
+        for (ByteBuffer id : sessions.keySet()) {
+            ids.add(id.array().clone());
+        }
+
+        return Collections.enumeration(ids);
+    }
+
+    /**
+     * Removes sessions which have expired, have been closed or collected,
+     * or which exceed the cache size, least recently used first.
+     */
+    private void prune(long now) {
+        Iterator<Map.Entry<ByteBuffer, Entry>> it = sessions.entrySet().iterator();
+        while (it.hasNext()) {
+            Entry entry = it.next().getValue();
+            boolean expired = timeout > 0 && now - entry.added >= timeout * 1000L;
+            JSSSession session = entry.session.get();
+            if (expired || session == null || session.isClosed()) {
+                it.remove();
+            }
+        }
+
+        int limit = cacheSize == 0 ? DEFAULT_CACHE_SIZE : cacheSize;
+        it = sessions.entrySet().iterator();
+        while (sessions.size() > limit && it.hasNext()) {
+            it.next();
+            it.remove();
+        }
+    }
+
+    private static class Entry {
+        final WeakReference<JSSSession> session;
+        final long added;
+
+        Entry(JSSSession session, long added) {
+            this.session = new WeakReference<>(session);
+            this.added = added;
+        }
+    }
+}
@@ -301,21 +301,28 @@ public class JSSSocket extends SSLSocket {
             //     > This method is synchronous for the initial handshake on
             //     > a connection and returns when the negotiated handshake is
             //     > complete.
-            // so we have to block until the connection is complete. But use an
-            // exponential backoff so we have a chance of catching any peer
-            // data.
+            // so we have to block until the connection is complete. Wait for
+            // the underlying channel to become ready between attempts, up to
+            // the socket timeout (or half a minute when there's none).
+            long timeout = getSoTimeout();
+            if (timeout <= 0) {
+                timeout = 30000;
+            }
+
+            long deadline = System.currentTimeMillis() + timeout;
             int connectAttempts = 0;
             while (!status) {
-                status = channel.finishConnect();
-
-                try {
-                    Thread.sleep(connectAttempts * 100);
-                } catch (Exception e) {}
-
-                connectAttempts += 1;
-                if (connectAttempts > 25) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
                     break;
                 }
+
+                // Re-check the handshake state periodically even when the
+                // channel isn't ready, using a linear backoff.
+                connectAttempts += 1;
+                channel.awaitHandshakeReady(Math.min(remaining, connectAttempts * 100));
+
+                status = channel.finishConnect();
             }
         }
 
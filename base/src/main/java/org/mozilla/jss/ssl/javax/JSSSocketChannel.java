@@ -30,14 +30,42 @@ public class JSSSocketChannel extends SocketChannel {
 
     private boolean autoClose = true;
 
-    private boolean inboundClosed = false;
-    private boolean outboundClosed = false;
+    /**
+     * The inbound and outbound paths are guarded by separate locks so that
+     * a reader waiting on the peer doesn't stall writers (and vice versa).
+     * Each lock also guards the buffer and closed flag of its path. Calls
+     * into the engine share its state, so they are serialized by
+     * engineLock; it is only held for the duration of a single engine
+     * call, never while waiting on the network. When more than one lock is
+     * needed, they're acquired in the order readLock, writeLock,
+     * engineLock. close() releases the engine under engineLock only, so a
+     * read or write racing with it gets a ClosedChannelException.
+     */
+    private final Object readLock = new Object();
+    private final Object writeLock = new Object();
+    private final Object engineLock = new Object();
+
+    private volatile boolean inboundClosed = false;
+    private volatile boolean outboundClosed = false;
 
     private ByteBuffer empty = ByteBuffer.allocate(0);
     private ByteBuffer readBuffer;
     private ByteBuffer writeBuffer;
 
-    private boolean handshakeCompleted = false;
+    private volatile boolean handshakeCompleted = false;
+
+    /**
+     * Handshake status observed by the last call to finishConnect(); used
+     * to decide which operations the handshake is waiting on without
+     * querying (and thus stepping) the engine again.
+     */
+    private SSLEngineResult.HandshakeStatus handshakeState;
+
+    /**
+     * Selector used to wait for the parent channel to become ready while
+     * handshaking; created on first use.
+     */
+    private Selector handshakeSelector;
 
     public JSSSocketChannel(JSSSocket sslSocket, SocketChannel parent, Socket parentSocket, ReadableByteChannel readChannel, WritableByteChannel writeChannel, JSSEngine engine) throws IOException {
         super(null);
@@ -119,7 +147,8 @@ public class JSSSocketChannel extends SocketChannel {
             }
         }
 
-        SSLEngineResult.HandshakeStatus state = engine.getHandshakeStatus();
+        SSLEngineResult.HandshakeStatus state = getEngineHandshakeStatus();
+        handshakeState = state;
         if (state == SSLEngineResult.HandshakeStatus.NOT_HANDSHAKING) {
             return true;
         }
@@ -147,8 +176,10 @@ public class JSSSocketChannel extends SocketChannel {
                 } else if (state == SSLEngineResult.HandshakeStatus.NEED_TASK) {
                     // Run the task, synchronously, because we're a mostly
                     // blocking SSLSocket.
-                    Runnable task = engine.getDelegatedTask();
-                    task.run();
+                    synchronized (engineLock) {
+                        Runnable task = getOpenEngine().getDelegatedTask();
+                        task.run();
+                    }
                 } else {
                     String msg = "Error attempting to handshake: unknown ";
                     msg += "handshake status code `" + state + "`";
@@ -156,22 +187,27 @@ public class JSSSocketChannel extends SocketChannel {
                 }
 
                 SSLEngineResult.HandshakeStatus last_state = state;
-                state = engine.getHandshakeStatus();
+                state = getEngineHandshakeStatus();
+                handshakeState = state;
                 handshakeAttempts += 1;
 
                 if (state == last_state) {
-                    try {
-                        // This sleep is necessary in order to wait for
-                        // incoming data. If it turns out our
-                        // NEED_UNWRAP is premature (and we're stuck in
-                        // a blocking read() call because we issued a
-                        // non-zero read!), we might cause the remote
-                        // peer to timeout and send a CLOSE_NOTIFY
-                        // alert. This wouldn't be good, so sleep
-                        // instead. Use an linear backoff in case
-                        // the remote server is really slow.
-                        Thread.sleep(handshakeAttempts * 10);
-                    } catch (Exception e) {}
+                    if (!isBlocking()) {
+                        // Don't wait in non-blocking mode; the caller should
+                        // wait for the channel to become ready for the
+                        // operations in getHandshakeInterestOps() and call
+                        // us again.
+                        return false;
+                    }
+
+                    // Wait for the peer's data (or for room to send ours)
+                    // rather than spinning. The wait is bounded by a linear
+                    // backoff: if our NEED_UNWRAP turns out to be premature
+                    // (and we'd be stuck in a blocking read() because we
+                    // issued a non-zero read!), the remote peer might time
+                    // out and send a CLOSE_NOTIFY alert, so re-check the
+                    // state periodically.
+                    awaitHandshakeReady(handshakeAttempts * 10);
                 }
 
                 if (handshakeAttempts > maxHandshakeAttempts) {
@@ -203,6 +239,94 @@ public class JSSSocketChannel extends SocketChannel {
         return true;
     }
 
+    private SSLEngineResult.HandshakeStatus getEngineHandshakeStatus() throws IOException {
+        synchronized (engineLock) {
+            return getOpenEngine().getHandshakeStatus();
+        }
+    }
+
+    /**
+     * Returns the engine, or throws if the channel has been closed
+     * concurrently. Must be called while holding engineLock, since close()
+     * releases the engine under it.
+     */
+    private JSSEngine getOpenEngine() throws ClosedChannelException {
+        if (engine == null) {
+            throw new ClosedChannelException();
+        }
+
+        return engine;
+    }
+
+    /**
+     * Returns the operations (SelectionKey.OP_READ or OP_WRITE) the
+     * underlying channel needs to be ready for before the handshake can
+     * progress, or zero if the handshake isn't waiting on the network.
+     *
+     * Non-blocking callers should register the underlying SocketChannel
+     * with these operations and call finishConnect() once it is selected.
+     */
+    public int getHandshakeInterestOps() {
+        if (handshakeCompleted || handshakeState == null) {
+            return 0;
+        }
+
+        switch (handshakeState) {
+            case NEED_UNWRAP:
+                return SelectionKey.OP_READ;
+            case NEED_WRAP:
+                return SelectionKey.OP_WRITE;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Wait up to timeout milliseconds for the underlying channel to become
+     * ready for the operations the handshake is waiting on. Returns true if
+     * it became ready; false on timeout.
+     *
+     * Without an underlying SocketChannel there's nothing to select on, so
+     * this just sleeps for the given time.
+     */
+    boolean awaitHandshakeReady(long timeout) throws IOException {
+        int ops = getHandshakeInterestOps();
+        timeout = Math.max(timeout, 1);
+
+        if (parent == null || ops == 0 || consumed != null) {
+            try {
+                Thread.sleep(timeout);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return false;
+        }
+
+        if (handshakeSelector == null) {
+            handshakeSelector = parent.provider().openSelector();
+        }
+
+        // Only non-blocking channels can be registered with a selector;
+        // switch temporarily if necessary.
+        boolean blocking = parent.isBlocking();
+        if (blocking) {
+            parent.configureBlocking(false);
+        }
+
+        SelectionKey key = parent.register(handshakeSelector, ops);
+        try {
+            return handshakeSelector.select(timeout) > 0;
+        } finally {
+            // Deregister the channel so the blocking mode can be restored.
+            key.cancel();
+            handshakeSelector.selectNow();
+
+            if (blocking) {
+                parent.configureBlocking(true);
+            }
+        }
+    }
+
     /**
      * Compute the total size of a list of buffers from the specified offest
      * and length.
@@ -237,7 +361,13 @@ public class JSSSocketChannel extends SocketChannel {
     }
 
     @Override
-    public synchronized long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+    public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        synchronized (readLock) {
+            return readLocked(dsts, offset, length);
+        }
+    }
+
+    private long readLocked(ByteBuffer[] dsts, int offset, int length) throws IOException {
         if (inboundClosed) {
             return -1;
         }
@@ -273,7 +403,9 @@ public class JSSSocketChannel extends SocketChannel {
 
                 readBuffer.flip();
 
-                result = engine.unwrap(readBuffer, dsts, offset, length);
+                synchronized (engineLock) {
+                    result = getOpenEngine().unwrap(readBuffer, dsts, offset, length);
+                }
                 switch (result.getStatus()) {
                     case CLOSED:
                         shutdownInput();
@@ -307,7 +439,13 @@ public class JSSSocketChannel extends SocketChannel {
     }
 
     @Override
-    public synchronized long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+    public long write(ByteBuffer[] srcs, int offset, int length) throws IOException {
+        synchronized (writeLock) {
+            return writeLocked(srcs, offset, length);
+        }
+    }
+
+    private long writeLocked(ByteBuffer[] srcs, int offset, int length) throws IOException {
         if (outboundClosed) {
             return -1;
         }
@@ -322,7 +460,10 @@ public class JSSSocketChannel extends SocketChannel {
 
         try {
             do {
-                SSLEngineResult result = engine.wrap(srcs, offset, length, dst);
+                SSLEngineResult result;
+                synchronized (engineLock) {
+                    result = getOpenEngine().wrap(srcs, offset, length, dst);
+                }
                 if (result.getStatus() != SSLEngineResult.Status.OK && result.getStatus() != SSLEngineResult.Status.CLOSED) {
                     throw new IOException("Unexpected status from wrap: " + result);
                 }
@@ -365,34 +506,47 @@ public class JSSSocketChannel extends SocketChannel {
         // is necessary to send our acknowledgement of the peer's alert.
 
         try {
-            synchronized (this) {
-                // unwrap() triggers a call to PR_Read(), which in turn will
-                // execute the received alert callback. However, PR_Read is
-                // effectively a no-op with an empty buffer, resulting in the
-                // callback never triggering. Use a single byte buffer instead,
-                // discarding any data because we're closing the channel. This
-                // should ensure we always get a callback.
-                ByteBuffer read_one = ByteBuffer.allocate(1);
-
-                shutdownInput();
-
-                // Bypass read check.
-                inboundClosed = false;
-                read(read_one);
-
-                if (!outboundClosed) {
-                    shutdownOutput();
-                }
+            synchronized (readLock) {
+                synchronized (writeLock) {
+                    // unwrap() triggers a call to PR_Read(), which in turn will
+                    // execute the received alert callback. However, PR_Read is
+                    // effectively a no-op with an empty buffer, resulting in the
+                    // callback never triggering. Use a single byte buffer instead,
+                    // discarding any data because we're closing the channel. This
+                    // should ensure we always get a callback.
+                    ByteBuffer read_one = ByteBuffer.allocate(1);
+
+                    shutdownInput();
+
+                    // Bypass read check.
+                    inboundClosed = false;
+                    read(read_one);
+
+                    if (!outboundClosed) {
+                        shutdownOutput();
+                    }
 
-                // Make sure we close the input side of the SSLEngine.
-                engine.closeInbound();
+                    // Make sure we close the input side of the SSLEngine.
+                    synchronized (engineLock) {
+                        getOpenEngine().closeInbound();
+                    }
 
-                outboundClosed = true;
-                inboundClosed = true;
+                    outboundClosed = true;
+                    inboundClosed = true;
+                }
             }
         } finally {
-            engine.cleanup();
-            engine = null;
+            synchronized (engineLock) {
+                if (engine != null) {
+                    engine.cleanup();
+                    engine = null;
+                }
+            }
+
+            if (handshakeSelector != null) {
+                handshakeSelector.close();
+                handshakeSelector = null;
+            }
 
             if (autoClose) {
                 if (parent == null) {
@@ -528,9 +682,14 @@ public class JSSSocketChannel extends SocketChannel {
 
     @Override
     public JSSSocketChannel shutdownOutput() throws IOException {
-        engine.closeOutbound();
-        write(empty);
-        outboundClosed = true;
+        synchronized (writeLock) {
+            synchronized (engineLock) {
+                getOpenEngine().closeOutbound();
+            }
+
+            write(empty);
+            outboundClosed = true;
+        }
 
         // Hold parent socket/channel open until we've sent CLOSE_NOTIFY
         // messages.
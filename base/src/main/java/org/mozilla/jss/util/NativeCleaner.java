@@ -0,0 +1,214 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.util;
+
+import java.lang.ref.Cleaner;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reclaims native resources once the Java objects owning them become
+ * unreachable, replacing the use of finalize().
+ *
+ * Owners register a release action which must not reference the owner
+ * itself; otherwise the owner stays reachable and the action never runs.
+ * All actions run on a single daemon thread shared by JSS.
+ *
+ * Explicitly released resources are counted as released; resources which
+ * were only freed once their owner got garbage collected are counted as
+ * reclaimed, and indicate a missing close() call in the application.
+ * Both are tracked per owner type, see getStatistics().
+ */
+public final class NativeCleaner {
+
+    public static Logger logger = LoggerFactory.getLogger(NativeCleaner.class);
+
+    private static final Cleaner cleaner = Cleaner.create(runnable -> {
+        Thread thread = new Thread(runnable, "JSS-NativeCleaner");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static final Map<Class<?>, Statistics> statistics = new ConcurrentHashMap<>();
+
+    private NativeCleaner() {
+    }
+
+    /**
+     * Register action to run once owner becomes unreachable, unless the
+     * returned registration is released or disarmed first.
+     *
+     * @param owner Object whose reachability controls the action.
+     * @param action Releases the native resources; must not refer to owner.
+     * @param trace Optional allocation backtrace, logged when the action
+     *            runs because owner was never closed.
+     */
+    public static Registration register(Object owner, Runnable action, String trace) {
+        Statistics stats = getStatistics(owner.getClass());
+        stats.allocated.incrementAndGet();
+
+        Registration registration = new Registration(owner.getClass(), action, stats, trace);
+        registration.cleanable = cleaner.register(owner, registration);
+        return registration;
+    }
+
+    public static Registration register(Object owner, Runnable action) {
+        return register(owner, action, null);
+    }
+
+    /**
+     * Get the counters for the given owner type.
+     */
+    public static Statistics getStatistics(Class<?> type) {
+        return statistics.computeIfAbsent(type, k -> new Statistics());
+    }
+
+    /**
+     * Get the counters for all owner types registered so far, keyed by
+     * class name.
+     */
+    public static Map<String, Statistics> getStatistics() {
+        Map<String, Statistics> result = new TreeMap<>();
+        for (Map.Entry<Class<?>, Statistics> entry : statistics.entrySet()) {
+            result.put(entry.getKey().getName(), entry.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Log the counters of every owner type with live or reclaimed
+     * resources.
+     */
+    public static void logStatistics() {
+        for (Map.Entry<String, Statistics> entry : getStatistics().entrySet()) {
+            Statistics stats = entry.getValue();
+            if (stats.getLive() > 0 || stats.getReclaimed() > 0) {
+                logger.warn(entry.getKey() + ": " + stats);
+            } else {
+                logger.debug(entry.getKey() + ": " + stats);
+            }
+        }
+    }
+
+    /**
+     * Handle to a registered release action. This holds no reference to
+     * the owner.
+     */
+    public static final class Registration implements Runnable {
+
+        private final Class<?> type;
+        private final Statistics stats;
+        private final String trace;
+
+        private Runnable action;
+        private Cleaner.Cleanable cleanable;
+
+        private final AtomicBoolean done = new AtomicBoolean();
+        private volatile boolean explicit;
+
+        private Registration(Class<?> type, Runnable action, Statistics stats, String trace) {
+            this.type = type;
+            this.action = action;
+            this.stats = stats;
+            this.trace = trace;
+        }
+
+        /**
+         * Run the release action now, if it hasn't run yet.
+         */
+        public void release() {
+            explicit = true;
+            cleanable.clean();
+        }
+
+        /**
+         * Drop the release action without running it, for when the
+         * resources were freed by other means.
+         */
+        public void disarm() {
+            if (done.compareAndSet(false, true)) {
+                action = null;
+                stats.released.incrementAndGet();
+            }
+            cleanable.clean();
+        }
+
+        @Override
+        public void run() {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+
+            Runnable releaser = action;
+            action = null;
+
+            if (explicit) {
+                stats.released.incrementAndGet();
+            } else {
+                stats.reclaimed.incrementAndGet();
+                if (trace != null) {
+                    logger.debug("NativeCleaner: reclaiming unclosed " + type.getName() + " allocated at: " + trace);
+                }
+            }
+
+            try {
+                releaser.run();
+            } catch (Throwable t) {
+                logger.warn("NativeCleaner: unable to release " + type.getName() + ": " + t.getMessage(), t);
+            }
+        }
+    }
+
+    /**
+     * Allocation counters for a single owner type.
+     */
+    public static final class Statistics {
+
+        private final AtomicLong allocated = new AtomicLong();
+        private final AtomicLong released = new AtomicLong();
+        private final AtomicLong reclaimed = new AtomicLong();
+
+        /**
+         * Number of registered owners.
+         */
+        public long getAllocated() {
+            return allocated.get();
+        }
+
+        /**
+         * Number of owners whose resources were released explicitly.
+         */
+        public long getReleased() {
+            return released.get();
+        }
+
+        /**
+         * Number of owners whose resources were only released after they
+         * became unreachable.
+         */
+        public long getReclaimed() {
+            return reclaimed.get();
+        }
+
+        /**
+         * Number of owners whose resources haven't been released yet.
+         */
+        public long getLive() {
+            return getAllocated() - getReleased() - getReclaimed();
+        }
+
+        @Override
+        public String toString() {
+            return "allocated=" + getAllocated() + ", live=" + getLive() +
+                ", released=" + getReleased() + ", reclaimed=" + getReclaimed();
+        }
+    }
+}
@@ -25,7 +25,7 @@ import org.slf4j.LoggerFactory;
  * @author nicolson
  * @version $Revision$ $Date$
  */
-public abstract class NativeProxy implements AutoCloseable {
+public abstract class NativeProxy implements AutoCloseable, Cloneable {
     public static Logger logger = LoggerFactory.getLogger(NativeProxy.class);
     private static final boolean saveStacktraces = assertsEnabled() && CryptoManager.JSS_DEBUG;
 
@@ -62,6 +62,10 @@ public abstract class NativeProxy implements AutoCloseable {
 
             mTrace = Arrays.toString(Thread.currentThread().getStackTrace());
         }
+
+        if (track && pointer != null) {
+            mRegistration = NativeCleaner.register(this, new Releaser(this), mTrace);
+        }
     }
 
     /**
@@ -107,43 +111,20 @@ public abstract class NativeProxy implements AutoCloseable {
      * data structures in C code that are referenced by this proxy.
      * releaseNativeResources() will usually be implemented as a native method.
      * <p>
-     * You don't call this method; NativeProxy.finalize() or close() calls
-     * it for you.
+     * You don't call this method; close() calls it for you, as does
+     * NativeCleaner once an unclosed proxy becomes unreachable. In the
+     * latter case, it is invoked on a shallow copy of the proxy taken at
+     * construction time, so implementations must only rely on the native
+     * pointer and not on fields set by the subclass constructor.
      * </p>
      *
      * If you free these resources explicitly, call clear(); instead.
      */
     protected abstract void releaseNativeResources() throws Exception;
 
-    /**
-     * Finalize this NativeProxy by releasing its native resources.
-     * The finalizer calls releaseNativeResources() so you don't have to.
-     * This finalizer should be called from the finalize() method of all
-     * subclasses:
-     * class MyProxy extends NativeProxy {
-     * [...]
-     * protected void finalize() throws Throwable {
-     * // do any object-specific finalization other than
-     * // releasing native resources
-     * [...]
-     * super.finalize();
-     * }
-     * }
-     *
-     * @deprecated finalize() in Object has been deprecated. Use close(...)
-     *             from the AutoCloseable interface instead.
-     */
-    @Override
-    @Deprecated
-    protected void finalize() throws Throwable {
-        close();
-    }
-
     /**
      * Close this NativeProxy by releasing its native resources if they
      * haven't otherwise been freed.
-     *
-     * See comment in finalize.
      */
     @Override
     public final void close() throws Exception {
@@ -160,7 +141,7 @@ public abstract class NativeProxy implements AutoCloseable {
      * Call clear(...) to clear the value of the pointer, setting it to null.
      *
      * This should be used when the pointer has been freed by another means.
-     * Similar to finalize(...) or close(...), except that it doesn't call
+     * Similar to close(...), except that it doesn't call
      * releaseNativeResources(...).
      *
      * See also: JSS_clearPtrFromProxy(...) in jssutil.h
@@ -168,6 +149,12 @@ public abstract class NativeProxy implements AutoCloseable {
     public final void clear() {
         this.mPointer = null;
         // registry.remove(this);
+
+        NativeCleaner.Registration registration = mRegistration;
+        if (registration != null) {
+            mRegistration = null;
+            registration.disarm();
+        }
     }
 
     /**
@@ -188,20 +175,59 @@ public abstract class NativeProxy implements AutoCloseable {
      */
     private String mTrace;
 
+    /**
+     * Releases the native resources once this proxy becomes unreachable
+     * without having been closed or cleared.
+     */
+    private NativeCleaner.Registration mRegistration;
+
+    /**
+     * Release action registered with NativeCleaner. It holds a shallow copy
+     * of the proxy rather than the proxy itself, so that the proxy can
+     * become unreachable. Native code only needs the copied pointer.
+     */
+    private static class Releaser implements Runnable {
+        private NativeProxy copy;
+
+        Releaser(NativeProxy proxy) {
+            try {
+                copy = (NativeProxy) proxy.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new RuntimeException(e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (copy.mPointer != null) {
+                    copy.releaseNativeResources();
+                }
+            } catch (Exception e) {
+                logger.warn("Unable to release " + copy + ": " + e.getMessage(), e);
+            } finally {
+                copy.mPointer = null;
+                copy = null;
+            }
+        }
+    }
+
     /**
      * <p>
      * <b>Native Proxy Registry</b>
      * <p>
      * In debug mode, we keep track of all NativeProxy objects in a
      * static registry. Whenever a NativeProxy is constructed, it
-     * registers. Whenever it finalizes, it unregisters. At the end of
+     * registers. Whenever it is reclaimed, it unregisters. At the end of
      * the game, we should be able to garbage collect and then assert that
      * the registry is empty. This could be done, for example, in the
      * jssjava JVM after main() completes.
      *
      * This registration process verifies that people are calling
-     * NativeProxy.finalize() from their subclasses of NativeProxy, so that
-     * releaseNativeResources() gets called.
+     * close() on their NativeProxy instances, so that
+     * releaseNativeResources() gets called promptly. See NativeCleaner for
+     * the per-type allocation counters, which are kept regardless of debug
+     * mode.
      */
     static Set<NativeProxy> registry = Collections.newSetFromMap(new WeakHashMap<NativeProxy, Boolean>());
     static AtomicInteger registryIndex = new AtomicInteger();
@@ -245,6 +271,8 @@ public abstract class NativeProxy implements AutoCloseable {
         } else {
             logger.debug("NativeProxy registry is empty");
         }
+
+        NativeCleaner.logStatistics();
     }
 
     /**
@@ -0,0 +1,72 @@
+package org.mozilla.jss.tests;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.security.cert.X509Certificate;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mozilla.jss.asn1.ASN1Util;
+import org.mozilla.jss.asn1.InvalidBERException;
+import org.mozilla.jss.pkix.cert.Certificate;
+
+public class ASN1CursorDecodeTest {
+
+    public X509Certificate[] certs;
+
+    public ASN1CursorDecodeTest() throws Exception {
+        CertificateChainTest chain = new CertificateChainTest();
+        certs = new X509Certificate[] { chain.rootCA, chain.subCA, chain.admin };
+    }
+
+    @Test
+    public void testArrayMatchesStream() throws Exception {
+        Certificate.Template template = new Certificate.Template();
+
+        for (X509Certificate cert : certs) {
+            byte[] der = cert.getEncoded();
+
+            Certificate fromStream = (Certificate) template.decode(
+                    new BufferedInputStream(new ByteArrayInputStream(der)));
+            Certificate fromArray = (Certificate) ASN1Util.decode(template, der);
+
+            Assert.assertArrayEquals(der, ASN1Util.encode(fromArray));
+            Assert.assertArrayEquals(ASN1Util.encode(fromStream), ASN1Util.encode(fromArray));
+            Assert.assertEquals(
+                    fromStream.getInfo().getSerialNumber(),
+                    fromArray.getInfo().getSerialNumber());
+        }
+    }
+
+    @Test
+    public void testByteBuffer() throws Exception {
+        Certificate.Template template = new Certificate.Template();
+        byte[] der = certs[2].getEncoded();
+
+        // decode from the middle of a larger heap buffer
+        byte[] padded = new byte[der.length + 8];
+        System.arraycopy(der, 0, padded, 4, der.length);
+        ByteBuffer heap = ByteBuffer.wrap(padded, 4, der.length + 4).slice();
+
+        Certificate cert = (Certificate) ASN1Util.decode(template, heap);
+        Assert.assertArrayEquals(der, ASN1Util.encode(cert));
+        Assert.assertEquals(der.length, heap.position());
+
+        ByteBuffer direct = ByteBuffer.allocateDirect(der.length);
+        direct.put(der).flip();
+
+        cert = (Certificate) ASN1Util.decode(template, direct);
+        Assert.assertArrayEquals(der, ASN1Util.encode(cert));
+        Assert.assertEquals(der.length, direct.position());
+    }
+
+    @Test(expected = InvalidBERException.class)
+    public void testTruncated() throws Exception {
+        byte[] der = certs[0].getEncoded();
+        byte[] truncated = new byte[der.length - 10];
+        System.arraycopy(der, 0, truncated, 0, truncated.length);
+
+        ASN1Util.decode(new Certificate.Template(), truncated);
+    }
+}
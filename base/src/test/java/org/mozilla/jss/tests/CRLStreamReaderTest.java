@@ -0,0 +1,126 @@
+package org.mozilla.jss.tests;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.cert.CRLException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mozilla.jss.netscape.security.util.DerOutputStream;
+import org.mozilla.jss.netscape.security.util.DerValue;
+import org.mozilla.jss.netscape.security.x509.AlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CRLStreamReader;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+
+public class CRLStreamReaderTest {
+
+    public static final int ENTRIES = 1000;
+
+    public KeyPair keyPair;
+    public byte[] crlData;
+
+    public CRLStreamReaderTest() throws Exception {
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        keyPair = kpg.generateKeyPair();
+
+        Date now = new Date();
+        RevokedCertificate[] entries = new RevokedCertificate[ENTRIES];
+        for (int i = 0; i < ENTRIES; i++) {
+            entries[i] = new RevokedCertImpl(BigInteger.valueOf(1000 + 7 * i), now);
+        }
+
+        AlgorithmId algId = new AlgorithmId(AlgorithmId.sha256WithRSAEncryption_oid);
+        X509CRLImpl crl = new X509CRLImpl(
+                new X500Name("CN=CA Signing Certificate,O=EXAMPLE"),
+                algId, now, new Date(now.getTime() + 86400000L), entries, null);
+
+        ByteArrayOutputStream tbs = new ByteArrayOutputStream();
+        crl.encodeInfo(tbs);
+
+        Signature signer = Signature.getInstance("SHA256withRSA");
+        signer.initSign(keyPair.getPrivate());
+        signer.update(tbs.toByteArray());
+
+        DerOutputStream tmp = new DerOutputStream();
+        tmp.write(tbs.toByteArray());
+        algId.encode(tmp);
+        tmp.putBitString(signer.sign());
+
+        DerOutputStream out = new DerOutputStream();
+        out.write(DerValue.tag_Sequence, tmp);
+        crlData = out.toByteArray();
+    }
+
+    public List<BigInteger> readAll(CRLStreamReader reader) throws Exception {
+        List<BigInteger> serials = new ArrayList<>();
+        reader.open();
+        RevokedCertificate entry;
+        while ((entry = reader.nextEntry()) != null) {
+            serials.add(entry.getSerialNumber());
+        }
+        reader.finish();
+        return serials;
+    }
+
+    @Test
+    public void testStreamMatchesParser() throws Exception {
+
+        X509CRLImpl crl = new X509CRLImpl(crlData);
+
+        try (CRLStreamReader reader = new CRLStreamReader(new ByteArrayInputStream(crlData))) {
+            reader.setVerificationKey(keyPair.getPublic(), null);
+            List<BigInteger> serials = readAll(reader);
+
+            Assert.assertEquals(ENTRIES, serials.size());
+            Assert.assertEquals(ENTRIES, reader.getEntryCount());
+            for (BigInteger serial : serials) {
+                Assert.assertTrue(crl.isRevoked(serial));
+            }
+
+            Assert.assertEquals(crl.getIssuerDN(), reader.getIssuer());
+            Assert.assertEquals(crl.getThisUpdate(), reader.getThisUpdate());
+            Assert.assertEquals(crl.getNextUpdate(), reader.getNextUpdate());
+            Assert.assertArrayEquals(crl.getSignature(), reader.getSignature());
+        }
+    }
+
+    @Test
+    public void testByteBuffer() throws Exception {
+
+        try (CRLStreamReader reader = new CRLStreamReader(ByteBuffer.wrap(crlData))) {
+            reader.setVerificationKey(keyPair.getPublic(), null);
+            Assert.assertEquals(ENTRIES, readAll(reader).size());
+        }
+    }
+
+    @Test
+    public void testBadSignature() throws Exception {
+
+        // flip a bit in the last byte of the signature
+        byte[] data = crlData.clone();
+        data[data.length - 1] ^= 1;
+
+        CRLStreamReader reader = new CRLStreamReader(new ByteArrayInputStream(data));
+        reader.setVerificationKey(keyPair.getPublic(), null);
+
+        try {
+            readAll(reader);
+            Assert.fail("Expected signature verification to fail");
+        } catch (CRLException e) {
+            // expected
+        }
+    }
+}
@@ -86,6 +86,34 @@ public class DigestTest {
         return true;
     }
 
+    public static void testReuseAndClone(String alg, byte[] toBeDigested)
+    throws Exception {
+        MessageDigest mozillaDigest =
+                MessageDigest.getInstance(alg, MOZ_PROVIDER_NAME);
+
+        byte[] expected = mozillaDigest.digest(toBeDigested);
+
+        // The context is restarted rather than recreated after digest().
+        if (!MessageDigest.isEqual(expected, mozillaDigest.digest(toBeDigested))) {
+            throw new Exception("ERROR: reused " + alg + " digest gives a different result");
+        }
+
+        // Cloning part way through copies the data digested so far.
+        int half = toBeDigested.length / 2;
+        mozillaDigest.update(toBeDigested, 0, half);
+        MessageDigest copy = (MessageDigest) mozillaDigest.clone();
+
+        mozillaDigest.update(toBeDigested, half, toBeDigested.length - half);
+        copy.update(toBeDigested, half, toBeDigested.length - half);
+
+        if (!MessageDigest.isEqual(expected, mozillaDigest.digest()) ||
+                !MessageDigest.isEqual(expected, copy.digest())) {
+            throw new Exception("ERROR: cloned " + alg + " digest gives a different result");
+        }
+
+        System.out.println(alg + " digest can be reused and cloned");
+    }
+
 
     public static void main(String []argv) {
 
@@ -121,6 +149,8 @@ public class DigestTest {
                     // no provider to compare results with
                     testJSSDigest(JSS_Digest_Algs[i], toBeDigested);
                 }
+
+                testReuseAndClone(JSS_Digest_Algs[i], toBeDigested);
             }
 
             //HMAC examples in org.mozilla.jss.tests.HMACTest
@@ -0,0 +1,101 @@
+package org.mozilla.jss.tests;
+
+import java.io.IOException;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mozilla.jss.netscape.security.util.DerOutputStream;
+import org.mozilla.jss.netscape.security.util.ObjectIdentifier;
+import org.mozilla.jss.netscape.security.x509.AuthorityKeyIdentifierExtension;
+import org.mozilla.jss.netscape.security.x509.BasicConstraintsExtension;
+import org.mozilla.jss.netscape.security.x509.CertificateExtensions;
+import org.mozilla.jss.netscape.security.x509.Extension;
+import org.mozilla.jss.netscape.security.x509.ExtensionFactory;
+import org.mozilla.jss.netscape.security.x509.Extensions;
+import org.mozilla.jss.netscape.security.x509.KeyIdentifier;
+import org.mozilla.jss.netscape.security.x509.OIDMap;
+import org.mozilla.jss.netscape.security.x509.PKIXExtensions;
+import org.mozilla.jss.netscape.security.x509.SubjectKeyIdentifierExtension;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+
+public class ExtensionFactoryTest {
+
+    private static final byte[] KEY_ID = { 1, 2, 3, 4, 5, 6, 7, 8 };
+
+    private static Extension encode(ObjectIdentifier oid, boolean critical,
+            byte[] value) throws IOException {
+        DerOutputStream out = new DerOutputStream();
+        out.putOctetString(value);
+        return new Extension(oid, critical, out.toByteArray());
+    }
+
+    private static Extension keyIdExtension(ObjectIdentifier oid)
+            throws IOException {
+        byte[] value = new SubjectKeyIdentifierExtension(KEY_ID).getExtensionValue();
+        return encode(oid, false, value);
+    }
+
+    private static void assertKeyId(Extension ext) throws IOException {
+        Assert.assertTrue(ext instanceof SubjectKeyIdentifierExtension);
+        KeyIdentifier id = (KeyIdentifier) ((SubjectKeyIdentifierExtension) ext)
+                .get(SubjectKeyIdentifierExtension.KEY_ID);
+        Assert.assertArrayEquals(KEY_ID, id.getIdentifier());
+    }
+
+    @Test
+    public void testDefaultExtension() throws Exception {
+        CertificateExtensions exts = new CertificateExtensions();
+        exts.parseExtension(keyIdExtension(PKIXExtensions.SubjectKey_Id));
+
+        Assert.assertEquals(1, exts.size());
+        assertKeyId(exts.elementAt(0));
+    }
+
+    @Test
+    public void testCertificate() throws Exception {
+        CertificateChainTest chain = new CertificateChainTest();
+        X509CertImpl cert = new X509CertImpl(chain.rootCA.getEncoded());
+
+        // extensions are decoded into their classes
+        Assert.assertTrue(cert.getExtension(PKIXExtensions.SubjectKey_Id.toString())
+                instanceof SubjectKeyIdentifierExtension);
+        Assert.assertTrue(cert.getExtension(PKIXExtensions.AuthorityKey_Id.toString())
+                instanceof AuthorityKeyIdentifierExtension);
+        Assert.assertTrue(cert.getExtension(PKIXExtensions.BasicConstraints_Id.toString())
+                instanceof BasicConstraintsExtension);
+    }
+
+    @Test
+    public void testUnknownExtension() throws Exception {
+        ObjectIdentifier oid = new ObjectIdentifier("1.3.6.1.4.1.2312.99.1");
+        Assert.assertNull(OIDMap.getFactory(oid));
+
+        CertificateExtensions exts = new CertificateExtensions();
+        exts.parseExtension(encode(oid, false, new byte[] { 5, 0 }));
+        Assert.assertEquals(Extension.class, exts.elementAt(0).getClass());
+
+        try {
+            new Extensions().parseExtension(encode(oid, true, new byte[] { 5, 0 }));
+            Assert.fail("Expected an unsupported critical extension to be rejected");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRegisteredClassName() throws Exception {
+        String oidString = "1.3.6.1.4.1.2312.99.2";
+        ObjectIdentifier oid = new ObjectIdentifier(oidString);
+
+        // registered by class name only: resolved by reflection once
+        OIDMap.addAttribute(SubjectKeyIdentifierExtension.class.getName(),
+                oidString, "ExtensionFactoryTest");
+        ExtensionFactory factory = OIDMap.getFactory(oid);
+        Assert.assertNotNull(factory);
+        Assert.assertSame(factory, OIDMap.getFactory(oid));
+
+        CertificateExtensions exts = new CertificateExtensions();
+        exts.parseExtension(keyIdExtension(oid));
+        assertKeyId(exts.elementAt(0));
+    }
+}
@@ -5,6 +5,7 @@
 package org.mozilla.jss.tests;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 import java.security.AlgorithmParameters;
 import java.security.InvalidKeyException;
 import java.security.NoSuchAlgorithmException;
@@ -13,11 +14,13 @@ import java.security.Provider;
 import java.security.SecureRandom;
 import java.security.Security;
 import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
 
 import javax.crypto.Cipher;
 import javax.crypto.KeyGenerator;
 import javax.crypto.SecretKey;
 import javax.crypto.SecretKeyFactory;
+import javax.crypto.ShortBufferException;
 import javax.crypto.spec.PBEKeySpec;
 import javax.crypto.spec.RC2ParameterSpec;
 
@@ -375,6 +378,74 @@ public class JCASymKeyGen {
         }
     }
 
+    /**
+     * Encrypt in place within a single array and decrypt between direct
+     * ByteBuffers, and make sure both round trip the plaintext.
+     *
+     * @param sKey
+     * @param algFamily
+     * @param algType
+     * @param provider
+     */
+    public void testBufferCipher(javax.crypto.SecretKey sKey, String algFamily,
+            String algType, String provider) throws Exception {
+
+        byte[] plaintext = plainText;
+        if (algType.endsWith("PKCS5Padding")) {
+            plaintext = plainTextPad;
+        }
+
+        Cipher cipher = Cipher.getInstance(algType, provider);
+        AlgorithmParameterSpec RC2ParSpec = null;
+        if (algFamily.compareToIgnoreCase("RC2")==0) {
+            RC2ParSpec = new RC2ParameterSpec(128, new byte[8]);
+            cipher.init(Cipher.ENCRYPT_MODE, sKey, RC2ParSpec);
+        } else {
+            cipher.init(Cipher.ENCRYPT_MODE, sKey);
+        }
+        AlgorithmParameters ap = cipher.getParameters();
+
+        //a short output buffer must be rejected before consuming input,
+        //so the round trip below still sees the whole plaintext
+        try {
+            cipher.update(plaintext, 0, plaintext.length, new byte[1], 0);
+            throw new Exception("update() into a short buffer succeeded");
+        } catch (ShortBufferException e) {
+            // expected
+        }
+
+        //encrypt in place
+        byte[] buffer = Arrays.copyOf(plaintext,
+                cipher.getOutputSize(plaintext.length));
+        int cLen = cipher.doFinal(buffer, 0, plaintext.length, buffer, 0);
+
+        //decrypt from one direct buffer into another
+        cipher = Cipher.getInstance(algType, provider);
+        if (RC2ParSpec != null) {
+            cipher.init(Cipher.DECRYPT_MODE, sKey, RC2ParSpec);
+        } else if (ap != null) {
+            cipher.init(Cipher.DECRYPT_MODE, sKey, ap);
+        } else {
+            cipher.init(Cipher.DECRYPT_MODE, sKey);
+        }
+
+        ByteBuffer input = ByteBuffer.allocateDirect(cLen);
+        input.put(buffer, 0, cLen);
+        input.flip();
+        ByteBuffer output = ByteBuffer.allocateDirect(cipher.getOutputSize(cLen));
+        cipher.doFinal(input, output);
+        output.flip();
+
+        byte[] recovered = new byte[output.remaining()];
+        output.get(recovered);
+
+        if (!Arrays.equals(plaintext, recovered)) {
+            throw new Exception("ERROR: " + provider +
+                    " in-place and ByteBuffer operations failed for " +
+                    algType);
+        }
+    }
+
     public static void main(String args[]) {
 
         String certDbLoc             = ".";
@@ -462,6 +533,8 @@ public class JCASymKeyGen {
                     skg.testMultiPartCipher(mozKey, symKeyTable[i][0],
                         symKeyTable[i][a],
                         MOZ_PROVIDER_NAME, MOZ_PROVIDER_NAME);
+                    skg.testBufferCipher(mozKey, symKeyTable[i][0],
+                        symKeyTable[i][a], MOZ_PROVIDER_NAME);
 
                     try {
                         //check to see if the otherProvider we are testing
@@ -55,6 +55,22 @@ public class JSSProvider {
         Mac m = Mac.getInstance("HmacSHA512");
         assert(m.getProvider().getName().equals(p.getName()));
 
+        // Both of our SecureRandoms may be used without locking, and the
+        // buffered one hands out distinct bytes across refills.
+        shouldProvide(p, "SecureRandom.pkcs11prng", "JSSSecureRandomSpi");
+        assert("true".equals(p.getProperty("SecureRandom.pkcs11prng ThreadSafe")));
+        SecureRandom buffered = SecureRandom.getInstance("pkcs11prng-buffered", p);
+        byte[] first = new byte[32];
+        byte[] second = new byte[32];
+        buffered.nextBytes(first);
+        for (int i = 0; i < 200; i++) {
+            buffered.nextBytes(second);
+            assert(!Arrays.equals(first, second));
+        }
+        buffered.setSeed(first);
+        buffered.nextBytes(second);
+        assert(!Arrays.equals(first, second));
+
         // Our KeyManagerFactory and TrustMangerFactory should return KeyManagers
         // and TrustManagers from our class namespace.
         KeyManagerFactory kmf = KeyManagerFactory.getInstance("NssX509");
@@ -0,0 +1,82 @@
+package org.mozilla.jss.tests;
+
+import java.security.KeyFactory;
+import java.security.PublicKey;
+import java.security.SignatureException;
+import java.security.cert.X509Certificate;
+import java.security.spec.X509EncodedKeySpec;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+
+public class LazyX509CertImplTest {
+
+    public X509Certificate[] certs;
+
+    public LazyX509CertImplTest() throws Exception {
+        CertificateChainTest chain = new CertificateChainTest();
+        certs = new X509Certificate[] { chain.rootCA, chain.subCA, chain.admin };
+    }
+
+    @Test
+    public void testFastAccessors() throws Exception {
+        for (X509Certificate cert : certs) {
+            X509CertImpl eager = new X509CertImpl(cert.getEncoded());
+            X509CertImpl lazy = new X509CertImpl(cert.getEncoded(), true);
+
+            Assert.assertEquals(eager.getVersion(), lazy.getVersion());
+            Assert.assertEquals(eager.getSerialNumber(), lazy.getSerialNumber());
+            Assert.assertEquals(eager.getIssuerName(), lazy.getIssuerName());
+            Assert.assertEquals(eager.getNotBefore(), lazy.getNotBefore());
+            Assert.assertEquals(eager.getNotAfter(), lazy.getNotAfter());
+            Assert.assertEquals(eager.getSubjectName(), lazy.getSubjectName());
+            Assert.assertEquals(eager.getPublicKey(), lazy.getPublicKey());
+            Assert.assertArrayEquals(eager.getTBSCertificate(), lazy.getTBSCertificate());
+        }
+    }
+
+    @Test
+    public void testFullDecode() throws Exception {
+        for (X509Certificate cert : certs) {
+            X509CertImpl eager = new X509CertImpl(cert.getEncoded());
+            X509CertImpl lazy = new X509CertImpl(cert.getEncoded(), true);
+
+            Assert.assertEquals(eager.getCriticalExtensionOIDs(), lazy.getCriticalExtensionOIDs());
+            Assert.assertEquals(eager.getNonCriticalExtensionOIDs(), lazy.getNonCriticalExtensionOIDs());
+            Assert.assertArrayEquals(eager.getExtensionValue("2.5.29.14"), lazy.getExtensionValue("2.5.29.14"));
+            Assert.assertEquals(eager.getBasicConstraints(), lazy.getBasicConstraints());
+            Assert.assertEquals(eager.toString(), lazy.toString());
+
+            // accessors keep working once the full info is decoded
+            Assert.assertEquals(eager.getSerialNumber(), lazy.getSerialNumber());
+            Assert.assertEquals(eager.getSubjectName(), lazy.getSubjectName());
+        }
+    }
+
+    @Test
+    public void testVerify() throws Exception {
+        X509CertImpl root = new X509CertImpl(certs[0].getEncoded(), true);
+        X509CertImpl subCA = new X509CertImpl(certs[1].getEncoded());
+
+        // convert the keys for the default provider
+        KeyFactory kf = KeyFactory.getInstance("RSA");
+        PublicKey rootKey = kf.generatePublic(new X509EncodedKeySpec(root.getPublicKey().getEncoded()));
+        PublicKey subCAKey = kf.generatePublic(new X509EncodedKeySpec(subCA.getPublicKey().getEncoded()));
+
+        // repeated verifications reuse the same Signature instance
+        for (int i = 0; i < 3; i++) {
+            root.verify(rootKey);
+            subCA.verify(rootKey);
+        }
+
+        try {
+            root.verify(subCAKey);
+            Assert.fail("Expected verification with the wrong key to fail");
+        } catch (SignatureException e) {
+            // expected
+        }
+
+        root.verify(rootKey);
+    }
+}
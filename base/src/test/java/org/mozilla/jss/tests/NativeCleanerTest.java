@@ -0,0 +1,73 @@
+package org.mozilla.jss.tests;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mozilla.jss.util.NativeCleaner;
+
+public class NativeCleanerTest {
+
+    // Each test uses its own owner type so the per-type counters don't
+    // interfere with each other.
+    private static class ReleasedOwner {}
+    private static class DisarmedOwner {}
+    private static class ReclaimedOwner {}
+
+    @Test
+    public void testRelease() {
+        AtomicInteger runs = new AtomicInteger();
+        ReleasedOwner owner = new ReleasedOwner();
+
+        NativeCleaner.Registration registration = NativeCleaner.register(owner, runs::incrementAndGet);
+
+        NativeCleaner.Statistics stats = NativeCleaner.getStatistics(ReleasedOwner.class);
+        Assert.assertEquals(1, stats.getLive());
+
+        registration.release();
+        registration.release();
+
+        Assert.assertEquals(1, runs.get());
+        Assert.assertEquals(0, stats.getLive());
+        Assert.assertEquals(1, stats.getReleased());
+        Assert.assertEquals(0, stats.getReclaimed());
+    }
+
+    @Test
+    public void testDisarm() {
+        AtomicInteger runs = new AtomicInteger();
+        DisarmedOwner owner = new DisarmedOwner();
+
+        NativeCleaner.Registration registration = NativeCleaner.register(owner, runs::incrementAndGet);
+        registration.disarm();
+        registration.release();
+
+        NativeCleaner.Statistics stats = NativeCleaner.getStatistics(DisarmedOwner.class);
+        Assert.assertEquals(0, runs.get());
+        Assert.assertEquals(0, stats.getLive());
+        Assert.assertEquals(1, stats.getReleased());
+    }
+
+    @Test
+    public void testReclaim() throws Exception {
+        CountDownLatch released = new CountDownLatch(1);
+        register(released);
+
+        for (int i = 0; i < 50 && released.getCount() > 0; i++) {
+            System.gc();
+            released.await(100, TimeUnit.MILLISECONDS);
+        }
+
+        NativeCleaner.Statistics stats = NativeCleaner.getStatistics(ReclaimedOwner.class);
+        Assert.assertEquals(0, released.getCount());
+        Assert.assertEquals(0, stats.getLive());
+        Assert.assertEquals(0, stats.getReleased());
+        Assert.assertEquals(1, stats.getReclaimed());
+    }
+
+    private void register(CountDownLatch released) {
+        NativeCleaner.register(new ReclaimedOwner(), released::countDown);
+    }
+}
@@ -0,0 +1,110 @@
+package org.mozilla.jss.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.math.BigInteger;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mozilla.jss.netscape.security.util.DerOutputStream;
+import org.mozilla.jss.netscape.security.util.DerValue;
+import org.mozilla.jss.netscape.security.x509.AlgorithmId;
+import org.mozilla.jss.netscape.security.x509.RevokedCertImpl;
+import org.mozilla.jss.netscape.security.x509.RevokedCertificate;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CRLImpl;
+
+public class RevokedCertificateIndexTest {
+
+    public static final long[] SERIALS = {
+        5, 1, 127, 128, 255, 256, 32767, 32768, 65535, 0x7fffffffffffffffL, 42, 0
+    };
+
+    public byte[] createCRL() throws Exception {
+
+        Date now = new Date();
+        RevokedCertificate[] entries = new RevokedCertificate[SERIALS.length];
+        for (int i = 0; i < SERIALS.length; i++) {
+            entries[i] = new RevokedCertImpl(BigInteger.valueOf(SERIALS[i]), now);
+        }
+
+        AlgorithmId algId = new AlgorithmId(AlgorithmId.sha256WithRSAEncryption_oid);
+        X509CRLImpl crl = new X509CRLImpl(
+                new X500Name("CN=CA Signing Certificate,O=EXAMPLE"),
+                algId, now, null, entries, null);
+
+        ByteArrayOutputStream tbs = new ByteArrayOutputStream();
+        crl.encodeInfo(tbs);
+
+        // the parser doesn't check the signature, so a dummy one will do
+        DerOutputStream tmp = new DerOutputStream();
+        tmp.write(tbs.toByteArray());
+        algId.encode(tmp);
+        tmp.putBitString(new byte[] { 1, 2, 3, 4 });
+
+        DerOutputStream out = new DerOutputStream();
+        out.write(DerValue.tag_Sequence, tmp);
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testLookup() throws Exception {
+
+        byte[] data = createCRL();
+        X509CRLImpl table = new X509CRLImpl(data);
+        X509CRLImpl index = new X509CRLImpl(data, true, true);
+
+        Assert.assertNull(table.getRevokedCertificateIndex());
+        Assert.assertNotNull(index.getRevokedCertificateIndex());
+        Assert.assertEquals(SERIALS.length, index.getNumberOfRevokedCertificates());
+
+        for (long serial : SERIALS) {
+            BigInteger sn = BigInteger.valueOf(serial);
+            Assert.assertTrue(index.isRevoked(sn));
+            Assert.assertEquals(sn, index.getRevokedCertificate(sn).getSerialNumber());
+        }
+
+        for (long serial = 0; serial <= 70000; serial++) {
+            BigInteger sn = BigInteger.valueOf(serial);
+            Assert.assertEquals(table.isRevoked(sn), index.isRevoked(sn));
+        }
+
+        Assert.assertFalse(index.isRevoked(BigInteger.valueOf(2).pow(100)));
+        Assert.assertNull(index.getRevokedCertificate(BigInteger.valueOf(7)));
+
+        Assert.assertEquals(table.getListOfRevokedCertificates().keySet(),
+                index.getListOfRevokedCertificates().keySet());
+        Assert.assertEquals(SERIALS.length, index.getRevokedCertificates().size());
+    }
+
+    @Test
+    public void testEncoding() throws Exception {
+
+        // the index refers to the entries in the CRL's own encoding
+        byte[] data = createCRL();
+        X509CRLImpl table = new X509CRLImpl(data);
+        X509CRLImpl index = new X509CRLImpl(data, true, true);
+
+        ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        table.encodeInfo(expected);
+        ByteArrayOutputStream actual = new ByteArrayOutputStream();
+        index.encodeInfo(actual);
+
+        Assert.assertArrayEquals(expected.toByteArray(), actual.toByteArray());
+    }
+
+    @Test
+    public void testSortedOrder() throws Exception {
+
+        X509CRLImpl crl = new X509CRLImpl(createCRL(), true, true);
+
+        BigInteger previous = null;
+        for (int i = 0; i < crl.getRevokedCertificateIndex().size(); i++) {
+            BigInteger current = crl.getRevokedCertificateIndex().get(i).getSerialNumber();
+            if (previous != null) {
+                Assert.assertTrue(previous.compareTo(current) < 0);
+            }
+            previous = current;
+        }
+    }
+}
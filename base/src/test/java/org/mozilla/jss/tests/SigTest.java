@@ -11,7 +11,9 @@
 package org.mozilla.jss.tests;
 
 import java.security.KeyPair;
+import java.security.MessageDigest;
 import java.security.PublicKey;
+import java.util.Arrays;
 import java.util.Enumeration;
 
 import org.mozilla.jss.CryptoManager;
@@ -121,6 +123,76 @@ public class SigTest {
             throw new Exception("ERROR: PSS Signature failed to verify.");
         }
 
+        testBatch(token, keyPair);
+
         System.out.println("SigTest passed.");
     }
+
+    public static void testBatch(CryptoToken token, KeyPair keyPair)
+            throws Exception {
+        byte[][] messages = new byte[16][];
+        byte[][] digests = new byte[messages.length][];
+        MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new byte[i * 7];
+            Arrays.fill(messages[i], (byte) i);
+            digests[i] = sha256.digest(messages[i]);
+        }
+
+        Signature signer = token.getSignatureContext(
+                SignatureAlgorithm.RSASignatureWithSHA256Digest);
+        signer.initSign(
+                (org.mozilla.jss.crypto.PrivateKey) keyPair.getPrivate());
+
+        // Pending update() data is discarded, and the context stays
+        // initialized across batches.
+        signer.update(messages[1]);
+        byte[][] signatures = signer.signAll(messages);
+        byte[][] again = signer.signAll(messages);
+        byte[][] prehashed = signer.signDigests(digests);
+        for (int i = 0; i < messages.length; i++) {
+            // PKCS #1 v1.5 signatures are deterministic
+            if (!Arrays.equals(signatures[i], again[i]) ||
+                    !Arrays.equals(signatures[i], prehashed[i])) {
+                throw new Exception("ERROR: batch signature " + i +
+                        " doesn't match");
+            }
+        }
+        System.out.println("Batch signed successfully!");
+
+        // Batch signatures verify with the single-message API.
+        signer.initVerify(keyPair.getPublic());
+        signer.update(messages[3]);
+        if (!signer.verify(signatures[3])) {
+            throw new Exception("ERROR: batch signature failed to verify.");
+        }
+
+        signatures[5] = signatures[4];
+        signer.initVerify(keyPair.getPublic());
+        checkBatchResults("verifyAll",
+                signer.verifyAll(messages, signatures), 5);
+        checkBatchResults("verifyDigests",
+                signer.verifyDigests(digests, signatures), 5);
+        System.out.println("Batch verified successfully!");
+
+        Signature signerPSS = token.getSignatureContext(
+                SignatureAlgorithm.RSAPSSSignatureWithSHA256Digest);
+        signerPSS.initSign(
+                (org.mozilla.jss.crypto.PrivateKey) keyPair.getPrivate());
+        signatures = signerPSS.signAll(messages);
+        signerPSS.initVerify(keyPair.getPublic());
+        checkBatchResults("PSS verifyAll",
+                signerPSS.verifyAll(messages, signatures), -1);
+        System.out.println("PSS Batch verified successfully!");
+    }
+
+    private static void checkBatchResults(String what, boolean[] results,
+            int invalid) throws Exception {
+        for (int i = 0; i < results.length; i++) {
+            if (results[i] != (i != invalid)) {
+                throw new Exception("ERROR: " + what + " returned " +
+                        results[i] + " for signature " + i);
+            }
+        }
+    }
 }
@@ -0,0 +1,128 @@
+package org.mozilla.jss.tests;
+
+import java.io.ByteArrayOutputStream;
+import java.security.InvalidKeyException;
+import java.security.PublicKey;
+import java.security.SecureRandom;
+import java.security.SignatureException;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mozilla.jss.crypto.PrivateKey;
+import org.mozilla.jss.crypto.SignatureSpi;
+
+public class SignatureSpiTest {
+
+    /**
+     * Toy engine whose "signature" is the reversed message, to check the
+     * default batch methods against the single-message ones.
+     */
+    public static class ReverseSignatureSpi extends SignatureSpi {
+
+        ByteArrayOutputStream data = new ByteArrayOutputStream();
+        int signs;
+        int verifies;
+
+        @Override
+        public void engineInitVerify(PublicKey publicKey) throws InvalidKeyException {
+        }
+
+        @Override
+        public void engineInitSign(PrivateKey privateKey) throws InvalidKeyException {
+        }
+
+        @Override
+        public void engineInitSign(PrivateKey privateKey, SecureRandom random) throws InvalidKeyException {
+        }
+
+        @Override
+        public void engineUpdate(byte b) {
+            data.write(b);
+        }
+
+        @Override
+        public void engineUpdate(byte[] b, int off, int len) {
+            data.write(b, off, len);
+        }
+
+        @Override
+        public byte[] engineSign() {
+            signs++;
+            byte[] result = data.toByteArray();
+            data.reset();
+            for (int i = 0; i < result.length / 2; i++) {
+                byte tmp = result[i];
+                result[i] = result[result.length - 1 - i];
+                result[result.length - 1 - i] = tmp;
+            }
+            return result;
+        }
+
+        @Override
+        public int engineSign(byte[] outbuf, int offset, int len) {
+            byte[] result = engineSign();
+            System.arraycopy(result, 0, outbuf, offset, result.length);
+            return result.length;
+        }
+
+        @Override
+        public boolean engineVerify(byte[] sigBytes) {
+            signs--;
+            verifies++;
+            return Arrays.equals(engineSign(), sigBytes);
+        }
+
+        @Override
+        public void engineSetParameter(AlgorithmParameterSpec params) {
+        }
+    }
+
+    public static final byte[][] MESSAGES = {
+        "first".getBytes(), "".getBytes(), "third message".getBytes()
+    };
+
+    @Test
+    public void testSignAll() throws Exception {
+        ReverseSignatureSpi spi = new ReverseSignatureSpi();
+
+        byte[][] signatures = spi.engineSignAll(MESSAGES);
+
+        Assert.assertEquals(MESSAGES.length, signatures.length);
+        Assert.assertEquals(MESSAGES.length, spi.signs);
+        Assert.assertArrayEquals("tsrif".getBytes(), signatures[0]);
+        Assert.assertArrayEquals(new byte[0], signatures[1]);
+        Assert.assertArrayEquals("egassem driht".getBytes(), signatures[2]);
+    }
+
+    @Test
+    public void testVerifyAll() throws Exception {
+        ReverseSignatureSpi spi = new ReverseSignatureSpi();
+
+        byte[][] signatures = spi.engineSignAll(MESSAGES);
+        signatures[2] = "bogus".getBytes();
+
+        boolean[] results = spi.engineVerifyAll(MESSAGES, signatures);
+
+        Assert.assertEquals(MESSAGES.length, spi.verifies);
+        Assert.assertTrue(results[0]);
+        Assert.assertTrue(results[1]);
+        Assert.assertFalse(results[2]);
+    }
+
+    @Test(expected = SignatureException.class)
+    public void testVerifyAllLengthMismatch() throws Exception {
+        new ReverseSignatureSpi().engineVerifyAll(MESSAGES, new byte[1][]);
+    }
+
+    @Test(expected = SignatureException.class)
+    public void testSignDigestsUnsupported() throws Exception {
+        new ReverseSignatureSpi().engineSignDigests(MESSAGES);
+    }
+
+    @Test(expected = SignatureException.class)
+    public void testVerifyDigestsUnsupported() throws Exception {
+        new ReverseSignatureSpi().engineVerifyDigests(MESSAGES, MESSAGES);
+    }
+}
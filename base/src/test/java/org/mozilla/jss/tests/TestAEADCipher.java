@@ -0,0 +1,181 @@
+package org.mozilla.jss.tests;
+
+import java.nio.ByteBuffer;
+import java.security.SecureRandom;
+import java.security.spec.AlgorithmParameterSpec;
+import java.util.Arrays;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.util.PasswordCallback;
+
+/**
+ * Checks AES-GCM and ChaCha20-Poly1305 in the Mozilla-JSS provider
+ * against the SunJCE implementations.
+ */
+public class TestAEADCipher {
+
+    private static final String MOZ = "Mozilla-JSS";
+    private static final String SUN = "SunJCE";
+
+    private static final SecureRandom random = new SecureRandom();
+
+    public static void main(String[] args) throws Exception {
+        CryptoManager cm = CryptoManager.getInstance();
+        CryptoToken tok = cm.getInternalKeyStorageToken();
+        PasswordCallback cb = new FilePasswordCallback(args[1]);
+        tok.login(cb);
+
+        for (int keySize : new int[] { 128, 192, 256 }) {
+            byte[] key = new byte[keySize / 8];
+            random.nextBytes(key);
+            byte[] iv = new byte[12];
+            random.nextBytes(iv);
+
+            testCipher("AES/GCM/NoPadding", new SecretKeySpec(key, "AES"),
+                    new GCMParameterSpec(128, iv));
+            testCipher("AES/GCM/NoPadding", new SecretKeySpec(key, "AES"),
+                    new GCMParameterSpec(96, iv));
+        }
+
+        byte[] key = new byte[32];
+        random.nextBytes(key);
+        byte[] nonce = new byte[12];
+        random.nextBytes(nonce);
+        testCipher("ChaCha20-Poly1305", new SecretKeySpec(key, "ChaCha20"),
+                new IvParameterSpec(nonce));
+
+        testGeneratedParams("AES/GCM/NoPadding", "AES", 256);
+        testGeneratedParams("ChaCha20-Poly1305", "ChaCha20", 256);
+
+        testNonAEAD("AES/CBC/PKCS5Padding", new SecretKeySpec(key, "AES"));
+    }
+
+    /**
+     * AAD must be rejected by ciphers which can't authenticate it.
+     */
+    public static void testNonAEAD(String transformation, SecretKey key)
+            throws Exception {
+        byte[] iv = new byte[16];
+        random.nextBytes(iv);
+
+        Cipher cipher = Cipher.getInstance(transformation, MOZ);
+        cipher.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(iv));
+
+        try {
+            cipher.updateAAD(new byte[16]);
+            throw new Exception(transformation + " accepted AAD");
+        } catch (UnsupportedOperationException e) {
+            // expected
+        }
+    }
+
+    public static void testCipher(String transformation, SecretKey key,
+            AlgorithmParameterSpec spec) throws Exception {
+        for (int size : new int[] { 0, 1, 16, 33, 1024 }) {
+            byte[] aad = new byte[size % 29];
+            random.nextBytes(aad);
+            byte[] plaintext = new byte[size];
+            random.nextBytes(plaintext);
+
+            Cipher sun = Cipher.getInstance(transformation, SUN);
+            sun.init(Cipher.ENCRYPT_MODE, key, spec);
+            sun.updateAAD(aad);
+            byte[] expected = sun.doFinal(plaintext);
+
+            // one-shot
+            Cipher moz = Cipher.getInstance(transformation, MOZ);
+            moz.init(Cipher.ENCRYPT_MODE, key, spec);
+            moz.updateAAD(aad);
+            byte[] ciphertext = moz.doFinal(plaintext);
+            check(transformation + " encrypt", expected, ciphertext);
+
+            // streaming: the message is split across update() calls
+            moz.init(Cipher.DECRYPT_MODE, key, spec);
+            moz.updateAAD(aad);
+            byte[] first = moz.update(ciphertext, 0, ciphertext.length / 2);
+            byte[] last = moz.doFinal(ciphertext, ciphertext.length / 2,
+                    ciphertext.length - ciphertext.length / 2);
+            check(transformation + " streaming decrypt", plaintext,
+                    concat(first, last));
+
+            // in place, into a single array
+            byte[] buffer = Arrays.copyOf(ciphertext, ciphertext.length);
+            int len = moz.doFinal(buffer, 0, buffer.length, buffer, 0);
+            check(transformation + " in-place decrypt", plaintext,
+                    Arrays.copyOf(buffer, len));
+
+            // direct buffers
+            ByteBuffer in = ByteBuffer.allocateDirect(ciphertext.length);
+            in.put(ciphertext).flip();
+            ByteBuffer out = ByteBuffer.allocateDirect(
+                    moz.getOutputSize(ciphertext.length));
+            moz.updateAAD(ByteBuffer.wrap(aad));
+            moz.doFinal(in, out);
+            out.flip();
+            byte[] recovered = new byte[out.remaining()];
+            out.get(recovered);
+            check(transformation + " ByteBuffer decrypt", plaintext, recovered);
+
+            // a modified tag must be rejected
+            byte[] tampered = Arrays.copyOf(ciphertext, ciphertext.length);
+            tampered[tampered.length - 1] ^= 1;
+            moz.updateAAD(aad);
+            try {
+                moz.doFinal(tampered);
+                throw new Exception(transformation +
+                        " accepted a modified tag");
+            } catch (AEADBadTagException e) {
+                // expected
+            }
+        }
+    }
+
+    public static void testGeneratedParams(String transformation,
+            String keyAlg, int keySize) throws Exception {
+        KeyGenerator kg = KeyGenerator.getInstance(keyAlg, MOZ);
+        kg.init(keySize);
+        SecretKey key = kg.generateKey();
+
+        byte[] plaintext = new byte[100];
+        random.nextBytes(plaintext);
+
+        Cipher moz = Cipher.getInstance(transformation, MOZ);
+        moz.init(Cipher.ENCRYPT_MODE, key);
+        byte[] ciphertext = moz.doFinal(plaintext);
+
+        // the IV may not be reused for another encryption
+        try {
+            moz.doFinal(plaintext);
+            throw new Exception(transformation + " reused its IV");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+
+        moz.init(Cipher.DECRYPT_MODE, key, moz.getParameters());
+        check(transformation + " generated parameters", plaintext,
+                moz.doFinal(ciphertext));
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] result = Arrays.copyOf(a, a.length + b.length);
+        System.arraycopy(b, 0, result, a.length, b.length);
+        return result;
+    }
+
+    private static void check(String what, byte[] expected, byte[] actual)
+            throws Exception {
+        if (!Arrays.equals(expected, actual)) {
+            throw new Exception(what + " failed");
+        }
+        System.out.println(what + ": OK");
+    }
+}
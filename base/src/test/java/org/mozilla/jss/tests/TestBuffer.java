@@ -1,6 +1,9 @@
 package org.mozilla.jss.tests;
 
+import java.nio.ByteBuffer;
+
 import org.mozilla.jss.nss.Buffer;
+import org.mozilla.jss.nss.BufferPool;
 import org.mozilla.jss.nss.BufferProxy;
 
 public class TestBuffer {
@@ -27,6 +30,38 @@ public class TestBuffer {
         Buffer.Free(buf);
     }
 
+    public static void TestReadWriteByteBuffer() {
+        BufferProxy buf = Buffer.Create(6);
+        byte[] data = { 0x01, 0x00, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07 };
+        assert(buf != null);
+
+        // Heap buffers are written through their backing array; only as
+        // much as fits in the buffer is consumed.
+        ByteBuffer heap = ByteBuffer.wrap(data);
+        assert(Buffer.WriteFrom(buf, heap) == 6);
+        assert(heap.position() == 6);
+        assert(Buffer.WriteCapacity(buf) == 0);
+
+        // Direct buffers are read into in place.
+        ByteBuffer direct = ByteBuffer.allocateDirect(4);
+        assert(Buffer.ReadInto(buf, direct) == 4);
+        assert(direct.position() == 4);
+        direct.flip();
+        for (int i = 0; i < 4; i++) {
+            assert(direct.get(i) == data[i]);
+        }
+
+        // Round trip the remainder through a sliced heap buffer, to check
+        // array offsets are honored.
+        ByteBuffer slice = ByteBuffer.allocate(8).position(3).slice();
+        assert(Buffer.ReadInto(buf, slice) == 2);
+        assert(slice.get(0) == data[4]);
+        assert(slice.get(1) == data[5]);
+        assert(Buffer.ReadInto(buf, slice) == 0);
+
+        Buffer.Free(buf);
+    }
+
     public static void TestCapacities() {
         BufferProxy buf = Buffer.Create(6);
         byte[] data = {0x00, 0x01, 0x02};
@@ -71,6 +106,44 @@ public class TestBuffer {
         Buffer.Free(buf);
     }
 
+    public static void TestPool() {
+        BufferPool pool = new BufferPool(1);
+        byte[] data = { 0x01, 0x02, 0x03 };
+
+        BufferProxy first = pool.acquire(10);
+        BufferProxy second = pool.acquire(10);
+        assert(first != null && second != null);
+        assert(pool.getCreatedCount() == 2);
+
+        assert(Buffer.Write(first, data) == data.length);
+
+        // Only one buffer of each size is retained; the other is freed.
+        pool.release(first);
+        pool.release(second);
+        assert(pool.getIdleCount() == 1);
+        assert(pool.getReturnedCount() == 1);
+        assert(pool.getDiscardedCount() == 1);
+
+        // Reused buffers come back empty.
+        BufferProxy reused = pool.acquire(10);
+        assert(reused == first);
+        assert(pool.getReusedCount() == 1);
+        assert(Buffer.ReadCapacity(reused) == 0);
+        assert(Buffer.WriteCapacity(reused) == 10);
+
+        // Buffers of other sizes aren't shared.
+        BufferProxy other = pool.acquire(20);
+        assert(Buffer.Capacity(other) == 20);
+        assert(pool.getCreatedCount() == 3);
+
+        pool.release(reused);
+        pool.release(other);
+        assert(pool.getIdleCount() == 2);
+
+        pool.clear();
+        assert(pool.getIdleCount() == 0);
+    }
+
     public static void main(String[] args) {
         System.loadLibrary("jss");
 
@@ -80,10 +153,16 @@ public class TestBuffer {
         System.out.println("Calling TestReadWrite()...");
         TestReadWrite();
 
+        System.out.println("Calling TestReadWriteByteBuffer()...");
+        TestReadWriteByteBuffer();
+
         System.out.println("Calling TestCapacities()...");
         TestCapacities();
 
         System.out.println("Calling TestPutGet()...");
         TestPutGet();
+
+        System.out.println("Calling TestPool()...");
+        TestPool();
     }
 }
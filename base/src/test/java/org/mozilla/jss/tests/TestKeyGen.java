@@ -19,6 +19,7 @@
 package org.mozilla.jss.tests;
 
 import java.math.BigInteger;
+import java.security.InvalidParameterException;
 import java.security.interfaces.DSAParams;
 import java.security.interfaces.DSAPublicKey;
 import java.security.interfaces.RSAPublicKey;
@@ -27,7 +28,9 @@ import java.util.Enumeration;
 import org.mozilla.jss.CryptoManager;
 import org.mozilla.jss.crypto.CryptoToken;
 import org.mozilla.jss.crypto.KeyPairAlgorithm;
+import org.mozilla.jss.crypto.KeyPairGenerator;
 import org.mozilla.jss.crypto.RSAParameterSpec;
+import org.mozilla.jss.pkcs11.KeyPairPool;
 import org.mozilla.jss.pkcs11.PK11KeyPairGenerator;
 import org.mozilla.jss.util.Base64OutputStream;
 
@@ -192,6 +195,8 @@ public class TestKeyGen {
         keyPair = kpg.genKeyPair();
         System.out.println("Generated 521-bit EC KeyPair!");
 
+        testPool(manager.getInternalKeyStorageToken());
+
         System.out.println("TestKeyGen passed");
         System.exit(0);
       } catch (Exception e) {
@@ -199,4 +204,51 @@ public class TestKeyGen {
             System.exit(1);
       }
     }
+
+    private static void testPool(CryptoToken token) throws Exception {
+        KeyPairGenerator kpg = token.getKeyPairGenerator(KeyPairAlgorithm.RSA);
+        kpg.initialize(2048);
+
+        // permanent key pairs can't be pooled
+        try {
+            kpg.setPoolDepth(2);
+            assert(false);
+        } catch (InvalidParameterException e) {
+        }
+
+        kpg.temporaryPairs(true);
+        kpg.setPoolDepth(2);
+
+        KeyPairPool.Statistics stats = null;
+        for (int i = 0; i < 600; i++) {
+            for (KeyPairPool.Statistics s : KeyPairPool.getStatistics().values()) {
+                stats = s;
+            }
+            if (stats != null && stats.getAvailable() == 2) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+        assert(stats != null && stats.getAvailable() == 2);
+
+        // a generator with the same settings is served from the pool
+        KeyPairGenerator other = token.getKeyPairGenerator(KeyPairAlgorithm.RSA);
+        other.initialize(2048);
+        other.temporaryPairs(true);
+        java.security.KeyPair keyPair = other.genKeyPair();
+        assert(((RSAPublicKey) keyPair.getPublic()).getModulus().bitLength() == 2048);
+        assert(stats.getHits() == 1);
+
+        // different key attributes are not
+        other.sensitivePairs(false);
+        other.genKeyPair();
+        assert(stats.getHits() == 1);
+
+        KeyPairPool.logStatistics();
+        System.out.println("Pool: " + stats);
+
+        kpg.setPoolDepth(0);
+        assert(KeyPairPool.getStatistics().isEmpty());
+        System.out.println("Generated pooled 2048-bit RSA KeyPair!");
+    }
 }
@@ -1,5 +1,6 @@
 package org.mozilla.jss.tests;
 
+import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.security.KeyStore;
 import java.util.ArrayList;
@@ -16,6 +17,7 @@ import javax.net.ssl.TrustManager;
 import javax.net.ssl.TrustManagerFactory;
 
 import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.nss.SSLChannelInfo;
 import org.mozilla.jss.provider.javax.crypto.JSSNativeTrustManager;
 import org.mozilla.jss.provider.javax.crypto.JSSTrustManager;
 import org.mozilla.jss.ssl.SSLCipher;
@@ -23,6 +25,9 @@ import org.mozilla.jss.ssl.SSLVersion;
 import org.mozilla.jss.ssl.javax.JSSEngine;
 import org.mozilla.jss.ssl.javax.JSSEngineReferenceImpl;
 import org.mozilla.jss.ssl.javax.JSSParameters;
+import org.mozilla.jss.ssl.javax.JSSSession;
+import org.mozilla.jss.ssl.javax.JSSSessionContext;
+import org.mozilla.jss.util.NativeCleaner;
 
 public class TestSSLEngine {
     public static boolean debug = false;
@@ -94,6 +99,14 @@ public class TestSSLEngine {
         ssle.setUseClientMode(false);
         assert ssle.getUseClientMode() == false;
 
+        // Tests session contexts
+        assert ctx.getClientSessionContext() != null;
+        assert ctx.getServerSessionContext() != null;
+        assert ssle.getSession().getSessionContext() == ctx.getServerSessionContext();
+        ssle.setUseClientMode(true);
+        assert ssle.getSession().getSessionContext() == ctx.getClientSessionContext();
+        ssle.setUseClientMode(false);
+
         // Tests {get,set}{Want,Need}ClientAuth. Note that want and
         // need are mutually exclusive in that they both can't be
         // true.
@@ -978,6 +991,263 @@ public class TestSSLEngine {
         }
     }
 
+    /**
+     * Checks that a session's getters are served from the channel info
+     * snapshot taken when the handshake completes, and that a second
+     * handshake replaces the snapshot.
+     */
+    public static void testSessionSnapshot(SSLContext ctx, String client_alias, String server_alias) throws Exception {
+        SSLEngine dummy = ctx.createSSLEngine();
+
+        // renegotiation needs TLSv1.2
+        String protocol = "TLSv1.2";
+        String cipher_suite = null;
+        for (String candidate : dummy.getSupportedCipherSuites()) {
+            if (!skipProtocolCipherSuite(protocol, candidate, client_alias, server_alias)) {
+                cipher_suite = candidate;
+                break;
+            }
+        }
+        assert cipher_suite != null;
+
+        System.err.println("Testing session snapshot: " + protocol + " with " + cipher_suite);
+
+        JSSEngine client_eng = (JSSEngine) ctx.createSSLEngine();
+        client_eng.setSSLParameters(createParameters(client_alias));
+        client_eng.setUseClientMode(true);
+
+        JSSEngine server_eng = (JSSEngine) ctx.createSSLEngine();
+        server_eng.setSSLParameters(createParameters(server_alias));
+        server_eng.setUseClientMode(false);
+
+        configureSSLEngine(client_eng, protocol, cipher_suite);
+        configureSSLEngine(server_eng, protocol, cipher_suite);
+
+        try {
+            assert client_eng.getSession().getChannelInfo() == null;
+            assert server_eng.getSession().getChannelInfo() == null;
+
+            testInitialHandshake(client_eng, server_eng);
+
+            SSLChannelInfo client_first = checkSessionSnapshot(client_eng.getSession());
+            SSLChannelInfo server_first = checkSessionSnapshot(server_eng.getSession());
+            assert !client_eng.getSession().isResumed();
+            assert !server_eng.getSession().isResumed();
+
+            // traffic doesn't touch the snapshot
+            testPostHandshakeTransfer(client_eng, server_eng);
+            assert client_eng.getSession().getChannelInfo() == client_first;
+            assert server_eng.getSession().getChannelInfo() == server_first;
+
+            // renegotiate, requiring client auth this time
+            server_eng.setWantClientAuth(true);
+            server_eng.setNeedClientAuth(true);
+            testBasicHandshake(client_eng, server_eng, true);
+
+            SSLChannelInfo client_second = checkSessionSnapshot(client_eng.getSession());
+            SSLChannelInfo server_second = checkSessionSnapshot(server_eng.getSession());
+            assert client_second != client_first;
+            assert server_second != server_first;
+            assert server_eng.getSession().getPeerCertificates() != null;
+
+            // an explicit refresh takes a new snapshot too
+            server_eng.getSession().refresh();
+            assert checkSessionSnapshot(server_eng.getSession()) != server_second;
+        } finally {
+            client_eng.cleanup();
+            server_eng.cleanup();
+        }
+    }
+
+    /**
+     * Asserts the session's getters agree with its current channel info
+     * snapshot and that reading them doesn't replace it.
+     */
+    public static SSLChannelInfo checkSessionSnapshot(JSSSession session) throws Exception {
+        SSLChannelInfo info = session.getChannelInfo();
+        assert info != null;
+
+        assert session.getSSLCipher() == info.getCipherSuite();
+        assert session.getSSLVersion() == info.getProtocolVersion();
+        assert session.getCipherSuite().equals(info.getCipherSuite().name());
+        assert session.getProtocol().equals(info.getProtocolVersion().jdkAlias());
+        assert Arrays.equals(session.getId(), info.getSessionID());
+        assert session.getCreationTime() == info.getCreationTime() * 1000;
+        assert session.getLastAccessedTime() == info.getLastAccessTime() * 1000;
+        assert session.getExpirationTime() == info.getExpirationTime() * 1000;
+
+        assert session.getChannelInfo() == info;
+        return info;
+    }
+
+    public static void testRecordBatching(SSLContext ctx, String client_alias, String server_alias) throws Exception {
+        SSLEngine dummy = ctx.createSSLEngine();
+
+        for (String protocol : new String[] { "TLSv1.2", "TLSv1.3" }) {
+            String cipher_suite = null;
+            for (String candidate : dummy.getSupportedCipherSuites()) {
+                if (!skipProtocolCipherSuite(protocol, candidate, client_alias, server_alias)) {
+                    cipher_suite = candidate;
+                    break;
+                }
+            }
+            assert cipher_suite != null;
+
+            System.err.println("Testing record batching: " + protocol + " with " + cipher_suite);
+
+            JSSEngineReferenceImpl client_eng = (JSSEngineReferenceImpl) ctx.createSSLEngine();
+            client_eng.setSSLParameters(createParameters(client_alias));
+            client_eng.setUseClientMode(true);
+            client_eng.setRecordBatching(true);
+
+            JSSEngineReferenceImpl server_eng = (JSSEngineReferenceImpl) ctx.createSSLEngine();
+            server_eng.setSSLParameters(createParameters(server_alias));
+            server_eng.setUseClientMode(false);
+            server_eng.setRecordBatching(true);
+
+            configureSSLEngine(client_eng, protocol, cipher_suite);
+            configureSSLEngine(server_eng, protocol, cipher_suite);
+
+            try {
+                testInitialHandshake(client_eng, server_eng);
+                sendBatchedData(client_eng, server_eng);
+                sendBatchedData(server_eng, client_eng);
+            } finally {
+                client_eng.cleanup();
+                server_eng.cleanup();
+            }
+        }
+    }
+
+    /**
+     * Gathers a message spanning several records out of several direct
+     * buffers with wrap(), and scatters it into several direct buffers
+     * with unwrap(). Each call must handle more than one record.
+     */
+    public static void sendBatchedData(SSLEngine send, SSLEngine recv) throws Exception {
+        int record_size = 16384;
+        byte[] message = new byte[5 * record_size + 1234];
+        new java.util.Random(0).nextBytes(message);
+
+        int[] split = { 1000, 3 * record_size, message.length - 1000 - 3 * record_size };
+        ByteBuffer[] srcs = new ByteBuffer[split.length];
+        ByteBuffer[] dsts = new ByteBuffer[split.length];
+        int start = 0;
+        for (int i = 0; i < split.length; i++) {
+            srcs[i] = ByteBuffer.allocateDirect(split[i]);
+            srcs[i].put(message, start, split[i]);
+            srcs[i].flip();
+            dsts[i] = ByteBuffer.allocateDirect(split[i]);
+            start += split[i];
+        }
+
+        ByteBuffer wire = ByteBuffer.allocateDirect(8 * send.getSession().getPacketBufferSize());
+
+        boolean first = true;
+        for (int counter = 0; srcs[srcs.length - 1].hasRemaining(); counter++) {
+            assert counter < 10 : "Reasonably expected wrap() to consume all data";
+
+            SSLEngineResult r = send.wrap(srcs, wire);
+            assert r.getStatus() == SSLEngineResult.Status.OK;
+            if (first) {
+                assert r.bytesConsumed() > record_size : "wrap() only consumed " + r.bytesConsumed();
+                first = false;
+            }
+        }
+
+        wire.flip();
+        System.err.println("Batched " + message.length + " bytes into " + wire.remaining() + " wire bytes");
+
+        first = true;
+        for (int counter = 0; wire.hasRemaining(); counter++) {
+            assert counter < 10 : "Reasonably expected unwrap() to consume all data";
+
+            SSLEngineResult r = recv.unwrap(wire, dsts);
+            assert r.getStatus() == SSLEngineResult.Status.OK;
+            if (first) {
+                assert r.bytesProduced() > record_size : "unwrap() only produced " + r.bytesProduced();
+                first = false;
+            }
+        }
+
+        byte[] received = new byte[message.length];
+        start = 0;
+        for (ByteBuffer dst : dsts) {
+            assert !dst.hasRemaining();
+            dst.flip();
+            dst.get(received, start, dst.remaining());
+            start += dst.limit();
+        }
+
+        assert Arrays.equals(message, received);
+    }
+
+    public static void testAbandonedEngine(SSLContext ctx, String client_alias, String server_alias) throws Exception {
+        // TLS 1.2 so that the server session has an ID and is tracked by
+        // the session context
+        String protocol = "TLSv1.2";
+        String cipher_suite = null;
+
+        SSLEngine dummy = ctx.createSSLEngine();
+        for (String candidate : dummy.getSupportedCipherSuites()) {
+            if (!skipProtocolCipherSuite(protocol, candidate, client_alias, server_alias)) {
+                cipher_suite = candidate;
+                break;
+            }
+        }
+        assert cipher_suite != null;
+
+        System.err.println("Testing abandoned engines: " + protocol + " with " + cipher_suite);
+
+        JSSSessionContext server_context = (JSSSessionContext) ctx.getServerSessionContext();
+        NativeCleaner.Statistics stats = NativeCleaner.getStatistics(JSSEngineReferenceImpl.class);
+        long reclaimed = stats.getReclaimed();
+
+        byte[][] id = new byte[1][];
+        WeakReference<JSSEngine> server_ref = handshakeAndAbandon(ctx, client_alias, server_alias, protocol, cipher_suite, id);
+
+        for (int i = 0; i < 50 && server_ref.get() != null; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+
+        // neither the session context nor the certificate validation
+        // handler installed on the server's ssl_fd may keep the engine
+        // reachable
+        assert server_ref.get() == null;
+        assert server_context.getSession(id[0]) == null;
+
+        // the native resources of both engines are reclaimed in the
+        // background
+        for (int i = 0; i < 50 && stats.getReclaimed() < reclaimed + 2; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        assert stats.getReclaimed() >= reclaimed + 2;
+    }
+
+    private static WeakReference<JSSEngine> handshakeAndAbandon(SSLContext ctx, String client_alias, String server_alias, String protocol, String cipher_suite, byte[][] id) throws Exception {
+        JSSEngine client_eng = (JSSEngine) ctx.createSSLEngine();
+        client_eng.setSSLParameters(createParameters(client_alias));
+        client_eng.setUseClientMode(true);
+
+        JSSEngine server_eng = (JSSEngine) ctx.createSSLEngine();
+        server_eng.setSSLParameters(createParameters(server_alias));
+        server_eng.setUseClientMode(false);
+
+        configureSSLEngine(client_eng, protocol, cipher_suite);
+        configureSSLEngine(server_eng, protocol, cipher_suite);
+
+        testInitialHandshake(client_eng, server_eng);
+
+        id[0] = server_eng.getSession().getId();
+        assert id[0] != null && id[0].length > 0;
+        assert ctx.getServerSessionContext().getSession(id[0]) != null;
+
+        // neither engine is closed nor cleaned up
+        return new WeakReference<>(server_eng);
+    }
+
     public static void testBasicClientServer(String[] args) throws Exception {
         SSLContext ctx = SSLContext.getInstance("TLS", "Mozilla-JSS");
         ctx.init(getKMs(), getTMs(), null);
@@ -988,6 +1258,11 @@ public class TestSSLEngine {
         testAllHandshakes(ctx, client_alias, server_alias, false);
         testAllHandshakes(ctx, client_alias, server_alias, true);
         testJSSEToJSSHandshakes(ctx, server_alias);
+        testRecordBatching(ctx, client_alias, server_alias);
+        testAbandonedEngine(ctx, client_alias, server_alias);
+
+        JSSSessionContext server_context = (JSSSessionContext) ctx.getServerSessionContext();
+        assert server_context.getFullHandshakes() + server_context.getResumedHandshakes() > 0;
     }
 
     public static void testNativeClientServer(String[] args) throws Exception {
@@ -1000,7 +1275,9 @@ public class TestSSLEngine {
         testAllHandshakes(ctx, client_alias, server_alias, false);
         testAllHandshakes(ctx, client_alias, server_alias, true);
         testPostHandshakeAuth(ctx, client_alias, server_alias);
+        testSessionSnapshot(ctx, client_alias, server_alias);
         testJSSEToJSSHandshakes(ctx, server_alias);
+        testAbandonedEngine(ctx, client_alias, server_alias);
     }
 
     public static void main(String[] args) throws Exception {
@@ -0,0 +1,278 @@
+package org.mozilla.jss.tests;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLContext;
+
+import org.mozilla.jss.ssl.javax.JSSSocket;
+import org.mozilla.jss.ssl.javax.JSSSocketChannel;
+
+/**
+ * Handshakes between two JSSSockets over a loopback SocketChannel, both
+ * with blocking channels (waiting on the channel's readiness inside
+ * finishConnect()) and with non-blocking channels driven by a Selector
+ * using getHandshakeInterestOps(). Also checks that a write isn't held up
+ * by a read blocked on the peer.
+ */
+public class TestSSLSocketChannel {
+
+    public static final long TIMEOUT = 30000;
+
+    public static JSSSocket createSocket(SSLContext ctx, SocketChannel parent, boolean client, String alias) throws Exception {
+        JSSSocket socket = new JSSSocket();
+        socket.consumeSocket(parent.socket());
+        socket.setSSLContext(ctx);
+        socket.initEngine();
+        socket.setUseClientMode(client);
+
+        if (alias == null) {
+            socket.getEngine().setSSLParameters(TestSSLEngine.createParameters());
+        } else {
+            socket.getEngine().setSSLParameters(TestSSLEngine.createParameters(alias));
+        }
+
+        return socket;
+    }
+
+    public static void testBlockingHandshake(SSLContext ctx, String server_alias) throws Exception {
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+            try (SocketChannel client_parent = SocketChannel.open(server.getLocalAddress());
+                 SocketChannel server_parent = server.accept()) {
+
+                JSSSocket client = createSocket(ctx, client_parent, true, null);
+                JSSSocket server_sock = createSocket(ctx, server_parent, false, server_alias);
+
+                JSSSocketChannel client_channel = client.getChannel();
+                JSSSocketChannel server_channel = server_sock.getChannel();
+                assert client_channel.isBlocking();
+                assert server_channel.isBlocking();
+
+                Future<Boolean> server_result = executor.submit(() -> server_channel.finishConnect());
+
+                long start = System.currentTimeMillis();
+                assert client_channel.finishConnect();
+                assert server_result.get(TIMEOUT, TimeUnit.MILLISECONDS);
+                System.out.println("Blocking handshake took " + (System.currentTimeMillis() - start) + " ms");
+
+                assert client_channel.getHandshakeInterestOps() == 0;
+                assert server_channel.getHandshakeInterestOps() == 0;
+
+                testTransfer(client_channel, server_channel);
+
+                client.close();
+                server_sock.close();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public static void testNonBlockingHandshake(SSLContext ctx, String server_alias) throws Exception {
+        try (ServerSocketChannel server = ServerSocketChannel.open();
+             Selector selector = Selector.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+            try (SocketChannel client_parent = SocketChannel.open(server.getLocalAddress());
+                 SocketChannel server_parent = server.accept()) {
+
+                client_parent.configureBlocking(false);
+                server_parent.configureBlocking(false);
+
+                JSSSocket client = createSocket(ctx, client_parent, true, null);
+                JSSSocket server_sock = createSocket(ctx, server_parent, false, server_alias);
+
+                JSSSocketChannel client_channel = client.getChannel();
+                JSSSocketChannel server_channel = server_sock.getChannel();
+                assert !client_channel.isBlocking();
+                assert !server_channel.isBlocking();
+
+                SocketChannel[] parents = { client_parent, server_parent };
+                JSSSocketChannel[] channels = { client_channel, server_channel };
+                boolean[] done = new boolean[2];
+
+                long deadline = System.currentTimeMillis() + TIMEOUT;
+                int selects = 0;
+
+                while (!done[0] || !done[1]) {
+                    assert System.currentTimeMillis() < deadline : "Non-blocking handshake timed out";
+
+                    for (int i = 0; i < channels.length; i++) {
+                        if (done[i]) {
+                            continue;
+                        }
+
+                        done[i] = channels[i].finishConnect();
+                        int ops = channels[i].getHandshakeInterestOps();
+
+                        if (done[i]) {
+                            assert ops == 0;
+                            SelectionKey key = parents[i].keyFor(selector);
+                            if (key != null) {
+                                key.cancel();
+                            }
+                            continue;
+                        }
+
+                        assert ops == 0 || ops == SelectionKey.OP_READ || ops == SelectionKey.OP_WRITE;
+                        if (ops != 0) {
+                            parents[i].register(selector, ops);
+                        }
+                    }
+
+                    if (!done[0] || !done[1]) {
+                        selector.select(100);
+                        selector.selectedKeys().clear();
+                        selects++;
+                    }
+                }
+
+                System.out.println("Non-blocking handshake took " + selects + " selects");
+
+                // The channels can't be switched back to blocking mode
+                // while they're registered.
+                for (SelectionKey key : selector.keys()) {
+                    key.cancel();
+                }
+                selector.selectNow();
+
+                client.close();
+                server_sock.close();
+            }
+        }
+    }
+
+    /**
+     * Writes from the server while a server thread is blocked in read(),
+     * as a heartbeat would: the write must not wait for the read.
+     */
+    public static void testConcurrentReadWrite(SSLContext ctx, String server_alias) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+
+        try (ServerSocketChannel server = ServerSocketChannel.open()) {
+            server.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+
+            try (SocketChannel client_parent = SocketChannel.open(server.getLocalAddress());
+                 SocketChannel server_parent = server.accept()) {
+
+                JSSSocket client = createSocket(ctx, client_parent, true, null);
+                JSSSocket server_sock = createSocket(ctx, server_parent, false, server_alias);
+
+                JSSSocketChannel client_channel = client.getChannel();
+                JSSSocketChannel server_channel = server_sock.getChannel();
+
+                Future<Boolean> server_result = executor.submit(() -> server_channel.finishConnect());
+                assert client_channel.finishConnect();
+                assert server_result.get(TIMEOUT, TimeUnit.MILLISECONDS);
+
+                byte[] request = "Cooking MCs".getBytes();
+                byte[] heartbeat = "like a pound of bacon.".getBytes();
+
+                // The server waits for a request which doesn't come yet.
+                Future<byte[]> blocked_read = executor.submit(() -> {
+                    ByteBuffer in = ByteBuffer.allocate(request.length);
+                    while (in.hasRemaining()) {
+                        if (server_channel.read(in) < 0) {
+                            break;
+                        }
+                    }
+                    return in.array();
+                });
+
+                Thread.sleep(500);
+                assert !blocked_read.isDone();
+
+                // Meanwhile, it sends a heartbeat to the client.
+                Future<Integer> write = executor.submit(() -> {
+                    ByteBuffer out = ByteBuffer.wrap(heartbeat);
+                    int total = 0;
+                    while (out.hasRemaining()) {
+                        total += server_channel.write(out);
+                    }
+                    return total;
+                });
+                assert write.get(TIMEOUT, TimeUnit.MILLISECONDS) == heartbeat.length;
+                assert !blocked_read.isDone();
+
+                ByteBuffer received = ByteBuffer.allocate(heartbeat.length);
+                while (received.hasRemaining()) {
+                    assert client_channel.read(received) >= 0;
+                }
+                assert java.util.Arrays.equals(received.array(), heartbeat);
+
+                // The client's request unblocks the server's read.
+                ByteBuffer out = ByteBuffer.wrap(request);
+                while (out.hasRemaining()) {
+                    client_channel.write(out);
+                }
+                assert java.util.Arrays.equals(blocked_read.get(TIMEOUT, TimeUnit.MILLISECONDS), request);
+
+                client.close();
+                server_sock.close();
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    public static void testTransfer(JSSSocketChannel client, JSSSocketChannel server) throws Exception {
+        byte[] message = "like a pound of bacon.".getBytes();
+
+        ByteBuffer out = ByteBuffer.wrap(message);
+        while (out.hasRemaining()) {
+            client.write(out);
+        }
+
+        ByteBuffer in = ByteBuffer.allocate(message.length);
+        long deadline = System.currentTimeMillis() + TIMEOUT;
+        while (in.hasRemaining()) {
+            assert System.currentTimeMillis() < deadline : "Transfer timed out";
+            if (server.read(in) == 0) {
+                Thread.sleep(10);
+            }
+        }
+
+        assert java.util.Arrays.equals(in.array(), message);
+    }
+
+    public static void main(String[] args) throws Exception {
+        // Args:
+        //  - nssdb
+        //  - nssdb password
+        //  - client cert (unused)
+        //  - server cert
+
+        TestSSLEngine.initialize(args);
+
+        if (org.mozilla.jss.JSSProvider.ENABLE_JSSENGINE == false) {
+            return;
+        }
+
+        SSLContext ctx = SSLContext.getInstance("TLS", "Mozilla-JSS");
+        ctx.init(TestSSLEngine.getKMs(), TestSSLEngine.getTMs(), null);
+
+        String server_alias = args[3];
+
+        System.out.println("Testing blocking handshake over a SocketChannel...");
+        testBlockingHandshake(ctx, server_alias);
+
+        System.out.println("Testing non-blocking handshake over a SocketChannel...");
+        testNonBlockingHandshake(ctx, server_alias);
+
+        System.out.println("Testing a write while a read is blocked...");
+        testConcurrentReadWrite(ctx, server_alias);
+    }
+}
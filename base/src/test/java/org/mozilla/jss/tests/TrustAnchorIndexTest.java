@@ -0,0 +1,131 @@
+/* This Source Code Form is subject to the terms of the Mozilla Public
+ * License, v. 2.0. If a copy of the MPL was not distributed with this
+ * file, You can obtain one at http://mozilla.org/MPL/2.0/. */
+
+package org.mozilla.jss.tests;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.asn1.ASN1Util;
+import org.mozilla.jss.asn1.BOOLEAN;
+import org.mozilla.jss.asn1.INTEGER;
+import org.mozilla.jss.asn1.OBJECT_IDENTIFIER;
+import org.mozilla.jss.asn1.OCTET_STRING;
+import org.mozilla.jss.asn1.SEQUENCE;
+import org.mozilla.jss.crypto.CryptoStore;
+import org.mozilla.jss.crypto.CryptoToken;
+import org.mozilla.jss.crypto.InternalCertificate;
+import org.mozilla.jss.crypto.SignatureAlgorithm;
+import org.mozilla.jss.crypto.X509Certificate;
+import org.mozilla.jss.pkcs11.PK11Cert;
+import org.mozilla.jss.pkcs11.TrustAnchorIndex;
+import org.mozilla.jss.pkix.cert.Certificate;
+import org.mozilla.jss.pkix.cert.CertificateInfo;
+import org.mozilla.jss.pkix.cert.Extension;
+import org.mozilla.jss.pkix.primitive.AlgorithmIdentifier;
+import org.mozilla.jss.pkix.primitive.Name;
+import org.mozilla.jss.pkix.primitive.SubjectPublicKeyInfo;
+
+/**
+ * Checks that the TrustAnchorIndex is rebuilt when JSS imports a CA
+ * certificate, changes its trust or deletes it.
+ */
+public class TrustAnchorIndexTest {
+
+    private static final SignatureAlgorithm SIG_ALG =
+        SignatureAlgorithm.RSASignatureWithSHA256Digest;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length != 2) {
+            System.out.println("Usage: java org.mozilla.jss.tests.TrustAnchorIndexTest <dbdir> <passwordFile>");
+            System.exit(1);
+        }
+
+        CryptoManager cm = CryptoManager.getInstance();
+        cm.setPasswordCallback(new FilePasswordCallback(args[1]));
+
+        CryptoToken token = cm.getInternalKeyStorageToken();
+        CryptoStore store = token.getCryptoStore();
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA", "Mozilla-JSS");
+        kpg.initialize(2048);
+        KeyPair pair = kpg.genKeyPair();
+        byte[] encoded = ASN1Util.encode(makeCACert(pair));
+
+        // the index doesn't know about the CA yet
+        java.security.cert.X509Certificate unknown = (java.security.cert.X509Certificate)
+            java.security.cert.CertificateFactory.getInstance("X.509")
+            .generateCertificate(new java.io.ByteArrayInputStream(encoded));
+        assert findIssuers(unknown).isEmpty();
+
+        // importing it and trusting it invalidates the index
+        long generation = TrustAnchorIndex.getGeneration();
+        X509Certificate cert = cm.importCACertPackage(encoded);
+        assert TrustAnchorIndex.getGeneration() > generation;
+
+        generation = TrustAnchorIndex.getGeneration();
+        TrustAnchorIndex before = TrustAnchorIndex.getInstance();
+        ((InternalCertificate) cert).setSSLTrust(
+                PK11Cert.TRUSTED_CA |
+                PK11Cert.TRUSTED_CLIENT_CA |
+                PK11Cert.VALID_CA);
+        assert TrustAnchorIndex.getGeneration() > generation;
+
+        TrustAnchorIndex after = TrustAnchorIndex.getInstance();
+        assert after != before;
+        assert after == TrustAnchorIndex.getInstance();
+
+        List<java.security.cert.X509Certificate> issuers = findIssuers(unknown);
+        assert issuers.size() == 1;
+        assert issuers.get(0).equals(cert);
+
+        // deleting it (and its key) invalidates the index again
+        generation = TrustAnchorIndex.getGeneration();
+        store.deleteCert(cert);
+        assert TrustAnchorIndex.getGeneration() > generation;
+        assert findIssuers(unknown).isEmpty();
+
+        System.out.println("TrustAnchorIndexTest: PASS");
+    }
+
+    private static List<java.security.cert.X509Certificate> findIssuers(
+            java.security.cert.X509Certificate cert) {
+        return TrustAnchorIndex.getInstance().findIssuers(cert);
+    }
+
+    private static Certificate makeCACert(KeyPair pair) throws Exception {
+
+        Name name = new Name();
+        name.addCountryName("US");
+        name.addOrganizationName("Mozilla");
+        name.addOrganizationalUnitName("JSS Testing " + System.currentTimeMillis());
+        name.addCommonName("TrustAnchorIndexTest CA");
+
+        Calendar cal = Calendar.getInstance();
+        Date notBefore = cal.getTime();
+        cal.add(Calendar.YEAR, 1);
+        Date notAfter = cal.getTime();
+
+        SubjectPublicKeyInfo spki = (SubjectPublicKeyInfo) ASN1Util.decode(
+            new SubjectPublicKeyInfo.Template(), pair.getPublic().getEncoded());
+
+        CertificateInfo info = new CertificateInfo(
+            CertificateInfo.v3, new INTEGER(1), new AlgorithmIdentifier(SIG_ALG.toOID()),
+            name, notBefore, notAfter, name, spki);
+
+        SEQUENCE bc = new SEQUENCE();
+        bc.addElement(new BOOLEAN(true)); // cA
+        SEQUENCE extensions = new SEQUENCE();
+        extensions.addElement(new Extension(
+            new OBJECT_IDENTIFIER(new long[] {2, 5, 29, 19}), true,
+            new OCTET_STRING(ASN1Util.encode(bc))));
+        info.setExtensions(extensions);
+
+        return new Certificate(info, pair.getPrivate(), SIG_ALG);
+    }
+}
@@ -0,0 +1,270 @@
+package org.mozilla.jss.tests;
+
+import java.math.BigInteger;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.cert.X509Certificate;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mozilla.jss.netscape.security.util.DerValue;
+import org.mozilla.jss.netscape.security.x509.AlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CertificateAlgorithmId;
+import org.mozilla.jss.netscape.security.x509.CertificateExtensions;
+import org.mozilla.jss.netscape.security.x509.CertificateIssuerName;
+import org.mozilla.jss.netscape.security.x509.CertificateSerialNumber;
+import org.mozilla.jss.netscape.security.x509.CertificateSubjectName;
+import org.mozilla.jss.netscape.security.x509.CertificateValidity;
+import org.mozilla.jss.netscape.security.x509.CertificateVersion;
+import org.mozilla.jss.netscape.security.x509.CertificateX509Key;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+import org.mozilla.jss.netscape.security.x509.X509CertImpl;
+import org.mozilla.jss.netscape.security.x509.X509CertInfo;
+import org.mozilla.jss.netscape.security.x509.X509Key;
+import org.mozilla.jss.pkcs11.TrustAnchorIndex;
+import org.mozilla.jss.provider.javax.crypto.JSSTrustManager;
+import org.mozilla.jss.provider.javax.crypto.VerifiedChainCache;
+
+public class VerifiedChainCacheTest {
+
+    public static final String SERVER_AUTH_OID = "1.3.6.1.5.5.7.3.1";
+    public static final String CLIENT_AUTH_OID = "1.3.6.1.5.5.7.3.2";
+
+    public KeyPair keyPair;
+    public X509Certificate[] chain;
+
+    public VerifiedChainCacheTest() throws Exception {
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance("RSA");
+        kpg.initialize(2048);
+        keyPair = kpg.generateKeyPair();
+
+        Date now = new Date();
+        chain = new X509Certificate[] {
+            createCert("CN=Server", 1, new Date(now.getTime() + 86400000L))
+        };
+    }
+
+    public X509Certificate createCert(String subjectDN, int serial, Date notAfter) throws Exception {
+
+        X509CertInfo info = new X509CertInfo();
+        info.set(X509CertInfo.VERSION, new CertificateVersion(CertificateVersion.V3));
+        info.set(X509CertInfo.SERIAL_NUMBER, new CertificateSerialNumber(BigInteger.valueOf(serial)));
+        info.set(X509CertInfo.ISSUER, new CertificateIssuerName(new X500Name("CN=CA,O=EXAMPLE")));
+        info.set(X509CertInfo.SUBJECT, new CertificateSubjectName(new X500Name(subjectDN)));
+        info.set(X509CertInfo.VALIDITY, new CertificateValidity(new Date(0), notAfter));
+        info.set(X509CertInfo.ALGORITHM_ID,
+                new CertificateAlgorithmId(AlgorithmId.get("SHA256withRSA")));
+        info.set(X509CertInfo.KEY, new CertificateX509Key(
+                X509Key.parse(new DerValue(keyPair.getPublic().getEncoded()))));
+        info.set(X509CertInfo.EXTENSIONS, new CertificateExtensions());
+
+        X509CertImpl cert = new X509CertImpl(info);
+        cert.sign(keyPair.getPrivate(), "SHA256withRSA", "SunRsaSign");
+        return cert;
+    }
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+
+        VerifiedChainCache cache = new VerifiedChainCache();
+        String key = cache.getKey(chain, SERVER_AUTH_OID);
+
+        Assert.assertFalse(cache.contains(key));
+        Assert.assertEquals(1, cache.getMissCount());
+
+        cache.add(key, chain, TrustAnchorIndex.getGeneration());
+        Assert.assertTrue(cache.contains(key));
+        Assert.assertEquals(1, cache.getHitCount());
+
+        // the key usage is part of the key
+        String clientKey = cache.getKey(chain, CLIENT_AUTH_OID);
+        Assert.assertNotEquals(key, clientKey);
+        Assert.assertFalse(cache.contains(clientKey));
+        Assert.assertEquals(2, cache.getMissCount());
+
+        Assert.assertNull(cache.getKey(new X509Certificate[0], SERVER_AUTH_OID));
+        Assert.assertFalse(cache.contains(null));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedEviction() throws Exception {
+
+        VerifiedChainCache cache = new VerifiedChainCache(2, VerifiedChainCache.DEFAULT_LIFETIME);
+        String key1 = cache.getKey(chain, SERVER_AUTH_OID);
+        String key2 = cache.getKey(chain, CLIENT_AUTH_OID);
+        String key3 = cache.getKey(chain, null);
+
+        cache.add(key1, chain, TrustAnchorIndex.getGeneration());
+        cache.add(key2, chain, TrustAnchorIndex.getGeneration());
+        Assert.assertTrue(cache.contains(key1));
+
+        cache.add(key3, chain, TrustAnchorIndex.getGeneration());
+        Assert.assertEquals(2, cache.size());
+        Assert.assertTrue(cache.contains(key1));
+        Assert.assertFalse(cache.contains(key2));
+        Assert.assertTrue(cache.contains(key3));
+    }
+
+    @Test
+    public void testLifetimeExpiry() throws Exception {
+
+        VerifiedChainCache cache = new VerifiedChainCache(16, 50);
+        String key = cache.getKey(chain, SERVER_AUTH_OID);
+
+        cache.add(key, chain, TrustAnchorIndex.getGeneration());
+        Assert.assertTrue(cache.contains(key));
+
+        Thread.sleep(100);
+        Assert.assertFalse(cache.contains(key));
+        Assert.assertEquals(0, cache.size());
+    }
+
+    @Test
+    public void testNotAfterExpiry() throws Exception {
+
+        // notAfter is encoded in seconds
+        Date notAfter = new Date(System.currentTimeMillis() / 1000 * 1000 + 2000);
+        X509Certificate[] shortChain = new X509Certificate[] {
+            createCert("CN=Short", 2, notAfter), chain[0]
+        };
+
+        VerifiedChainCache cache = new VerifiedChainCache();
+        String key = cache.getKey(shortChain, SERVER_AUTH_OID);
+
+        cache.add(key, shortChain, TrustAnchorIndex.getGeneration());
+        Assert.assertTrue(cache.contains(key));
+
+        Thread.sleep(notAfter.getTime() - System.currentTimeMillis() + 100);
+        Assert.assertFalse(cache.contains(key));
+    }
+
+    @Test
+    public void testExpiredChainNotCached() throws Exception {
+
+        X509Certificate[] expired = new X509Certificate[] {
+            createCert("CN=Expired", 3, new Date(System.currentTimeMillis() - 86400000L))
+        };
+
+        VerifiedChainCache cache = new VerifiedChainCache();
+        String key = cache.getKey(expired, SERVER_AUTH_OID);
+
+        cache.add(key, expired, TrustAnchorIndex.getGeneration());
+        Assert.assertEquals(0, cache.size());
+        Assert.assertFalse(cache.contains(key));
+    }
+
+    @Test
+    public void testTrustAnchorChange() throws Exception {
+
+        VerifiedChainCache cache = new VerifiedChainCache();
+        String key = cache.getKey(chain, SERVER_AUTH_OID);
+
+        cache.add(key, chain, TrustAnchorIndex.getGeneration());
+        Assert.assertTrue(cache.contains(key));
+
+        TrustAnchorIndex.invalidate();
+        Assert.assertFalse(cache.contains(key));
+    }
+
+    @Test
+    public void testTrustAnchorChangeDuringValidation() throws Exception {
+
+        VerifiedChainCache cache = new VerifiedChainCache();
+        String key = cache.getKey(chain, SERVER_AUTH_OID);
+
+        long generation = TrustAnchorIndex.getGeneration();
+        TrustAnchorIndex.invalidate();
+
+        cache.add(key, chain, generation);
+        Assert.assertEquals(0, cache.size());
+        Assert.assertFalse(cache.contains(key));
+    }
+
+    /**
+     * Trust manager which accepts any chain, counting the validations
+     * which weren't served from the cache.
+     */
+    public static class CountingTrustManager extends JSSTrustManager {
+
+        public int validations;
+        public boolean invalidateAnchors;
+
+        @Override
+        protected void validateCertChain(X509Certificate[] certChain, String keyUsage) {
+            validations++;
+            if (invalidateAnchors) {
+                TrustAnchorIndex.invalidate();
+            }
+        }
+    }
+
+    @Test
+    public void testCheckCertChainCacheHit() throws Exception {
+
+        VerifiedChainCache cache = new VerifiedChainCache();
+        CountingTrustManager trustManager = new CountingTrustManager();
+        trustManager.configureVerifiedChainCache(cache);
+
+        trustManager.checkCertChain(chain, SERVER_AUTH_OID);
+        Assert.assertEquals(1, trustManager.validations);
+        Assert.assertEquals(1, cache.size());
+
+        trustManager.checkCertChain(chain, SERVER_AUTH_OID);
+        Assert.assertEquals(1, trustManager.validations);
+        Assert.assertEquals(1, cache.getHitCount());
+
+        // a different key usage is validated separately
+        trustManager.checkCertChain(chain, CLIENT_AUTH_OID);
+        Assert.assertEquals(2, trustManager.validations);
+    }
+
+    @Test
+    public void testCheckCertChainTrustAnchorChange() throws Exception {
+
+        VerifiedChainCache cache = new VerifiedChainCache();
+        CountingTrustManager trustManager = new CountingTrustManager();
+        trustManager.configureVerifiedChainCache(cache);
+
+        // the anchors change while the chain is being validated
+        trustManager.invalidateAnchors = true;
+        trustManager.checkCertChain(chain, SERVER_AUTH_OID);
+        Assert.assertEquals(0, cache.size());
+
+        trustManager.invalidateAnchors = false;
+        trustManager.checkCertChain(chain, SERVER_AUTH_OID);
+        Assert.assertEquals(2, trustManager.validations);
+        Assert.assertEquals(1, cache.size());
+    }
+
+    @Test
+    public void testClearedOnAllowMissingExtendedKeyUsage() throws Exception {
+
+        VerifiedChainCache cache = new VerifiedChainCache();
+        String key = cache.getKey(chain, SERVER_AUTH_OID);
+
+        JSSTrustManager trustManager = new JSSTrustManager();
+        trustManager.configureVerifiedChainCache(cache);
+        Assert.assertSame(cache, trustManager.getVerifiedChainCache());
+
+        cache.add(key, chain, TrustAnchorIndex.getGeneration());
+        Assert.assertEquals(1, cache.size());
+
+        trustManager.configureAllowMissingExtendedKeyUsage(true);
+        Assert.assertEquals(0, cache.size());
+        Assert.assertFalse(cache.contains(key));
+    }
+
+    @Test
+    public void testClear() throws Exception {
+
+        VerifiedChainCache cache = new VerifiedChainCache();
+        String key = cache.getKey(chain, SERVER_AUTH_OID);
+
+        cache.add(key, chain, TrustAnchorIndex.getGeneration());
+        cache.clear();
+        Assert.assertEquals(0, cache.size());
+        Assert.assertFalse(cache.contains(key));
+    }
+}
@@ -0,0 +1,67 @@
+package org.mozilla.jss.tests;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.mozilla.jss.netscape.security.x509.X500Name;
+
+public class X500NameCacheTest {
+
+    @Test
+    public void testCanonicalName() throws Exception {
+        X500Name name = new X500Name("CN=  Test   User ,OU=Engineering,O=Example\\, Inc.,C=US");
+        Assert.assertEquals("cn=test user,ou=engineering,o=example\\, inc.,c=us",
+                name.getCanonicalName());
+        Assert.assertSame(name.getCanonicalName(), name.getCanonicalName());
+
+        // the display form is unaffected
+        Assert.assertEquals("CN=Test   User,OU=Engineering,O=Example\\, Inc.,C=US",
+                name.toString());
+    }
+
+    @Test
+    public void testCanonicalNameMatchesCaseAndSpacing() throws Exception {
+        X500Name a = new X500Name("CN=Test User,O=Example,C=US");
+        X500Name b = new X500Name("cn=TEST  USER, o=EXAMPLE, c=us");
+
+        Assert.assertNotEquals(a, b);
+        Assert.assertEquals(a.getCanonicalName(), b.getCanonicalName());
+    }
+
+    @Test
+    public void testCanonicalNameSortsMultiValuedRDN() throws Exception {
+        X500Name a = new X500Name("CN=Test+UID=test,O=Example");
+        X500Name b = new X500Name("UID=test+CN=Test,O=Example");
+
+        Assert.assertEquals(a.getCanonicalName(), b.getCanonicalName());
+    }
+
+    @Test
+    public void testEmptyName() throws Exception {
+        X500Name name = new X500Name("");
+        Assert.assertEquals("", name.getCanonicalName());
+        Assert.assertEquals("", name.toString());
+        Assert.assertEquals(name, new X500Name(""));
+    }
+
+    @Test
+    public void testHashCode() throws Exception {
+        X500Name a = new X500Name("CN=Test,O=Example");
+        X500Name b = new X500Name(a.getEncoded());
+        X500Name c = new X500Name("CN=Other,O=Example");
+
+        Assert.assertEquals(a, b);
+        Assert.assertEquals(a.hashCode(), b.hashCode());
+        Assert.assertEquals(a.hashCode(), a.hashCode());
+        Assert.assertNotEquals(a, c);
+    }
+
+    @Test
+    public void testIntern() throws Exception {
+        X500Name a = X500Name.intern(new X500Name("CN=Issuer,O=Example"));
+        X500Name b = X500Name.intern(new X500Name("CN=Issuer,O=Example"));
+        X500Name c = X500Name.intern(new X500Name("CN=Other,O=Example"));
+
+        Assert.assertSame(a, b);
+        Assert.assertNotSame(a, c);
+    }
+}
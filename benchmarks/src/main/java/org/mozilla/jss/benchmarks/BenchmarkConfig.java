@@ -0,0 +1,108 @@
+package org.mozilla.jss.benchmarks;
+
+import java.io.FileInputStream;
+import java.util.Properties;
+
+import org.mozilla.jss.CryptoManager;
+import org.mozilla.jss.util.Password;
+import org.mozilla.jss.util.PasswordCallback;
+import org.mozilla.jss.util.PasswordCallbackInfo;
+
+/**
+ * Shared configuration for the JSS benchmarks.
+ *
+ * Benchmarks which need NSS initialize it from the NSS DB named by the
+ * jss.benchmark.nssdb system property, optionally unlocking it with the
+ * passwords in the file named by jss.benchmark.password. This uses the
+ * same token=password properties format as the test suite. The
+ * JSSEngine benchmarks additionally need the nickname of a server
+ * certificate in that DB, given by jss.benchmark.server.
+ *
+ * These are passed to the forked JMH JVMs with -jvmArgs, for example:
+ *
+ * <pre>
+ * java -jar benchmarks/target/benchmarks.jar \
+ *     -jvmArgs "-Djava.library.path=build -Djss.benchmark.nssdb=build/results/nssdb \
+ *               -Djss.benchmark.password=base/src/test/java/org/mozilla/jss/tests/passwords \
+ *               -Djss.benchmark.server=Server_RSA"
+ * </pre>
+ */
+public class BenchmarkConfig {
+
+    public static final String NSSDB = "jss.benchmark.nssdb";
+    public static final String PASSWORD = "jss.benchmark.password";
+    public static final String SERVER = "jss.benchmark.server";
+
+    /**
+     * Initializes JSS from the configured NSS DB, if it isn't already.
+     */
+    public static synchronized CryptoManager initialize() throws Exception {
+        if (!CryptoManager.isInitialized()) {
+            String nssdb = System.getProperty(NSSDB);
+            if (nssdb == null) {
+                throw new IllegalStateException("Missing NSS DB: set -D" + NSSDB + "=<path>");
+            }
+
+            CryptoManager.initialize(nssdb);
+        }
+
+        CryptoManager cm = CryptoManager.getInstance();
+
+        String passwordFile = System.getProperty(PASSWORD);
+        if (passwordFile != null) {
+            Properties passwords = new Properties();
+            try (FileInputStream in = new FileInputStream(passwordFile)) {
+                passwords.load(in);
+            }
+            cm.setPasswordCallback(new PropertiesPasswordCallback(passwords));
+        }
+
+        return cm;
+    }
+
+    /**
+     * Returns the nickname of the server certificate for TLS benchmarks.
+     */
+    public static String getServerNickname() {
+        String nickname = System.getProperty(SERVER);
+        if (nickname == null) {
+            throw new IllegalStateException("Missing server certificate: set -D" + SERVER + "=<nickname>");
+        }
+
+        return nickname;
+    }
+
+    /**
+     * Returns a buffer of the given size filled with a repeating pattern.
+     */
+    public static byte[] createData(int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private static class PropertiesPasswordCallback implements PasswordCallback {
+
+        private Properties passwords;
+
+        PropertiesPasswordCallback(Properties passwords) {
+            this.passwords = passwords;
+        }
+
+        @Override
+        public Password getPasswordFirstAttempt(PasswordCallbackInfo info) throws GiveUpException {
+            String password = passwords.getProperty(info.getName());
+            if (password == null) {
+                throw new GiveUpException();
+            }
+            return new Password(password.toCharArray());
+        }
+
+        @Override
+        public Password getPasswordAgain(PasswordCallbackInfo info) throws GiveUpException {
+            throw new GiveUpException();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package org.mozilla.jss.benchmarks;
+
+import java.security.SecureRandom;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.Cipher;
+import javax.crypto.KeyGenerator;
+import javax.crypto.SecretKey;
+import javax.crypto.spec.IvParameterSpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of JSSCipherSpi encryption and decryption over buffers of
+ * several sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CipherBenchmark {
+
+    @Param({ "AES/CBC/PKCS5Padding" })
+    public String transformation;
+
+    @Param({ "128", "256" })
+    public int keySize;
+
+    @Param({ "64", "1024", "16384" })
+    public int size;
+
+    public byte[] data;
+    public byte[] ciphertext;
+
+    public SecretKey key;
+    public IvParameterSpec iv;
+
+    public Cipher encryptor;
+    public Cipher decryptor;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkConfig.initialize();
+
+        data = BenchmarkConfig.createData(size);
+
+        KeyGenerator kg = KeyGenerator.getInstance("AES", "Mozilla-JSS");
+        kg.init(keySize);
+        key = kg.generateKey();
+
+        byte[] ivBytes = new byte[16];
+        new SecureRandom().nextBytes(ivBytes);
+        iv = new IvParameterSpec(ivBytes);
+
+        encryptor = Cipher.getInstance(transformation, "Mozilla-JSS");
+        encryptor.init(Cipher.ENCRYPT_MODE, key, iv);
+        ciphertext = encryptor.doFinal(data);
+
+        decryptor = Cipher.getInstance(transformation, "Mozilla-JSS");
+    }
+
+    // Each message is encrypted with a freshly initialized cipher, as the
+    // NSS context can't be reused after doFinal().
+
+    @Benchmark
+    public byte[] encrypt() throws Exception {
+        encryptor.init(Cipher.ENCRYPT_MODE, key, iv);
+        return encryptor.doFinal(data);
+    }
+
+    @Benchmark
+    public byte[] decrypt() throws Exception {
+        decryptor.init(Cipher.DECRYPT_MODE, key, iv);
+        return decryptor.doFinal(ciphertext);
+    }
+}
@@ -0,0 +1,72 @@
+package org.mozilla.jss.benchmarks;
+
+import java.security.MessageDigest;
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import javax.crypto.SecretKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Throughput of JSSMessageDigestSpi and JSSMacSpi over buffers of several
+ * sizes.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DigestBenchmark {
+
+    /**
+     * Hash algorithm; the HMAC benchmarks use the matching HmacSHA* algorithm.
+     */
+    @Param({ "SHA-256", "SHA-512" })
+    public String algorithm;
+
+    @Param({ "64", "1024", "16384" })
+    public int size;
+
+    public byte[] data;
+    public MessageDigest digest;
+    public Mac mac;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkConfig.initialize();
+
+        data = BenchmarkConfig.createData(size);
+        digest = MessageDigest.getInstance(algorithm, "Mozilla-JSS");
+
+        String macAlgorithm = "Hmac" + algorithm.replace("-", "");
+
+        KeyGenerator kg = KeyGenerator.getInstance(macAlgorithm, "Mozilla-JSS");
+        SecretKey key = kg.generateKey();
+
+        mac = Mac.getInstance(macAlgorithm, "Mozilla-JSS");
+        mac.init(key);
+    }
+
+    @Benchmark
+    public byte[] digest() {
+        return digest.digest(data);
+    }
+
+    @Benchmark
+    public byte[] mac() {
+        return mac.doFinal(data);
+    }
+}
@@ -0,0 +1,242 @@
+package org.mozilla.jss.benchmarks;
+
+import java.nio.ByteBuffer;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509TrustManager;
+
+import org.mozilla.jss.ssl.SSLCipher;
+import org.mozilla.jss.ssl.SSLVersion;
+import org.mozilla.jss.ssl.javax.JSSEngine;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JSSEngine handshakes and record protection between an in-memory client
+ * and server pair.
+ *
+ * The server certificate is taken from the NSS DB; the client trusts any
+ * certificate so the benchmarks don't depend on the DB's trust flags.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SSLEngineBenchmark {
+
+    private static final int MAX_HANDSHAKE_STEPS = 50;
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    @Param({ "TLS_AES_128_GCM_SHA256", "TLS_ECDHE_RSA_WITH_AES_128_GCM_SHA256" })
+    public String cipherSuite;
+
+    public SSLContext context;
+
+    /**
+     * Engine pair handshaken once per trial for the record benchmarks.
+     */
+    public JSSEngine client;
+    public JSSEngine server;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkConfig.initialize();
+
+        context = createContext();
+
+        client = createEngine(context, cipherSuite, true);
+        server = createEngine(context, cipherSuite, false);
+        handshake(client, server);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.cleanup();
+        server.cleanup();
+    }
+
+    @Benchmark
+    public JSSEngine handshake() throws Exception {
+        JSSEngine c = createEngine(context, cipherSuite, true);
+        JSSEngine s = createEngine(context, cipherSuite, false);
+
+        try {
+            handshake(c, s);
+            return s;
+        } finally {
+            c.cleanup();
+            s.cleanup();
+        }
+    }
+
+    /**
+     * Application data sent from the client to the server, in records of
+     * several sizes.
+     */
+    @State(Scope.Thread)
+    public static class Records {
+
+        @Param({ "64", "1024", "16384" })
+        public int size;
+
+        public ByteBuffer plaintext;
+        public ByteBuffer wire;
+        public ByteBuffer received;
+
+        @Setup
+        public void setup(SSLEngineBenchmark benchmark) {
+            plaintext = ByteBuffer.wrap(BenchmarkConfig.createData(size));
+            wire = ByteBuffer.allocate(benchmark.client.getSession().getPacketBufferSize());
+            received = ByteBuffer.allocate(benchmark.server.getSession().getApplicationBufferSize());
+        }
+    }
+
+    @Benchmark
+    public ByteBuffer wrap(Records records) throws Exception {
+        records.plaintext.rewind();
+        records.wire.clear();
+        client.wrap(records.plaintext, records.wire);
+
+        // Keep the server in step so the record sequence numbers don't
+        // drift apart over the trial.
+        records.wire.flip();
+        records.received.clear();
+        server.unwrap(records.wire, records.received);
+
+        return records.received;
+    }
+
+    public static SSLContext createContext() throws Exception {
+        KeyManagerFactory kmf = KeyManagerFactory.getInstance("NssX509", "Mozilla-JSS");
+
+        SSLContext context = SSLContext.getInstance("TLS", "Mozilla-JSS");
+        context.init(kmf.getKeyManagers(), new TrustManager[] { new TrustAllManager() }, null);
+
+        return context;
+    }
+
+    public static JSSEngine createEngine(SSLContext context, String cipherSuite, boolean client) {
+        JSSEngine engine = (JSSEngine) context.createSSLEngine();
+        engine.setUseClientMode(client);
+
+        SSLCipher cipher = SSLCipher.valueOf(cipherSuite);
+        engine.setEnabledCipherSuites(new SSLCipher[] { cipher });
+        if (cipher.isTLSv13()) {
+            engine.setEnabledProtocols(SSLVersion.TLS_1_3, SSLVersion.TLS_1_3);
+        } else {
+            engine.setEnabledProtocols(SSLVersion.TLS_1_2, SSLVersion.TLS_1_2);
+        }
+
+        if (!client) {
+            engine.setCertFromAlias(BenchmarkConfig.getServerNickname());
+        }
+
+        return engine;
+    }
+
+    /**
+     * Drives both engines until neither has handshake work left, passing
+     * records between them through a pair of in-memory buffers.
+     */
+    public static void handshake(SSLEngine client, SSLEngine server) throws Exception {
+        int packetSize = Math.max(
+                client.getSession().getPacketBufferSize(),
+                server.getSession().getPacketBufferSize());
+
+        ByteBuffer c2s = ByteBuffer.allocate(packetSize);
+        ByteBuffer s2c = ByteBuffer.allocate(packetSize);
+        ByteBuffer app = ByteBuffer.allocate(packetSize);
+
+        client.beginHandshake();
+        server.beginHandshake();
+
+        for (int step = 0; step < MAX_HANDSHAKE_STEPS; step++) {
+            boolean clientDone = step(client, s2c, c2s, app);
+            boolean serverDone = step(server, c2s, s2c, app);
+
+            if (clientDone && serverDone && c2s.position() == 0 && s2c.position() == 0) {
+                return;
+            }
+        }
+
+        throw new IllegalStateException("Handshake didn't complete after " + MAX_HANDSHAKE_STEPS + " steps");
+    }
+
+    /**
+     * Performs one unit of handshake work on the engine, reading records
+     * from the in buffer and appending them to the out buffer. Both buffers
+     * are kept in write mode between calls. Returns true when the engine
+     * has no handshake work left.
+     */
+    private static boolean step(SSLEngine engine, ByteBuffer in, ByteBuffer out, ByteBuffer app) throws SSLException {
+        SSLEngineResult.HandshakeStatus status = engine.getHandshakeStatus();
+
+        switch (status) {
+        case NEED_TASK:
+            Runnable task;
+            while ((task = engine.getDelegatedTask()) != null) {
+                task.run();
+            }
+            return false;
+
+        case NEED_WRAP:
+            engine.wrap(EMPTY, out);
+            return false;
+
+        case NEED_UNWRAP:
+            if (in.position() > 0) {
+                in.flip();
+                app.clear();
+                engine.unwrap(in, app);
+                in.compact();
+            }
+            return false;
+
+        default:
+            // Drain anything the peer sent after we finished, such as
+            // TLS 1.3 session tickets.
+            if (in.position() > 0) {
+                in.flip();
+                app.clear();
+                engine.unwrap(in, app);
+                in.compact();
+            }
+            return true;
+        }
+    }
+
+    private static class TrustAllManager implements X509TrustManager {
+
+        @Override
+        public void checkClientTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public void checkServerTrusted(X509Certificate[] chain, String authType) {
+        }
+
+        @Override
+        public X509Certificate[] getAcceptedIssuers() {
+            return new X509Certificate[0];
+        }
+    }
+}
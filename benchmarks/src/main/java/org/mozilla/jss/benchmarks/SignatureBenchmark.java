@@ -0,0 +1,85 @@
+package org.mozilla.jss.benchmarks;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * PK11Signature sign and verify operations per second.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SignatureBenchmark {
+
+    /**
+     * Key type and signature algorithm, separated by a colon.
+     */
+    @Param({
+        "RSA-2048:SHA256withRSA",
+        "RSA-4096:SHA256withRSA",
+        "EC-secp256r1:SHA256withEC",
+        "EC-secp384r1:SHA384withEC"
+    })
+    public String scheme;
+
+    public byte[] data = BenchmarkConfig.createData(1024);
+    public byte[] signature;
+
+    public Signature signer;
+    public Signature verifier;
+
+    @Setup
+    public void setup() throws Exception {
+        BenchmarkConfig.initialize();
+
+        String[] parts = scheme.split(":");
+        String[] keyType = parts[0].split("-");
+
+        KeyPairGenerator kpg = KeyPairGenerator.getInstance(keyType[0], "Mozilla-JSS");
+        if (keyType[0].equals("RSA")) {
+            kpg.initialize(Integer.parseInt(keyType[1]));
+        } else {
+            kpg.initialize(new ECGenParameterSpec(keyType[1]));
+        }
+        KeyPair keyPair = kpg.generateKeyPair();
+
+        signer = Signature.getInstance(parts[1], "Mozilla-JSS");
+        signer.initSign(keyPair.getPrivate());
+
+        signer.update(data);
+        signature = signer.sign();
+
+        verifier = Signature.getInstance(parts[1], "Mozilla-JSS");
+        verifier.initVerify(keyPair.getPublic());
+    }
+
+    @Benchmark
+    public byte[] sign() throws Exception {
+        signer.update(data);
+        return signer.sign();
+    }
+
+    @Benchmark
+    public boolean verify() throws Exception {
+        verifier.update(data);
+        return verifier.verify(signature);
+    }
+}
@@ -416,6 +416,22 @@ macro(jss_config_symbols)
         message(WARNING "Compile output: ${COMP_OUT}")
     endif()
 
+    # Added in NSS v3.52
+    try_compile(CK_HAVE_COMPILING_AEAD
+                ${CMAKE_BINARY_DIR}/results
+                ${CMAKE_SOURCE_DIR}/tools/tests/aead.c
+                CMAKE_FLAGS
+                    "-DINCLUDE_DIRECTORIES=${CMAKE_REQUIRED_INCLUDES}"
+                    "-DREQUIRED_FLAGS=${CMAKE_REQUIRED_FLAGS}"
+                LINK_OPTIONS ${JSS_LD_FLAGS}
+                OUTPUT_VARIABLE COMP_OUT)
+    if (CK_HAVE_COMPILING_AEAD)
+        set(HAVE_NSS_AEAD TRUE)
+    else()
+        message(WARNING "Your NSS version doesn't support the PKCS #11 v3.0 message interface; AEAD ciphers will use single-shot PK11_Encrypt/PK11_Decrypt.")
+        message(WARNING "Compile output: ${COMP_OUT}")
+    endif()
+
 
     if(HAVE_NSS_CMAC)
         try_run(CK_HAVE_WORKING_CMAC
@@ -185,6 +185,11 @@ macro(jss_tests)
         COMMAND "org.mozilla.jss.tests.ListCACerts" "${RESULTS_NSSDB_OUTPUT_DIR}" "Verbose"
         DEPENDS "Generate_known_ECDSA_cert_pair"
     )
+    jss_test_java(
+        NAME "TrustAnchorIndex"
+        COMMAND "org.mozilla.jss.tests.TrustAnchorIndexTest" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}"
+        DEPENDS "List_CA_certs"
+    )
     jss_test_java(
         NAME "SSLClientAuth"
         COMMAND "org.mozilla.jss.tests.SSLClientAuth" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}" "${JSS_TEST_PORT_CLIENTAUTH}" "50"
@@ -288,6 +293,11 @@ macro(jss_tests)
         COMMAND "org.mozilla.jss.tests.TestSSLEngine" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}" "Client_ECDSA" "Server_ECDSA"
         DEPENDS "SSLEngine_RSA"
     )
+    jss_test_java(
+        NAME "SSLSocketChannel_RSA"
+        COMMAND "org.mozilla.jss.tests.TestSSLSocketChannel" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}" "Client_RSA" "Server_RSA"
+        DEPENDS "SSLEngine_ECDSA"
+    )
 
     if(NOT FIPS_ENABLED)
         jss_test_java(
@@ -300,6 +310,11 @@ macro(jss_tests)
             COMMAND "org.mozilla.jss.tests.HmacTest" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}"
             DEPENDS "Setup_DBs"
         )
+        jss_test_java(
+            NAME "AEAD_Cipher_Test"
+            COMMAND "org.mozilla.jss.tests.TestAEADCipher" "${RESULTS_NSSDB_OUTPUT_DIR}" "${PASSWORD_FILE}"
+            DEPENDS "Setup_DBs"
+        )
         if(HAVE_NSS_CMAC)
             jss_test_java(
                 NAME "CMAC_Test"
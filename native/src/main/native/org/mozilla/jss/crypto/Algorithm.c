@@ -178,6 +178,14 @@ JSS_AlgInfo JSS_AlgTable[NUM_ALGS] = {
 /* 81 */    {SEC_OID_AES_128_KEY_WRAP_KWP, SEC_OID_TAG},
 /* 82 */    {SEC_OID_AES_192_KEY_WRAP_KWP, SEC_OID_TAG},
 /* 83 */    {SEC_OID_AES_256_KEY_WRAP_KWP, SEC_OID_TAG},
+/* 84 */    {CKM_AES_GCM, PK11_MECH},
+#ifdef CKM_CHACHA20_POLY1305
+/* 85 */    {CKM_CHACHA20_POLY1305, PK11_MECH},
+/* 86 */    {CKM_CHACHA20_KEY_GEN, PK11_MECH},
+#else
+/* 85 */    {CKM_NSS_CHACHA20_POLY1305, PK11_MECH},
+/* 86 */    {CKM_NSS_CHACHA20_KEY_GEN, PK11_MECH},
+#endif
 
 
 /* REMEMBER TO UPDATE NUM_ALGS!!! (in Algorithm.h) */
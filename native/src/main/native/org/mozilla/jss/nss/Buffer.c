@@ -139,6 +139,115 @@ Java_org_mozilla_jss_nss_Buffer_Write(JNIEnv *env, jclass clazz, jobject buf, jb
     return write_amount;
 }
 
+JNIEXPORT jlong JNICALL
+Java_org_mozilla_jss_nss_Buffer_ReadDirect(JNIEnv *env, jclass clazz,
+    jobject buf, jobject output, jint offset, jint length)
+{
+    j_buffer *real_buf = NULL;
+    uint8_t *address = NULL;
+
+    PR_ASSERT(env != NULL && buf != NULL && output != NULL);
+    PR_ASSERT(offset >= 0 && length >= 0);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return -1;
+    }
+
+    address = (*env)->GetDirectBufferAddress(env, output);
+    if (address == NULL) {
+        return -1;
+    }
+
+    PR_ASSERT(offset + length <= (*env)->GetDirectBufferCapacity(env, output));
+
+    return jb_read(real_buf, address + offset, (size_t) length);
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_mozilla_jss_nss_Buffer_ReadArray(JNIEnv *env, jclass clazz,
+    jobject buf, jbyteArray output, jint offset, jint length)
+{
+    j_buffer *real_buf = NULL;
+    uint8_t *array = NULL;
+    size_t read_amount = 0;
+
+    PR_ASSERT(env != NULL && buf != NULL && output != NULL);
+    PR_ASSERT(offset >= 0 && length >= 0);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return -1;
+    }
+
+    PR_ASSERT(offset + length <= (*env)->GetArrayLength(env, output));
+
+    /* jb_read is a plain memory copy which never calls back into the JVM,
+     * so it is safe to hold a critical reference across it. */
+    array = (*env)->GetPrimitiveArrayCritical(env, output, NULL);
+    if (array == NULL) {
+        ASSERT_OUTOFMEM(env);
+        return -1;
+    }
+
+    read_amount = jb_read(real_buf, array + offset, (size_t) length);
+    (*env)->ReleasePrimitiveArrayCritical(env, output, array, 0);
+
+    return read_amount;
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_mozilla_jss_nss_Buffer_WriteDirect(JNIEnv *env, jclass clazz,
+    jobject buf, jobject input, jint offset, jint length)
+{
+    j_buffer *real_buf = NULL;
+    uint8_t *address = NULL;
+
+    PR_ASSERT(env != NULL && buf != NULL && input != NULL);
+    PR_ASSERT(offset >= 0 && length >= 0);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return -1;
+    }
+
+    address = (*env)->GetDirectBufferAddress(env, input);
+    if (address == NULL) {
+        return -1;
+    }
+
+    PR_ASSERT(offset + length <= (*env)->GetDirectBufferCapacity(env, input));
+
+    return jb_write(real_buf, address + offset, (size_t) length);
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_mozilla_jss_nss_Buffer_WriteArray(JNIEnv *env, jclass clazz,
+    jobject buf, jbyteArray input, jint offset, jint length)
+{
+    j_buffer *real_buf = NULL;
+    uint8_t *array = NULL;
+    size_t write_amount = 0;
+
+    PR_ASSERT(env != NULL && buf != NULL && input != NULL);
+    PR_ASSERT(offset >= 0 && length >= 0);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS) {
+        return -1;
+    }
+
+    PR_ASSERT(offset + length <= (*env)->GetArrayLength(env, input));
+
+    /* See note in ReadArray above. */
+    array = (*env)->GetPrimitiveArrayCritical(env, input, NULL);
+    if (array == NULL) {
+        ASSERT_OUTOFMEM(env);
+        return -1;
+    }
+
+    write_amount = jb_write(real_buf, array + offset, (size_t) length);
+    (*env)->ReleasePrimitiveArrayCritical(env, input, array, JNI_ABORT);
+
+    return write_amount;
+}
+
 JNIEXPORT jint JNICALL
 Java_org_mozilla_jss_nss_Buffer_Get(JNIEnv *env, jclass clazz, jobject buf)
 {
@@ -167,6 +276,21 @@ Java_org_mozilla_jss_nss_Buffer_Put(JNIEnv *env, jclass clazz, jobject buf, jbyt
     return jb_put(real_buf, (uint8_t) input);
 }
 
+JNIEXPORT void JNICALL
+Java_org_mozilla_jss_nss_Buffer_Clear(JNIEnv *env, jclass clazz, jobject buf)
+{
+    j_buffer *real_buf = NULL;
+
+    PR_ASSERT(env != NULL && buf != NULL);
+
+    if (JSS_PR_unwrapJBuffer(env, buf, &real_buf) != PR_SUCCESS ||
+            real_buf == NULL) {
+        return;
+    }
+
+    jb_clear(real_buf);
+}
+
 JNIEXPORT void JNICALL
 Java_org_mozilla_jss_nss_Buffer_Free(JNIEnv *env, jclass clazz, jobject buf)
 {
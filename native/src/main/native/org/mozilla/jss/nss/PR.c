@@ -1,6 +1,7 @@
 #include <nspr.h>
 #include <limits.h>
 #include <stdint.h>
+#include <string.h>
 #include <jni.h>
 
 #include "jssutil.h"
@@ -134,24 +135,17 @@ Java_org_mozilla_jss_nss_PR_Shutdown(JNIEnv *env, jclass clazz, jobject fd,
     return PR_Shutdown(real_fd, how);
 }
 
-JNIEXPORT jobject JNICALL
-Java_org_mozilla_jss_nss_PR_Read(JNIEnv *env, jclass clazz, jobject fd,
-    jint amount)
+/* Read up to amount bytes from real_fd into buffer, returning the number of
+ * bytes read or -1 on error. */
+static int
+JSS_PR_ReadAll(PRFileDesc *real_fd, uint8_t *buffer, int amount)
 {
-    PRFileDesc *real_fd = NULL;
-    jobject result = NULL;
     int read_amount = 0;
     int this_read = 0;
-    uint8_t *buffer = NULL;
     PRSocketOptionData opt = { 0 };
     PRDescType fd_type;
 
-    PR_ASSERT(env != NULL && fd != NULL && amount >= 0);
-    PR_SetError(0, 0);
-
-    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
-        return NULL;
-    }
+    PR_ASSERT(real_fd != NULL && amount >= 0);
 
     fd_type = PR_GetDescType(real_fd);
     opt.value.non_blocking = PR_FALSE;
@@ -167,10 +161,6 @@ Java_org_mozilla_jss_nss_PR_Read(JNIEnv *env, jclass clazz, jobject fd,
         }
     }
 
-    PR_ASSERT(real_fd != NULL);
-
-    buffer = calloc(amount, sizeof(uint8_t));
-
     /* Work around a bug in NSS/NSPR: sometimes PR_Read returns a much smaller
      * read than expected, when it could read much more. */
     while (read_amount < amount) {
@@ -188,7 +178,7 @@ Java_org_mozilla_jss_nss_PR_Read(JNIEnv *env, jclass clazz, jobject fd,
                 break;
             }
 
-            goto done;
+            return -1;
         } else {
             read_amount += this_read;
 
@@ -201,6 +191,34 @@ Java_org_mozilla_jss_nss_PR_Read(JNIEnv *env, jclass clazz, jobject fd,
         }
     }
 
+    return read_amount;
+}
+
+JNIEXPORT jobject JNICALL
+Java_org_mozilla_jss_nss_PR_Read(JNIEnv *env, jclass clazz, jobject fd,
+    jint amount)
+{
+    PRFileDesc *real_fd = NULL;
+    jobject result = NULL;
+    int read_amount = 0;
+    uint8_t *buffer = NULL;
+
+    PR_ASSERT(env != NULL && fd != NULL && amount >= 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return NULL;
+    }
+
+    PR_ASSERT(real_fd != NULL);
+
+    buffer = calloc(amount, sizeof(uint8_t));
+
+    read_amount = JSS_PR_ReadAll(real_fd, buffer, amount);
+    if (read_amount < 0) {
+        goto done;
+    }
+
     result = JSS_ToByteArray(env, buffer, read_amount);
 
 done:
@@ -208,6 +226,65 @@ done:
     return result;
 }
 
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_PR_ReadDirect(JNIEnv *env, jclass clazz, jobject fd,
+    jobject buf, jint offset, jint length)
+{
+    PRFileDesc *real_fd = NULL;
+    uint8_t *address = NULL;
+
+    PR_ASSERT(env != NULL && fd != NULL && buf != NULL);
+    PR_ASSERT(offset >= 0 && length >= 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return -1;
+    }
+
+    address = (*env)->GetDirectBufferAddress(env, buf);
+    if (address == NULL) {
+        return -1;
+    }
+
+    PR_ASSERT(offset + length <= (*env)->GetDirectBufferCapacity(env, buf));
+
+    return JSS_PR_ReadAll(real_fd, address + offset, length);
+}
+
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_PR_ReadArray(JNIEnv *env, jclass clazz, jobject fd,
+    jbyteArray buf, jint offset, jint length)
+{
+    PRFileDesc *real_fd = NULL;
+    uint8_t *buffer = NULL;
+    int read_amount = -1;
+
+    PR_ASSERT(env != NULL && fd != NULL && buf != NULL);
+    PR_ASSERT(offset >= 0 && length >= 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return read_amount;
+    }
+
+    /* PR_Read on an SSL PRFileDesc can invoke our Java callbacks, so we
+     * can't hold a critical reference to buf. Read into native memory and
+     * copy the result straight into the caller's array instead. */
+    buffer = malloc(length > 0 ? length : 1);
+    if (buffer == NULL) {
+        return read_amount;
+    }
+
+    read_amount = JSS_PR_ReadAll(real_fd, buffer, length);
+    if (read_amount > 0) {
+        (*env)->SetByteArrayRegion(env, buf, offset, read_amount,
+                                   (jbyte *) buffer);
+    }
+
+    free(buffer);
+    return read_amount;
+}
+
 JNIEXPORT int JNICALL
 Java_org_mozilla_jss_nss_PR_Write(JNIEnv *env, jclass clazz, jobject fd,
     jbyteArray buf)
@@ -249,6 +326,355 @@ Java_org_mozilla_jss_nss_PR_Write(JNIEnv *env, jclass clazz, jobject fd,
     return result;
 }
 
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_PR_WriteDirect(JNIEnv *env, jclass clazz, jobject fd,
+    jobject buf, jint offset, jint length)
+{
+    PRFileDesc *real_fd = NULL;
+    uint8_t *address = NULL;
+
+    PR_ASSERT(env != NULL && fd != NULL && buf != NULL);
+    PR_ASSERT(offset >= 0 && length >= 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return 0;
+    }
+
+    address = (*env)->GetDirectBufferAddress(env, buf);
+    if (address == NULL) {
+        return 0;
+    }
+
+    PR_ASSERT(offset + length <= (*env)->GetDirectBufferCapacity(env, buf));
+
+    return PR_Write(real_fd, address + offset, length);
+}
+
+JNIEXPORT int JNICALL
+Java_org_mozilla_jss_nss_PR_WriteArray(JNIEnv *env, jclass clazz, jobject fd,
+    jbyteArray buf, jint offset, jint length)
+{
+    PRFileDesc *real_fd = NULL;
+    uint8_t *buffer = NULL;
+    int result = 0;
+
+    PR_ASSERT(env != NULL && fd != NULL && buf != NULL);
+    PR_ASSERT(offset >= 0 && length >= 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS) {
+        return 0;
+    }
+
+    /* See note in ReadArray: copy only the requested region of buf rather
+     * than pinning or duplicating the whole array. */
+    buffer = malloc(length > 0 ? length : 1);
+    if (buffer == NULL) {
+        return 0;
+    }
+
+    (*env)->GetByteArrayRegion(env, buf, offset, length, (jbyte *) buffer);
+    if ((*env)->ExceptionCheck(env)) {
+        free(buffer);
+        return 0;
+    }
+
+    result = PR_Write(real_fd, buffer, length);
+
+    free(buffer);
+    return result;
+}
+
+/* Resolve the region [offset, offset + length) of an optional direct
+ * ByteBuffer. Returns false if buf is non-NULL but isn't direct. */
+static bool
+JSS_PR_DirectRegion(JNIEnv *env, jobject buf, jint offset, jint length,
+    uint8_t **region)
+{
+    *region = NULL;
+
+    if (buf == NULL || length <= 0) {
+        return true;
+    }
+
+    *region = (*env)->GetDirectBufferAddress(env, buf);
+    if (*region == NULL) {
+        return false;
+    }
+
+    PR_ASSERT(offset + length <= (*env)->GetDirectBufferCapacity(env, buf));
+    *region += offset;
+    return true;
+}
+
+/* Pack the number of bytes consumed from the source and produced into the
+ * destination into a single jlong for the Java caller to unpack. */
+static jlong
+JSS_PR_PackBatchResult(size_t consumed, size_t produced)
+{
+    return (jlong) ((((uint64_t) consumed) << 32) | ((uint64_t) produced & 0xFFFFFFFFu));
+}
+
+/* The regions of an array of optional direct ByteBuffers, along with how
+ * much of each has been used by a batch so far. */
+typedef struct {
+    jsize count;
+    uint8_t **data;
+    jint *length;
+    jint *used;
+} JSS_PR_BatchRegions;
+
+static void
+JSS_PR_FreeBatchRegions(JSS_PR_BatchRegions *regions)
+{
+    free(regions->data);
+    free(regions->length);
+    free(regions->used);
+    memset(regions, 0, sizeof(*regions));
+}
+
+/* Resolve the regions [offsets[i], offsets[i] + lengths[i]) of bufs.
+ * Returns false if any of them can't be resolved. */
+static bool
+JSS_PR_GetBatchRegions(JNIEnv *env, jobjectArray bufs, jintArray offsets,
+    jintArray lengths, JSS_PR_BatchRegions *regions)
+{
+    jint *offset = NULL;
+    jobject buf = NULL;
+    bool direct = false;
+    bool ok = false;
+    jsize i = 0;
+
+    memset(regions, 0, sizeof(*regions));
+    regions->count = (*env)->GetArrayLength(env, bufs);
+    if (regions->count == 0) {
+        return true;
+    }
+
+    regions->data = calloc(regions->count, sizeof(uint8_t *));
+    regions->length = calloc(regions->count, sizeof(jint));
+    regions->used = calloc(regions->count, sizeof(jint));
+    offset = calloc(regions->count, sizeof(jint));
+    if (regions->data == NULL || regions->length == NULL ||
+            regions->used == NULL || offset == NULL) {
+        goto done;
+    }
+
+    (*env)->GetIntArrayRegion(env, offsets, 0, regions->count, offset);
+    (*env)->GetIntArrayRegion(env, lengths, 0, regions->count, regions->length);
+    if ((*env)->ExceptionCheck(env)) {
+        goto done;
+    }
+
+    for (i = 0; i < regions->count; i++) {
+        buf = (*env)->GetObjectArrayElement(env, bufs, i);
+        direct = JSS_PR_DirectRegion(env, buf, offset[i], regions->length[i],
+                                     &regions->data[i]);
+        if (buf != NULL) {
+            (*env)->DeleteLocalRef(env, buf);
+        }
+
+        if (!direct) {
+            goto done;
+        }
+        if (regions->data[i] == NULL) {
+            regions->length[i] = 0;
+        }
+    }
+
+    ok = true;
+
+done:
+    free(offset);
+    if (!ok) {
+        JSS_PR_FreeBatchRegions(regions);
+    }
+    return ok;
+}
+
+/* Skip to the next region of the batch with space left, if any. */
+static jsize
+JSS_PR_NextBatchRegion(JSS_PR_BatchRegions *regions, jsize index)
+{
+    while (index < regions->count && regions->used[index] >= regions->length[index]) {
+        index++;
+    }
+    return index;
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_mozilla_jss_nss_PR_ReadBatchNative(JNIEnv *env, jclass clazz,
+    jobject fd, jobject read_buf, jobject src, jint src_offset,
+    jint src_length, jobjectArray dsts, jintArray dst_offsets,
+    jintArray dst_lengths, jintArray dst_produced)
+{
+    PRFileDesc *real_fd = NULL;
+    j_buffer *real_read_buf = NULL;
+    uint8_t *src_data = NULL;
+    JSS_PR_BatchRegions dst = { 0 };
+    jsize index = 0;
+    size_t consumed = 0;
+    size_t produced = 0;
+    PRErrorCode error = 0;
+    bool progress = false;
+
+    PR_ASSERT(env != NULL && fd != NULL && read_buf != NULL && dsts != NULL);
+    PR_ASSERT(src_offset >= 0 && src_length >= 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS ||
+            JSS_PR_unwrapJBuffer(env, read_buf, &real_read_buf) != PR_SUCCESS) {
+        return 0;
+    }
+
+    if (!JSS_PR_DirectRegion(env, src, src_offset, src_length, &src_data) ||
+            !JSS_PR_GetBatchRegions(env, dsts, dst_offsets, dst_lengths, &dst)) {
+        return 0;
+    }
+
+    /* Alternate between feeding wire data into read_buf and decrypting
+     * records out of the SSL layer into each dst in turn, until neither
+     * makes progress. Since read_buf only holds about one record, this is
+     * where the savings over one JNI call per record come from. */
+    do {
+        progress = false;
+
+        if (consumed < (size_t) src_length) {
+            size_t this_write = jb_write(real_read_buf, src_data + consumed,
+                                         src_length - consumed);
+            if (this_write > 0) {
+                consumed += this_write;
+                progress = true;
+            }
+        }
+
+        index = JSS_PR_NextBatchRegion(&dst, index);
+        if (index < dst.count) {
+            int this_read = PR_Read(real_fd, dst.data[index] + dst.used[index],
+                                    dst.length[index] - dst.used[index]);
+            if (this_read > 0) {
+                dst.used[index] += this_read;
+                produced += this_read;
+                progress = true;
+            } else if (this_read < 0) {
+                error = PR_GetError();
+                if (error != PR_WOULD_BLOCK_ERROR) {
+                    /* Leave the error for the caller to inspect. */
+                    break;
+                }
+                PR_SetError(0, 0);
+            } else {
+                /* Clean EOF from our peer. */
+                break;
+            }
+        }
+    } while (progress);
+
+    if (dst.count > 0) {
+        (*env)->SetIntArrayRegion(env, dst_produced, 0, dst.count, dst.used);
+    }
+
+    JSS_PR_FreeBatchRegions(&dst);
+    return JSS_PR_PackBatchResult(consumed, produced);
+}
+
+JNIEXPORT jlong JNICALL
+Java_org_mozilla_jss_nss_PR_WriteBatchNative(JNIEnv *env, jclass clazz,
+    jobject fd, jobject write_buf, jobjectArray srcs, jintArray src_offsets,
+    jintArray src_lengths, jintArray src_consumed, jobject dst,
+    jint dst_offset, jint dst_length, jint max_record, jint record_overhead)
+{
+    PRFileDesc *real_fd = NULL;
+    j_buffer *real_write_buf = NULL;
+    JSS_PR_BatchRegions src = { 0 };
+    uint8_t *dst_data = NULL;
+    jsize index = 0;
+    size_t consumed = 0;
+    size_t produced = 0;
+    PRErrorCode error = 0;
+    bool progress = false;
+
+    PR_ASSERT(env != NULL && fd != NULL && write_buf != NULL && srcs != NULL);
+    PR_ASSERT(dst_offset >= 0 && dst_length >= 0);
+    PR_ASSERT(max_record > 0 && record_overhead >= 0);
+    PR_SetError(0, 0);
+
+    if (JSS_PR_getPRFileDesc(env, fd, &real_fd) != PR_SUCCESS ||
+            JSS_PR_unwrapJBuffer(env, write_buf, &real_write_buf) != PR_SUCCESS) {
+        return 0;
+    }
+
+    if (!JSS_PR_DirectRegion(env, dst, dst_offset, dst_length, &dst_data) ||
+            !JSS_PR_GetBatchRegions(env, srcs, src_offsets, src_lengths, &src)) {
+        return 0;
+    }
+
+    do {
+        progress = false;
+
+        /* Drain any pending records into dst first. */
+        if (produced < (size_t) dst_length) {
+            size_t this_read = jb_read(real_write_buf, dst_data + produced,
+                                       dst_length - produced);
+            if (this_read > 0) {
+                produced += this_read;
+                progress = true;
+            }
+        }
+
+        /* Only encrypt another record when the previous ones have all been
+         * placed in dst and the new record is guaranteed to fit in what's
+         * left of it; this keeps records whole within dst. Records don't
+         * span src buffers. */
+        index = JSS_PR_NextBatchRegion(&src, index);
+        if (index < src.count && !jb_can_read(real_write_buf)) {
+            size_t space = dst_length - produced;
+            size_t amount = src.length[index] - src.used[index];
+            int this_write = 0;
+
+            if (space <= (size_t) record_overhead) {
+                break;
+            }
+
+            space -= record_overhead;
+            if (amount > space) {
+                /* Once dst holds some records, leave the rest for the next
+                 * call rather than ending with a short record. */
+                if (produced > 0 && space < (size_t) max_record) {
+                    break;
+                }
+                amount = space;
+            }
+            if (amount > (size_t) max_record) {
+                amount = max_record;
+            }
+
+            this_write = PR_Write(real_fd, src.data[index] + src.used[index],
+                                  amount);
+            if (this_write > 0) {
+                src.used[index] += this_write;
+                consumed += this_write;
+                progress = true;
+            } else if (this_write < 0) {
+                error = PR_GetError();
+                if (error != PR_WOULD_BLOCK_ERROR) {
+                    /* Leave the error for the caller to inspect. */
+                    break;
+                }
+                PR_SetError(0, 0);
+            }
+        }
+    } while (progress);
+
+    if (src.count > 0) {
+        (*env)->SetIntArrayRegion(env, src_consumed, 0, src.count, src.used);
+    }
+
+    JSS_PR_FreeBatchRegions(&src);
+    return JSS_PR_PackBatchResult(consumed, produced);
+}
+
 JNIEXPORT jobject JNICALL
 Java_org_mozilla_jss_nss_PR_Recv(JNIEnv *env, jclass clazz, jobject fd,
     jint amount, jint flags, jlong timeout)
@@ -1108,6 +1108,12 @@ Java_org_mozilla_jss_nss_SSL_getSSLEnableFallbackSCSV(JNIEnv *env, jclass clazz)
     return SSL_ENABLE_FALLBACK_SCSV;
 }
 
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_nss_SSL_getSSLEnableSessionTickets(JNIEnv *env, jclass clazz)
+{
+    return SSL_ENABLE_SESSION_TICKETS;
+}
+
 JNIEXPORT jint JNICALL
 Java_org_mozilla_jss_nss_SSL_getSSLRequireNever(JNIEnv *env, jclass clazz)
 {
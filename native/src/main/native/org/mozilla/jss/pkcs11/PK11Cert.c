@@ -24,10 +24,10 @@
 
 /*
  * Class:     org_mozilla_jss_pkcs11_PK11Cert
- * Method:    getEncoded
+ * Method:    getEncodedNative
  * Signature: ()[B
  */
-JNIEXPORT jbyteArray JNICALL Java_org_mozilla_jss_pkcs11_PK11Cert_getEncoded
+JNIEXPORT jbyteArray JNICALL Java_org_mozilla_jss_pkcs11_PK11Cert_getEncodedNative
   (JNIEnv *env, jobject this)
 {
 	PRThread * VARIABLE_MAY_NOT_BE_USED pThread;
@@ -120,7 +120,7 @@ finish:
  * in a Java wrapper, and returns it.
  */
 JNIEXPORT jobject JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Cert_getPublicKey
+Java_org_mozilla_jss_pkcs11_PK11Cert_getPublicKeyNative
 	(JNIEnv *env, jobject this)
 {
 	CERTCertificate *cert;
@@ -717,10 +717,10 @@ Java_org_mozilla_jss_pkcs11_PK11Cert_getTrust
 }
 
 /**********************************************************************
- * PK11Cert.getSerialNumberByteArray
+ * PK11Cert.getSerialNumberByteArrayNative
  */
 JNIEXPORT jbyteArray JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Cert_getSerialNumberByteArray
+Java_org_mozilla_jss_pkcs11_PK11Cert_getSerialNumberByteArrayNative
     (JNIEnv *env, jobject this)
 {
     CERTCertificate *cert;
@@ -737,10 +737,10 @@ Java_org_mozilla_jss_pkcs11_PK11Cert_getSerialNumberByteArray
 
 
 /**********************************************************************
- * PK11Cert.getSubjectDNString
+ * PK11Cert.getSubjectDNStringNative
  */
 JNIEXPORT jstring JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Cert_getSubjectDNString
+Java_org_mozilla_jss_pkcs11_PK11Cert_getSubjectDNStringNative
     (JNIEnv *env, jobject this)
 {
     CERTCertificate *cert;
@@ -762,10 +762,10 @@ Java_org_mozilla_jss_pkcs11_PK11Cert_getSubjectDNString
 }
 
 /**********************************************************************
- * PK11Cert.getIssuerDNString
+ * PK11Cert.getIssuerDNStringNative
  */
 JNIEXPORT jstring JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Cert_getIssuerDNString
+Java_org_mozilla_jss_pkcs11_PK11Cert_getIssuerDNStringNative
     (JNIEnv *env, jobject this)
 {
     CERTCertificate *cert;
@@ -785,3 +785,46 @@ Java_org_mozilla_jss_pkcs11_PK11Cert_getIssuerDNString
         return NULL;
     }
 }
+
+/**********************************************************************
+ * PK11Cert.getEncoded, PK11Cert.getPublicKey,
+ * PK11Cert.getSerialNumberByteArray, PK11Cert.getSubjectDNString,
+ * PK11Cert.getIssuerDNString
+ *
+ * These are now Java methods caching the natives above. The symbols are
+ * kept so that the exported ABI doesn't change.
+ */
+JNIEXPORT jbyteArray JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cert_getEncoded
+    (JNIEnv *env, jobject this)
+{
+    return Java_org_mozilla_jss_pkcs11_PK11Cert_getEncodedNative(env, this);
+}
+
+JNIEXPORT jobject JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cert_getPublicKey
+    (JNIEnv *env, jobject this)
+{
+    return Java_org_mozilla_jss_pkcs11_PK11Cert_getPublicKeyNative(env, this);
+}
+
+JNIEXPORT jbyteArray JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cert_getSerialNumberByteArray
+    (JNIEnv *env, jobject this)
+{
+    return Java_org_mozilla_jss_pkcs11_PK11Cert_getSerialNumberByteArrayNative(env, this);
+}
+
+JNIEXPORT jstring JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cert_getSubjectDNString
+    (JNIEnv *env, jobject this)
+{
+    return Java_org_mozilla_jss_pkcs11_PK11Cert_getSubjectDNStringNative(env, this);
+}
+
+JNIEXPORT jstring JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cert_getIssuerDNString
+    (JNIEnv *env, jobject this)
+{
+    return Java_org_mozilla_jss_pkcs11_PK11Cert_getIssuerDNStringNative(env, this);
+}
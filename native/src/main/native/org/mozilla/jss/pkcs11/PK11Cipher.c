@@ -5,10 +5,12 @@
 #include "_jni/org_mozilla_jss_pkcs11_PK11Cipher.h"
 
 #include <nspr.h>
+#include <string.h>
 #include <plarena.h>
 #include <seccomon.h>
 #include <pk11func.h>
 #include <secitem.h>
+#include <secerr.h>
 
 /* JSS includes */
 #include <java_ids.h>
@@ -17,6 +19,8 @@
 #include <pk11util.h>
 #include <Algorithm.h>
 
+#include "jssconfig.h"
+
 /***********************************************************************
  *
  * PK11Cipher.initContext
@@ -234,6 +238,495 @@ finish:
     
 
 
+/***********************************************************************
+ *
+ * Runs PK11_CipherOp from input into output, which hold at most outLen
+ * bytes. When the two regions overlap without being identical, the input
+ * is copied first. Returns the number of bytes written, or -1 if an
+ * exception was thrown.
+ */
+static jint
+cipherOpInto(JNIEnv *env, PK11Context *context, unsigned char *output,
+    jint outLen, unsigned char *input, jint inLen)
+{
+    unsigned char *copy = NULL;
+    int produced = 0;
+    SECStatus status;
+
+    if (input != output && input < output + outLen && output < input + inLen) {
+        copy = PR_Malloc(inLen);
+        if (copy == NULL) {
+            JSS_throw(env, OUT_OF_MEMORY_ERROR);
+            return -1;
+        }
+        memcpy(copy, input, inLen);
+        input = copy;
+    }
+
+    status = PK11_CipherOp(context, output, &produced, outLen, input, inLen);
+
+    if (copy != NULL) {
+        PR_Free(copy);
+    }
+
+    if (status != SECSuccess) {
+        JSS_throwMsgPrErrArg(
+            env, TOKEN_EXCEPTION, "Cipher context update failed",
+            PR_GetError());
+        return -1;
+    }
+
+    return produced;
+}
+
+/***********************************************************************
+ *
+ * PK11Cipher.updateContextArray
+ *
+ * Encrypts or decrypts directly into the caller's output array rather
+ * than returning a new one.
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cipher_updateContextArray
+    (JNIEnv *env, jclass clazz, jobject contextObj, jbyteArray inputBA,
+    jint inputOffset, jint inputLen, jbyteArray outputBA, jint outputOffset,
+    jint outputLen)
+{
+    PK11Context *context = NULL;
+    jbyte *inbuf = NULL;
+    jbyte *outbuf = NULL;
+    jsize length = 0;
+    jint produced = -1;
+
+    PR_ASSERT(env!=NULL && contextObj!=NULL && inputBA!=NULL && outputBA!=NULL);
+
+    if( JSS_PK11_getCipherContext(env, contextObj, &context) != PR_SUCCESS) {
+        goto finish;
+    }
+
+    if (!JSS_RefByteArray(env, outputBA, &outbuf, &length) ||
+            length < outputOffset + outputLen) {
+        ASSERT_OUTOFMEM(env);
+        goto finish;
+    }
+
+    if ((*env)->IsSameObject(env, inputBA, outputBA)) {
+        /* Encrypting in place: share the one reference to the array. */
+        PR_ASSERT(length >= inputOffset + inputLen);
+        inbuf = outbuf;
+    } else if (!JSS_RefByteArray(env, inputBA, &inbuf, &length) ||
+            length < inputOffset + inputLen) {
+        ASSERT_OUTOFMEM(env);
+        goto finish;
+    }
+
+    produced = cipherOpInto(env, context,
+        (unsigned char *)(outbuf + outputOffset), outputLen,
+        (unsigned char *)(inbuf + inputOffset), inputLen);
+
+finish:
+    if (inbuf != NULL && inbuf != outbuf) {
+        JSS_DerefByteArray(env, inputBA, inbuf, JNI_ABORT);
+    }
+    if (outbuf != NULL) {
+        /* Only copy back when output was written. */
+        JSS_DerefByteArray(env, outputBA, outbuf, produced >= 0 ? 0 : JNI_ABORT);
+    }
+    return produced;
+}
+
+/***********************************************************************
+ *
+ * PK11Cipher.updateContextDirect
+ *
+ * Encrypts or decrypts between direct ByteBuffers without copying.
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cipher_updateContextDirect
+    (JNIEnv *env, jclass clazz, jobject contextObj, jobject input,
+    jint inputOffset, jint inputLen, jobject output, jint outputOffset,
+    jint outputLen)
+{
+    PK11Context *context = NULL;
+    unsigned char *inbuf = NULL;
+    unsigned char *outbuf = NULL;
+
+    PR_ASSERT(env!=NULL && contextObj!=NULL && input!=NULL && output!=NULL);
+
+    if( JSS_PK11_getCipherContext(env, contextObj, &context) != PR_SUCCESS) {
+        return -1;
+    }
+
+    inbuf = (*env)->GetDirectBufferAddress(env, input);
+    outbuf = (*env)->GetDirectBufferAddress(env, output);
+    if (inbuf == NULL || outbuf == NULL) {
+        JSS_throwMsg(env, TOKEN_EXCEPTION, "Unable to access direct buffer");
+        return -1;
+    }
+
+    PR_ASSERT(inputOffset + inputLen <= (*env)->GetDirectBufferCapacity(env, input));
+    PR_ASSERT(outputOffset + outputLen <= (*env)->GetDirectBufferCapacity(env, output));
+
+    return cipherOpInto(env, context, outbuf + outputOffset, outputLen,
+        inbuf + inputOffset, inputLen);
+}
+
+/***********************************************************************
+ *
+ * Finalizes the context into output, which holds at most outLen bytes.
+ * Returns the number of bytes written, or -1 if an exception was thrown.
+ */
+static jint
+finalizeInto(JNIEnv *env, PK11Context *context, unsigned char *output,
+    jint outLen)
+{
+    unsigned int produced = 0;
+
+    if (PK11_DigestFinal(context, output, &produced, outLen) != SECSuccess) {
+        JSS_throwMsgPrErrArg(
+            env, TOKEN_EXCEPTION, "Cipher context finalization failed",
+            PR_GetError());
+        return -1;
+    }
+
+    return produced;
+}
+
+/***********************************************************************
+ *
+ * PK11Cipher.finalizeContextArray
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cipher_finalizeContextArray
+    (JNIEnv *env, jclass clazz, jobject contextObj, jbyteArray outputBA,
+    jint outputOffset, jint outputLen)
+{
+    PK11Context *context = NULL;
+    jbyte *outbuf = NULL;
+    jsize length = 0;
+    jint produced = -1;
+
+    PR_ASSERT(env!=NULL && contextObj!=NULL && outputBA!=NULL);
+
+    if( JSS_PK11_getCipherContext(env, contextObj, &context) != PR_SUCCESS) {
+        return -1;
+    }
+
+    if (!JSS_RefByteArray(env, outputBA, &outbuf, &length) ||
+            length < outputOffset + outputLen) {
+        ASSERT_OUTOFMEM(env);
+        goto finish;
+    }
+
+    produced = finalizeInto(env, context,
+        (unsigned char *)(outbuf + outputOffset), outputLen);
+
+finish:
+    if (outbuf != NULL) {
+        JSS_DerefByteArray(env, outputBA, outbuf, produced >= 0 ? 0 : JNI_ABORT);
+    }
+    return produced;
+}
+
+/***********************************************************************
+ *
+ * PK11Cipher.finalizeContextDirect
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cipher_finalizeContextDirect
+    (JNIEnv *env, jclass clazz, jobject contextObj, jobject output,
+    jint outputOffset, jint outputLen)
+{
+    PK11Context *context = NULL;
+    unsigned char *outbuf = NULL;
+
+    PR_ASSERT(env!=NULL && contextObj!=NULL && output!=NULL);
+
+    if( JSS_PK11_getCipherContext(env, contextObj, &context) != PR_SUCCESS) {
+        return -1;
+    }
+
+    outbuf = (*env)->GetDirectBufferAddress(env, output);
+    if (outbuf == NULL) {
+        JSS_throwMsg(env, TOKEN_EXCEPTION, "Unable to access direct buffer");
+        return -1;
+    }
+
+    PR_ASSERT(outputOffset + outputLen <= (*env)->GetDirectBufferCapacity(env, output));
+
+    return finalizeInto(env, context, outbuf + outputOffset, outputLen);
+}
+
+/***********************************************************************
+ *
+ * PK11Cipher.initAEADContext
+ *
+ * Creates a message-based context for an AEAD mechanism. Unlike the
+ * contexts above, no parameters are bound at creation; each message
+ * supplies its own IV and AAD to PK11_AEADOp.
+ *
+ * When NSS lacks the message interface (before v3.52), returns NULL;
+ * aeadOp then encrypts or decrypts each message with the key directly.
+ */
+JNIEXPORT jobject JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cipher_initAEADContext
+    (JNIEnv *env, jclass clazz, jboolean encrypt, jobject keyObj,
+        jobject algObj)
+{
+#ifdef HAVE_NSS_AEAD
+    CK_MECHANISM_TYPE mech;
+    CK_ATTRIBUTE_TYPE op;
+    PK11SymKey *key = NULL;
+    PK11Context *context = NULL;
+    SECItem param = { siBuffer, NULL, 0 };
+    jobject contextObj = NULL;
+
+    PR_ASSERT(env!=NULL && clazz!=NULL && keyObj!=NULL && algObj!=NULL);
+
+    mech = JSS_getPK11MechFromAlg(env, algObj);
+    if (mech == CKM_INVALID_MECHANISM) {
+        JSS_throwMsg(env, TOKEN_EXCEPTION, "Unable to resolve algorithm to"
+            " PKCS #11 mechanism");
+        goto finish;
+    }
+
+    op = (encrypt ? CKA_ENCRYPT : CKA_DECRYPT) | CKA_NSS_MESSAGE;
+
+    if (JSS_PK11_getSymKeyPtr(env, keyObj, &key) != PR_SUCCESS) {
+        goto finish;
+    }
+
+    context = PK11_CreateContextBySymKey(mech, op, key, &param);
+    if (context == NULL) {
+        JSS_throwMsgPrErrArg(env, TOKEN_EXCEPTION,
+            "Failed to generate AEAD context", PR_GetError());
+        goto finish;
+    }
+
+    /* wrap crypto context. This sets context to NULL. */
+    contextObj = JSS_PK11_wrapCipherContextProxy(env, &context);
+
+finish:
+    PR_ASSERT( contextObj || (*env)->ExceptionOccurred(env) );
+    return contextObj;
+#else
+    return NULL;
+#endif
+}
+
+#ifndef HAVE_NSS_AEAD
+/*
+ * Single-shot AEAD for NSS versions without PK11_AEADOp. The tag is
+ * appended to the ciphertext by PK11_Encrypt and taken from the end of
+ * the input by PK11_Decrypt, so input holds the whole message, including
+ * the tag when decrypting.
+ */
+static SECStatus
+aeadOpSingleShot(JNIEnv *env, jobject keyObj, jobject algObj,
+    jboolean encrypt, SECItem *iv, SECItem *aad, jint tagLen,
+    unsigned char *in, unsigned int inLen, unsigned char *out,
+    unsigned int *outLen, unsigned int maxOutLen)
+{
+    PK11SymKey *key = NULL;
+    CK_MECHANISM_TYPE mech;
+    CK_GCM_PARAMS gcm;
+    CK_NSS_AEAD_PARAMS chacha;
+    SECItem param = { siBuffer, NULL, 0 };
+
+    if (JSS_PK11_getSymKeyPtr(env, keyObj, &key) != PR_SUCCESS) {
+        return SECFailure;
+    }
+
+    mech = JSS_getPK11MechFromAlg(env, algObj);
+    if (mech == CKM_INVALID_MECHANISM) {
+        JSS_throwMsg(env, TOKEN_EXCEPTION, "Unable to resolve algorithm to"
+            " PKCS #11 mechanism");
+        return SECFailure;
+    }
+
+    if (mech == CKM_AES_GCM) {
+        memset(&gcm, 0, sizeof(gcm));
+        gcm.pIv = iv->data;
+        gcm.ulIvLen = iv->len;
+        gcm.pAAD = aad ? aad->data : NULL;
+        gcm.ulAADLen = aad ? aad->len : 0;
+        gcm.ulTagBits = tagLen * 8;
+        param.data = (unsigned char *)&gcm;
+        param.len = sizeof(gcm);
+    } else {
+        memset(&chacha, 0, sizeof(chacha));
+        chacha.pNonce = iv->data;
+        chacha.ulNonceLen = iv->len;
+        chacha.pAAD = aad ? aad->data : NULL;
+        chacha.ulAADLen = aad ? aad->len : 0;
+        chacha.ulTagLen = tagLen;
+        param.data = (unsigned char *)&chacha;
+        param.len = sizeof(chacha);
+        mech = CKM_NSS_CHACHA20_POLY1305;
+    }
+
+    if (encrypt) {
+        return PK11_Encrypt(key, mech, &param, out, outLen, maxOutLen,
+            in, inLen);
+    }
+    return PK11_Decrypt(key, mech, &param, out, outLen, maxOutLen,
+        in, inLen);
+}
+#endif
+
+/***********************************************************************
+ *
+ * PK11Cipher.aeadOp
+ *
+ * Encrypts or decrypts a whole message with PK11_AEADOp. When encrypting,
+ * the tag is written after the ciphertext; when decrypting, it is read
+ * from the last tagLen bytes of the input. Returns the number of bytes
+ * written to output, or -1 if an exception was thrown.
+ */
+JNIEXPORT jint JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Cipher_aeadOp
+    (JNIEnv *env, jclass clazz, jobject contextObj, jobject keyObj,
+    jobject algObj, jboolean encrypt,
+    jbyteArray ivBA, jbyteArray aadBA, jint tagLen, jbyteArray inputBA,
+    jint inputOffset, jint inputLen, jbyteArray outputBA, jint outputOffset,
+    jint outputLen)
+{
+    PK11Context VARIABLE_MAY_NOT_BE_USED *context = NULL;
+    SECItem *iv = NULL;
+    SECItem *aad = NULL;
+    jbyte *inbuf = NULL;
+    jbyte *outbuf = NULL;
+    jsize length = 0;
+    unsigned char *in;
+    unsigned char *out;
+    unsigned char *copy = NULL;
+    unsigned char VARIABLE_MAY_NOT_BE_USED tag[16];
+    int dataLen;
+    int msgLen;
+    int produced = 0;
+    jint result = -1;
+    SECStatus status;
+
+    PR_ASSERT(env!=NULL && keyObj!=NULL && algObj!=NULL && ivBA!=NULL &&
+        inputBA!=NULL && outputBA!=NULL);
+    PR_ASSERT(tagLen > 0 && tagLen <= (jint)sizeof(tag));
+
+#ifdef HAVE_NSS_AEAD
+    if (JSS_PK11_getCipherContext(env, contextObj, &context) != PR_SUCCESS) {
+        goto finish;
+    }
+#endif
+
+    iv = JSS_ByteArrayToSECItem(env, ivBA);
+    if (iv == NULL) {
+        goto finish;
+    }
+    if (aadBA != NULL) {
+        aad = JSS_ByteArrayToSECItem(env, aadBA);
+        if (aad == NULL) {
+            goto finish;
+        }
+    }
+
+    if (!JSS_RefByteArray(env, outputBA, &outbuf, &length) ||
+            length < outputOffset + outputLen) {
+        ASSERT_OUTOFMEM(env);
+        goto finish;
+    }
+
+    if ((*env)->IsSameObject(env, inputBA, outputBA)) {
+        PR_ASSERT(length >= inputOffset + inputLen);
+        inbuf = outbuf;
+    } else if (!JSS_RefByteArray(env, inputBA, &inbuf, &length) ||
+            length < inputOffset + inputLen) {
+        ASSERT_OUTOFMEM(env);
+        goto finish;
+    }
+
+    in = (unsigned char *)(inbuf + inputOffset);
+    out = (unsigned char *)(outbuf + outputOffset);
+
+    dataLen = encrypt ? inputLen : inputLen - tagLen;
+    PR_ASSERT(dataLen >= 0);
+    PR_ASSERT(outputLen >= (encrypt ? dataLen + tagLen : dataLen));
+
+#ifdef HAVE_NSS_AEAD
+    /* PK11_AEADOp takes the tag separately */
+    msgLen = dataLen;
+    if (!encrypt) {
+        memcpy(tag, in + dataLen, tagLen);
+    }
+#else
+    msgLen = inputLen;
+#endif
+
+    /* The whole message is processed at once, so when the input and
+     * output overlap without being identical, work from a copy. */
+    if (in != out && in < out + outputLen && out < in + inputLen) {
+        copy = PR_Malloc(msgLen > 0 ? msgLen : 1);
+        if (copy == NULL) {
+            JSS_throw(env, OUT_OF_MEMORY_ERROR);
+            goto finish;
+        }
+        memcpy(copy, in, msgLen);
+        in = copy;
+    }
+
+#ifdef HAVE_NSS_AEAD
+    status = PK11_AEADOp(context, CKG_NO_GENERATE, 0, iv->data, iv->len,
+            aad ? aad->data : NULL, aad ? aad->len : 0,
+            out, &produced, encrypt ? outputLen - tagLen : outputLen,
+            tag, tagLen, in, dataLen);
+#else
+    {
+        unsigned int outLen = 0;
+        status = aeadOpSingleShot(env, keyObj, algObj, encrypt, iv, aad,
+            tagLen, in, msgLen, out, &outLen, outputLen);
+        if (status != SECSuccess && (*env)->ExceptionOccurred(env)) {
+            goto finish;
+        }
+        produced = outLen;
+    }
+#endif
+
+    if (status != SECSuccess) {
+        PRErrorCode err = PR_GetError();
+        if (!encrypt && err == SEC_ERROR_BAD_DATA) {
+            JSS_throwMsg(env, AEAD_BAD_TAG_EXCEPTION, "Tag mismatch");
+        } else {
+            JSS_throwMsgPrErrArg(env, TOKEN_EXCEPTION,
+                "AEAD operation failed", err);
+        }
+        goto finish;
+    }
+
+#ifdef HAVE_NSS_AEAD
+    if (encrypt) {
+        memcpy(out + produced, tag, tagLen);
+        produced += tagLen;
+    }
+#endif
+    result = produced;
+
+finish:
+    if (copy != NULL) {
+        PR_Free(copy);
+    }
+    if (inbuf != NULL && inbuf != outbuf) {
+        JSS_DerefByteArray(env, inputBA, inbuf, JNI_ABORT);
+    }
+    if (outbuf != NULL) {
+        JSS_DerefByteArray(env, outputBA, outbuf, result >= 0 ? 0 : JNI_ABORT);
+    }
+    if (aad != NULL) {
+        SECITEM_ZfreeItem(aad, PR_TRUE /*freeit*/);
+    }
+    if (iv != NULL) {
+        SECITEM_FreeItem(iv, PR_TRUE /*freeit*/);
+    }
+    return result;
+}
+
 /***********************************************************************
  *
  * J S S _ P K 1 1 _ g e t C i p h e r C o n t e x t
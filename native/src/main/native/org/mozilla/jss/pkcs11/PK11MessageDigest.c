@@ -176,3 +176,58 @@ finish:
     JSS_DerefByteArray(env, outbuf, bytes, 0);
     return outLen;
 }
+
+
+/***********************************************************************
+ *
+ * PK11MessageDigest.reinit
+ *
+ * Restarts an existing digest or HMAC context, discarding any input it
+ * has seen, so that it can be reused without recreating it. HMAC contexts
+ * keep their key.
+ */
+JNIEXPORT void JNICALL
+Java_org_mozilla_jss_pkcs11_PK11MessageDigest_reinit
+    (JNIEnv *env, jclass clazz, jobject proxyObj)
+{
+    PK11Context *context = NULL;
+
+    if( JSS_PK11_getCipherContext(env, proxyObj, &context) != PR_SUCCESS ) {
+        /* exception was thrown */
+        return;
+    }
+
+    if( PK11_DigestBegin(context) != SECSuccess ) {
+        JSS_throwMsg(env, DIGEST_EXCEPTION,
+            "Unable to reinitialize digest context");
+    }
+}
+
+
+/***********************************************************************
+ *
+ * PK11MessageDigest.cloneContext
+ *
+ * Creates an independent copy of a digest or HMAC context, including any
+ * input digested so far.
+ */
+JNIEXPORT jobject JNICALL
+Java_org_mozilla_jss_pkcs11_PK11MessageDigest_cloneContext
+    (JNIEnv *env, jclass clazz, jobject proxyObj)
+{
+    PK11Context *context = NULL;
+    PK11Context *copy = NULL;
+
+    if( JSS_PK11_getCipherContext(env, proxyObj, &context) != PR_SUCCESS ) {
+        /* exception was thrown */
+        return NULL;
+    }
+
+    copy = PK11_CloneContext(context);
+    if( copy == NULL ) {
+        JSS_throwMsg(env, DIGEST_EXCEPTION, "Unable to clone digest context");
+        return NULL;
+    }
+
+    return JSS_PK11_wrapCipherContextProxy(env, &copy);
+}
@@ -374,6 +374,445 @@ finish:
 	return verified;
 }
 
+/*
+ * Batch operations. Each byte[] in a batch is referenced, used and
+ * released before the next one, so the number of local references held
+ * stays constant however large the batch is.
+ */
+
+/*
+ * Reference element index of a byte[][] as a SECItem. An empty array
+ * yields an empty item. Returns the element, which must be passed to
+ * releaseBatchItem, or NULL if an exception was thrown.
+ */
+static jbyteArray
+getBatchItem(JNIEnv *env, jobjectArray array, jsize index, SECItem *item)
+{
+    jbyteArray element;
+    jbyte *data = NULL;
+    jsize length = 0;
+
+    element = (*env)->GetObjectArrayElement(env, array, index);
+    if (element == NULL) {
+        if ((*env)->ExceptionOccurred(env) == NULL) {
+            JSS_throw(env, NULL_POINTER_EXCEPTION);
+        }
+        return NULL;
+    }
+
+    if (!JSS_RefByteArray(env, element, &data, &length) && length > 0) {
+        ASSERT_OUTOFMEM(env);
+        (*env)->DeleteLocalRef(env, element);
+        return NULL;
+    }
+
+    item->type = siBuffer;
+    item->data = (unsigned char *) data;
+    item->len = (unsigned int) length;
+    return element;
+}
+
+static void
+releaseBatchItem(JNIEnv *env, jbyteArray element, SECItem *item)
+{
+    JSS_DerefByteArray(env, element, item->data, JNI_ABORT);
+    (*env)->DeleteLocalRef(env, element);
+    item->data = NULL;
+    item->len = 0;
+}
+
+/*
+ * Store signature at index of a byte[][] and free its data.
+ */
+static PRStatus
+setBatchSignature(JNIEnv *env, jobjectArray array, jsize index,
+    SECItem *signature)
+{
+    jbyteArray sigArray;
+
+    sigArray = JSS_ToByteArray(env, signature->data, signature->len);
+    SECITEM_FreeItem(signature, PR_FALSE /*freeit*/);
+    if (sigArray == NULL) {
+        ASSERT_OUTOFMEM(env);
+        return PR_FAILURE;
+    }
+
+    (*env)->SetObjectArrayElement(env, array, index, sigArray);
+    (*env)->DeleteLocalRef(env, sigArray);
+    return PR_SUCCESS;
+}
+
+static jobjectArray
+newSignatureArray(JNIEnv *env, jsize count)
+{
+    jclass byteArrayClass;
+
+    byteArrayClass = (*env)->FindClass(env, BYTE_ARRAY_CLASS_NAME);
+    if (byteArrayClass == NULL) {
+        ASSERT_OUTOFMEM(env);
+        return NULL;
+    }
+
+    return (*env)->NewObjectArray(env, count, byteArrayClass, NULL);
+}
+
+/*
+ * Set index of a boolean[] to the outcome of a verification, which
+ * returned rv. Throws unless rv is SECSuccess or the signature was
+ * merely bad.
+ */
+static PRStatus
+setBatchResult(JNIEnv *env, jbooleanArray results, jsize index, SECStatus rv)
+{
+    jboolean verified = JNI_FALSE;
+
+    if (rv == SECSuccess) {
+        verified = JNI_TRUE;
+    } else if (PR_GetError() != SEC_ERROR_BAD_SIGNATURE) {
+        JSS_throwMsgPrErr(env, SIGNATURE_EXCEPTION,
+            "Failed to complete verification operation");
+        return PR_FAILURE;
+    }
+
+    (*env)->SetBooleanArrayRegion(env, results, index, 1, &verified);
+    return PR_SUCCESS;
+}
+
+/**********************************************************************
+ *
+ * PK11Signature.engineSignAllNative
+ *
+ * Signs each message with the signature's SGNContext, restarting it
+ * between messages.
+ */
+JNIEXPORT jobjectArray JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Signature_engineSignAllNative
+    (JNIEnv *env, jobject this, jobjectArray messages)
+{
+    SGNContext *ctxt = NULL;
+    SigContextType type;
+    jobjectArray sigs = NULL;
+    jsize count;
+    jsize i;
+
+    PR_ASSERT(env != NULL && this != NULL && messages != NULL);
+
+    if (getSigContext(env, this, (void**)&ctxt, &type) != PR_SUCCESS) {
+        PR_ASSERT((*env)->ExceptionOccurred(env) != NULL);
+        return NULL;
+    }
+    PR_ASSERT(ctxt != NULL && type == SGN_CONTEXT);
+
+    count = (*env)->GetArrayLength(env, messages);
+    sigs = newSignatureArray(env, count);
+    if (sigs == NULL) {
+        return NULL;
+    }
+
+    for (i = 0; i < count; i++) {
+        SECItem message = {siBuffer, NULL, 0};
+        SECItem signature = {siBuffer, NULL, 0};
+        jbyteArray element;
+        SECStatus rv;
+
+        element = getBatchItem(env, messages, i, &message);
+        if (element == NULL) {
+            return NULL;
+        }
+
+        rv = SGN_Begin(ctxt);
+        if (rv == SECSuccess) {
+            rv = SGN_Update(ctxt, message.data, message.len);
+        }
+        if (rv == SECSuccess) {
+            rv = SGN_End(ctxt, &signature);
+        }
+        releaseBatchItem(env, element, &message);
+
+        if (rv != SECSuccess) {
+            JSS_throwMsgPrErr(env, SIGNATURE_EXCEPTION,
+                "Signing operation failed");
+            return NULL;
+        }
+
+        if (setBatchSignature(env, sigs, i, &signature) != PR_SUCCESS) {
+            return NULL;
+        }
+    }
+
+    /* Leave the context ready for update() or another batch. */
+    if (SGN_Begin(ctxt) != SECSuccess) {
+        JSS_throwMsgPrErr(env, TOKEN_EXCEPTION,
+            "Unable to begin signing context");
+        return NULL;
+    }
+
+    return sigs;
+}
+
+/**********************************************************************
+ *
+ * PK11Signature.engineVerifyAllNative
+ *
+ * Verifies each message with the signature's VFYContext, restarting it
+ * between messages.
+ */
+JNIEXPORT jbooleanArray JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Signature_engineVerifyAllNative
+    (JNIEnv *env, jobject this, jobjectArray messages, jobjectArray sigArrays)
+{
+    VFYContext *ctxt = NULL;
+    SigContextType type;
+    jbooleanArray results = NULL;
+    jsize count;
+    jsize i;
+
+    PR_ASSERT(env != NULL && this != NULL && messages != NULL &&
+        sigArrays != NULL);
+
+    if (getSigContext(env, this, (void**)&ctxt, &type) != PR_SUCCESS) {
+        PR_ASSERT((*env)->ExceptionOccurred(env) != NULL);
+        return NULL;
+    }
+    PR_ASSERT(ctxt != NULL && type == VFY_CONTEXT);
+
+    count = (*env)->GetArrayLength(env, messages);
+    PR_ASSERT(count == (*env)->GetArrayLength(env, sigArrays));
+
+    results = (*env)->NewBooleanArray(env, count);
+    if (results == NULL) {
+        ASSERT_OUTOFMEM(env);
+        return NULL;
+    }
+
+    for (i = 0; i < count; i++) {
+        SECItem message = {siBuffer, NULL, 0};
+        SECItem signature = {siBuffer, NULL, 0};
+        jbyteArray msgElement;
+        jbyteArray sigElement;
+        SECStatus rv;
+
+        msgElement = getBatchItem(env, messages, i, &message);
+        if (msgElement == NULL) {
+            return NULL;
+        }
+        sigElement = getBatchItem(env, sigArrays, i, &signature);
+        if (sigElement == NULL) {
+            releaseBatchItem(env, msgElement, &message);
+            return NULL;
+        }
+
+        if (VFY_Begin(ctxt) != SECSuccess ||
+                VFY_Update(ctxt, message.data, message.len) != SECSuccess) {
+            releaseBatchItem(env, sigElement, &signature);
+            releaseBatchItem(env, msgElement, &message);
+            JSS_throwMsgPrErr(env, SIGNATURE_EXCEPTION, "update failed");
+            return NULL;
+        }
+
+        rv = VFY_EndWithSignature(ctxt, &signature);
+        releaseBatchItem(env, sigElement, &signature);
+        releaseBatchItem(env, msgElement, &message);
+
+        if (setBatchResult(env, results, i, rv) != PR_SUCCESS) {
+            return NULL;
+        }
+    }
+
+    /* Leave the context ready for update() or another batch. */
+    if (VFY_Begin(ctxt) != SECSuccess) {
+        JSS_throwMsgPrErr(env, TOKEN_EXCEPTION,
+            "Unable to begin verification context");
+        return NULL;
+    }
+
+    return results;
+}
+
+/**********************************************************************
+ *
+ * PK11Signature.engineSignDigestsNative
+ *
+ * Signs each digest directly with the private key. With a digest
+ * algorithm, the signature is encoded as SGN_End would encode it;
+ * without one, the digest is signed as-is.
+ */
+JNIEXPORT jobjectArray JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Signature_engineSignDigestsNative
+    (JNIEnv *env, jclass clazz, jobject keyObj, jobject digestAlgObj,
+    jobjectArray digests)
+{
+    SECKEYPrivateKey *key = NULL;
+    SECOidTag digestAlg = SEC_OID_UNKNOWN;
+    jobjectArray sigs = NULL;
+    int sigLen = 0;
+    jsize count;
+    jsize i;
+
+    PR_ASSERT(env != NULL && keyObj != NULL && digests != NULL);
+
+    if (JSS_PK11_getPrivKeyPtr(env, keyObj, &key) != PR_SUCCESS) {
+        /* exception was thrown */
+        return NULL;
+    }
+
+    if (digestAlgObj != NULL) {
+        digestAlg = JSS_getOidTagFromAlg(env, digestAlgObj);
+        if (digestAlg == SEC_OID_UNKNOWN) {
+            JSS_throwMsg(env, SIGNATURE_EXCEPTION, "Unknown digest algorithm");
+            return NULL;
+        }
+    } else {
+        sigLen = PK11_SignatureLen(key);
+        if (sigLen <= 0) {
+            JSS_throwMsgPrErr(env, SIGNATURE_EXCEPTION,
+                "Unable to determine signature length");
+            return NULL;
+        }
+    }
+
+    count = (*env)->GetArrayLength(env, digests);
+    sigs = newSignatureArray(env, count);
+    if (sigs == NULL) {
+        return NULL;
+    }
+
+    for (i = 0; i < count; i++) {
+        SECItem digest = {siBuffer, NULL, 0};
+        SECItem signature = {siBuffer, NULL, 0};
+        jbyteArray element;
+        SECStatus rv = SECFailure;
+
+        element = getBatchItem(env, digests, i, &digest);
+        if (element == NULL) {
+            return NULL;
+        }
+
+        if (digestAlg != SEC_OID_UNKNOWN) {
+            rv = SGN_Digest(key, digestAlg, &signature, &digest);
+        } else if (SECITEM_AllocItem(NULL, &signature, sigLen) != NULL) {
+            rv = PK11_Sign(key, &signature, &digest);
+        }
+        releaseBatchItem(env, element, &digest);
+
+        if (rv != SECSuccess) {
+            SECITEM_FreeItem(&signature, PR_FALSE /*freeit*/);
+            JSS_throwMsgPrErr(env, SIGNATURE_EXCEPTION,
+                "Signature operation failed on token");
+            return NULL;
+        }
+
+        if (setBatchSignature(env, sigs, i, &signature) != PR_SUCCESS) {
+            return NULL;
+        }
+    }
+
+    return sigs;
+}
+
+/*
+ * The OID VFY_VerifyDigestDirect expects for the type of key.
+ */
+static SECOidTag
+getPublicKeyAlgorithm(SECKEYPublicKey *key)
+{
+    switch (key->keyType) {
+        case rsaKey:
+            return SEC_OID_PKCS1_RSA_ENCRYPTION;
+        case dsaKey:
+            return SEC_OID_ANSIX9_DSA_SIGNATURE;
+        case ecKey:
+            return SEC_OID_ANSIX962_EC_PUBLIC_KEY;
+        default:
+            return SEC_OID_UNKNOWN;
+    }
+}
+
+/**********************************************************************
+ *
+ * PK11Signature.engineVerifyDigestsNative
+ *
+ * Verifies the signature of each digest directly with the public key.
+ * Without a digest algorithm, the digest is verified as-is.
+ */
+JNIEXPORT jbooleanArray JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Signature_engineVerifyDigestsNative
+    (JNIEnv *env, jclass clazz, jobject keyObj, jobject digestAlgObj,
+    jobjectArray digests, jobjectArray sigArrays)
+{
+    SECKEYPublicKey *key = NULL;
+    SECOidTag digestAlg = SEC_OID_UNKNOWN;
+    SECOidTag keyAlg = SEC_OID_UNKNOWN;
+    jbooleanArray results = NULL;
+    jsize count;
+    jsize i;
+
+    PR_ASSERT(env != NULL && keyObj != NULL && digests != NULL &&
+        sigArrays != NULL);
+
+    if (JSS_PK11_getPubKeyPtr(env, keyObj, &key) != PR_SUCCESS) {
+        /* exception was thrown */
+        return NULL;
+    }
+
+    if (digestAlgObj != NULL) {
+        digestAlg = JSS_getOidTagFromAlg(env, digestAlgObj);
+        if (digestAlg == SEC_OID_UNKNOWN) {
+            JSS_throwMsg(env, SIGNATURE_EXCEPTION, "Unknown digest algorithm");
+            return NULL;
+        }
+
+        keyAlg = getPublicKeyAlgorithm(key);
+        if (keyAlg == SEC_OID_UNKNOWN) {
+            JSS_throwMsg(env, SIGNATURE_EXCEPTION,
+                "Unsupported key type for pre-hashed verification");
+            return NULL;
+        }
+    }
+
+    count = (*env)->GetArrayLength(env, digests);
+    PR_ASSERT(count == (*env)->GetArrayLength(env, sigArrays));
+
+    results = (*env)->NewBooleanArray(env, count);
+    if (results == NULL) {
+        ASSERT_OUTOFMEM(env);
+        return NULL;
+    }
+
+    for (i = 0; i < count; i++) {
+        SECItem digest = {siBuffer, NULL, 0};
+        SECItem signature = {siBuffer, NULL, 0};
+        jbyteArray digestElement;
+        jbyteArray sigElement;
+        SECStatus rv;
+
+        digestElement = getBatchItem(env, digests, i, &digest);
+        if (digestElement == NULL) {
+            return NULL;
+        }
+        sigElement = getBatchItem(env, sigArrays, i, &signature);
+        if (sigElement == NULL) {
+            releaseBatchItem(env, digestElement, &digest);
+            return NULL;
+        }
+
+        if (digestAlg != SEC_OID_UNKNOWN) {
+            rv = VFY_VerifyDigestDirect(&digest, key, &signature, keyAlg,
+                                        digestAlg, NULL /*wincx*/);
+        } else {
+            rv = PK11_Verify(key, &signature, &digest, NULL /*wincx*/);
+        }
+        releaseBatchItem(env, sigElement, &signature);
+        releaseBatchItem(env, digestElement, &digest);
+
+        if (setBatchResult(env, results, i, rv) != PR_SUCCESS) {
+            return NULL;
+        }
+    }
+
+    return results;
+}
+
 /*
  * Extract the algorithm from a PK11Signature.
  *
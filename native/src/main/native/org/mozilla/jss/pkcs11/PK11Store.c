@@ -477,13 +477,13 @@ finish:
 }
 
 /**********************************************************************
- * PK11Store.deleteCert
+ * PK11Store.deleteCertNative
  *
  * This function deletes the specified certificate and its associated 
  * private key.
  */
 JNIEXPORT void JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Store_deleteCert
+Java_org_mozilla_jss_pkcs11_PK11Store_deleteCertNative
     (JNIEnv *env, jobject this, jobject certObject)
 {
     CERTCertificate *cert;
@@ -508,12 +508,12 @@ finish:
 }
 
 /**********************************************************************
- * PK11Store.deleteCertOnly
+ * PK11Store.deleteCertOnlyNative
  *
  * This function deletes the specified certificate only.
  */
 JNIEXPORT void JNICALL
-Java_org_mozilla_jss_pkcs11_PK11Store_deleteCertOnly
+Java_org_mozilla_jss_pkcs11_PK11Store_deleteCertOnlyNative
     (JNIEnv *env, jobject this, jobject certObject)
 {
     CERTCertificate *cert;
@@ -536,6 +536,26 @@ finish:
     return;
 }
 
+/**********************************************************************
+ * PK11Store.deleteCert, PK11Store.deleteCertOnly
+ *
+ * These are now Java methods wrapping the natives above. The symbols are
+ * kept so that the exported ABI doesn't change.
+ */
+JNIEXPORT void JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Store_deleteCert
+    (JNIEnv *env, jobject this, jobject certObject)
+{
+    Java_org_mozilla_jss_pkcs11_PK11Store_deleteCertNative(env, this, certObject);
+}
+
+JNIEXPORT void JNICALL
+Java_org_mozilla_jss_pkcs11_PK11Store_deleteCertOnly
+    (JNIEnv *env, jobject this, jobject certObject)
+{
+    Java_org_mozilla_jss_pkcs11_PK11Store_deleteCertOnlyNative(env, this, certObject);
+}
+
 #define DER_DEFAULT_CHUNKSIZE (2048)
 
 int PK11_NumberObjectsFor(PK11SlotInfo*, CK_ATTRIBUTE*, int);
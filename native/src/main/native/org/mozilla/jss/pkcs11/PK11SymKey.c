@@ -302,6 +302,12 @@ Java_org_mozilla_jss_pkcs11_PK11SymKey_getKeyType
           case CKK_AES:
             typeFieldName = AES_KEYTYPE_FIELD;
             break;
+#ifdef CKK_CHACHA20
+          case CKK_CHACHA20:
+#endif
+          case CKK_NSS_CHACHA20:
+            typeFieldName = CHACHA20_KEYTYPE_FIELD;
+            break;
           case CKK_DES2:
              typeFieldName = DES3_KEYTYPE_FIELD;
              break;
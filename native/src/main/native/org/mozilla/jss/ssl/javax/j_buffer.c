@@ -287,6 +287,19 @@ size_t jb_read(j_buffer *buf, uint8_t *output, size_t output_size) {
     return read_size + jb_read(buf, output, output_size);
 }
 
+void jb_clear(j_buffer *buf) {
+    // Safely handle partial or invalid structures.
+    if (buf == NULL || buf->contents == NULL || buf->capacity == 0) {
+        return;
+    }
+
+    memset(buf->contents, 0, buf->capacity);
+
+    // Same as jb_alloc: we can only write, not read.
+    buf->write_pos = 0;
+    buf->read_pos = buf->capacity;
+}
+
 void jb_free(j_buffer *buf) {
     // Safely handle partial or invalid structures.
     if (buf == NULL) {
@@ -72,6 +72,13 @@ int jb_get(j_buffer *buf);
  */
 size_t jb_read(j_buffer *buf, uint8_t *output, size_t output_size);
 
+/*
+ * Discard the contents of the buffer, returning it to its freshly allocated
+ * (empty) state. This includes zeroing the contents of the buffer in case
+ * any sensitive material was stored.
+ */
+void jb_clear(j_buffer *buf);
+
 /*
  * Free a buffer allocated with jb_alloc. This includes zeroing the contents
  * of the buffer in case any sensitive material was stored.
@@ -31,6 +31,11 @@ PR_BEGIN_EXTERN_C
 #define BIG_INTEGER_CONSTRUCTOR_NAME "<init>"
 #define BIG_INTEGER_CONSTRUCTOR_SIG "([B)V"
 
+/*
+ * byte[]
+ */
+#define BYTE_ARRAY_CLASS_NAME "[B"
+
 /*
  * CipherContextProxy
  */
@@ -87,6 +92,7 @@ PR_BEGIN_EXTERN_C
 #define RC2_KEYTYPE_FIELD "RC2"
 #define SHA1_HMAC_KEYTYPE_FIELD "SHA1_HMAC"
 #define AES_KEYTYPE_FIELD "AES"
+#define CHACHA20_KEYTYPE_FIELD "CHACHA20"
 #define GENERIC_SECRET_KEYTYPE_FIELD "GENERIC_SECRET"
 
 /*
@@ -0,0 +1,10 @@
+#include "nspr.h"
+#include "nss.h"
+#include "pkcs11t.h"
+#include "pk11pub.h"
+
+int main() {
+    PK11_AEADOp(NULL, CKG_NO_GENERATE, 0, NULL, 0, NULL, 0, NULL, NULL, 0, NULL, 0, NULL, 0);
+    (void) CKA_NSS_MESSAGE;
+    return 0;
+}